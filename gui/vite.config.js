@@ -1,8 +1,33 @@
 import { defineConfig } from 'vite'
-import { resolve } from 'path'
+import { resolve, join } from 'path'
+import { readFileSync, writeFileSync } from 'fs'
+import { gzipSync, constants } from 'zlib'
+
+// Genera un sibling .gz per ogni asset testuale sopra 1 KB:
+// il backend (Compression.staticResources) lo serve ai client che accettano gzip
+// senza comprimere a runtime.
+function precompress() {
+  const compressible = /\.(js|mjs|css|html|svg|json|txt)$/
+  return {
+    name: 'precompress',
+    apply: 'build',
+    writeBundle(options, bundle) {
+      for (const fileName of Object.keys(bundle)) {
+        if (compressible.test(fileName)) {
+          const path = join(options.dir, fileName)
+          const data = readFileSync(path)
+          if (data.length >= 1024) {
+            writeFileSync(path + '.gz', gzipSync(data, { level: constants.Z_BEST_COMPRESSION }))
+          }
+        }
+      }
+    }
+  }
+}
 
 export default defineConfig({
   root: 'src',
+  plugins: [precompress()],
   build: {
     outDir: '../../src/main/resources/static',
     emptyOutDir: true,
@@ -8,6 +8,8 @@ import dev.jms.app.module.cti.vonage.handler.SessioneOperatoreHandler;
 import dev.jms.app.module.cti.vonage.handler.QueueHandler;
 import dev.jms.util.Config;
 import dev.jms.util.HttpMethod;
+import dev.jms.util.Priority;
+import dev.jms.util.RateLimiter;
 import dev.jms.util.Router;
 import dev.jms.util.Scheduler;
 
@@ -44,16 +46,19 @@ public class Routes
     router.route(HttpMethod.POST, "/api/cti/vonage/sdk/auth/release", calls::releaseBeacon);
     // genera JWT SDK per ascolto silenzioso (solo ADMIN/ROOT)
     router.async(HttpMethod.POST, "/api/cti/vonage/sdk/auth/listen", calls::sdkAuthListen);
-    // webhook Vonage: NCCO operatore + avvio chiamata cliente
-    router.async(HttpMethod.POST, "/api/cti/vonage/answer", calls::answer);
+    // webhook Vonage: NCCO operatore + avvio chiamata cliente (virtual thread: burst di webhook)
+    router.virtual(HttpMethod.POST, "/api/cti/vonage/answer", calls::answer);
+    router.priority("/api/cti/vonage/answer", Priority.CRITICAL);
     // hangup operatore e cliente
     router.async(HttpMethod.PUT, "/api/cti/vonage/call/{uuid}/hangup", calls::hangup);
-    // webhook Vonage: eventi Voice e RTC
-    router.route(HttpMethod.POST, "/api/cti/vonage/event", calls::event);
+    // webhook Vonage: eventi Voice e RTC (virtual thread: burst di webhook)
+    router.virtual(HttpMethod.POST, "/api/cti/vonage/event", calls::event);
+    router.priority("/api/cti/vonage/event", Priority.CRITICAL);
     // chiamata attiva dell'operatore corrente (per ripristino stato dopo reload)
     router.route(HttpMethod.GET, "/api/cti/vonage/call/active", calls::activeCall);
     // storico chiamate (paginato)
     router.route(HttpMethod.GET, "/api/cti/vonage/call/history", calls::list);
+    router.readOnly("/api/cti/vonage/call/history");
     // scarica e archivia registrazione audio (admin)
     router.async(HttpMethod.GET, "/api/cti/vonage/call/{id}/recording", calls::downloadRecording);
 
@@ -76,11 +81,13 @@ public class Routes
 
     // lista sessioni tecniche (admin)
     router.route(HttpMethod.GET, "/api/cti/vonage/admin/sessioni", turni::list);
+    router.readOnly("/api/cti/vonage/admin/sessioni");
     // sessione tecnica corrente dell'operatore autenticato
     router.route(HttpMethod.GET, "/api/cti/vonage/sessione/corrente", turni::corrente);
 
     // coda personale operatore (admin) + rimozione forzata orfani
     router.route(HttpMethod.GET, "/api/cti/vonage/admin/operator/{id}/queue", queue::adminQueueByOperator);
+    router.readOnly("/api/cti/vonage/admin/operator/{id}/queue");
     router.route(HttpMethod.DELETE, "/api/cti/vonage/admin/queue/contatto/{id}", queue::adminRimuoviContatto);
 
     // Coda contatti — prefissi più specifici prima di quelli generici
@@ -93,7 +100,14 @@ public class Routes
     router.route(HttpMethod.DELETE, "/api/cti/vonage/queue/contatto/{id}/rimetti", queue::rimettiInCoda);
     router.route(HttpMethod.DELETE, "/api/cti/vonage/queue/contatto/{id}", queue::rimuoviContatto);
     router.route(HttpMethod.POST, "/api/cti/vonage/queue", queue::addToQueue);
-    router.route(HttpMethod.POST, "/api/cti/vonage/queue/bulk", queue::addBulkToQueue);
+    // async: il body (anche grande) viene ricevuto senza occupare thread
+    router.async(HttpMethod.POST, "/api/cti/vonage/queue/bulk", queue::addBulkToQueue);
+    // inserimenti massivi limitati per account
+    router.rateLimit("/api/cti/vonage/queue/bulk",
+                     RateLimiter.policy("cti.vonage.queue.bulk",
+                                        config.getInt("cti.vonage.ratelimit.bulk.requests", 10),
+                                        config.getInt("cti.vonage.ratelimit.bulk.window.seconds", 60),
+                                        RateLimiter.Scope.ACCOUNT));
 
     // cleanup sessioni operatori scadute (ogni minuto)
     Scheduler.register("cti-session-cleanup", "* * * * *", OperatorDAO::releaseExpired);
@@ -2,9 +2,12 @@ package dev.jms.app.module.cti.vonage.dao;
 
 import dev.jms.app.module.cti.vonage.dto.CallDTO;
 import dev.jms.util.DB;
+import dev.jms.util.Page;
+import dev.jms.util.Row;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * DAO per la persistenza delle chiamate Vonage.
@@ -12,6 +15,14 @@ import java.util.List;
  */
 public class CallDAO
 {
+  /**
+   * Ordinamento dello storico: data di creazione decrescente (NULL in coda), id.
+   * Coperto dagli indici {@code jms_cti_idx_chiamate_keyset*}.
+   */
+  private static final Page.Key KEY = Page.Key.desc()
+    .column("COALESCE(c.data_creazione, '-infinity'::timestamp)", "timestamp")
+    .column("c.id", "bigint");
+
   private final DB db;
 
   /**
@@ -31,56 +42,51 @@ public class CallDAO
   public Long insert(CallDTO dto) throws Exception
   {
     String sql;
-    ArrayList<HashMap<String, Object>> rows;
 
     sql = "INSERT INTO jms_cti_chiamate "
         + "(uuid, conversazione_uuid, conversation_name, direzione, stato, "
         + "tipo_mittente, numero_mittente, tipo_destinatario, numero_destinatario, "
         + "answer_url, event_url, operatore_id, chiamante_account_id, contatto_id, callback_url, data_creazione) "
-        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW()) "
-        + "RETURNING id";
-    rows = db.select(sql,
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())";
+    return db.insert(sql,
         dto.uuid(), dto.conversazioneUuid(), dto.conversationName(), dto.direzione(), dto.stato(),
         dto.tipoMittente(), dto.numeroMittente(), dto.tipoDestinatario(), dto.numeroDestinatario(),
         dto.answerUrl(), dto.eventUrl(), dto.operatoreId(), dto.chiamanteAccountId(),
         dto.contattoId(), dto.callbackUrl());
-    return DB.toLong(rows.get(0).get("id"));
   }
 
   /**
    * Restituisce la lista paginata di chiamate, ordinate per data decrescente.
    *
-   * @param page numero di pagina (da 1)
-   * @param size elementi per pagina
+   * @param page pagina o cursore richiesto
    */
-  public List<CallDTO> findAll(int page, int size) throws Exception
+  public List<CallDTO> findAll(Page page) throws Exception
   {
     String sql;
     ArrayList<HashMap<String, Object>> rows;
     List<CallDTO> result;
 
-    sql = "SELECT * FROM jms_cti_chiamate ORDER BY data_creazione DESC LIMIT ? OFFSET ?";
-    rows = db.select(sql, size, (page - 1) * size);
+    sql = "SELECT c.* FROM jms_cti_chiamate c WHERE " + page.seek(KEY)
+        + " ORDER BY " + page.orderBy(KEY) + " LIMIT ? OFFSET ?";
+    rows = db.select(sql, page.params());
     result = new ArrayList<>();
     for (HashMap<String, Object> r : rows) {
       result.add(toDTO(r));
     }
-    return result;
+    return page.track(result, c -> new Object[] {
+      c.dataCreazione() != null ? c.dataCreazione() : "-infinity", c.id()
+    });
   }
 
   /**
-   * Conta il totale delle chiamate per la paginazione.
+   * Conta il totale delle chiamate per la paginazione (modalità {@code count} della richiesta).
    *
-   * @return numero totale di record
+   * @param page pagina richiesta
+   * @return numero di record (esatto o stimato), o {@code null} con {@code count=none}
    */
-  public int count() throws Exception
+  public Long count(Page page) throws Exception
   {
-    String sql;
-    ArrayList<HashMap<String, Object>> rows;
-
-    sql = "SELECT COUNT(*) AS n FROM jms_cti_chiamate";
-    rows = db.select(sql);
-    return DB.toInteger(rows.get(0).get("n"));
+    return page.count(db, "FROM jms_cti_chiamate");
   }
 
   /**
@@ -94,7 +100,7 @@ public class CallDAO
     String sql;
 
     sql = "UPDATE jms_cti_chiamate SET stato = ?, data_aggiornamento = NOW() WHERE uuid = ?";
-    db.query(sql, stato, uuid);
+    db.execute(sql, stato, uuid);
   }
 
   /**
@@ -110,7 +116,7 @@ public class CallDAO
 
     sql = "UPDATE jms_cti_chiamate SET stato = 'answered', ora_inizio = ?, "
         + "data_aggiornamento = NOW() WHERE uuid = ?";
-    db.query(sql, oraInizio, uuid);
+    db.execute(sql, oraInizio, uuid);
   }
 
   /**
@@ -140,16 +146,17 @@ public class CallDAO
         + "ora_inizio = COALESCE(ora_inizio, ?), ora_fine = ?, "
         + "durata = ?, tariffa = ?, costo = ?, rete = ?, "
         + "data_aggiornamento = NOW() WHERE uuid = ?";
-    db.query(sql, oraInizio, oraFine, durata, tariffa, costo, rete, uuid);
+    db.execute(sql, oraInizio, oraFine, durata, tariffa, costo, rete, uuid);
   }
 
   /**
    * Lista paginata di tutte le chiamate (per ADMIN/ROOT), con nome operatore.
+   * Le righe sono lette in streaming dal cursore: chiudere lo stream o passarlo a
+   * {@code HttpResponse.out()}.
    *
-   * @param page numero di pagina (da 1)
-   * @param size elementi per pagina
+   * @param page pagina o cursore richiesto
    */
-  public List<HashMap<String, Object>> findAllForApi(int page, int size) throws Exception
+  public Stream<HashMap<String, Object>> streamAllForApi(Page page) throws Exception
   {
     String sql;
 
@@ -158,19 +165,18 @@ public class CallDAO
         + "c.data_creazione, c.errore_titolo, o.nome AS operatore_nome "
         + "FROM jms_cti_chiamate c "
         + "LEFT JOIN jms_cti_operatori o ON o.id = c.operatore_id "
-        + "ORDER BY c.data_creazione DESC LIMIT ? OFFSET ?";
-    return db.select(sql, size, (page - 1) * size);
+        + "WHERE " + page.seek(KEY) + " "
+        + "ORDER BY " + page.orderBy(KEY) + " LIMIT ? OFFSET ?";
+    return page.track(db.stream(sql, Row::toMap, page.params()), CallDAO::key);
   }
 
   /**
    * Lista paginata delle sole chiamate dell'account indicato (per USER).
    *
-   * @param page      numero di pagina (da 1)
-   * @param size      elementi per pagina
+   * @param page      pagina o cursore richiesto
    * @param accountId account corrente ({@code session.sub()})
    */
-  public List<HashMap<String, Object>> findByAccountForApi(int page, int size, long accountId)
-      throws Exception
+  public Stream<HashMap<String, Object>> streamByAccountForApi(Page page, long accountId) throws Exception
   {
     String sql;
 
@@ -179,24 +185,26 @@ public class CallDAO
         + "c.data_creazione, c.errore_titolo, o.nome AS operatore_nome "
         + "FROM jms_cti_chiamate c "
         + "LEFT JOIN jms_cti_operatori o ON o.id = c.operatore_id "
-        + "WHERE c.chiamante_account_id = ? "
-        + "ORDER BY c.data_creazione DESC LIMIT ? OFFSET ?";
-    return db.select(sql, accountId, size, (page - 1) * size);
+        + "WHERE c.chiamante_account_id = ? AND " + page.seek(KEY) + " "
+        + "ORDER BY " + page.orderBy(KEY) + " LIMIT ? OFFSET ?";
+    return page.track(db.stream(sql, Row::toMap, page.params(accountId)), CallDAO::key);
   }
 
   /**
    * Conta le chiamate dell'account indicato (per paginazione USER).
    *
+   * @param page      pagina richiesta
    * @param accountId account corrente
    */
-  public int countByAccount(long accountId) throws Exception
+  public Long countByAccount(Page page, long accountId) throws Exception
   {
-    String sql;
-    ArrayList<HashMap<String, Object>> rows;
+    return page.count(db, "FROM jms_cti_chiamate WHERE chiamante_account_id = ?", accountId);
+  }
 
-    sql = "SELECT COUNT(*) AS n FROM jms_cti_chiamate WHERE chiamante_account_id = ?";
-    rows = db.select(sql, accountId);
-    return DB.toInteger(rows.get(0).get("n"));
+  /** Valori di {@link #KEY} di una riga dello storico, per il cursore della pagina successiva. */
+  private static Object[] key(HashMap<String, Object> r)
+  {
+    return new Object[] { r.get("data_creazione") != null ? r.get("data_creazione") : "-infinity", r.get("id") };
   }
 
   /**
@@ -276,7 +284,7 @@ public class CallDAO
 
     sql = "UPDATE jms_cti_chiamate SET recording_url = ?, recording_uuid = ?, "
         + "data_aggiornamento = NOW() WHERE uuid = ?";
-    db.query(sql, recordingUrl, recordingUuid, uuid);
+    db.execute(sql, recordingUrl, recordingUuid, uuid);
   }
 
   /**
@@ -291,7 +299,7 @@ public class CallDAO
     String sql;
 
     sql = "UPDATE jms_cti_chiamate SET recording_path = ?, data_aggiornamento = NOW() WHERE id = ?";
-    db.query(sql, path, id);
+    db.execute(sql, path, id);
   }
 
   /** Mappa un record del ResultSet nel DTO corrispondente. */
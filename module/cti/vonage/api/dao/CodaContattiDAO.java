@@ -29,15 +29,14 @@ public class CodaContattiDAO
   public long insert(String contattoJson) throws Exception
   {
     String sql;
-    List<HashMap<String, Object>> rows;
 
-    sql = "INSERT INTO jms_cti_coda_contatti (contatto_json) VALUES (?::jsonb) RETURNING id";
-    rows = db.select(sql, contattoJson);
-    return DB.toLong(rows.get(0).get("id"));
+    sql = "INSERT INTO jms_cti_coda_contatti (contatto_json) VALUES (?::jsonb)";
+    return db.insert(sql, contattoJson);
   }
 
   /**
-   * Inserisce multipli contatti nella coda globale in modo massivo.
+   * Inserisce multipli contatti nella coda globale in modo massivo, con {@link DB#batch}
+   * (un round-trip per blocco di {@code db.batch.size} righe, in un'unica transazione).
    *
    * @param contatti lista di JSON serializzati
    * @return numero di record inseriti
@@ -45,26 +44,14 @@ public class CodaContattiDAO
   public int insertBulk(List<String> contatti) throws Exception
   {
     String sql;
-    String values;
-    List<Object> params;
-
-    if (contatti.isEmpty()) {
-      return 0;
-    }
-
-    values = "";
-    params = new ArrayList<>();
+    List<Object[]> rows;
 
+    sql = "INSERT INTO jms_cti_coda_contatti (contatto_json) VALUES (?::jsonb)";
+    rows = new ArrayList<>(contatti.size());
     for (String contattoJson : contatti) {
-      if (!values.isEmpty()) {
-        values += ", ";
-      }
-      values += "(?::jsonb)";
-      params.add(contattoJson);
+      rows.add(new Object[] { contattoJson });
     }
-
-    sql = "INSERT INTO jms_cti_coda_contatti (contatto_json) VALUES " + values;
-    return db.query(sql, params.toArray());
+    return db.batch(sql, rows);
   }
 
   /**
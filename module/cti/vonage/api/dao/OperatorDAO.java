@@ -3,6 +3,7 @@ package dev.jms.app.module.cti.vonage.dao;
 import dev.jms.app.module.cti.vonage.dto.OperatorDTO;
 import dev.jms.util.DB;
 import dev.jms.util.Log;
+import dev.jms.util.Workload;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -63,7 +64,7 @@ public class OperatorDAO
           sql = "UPDATE jms_cti_operatori "
               + "SET claim_account_id = ?, claim_scadenza = NOW() + interval '30 minutes' "
               + "WHERE id = ?";
-          db.query(sql, accountId, assignedOperatorId);
+          db.execute(sql, accountId, assignedOperatorId);
           db.commit();
           sql = "SELECT id, vonage_user_id, account_id, attivo "
               + "FROM jms_cti_operatori WHERE id = ?";
@@ -112,7 +113,7 @@ public class OperatorDAO
     String sql;
 
     sql = "UPDATE jms_cti_operatori SET account_id = ? WHERE id = ?";
-    db.query(sql, accountId, operatoreId);
+    db.execute(sql, accountId, operatoreId);
   }
 
   /**
@@ -146,7 +147,7 @@ public class OperatorDAO
     String sql;
     sql = "UPDATE jms_cti_operatori SET claim_account_id = NULL, claim_scadenza = NULL "
         + "WHERE claim_account_id = ?";
-    db.query(sql, accountId);
+    db.execute(sql, accountId);
   }
 
   /**
@@ -273,7 +274,7 @@ public class OperatorDAO
     String sql;
 
     sql = "UPDATE jms_cti_operatori SET attivo = ? WHERE id = ?";
-    db.query(sql, attivo, id);
+    db.execute(sql, attivo, id);
   }
 
   /**
@@ -286,7 +287,7 @@ public class OperatorDAO
     String sql;
 
     sql = "DELETE FROM jms_cti_operatori WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 
   /**
@@ -299,17 +300,15 @@ public class OperatorDAO
   public long insert(String vonageUserId) throws Exception
   {
     String sql;
-    List<HashMap<String, Object>> rows;
 
-    sql = "INSERT INTO jms_cti_operatori (vonage_user_id) VALUES (?) RETURNING id";
-    rows = db.select(sql, vonageUserId);
-    return DB.toLong(rows.get(0).get("id"));
+    sql = "INSERT INTO jms_cti_operatori (vonage_user_id) VALUES (?)";
+    return db.insert(sql, vonageUserId);
   }
 
   /**
    * Rilascia tutte le sessioni il cui TTL è scaduto.
    * Metodo statico per l'esecuzione come job schedulato da {@link dev.jms.util.Scheduler}.
-   * Acquisisce e rilascia autonomamente una connessione DB dal pool condiviso.
+   * Acquisisce e rilascia autonomamente una connessione DB dal pool dei job ({@link Workload#JOBS}).
    *
    * <p>Progettato per essere eseguito ogni minuto. Se nessun claim è scaduto
    * non emette log.</p>
@@ -322,12 +321,12 @@ public class OperatorDAO
     String sql;
     int released;
 
-    db = new DB(DB.getDataSource());
+    db = new DB(DB.getDataSource(Workload.JOBS));
     try {
       db.open();
       sql = "UPDATE jms_cti_operatori SET claim_account_id = NULL, claim_scadenza = NULL "
           + "WHERE claim_scadenza IS NOT NULL AND claim_scadenza < NOW()";
-      released = db.query(sql);
+      released = db.execute(sql);
       if (released > 0) {
         log.info("[CTI] releaseExpired: {} sessioni scadute rilasciate", released);
       }
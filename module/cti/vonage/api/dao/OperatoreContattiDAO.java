@@ -5,6 +5,7 @@ import dev.jms.util.DB;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * DAO per la coda personale di un operatore CTI ({@code jms_cti_operatore_contatti}).
@@ -43,7 +44,6 @@ public class OperatoreContattiDAO
     List<HashMap<String, Object>> rows;
     long codaGlobaleId;
     String contattoJson;
-    long nuovoId;
     OperatoreContattoDTO result;
 
     result = null;
@@ -66,18 +66,13 @@ public class OperatoreContattiDAO
           contattoJson = DB.toString(rows.get(0).get("contatto_json"));
 
           sql = "INSERT INTO jms_cti_operatore_contatti (operatore_id, contatto_json) "
-              + "VALUES (?, ?::jsonb) RETURNING id";
-          rows = db.select(sql, operatoreId, contattoJson);
-          nuovoId = DB.toLong(rows.get(0).get("id"));
+              + "VALUES (?, ?::jsonb) RETURNING *";
+          result = db.insertReturning(sql, OperatoreContattoDTO.class, operatoreId, contattoJson);
 
           sql = "DELETE FROM jms_cti_coda_contatti WHERE id = ?";
-          db.query(sql, codaGlobaleId);
+          db.execute(sql, codaGlobaleId);
 
           db.commit();
-
-          sql = "SELECT * FROM jms_cti_operatore_contatti WHERE id = ?";
-          rows = db.select(sql, nuovoId);
-          result = mapRow(rows.get(0));
         } else {
           db.commit();
         }
@@ -130,12 +125,12 @@ public class OperatoreContattiDAO
   public long aggiungiPersonale(long operatoreId, String contattoJson, LocalDateTime pianificatoAl) throws Exception
   {
     String sql;
-    List<HashMap<String, Object>> rows;
+    long result;
 
     if (pianificatoAl != null) {
       sql = "INSERT INTO jms_cti_operatore_contatti (operatore_id, contatto_json, pianificato_al) "
-          + "VALUES (?, ?::jsonb, ?) RETURNING id";
-      rows = db.select(sql, operatoreId, contattoJson, pianificatoAl);
+          + "VALUES (?, ?::jsonb, ?)";
+      result = db.insert(sql, operatoreId, contattoJson, pianificatoAl);
     } else {
       sql = "INSERT INTO jms_cti_operatore_contatti (operatore_id, contatto_json, pianificato_al) "
           + "VALUES (?, ?::jsonb, "
@@ -143,10 +138,10 @@ public class OperatoreContattiDAO
           + "    (SELECT MIN(pianificato_al) FROM jms_cti_operatore_contatti WHERE operatore_id = ?) - INTERVAL '1 second',"
           + "    NOW()"
           + "  )"
-          + ") RETURNING id";
-      rows = db.select(sql, operatoreId, contattoJson, operatoreId);
+          + ")";
+      result = db.insert(sql, operatoreId, contattoJson, operatoreId);
     }
-    return DB.toLong(rows.get(0).get("id"));
+    return result;
   }
 
   /**
@@ -161,7 +156,7 @@ public class OperatoreContattiDAO
     String sql;
 
     sql = "UPDATE jms_cti_operatore_contatti SET pianificato_al = ? WHERE id = ? AND operatore_id = ?";
-    db.query(sql, pianificatoAl, id, operatoreId);
+    db.execute(sql, pianificatoAl, id, operatoreId);
   }
 
   /**
@@ -175,7 +170,7 @@ public class OperatoreContattiDAO
     String sql;
 
     sql = "DELETE FROM jms_cti_operatore_contatti WHERE id = ? AND operatore_id = ?";
-    db.query(sql, id, operatoreId);
+    db.execute(sql, id, operatoreId);
   }
 
   /**
@@ -237,6 +232,22 @@ public class OperatoreContattiDAO
     return result;
   }
 
+  /**
+   * Come {@link #findByOperatore}, ma in streaming dal cursore (viste admin con code molto lunghe).
+   * Chiudere lo stream o consumarlo fino in fondo.
+   *
+   * @param operatoreId id dell'operatore
+   * @return stream dei contatti nella coda, ordinati per {@code data_inserimento ASC}
+   */
+  public Stream<OperatoreContattoDTO> streamByOperatore(long operatoreId) throws Exception
+  {
+    String sql;
+
+    sql = "SELECT * FROM jms_cti_operatore_contatti "
+        + "WHERE operatore_id = ? ORDER BY data_inserimento ASC";
+    return db.stream(sql, OperatoreContattoDTO.class, operatoreId);
+  }
+
   /**
    * Restituisce tutti i contatti orfani nella coda personale dell'operatore.
    *
@@ -274,7 +285,7 @@ public class OperatoreContattiDAO
     String sql;
 
     sql = "DELETE FROM jms_cti_operatore_contatti WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 
   /**
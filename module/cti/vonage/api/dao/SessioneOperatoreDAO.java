@@ -2,6 +2,7 @@ package dev.jms.app.module.cti.vonage.dao;
 
 import dev.jms.app.module.cti.vonage.dto.SessioneOperatoreDTO;
 import dev.jms.util.DB;
+import dev.jms.util.Page;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -16,6 +17,11 @@ import java.util.List;
  */
 public class SessioneOperatoreDAO
 {
+  /** Ordinamento: data di creazione decrescente, id. Coperto da {@code jms_cti_idx_sessione_operatore_keyset}. */
+  private static final Page.Key KEY = Page.Key.desc()
+    .column("s.data_creazione", "timestamp")
+    .column("s.id", "bigint");
+
   private final DB db;
 
   /**
@@ -37,12 +43,10 @@ public class SessioneOperatoreDAO
   public long openSession(long operatoreId, long creatoDA) throws Exception
   {
     String sql;
-    List<HashMap<String, Object>> rows;
 
     sql = "INSERT INTO jms_cti_sessione_operatore (operatore_id, creato_da) "
-        + "VALUES (?, ?) RETURNING id";
-    rows = db.select(sql, operatoreId, creatoDA);
-    return DB.toLong(rows.get(0).get("id"));
+        + "VALUES (?, ?)";
+    return db.insert(sql, operatoreId, creatoDA);
   }
 
   /**
@@ -83,7 +87,7 @@ public class SessioneOperatoreDAO
         + "ultima_connessione = NOW(), "
         + "stato = 1, modificato_da = ?, data_modifica = NOW() "
         + "WHERE id = ?";
-    db.query(sql, modificatoDA, id);
+    db.execute(sql, modificatoDA, id);
   }
 
   /**
@@ -103,7 +107,7 @@ public class SessioneOperatoreDAO
         + "durata_pause = durata_pause + ?, "
         + "stato = 2, modificato_da = ?, data_modifica = NOW() "
         + "WHERE id = ?";
-    db.query(sql, durataPausa, modificatoDA, id);
+    db.execute(sql, durataPausa, modificatoDA, id);
   }
 
   /**
@@ -118,7 +122,7 @@ public class SessioneOperatoreDAO
     sql = "UPDATE jms_cti_sessione_operatore SET stato = 3, data_modifica = NOW() "
         + "WHERE operatore_id = ? AND stato = 1 "
         + "ORDER BY data_creazione DESC LIMIT 1";
-    db.query(sql, operatoreId);
+    db.execute(sql, operatoreId);
   }
 
   /**
@@ -138,42 +142,37 @@ public class SessioneOperatoreDAO
         + "data_modifica = NOW() "
         + "WHERE operatore_id = ? AND stato = 3 "
         + "ORDER BY data_creazione DESC LIMIT 1";
-    db.query(sql, durataChiamata, operatoreId);
+    db.execute(sql, durataChiamata, operatoreId);
   }
 
   /**
    * Lista paginata delle sessioni, ordinate per data di creazione decrescente.
    *
-   * @param page numero di pagina (da 1)
-   * @param size elementi per pagina
+   * @param page pagina o cursore richiesto
    * @return lista di DTO
    */
-  public List<SessioneOperatoreDTO> findAll(int page, int size) throws Exception
+  public List<SessioneOperatoreDTO> findAll(Page page) throws Exception
   {
     String sql;
     List<HashMap<String, Object>> rows;
     List<SessioneOperatoreDTO> result;
 
-    sql = "SELECT * FROM jms_cti_sessione_operatore ORDER BY data_creazione DESC LIMIT ? OFFSET ?";
-    rows = db.select(sql, size, (page - 1) * size);
+    sql = "SELECT s.* FROM jms_cti_sessione_operatore s WHERE " + page.seek(KEY)
+        + " ORDER BY " + page.orderBy(KEY) + " LIMIT ? OFFSET ?";
+    rows = db.select(sql, page.params());
     result = new ArrayList<>();
     for (HashMap<String, Object> r : rows) {
       result.add(mapRow(r));
     }
-    return result;
+    return page.track(result, s -> new Object[] { s.dataCreazione(), s.id() });
   }
 
   /**
-   * Conta il totale delle sessioni.
+   * Conta il totale delle sessioni (modalità {@code count} della richiesta).
    */
-  public int count() throws Exception
+  public Long count(Page page) throws Exception
   {
-    String sql;
-    List<HashMap<String, Object>> rows;
-
-    sql = "SELECT COUNT(*) AS n FROM jms_cti_sessione_operatore";
-    rows = db.select(sql);
-    return DB.toInteger(rows.get(0).get("n"));
+    return page.count(db, "FROM jms_cti_sessione_operatore");
   }
 
   /**
@@ -16,6 +16,7 @@ import dev.jms.util.DB;
 import dev.jms.util.HttpRequest;
 import dev.jms.util.HttpResponse;
 import dev.jms.util.Log;
+import dev.jms.util.Page;
 import dev.jms.util.Permission;
 import dev.jms.util.Role;
 import dev.jms.util.Session;
@@ -27,6 +28,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Handler per le operazioni CTI: gestione chiamate e sessione SDK operatore.
@@ -489,49 +491,39 @@ public class CallHandler
   /**
    * GET /api/cti/vonage/call/history — lista paginata delle chiamate.
    *
-   * <p>Query params: {@code page} (default 1), {@code size} (default 20).</p>
-   * <p>Risposta: {@code {"total": n, "page": p, "size": s, "items": [...]}}.</p>
+   * <p>Query params: {@code page} (default 1), {@code size} (default 20), {@code after}
+   * (cursore {@code next} della pagina precedente), {@code count} (vedi {@link Page}).</p>
+   * <p>Risposta: {@code {"total": n, "page": p, "size": s, "items": [...], "next": c, "estimated": b}};
+   * {@code items} è scritto in streaming dal cursore, senza caricare la pagina in memoria.</p>
    */
   public void list(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
-    String pageParam;
-    String sizeParam;
-    int page;
-    int size;
-    int total;
-    List<HashMap<String, Object>> items;
-    HashMap<String, Object> out;
+    Page page;
+    Long total;
+    Stream<HashMap<String, Object>> items;
     CallDAO dao;
     boolean isAdmin;
     long accountId;
 
     session.require(Role.USER, Permission.READ);
-    pageParam = req.queryParam("page");
-    sizeParam = req.queryParam("size");
-    page = (pageParam != null && !pageParam.isBlank()) ? Integer.parseInt(pageParam) : 1;
-    size = (sizeParam != null && !sizeParam.isBlank()) ? Integer.parseInt(sizeParam) : 20;
+    page = Page.of(req, 20);
     isAdmin = session.ruoloLevel() >= Role.ADMIN.level();
     dao = new CallDAO(db);
 
     if (isAdmin) {
-      total = dao.count();
-      items = dao.findAllForApi(page, size);
+      total = dao.count(page);
+      items = dao.streamAllForApi(page);
     } else {
       accountId = session.sub();
-      total     = dao.countByAccount(accountId);
-      items     = dao.findByAccountForApi(page, size, accountId);
+      total     = dao.countByAccount(page, accountId);
+      items     = dao.streamByAccountForApi(page, accountId);
     }
 
-    out = new HashMap<>();
-    out.put("total", total);
-    out.put("page", page);
-    out.put("size", size);
-    out.put("items", items);
     res.status(200)
        .contentType("application/json")
        .err(false)
        .log(null)
-       .out(out)
+       .out(page.response(total, items))
        .send();
   }
 
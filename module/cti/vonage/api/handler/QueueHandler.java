@@ -18,6 +18,8 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * Handler per la coda contatti CTI.
@@ -346,20 +348,20 @@ public class QueueHandler
   {
     long operatoreId;
     OperatoreContattiDAO dao;
-    List<dev.jms.app.module.cti.vonage.dto.OperatoreContattoDTO> items;
-    List<HashMap<String, Object>> out;
+    Stream<HashMap<String, Object>> out;
     ObjectMapper mapper;
-    java.time.LocalDateTime now;
+    LocalDateTime now;
+    AtomicInteger count;
 
     session.require(Role.ADMIN, Permission.READ);
     operatoreId = Long.parseLong(req.urlArgs().get("id"));
     dao = new OperatoreContattiDAO(db);
-    items = dao.findByOperatore(operatoreId);
     mapper = new ObjectMapper();
-    now = java.time.LocalDateTime.now();
-    out = new java.util.ArrayList<>();
+    now = LocalDateTime.now();
+    count = new AtomicInteger();
 
-    for (dev.jms.app.module.cti.vonage.dto.OperatoreContattoDTO item : items) {
+    // Righe lette dal cursore e scritte nella risposta una alla volta
+    out = dao.streamByOperatore(operatoreId).map(item -> {
       HashMap<String, Object> entry;
       Object contatto;
 
@@ -374,16 +376,17 @@ public class QueueHandler
         contatto = item.contattoJson();
       }
       entry.put("contatto", contatto);
-      out.add(entry);
-    }
+      count.incrementAndGet();
+      return entry;
+    });
 
-    log.info("[CTI] adminQueueByOperator: operatoreId={}, count={}", operatoreId, out.size());
     res.status(200)
        .contentType("application/json")
        .err(false)
        .log(null)
        .out(out)
        .send();
+    log.info("[CTI] adminQueueByOperator: operatoreId={}, count={}", operatoreId, count.get());
   }
 
   /**
@@ -8,6 +8,7 @@ import dev.jms.util.DB;
 import dev.jms.util.HttpRequest;
 import dev.jms.util.HttpResponse;
 import dev.jms.util.Log;
+import dev.jms.util.Page;
 import dev.jms.util.Permission;
 import dev.jms.util.Role;
 import dev.jms.util.Session;
@@ -28,43 +29,32 @@ public class SessioneOperatoreHandler
   /**
    * GET /api/cti/vonage/admin/sessioni — lista paginata di tutte le sessioni tecniche.
    *
-   * <p>Query params: {@code page} (default 1), {@code size} (default 20).</p>
+   * <p>Query params: {@code page} (default 1), {@code size} (default 20), {@code after},
+   * {@code count} (vedi {@link Page}).</p>
    * <p>Richiede ruolo ADMIN.</p>
    */
   public void list(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
-    int page;
-    int size;
-    int total;
-    String pageParam;
-    String sizeParam;
+    Page page;
+    Long total;
     List<SessioneOperatoreDTO> items;
     List<HashMap<String, Object>> out;
     SessioneOperatoreDAO dao;
-    HashMap<String, Object> envelope;
 
     session.require(Role.ADMIN, Permission.READ);
-    pageParam = req.queryParam("page");
-    sizeParam = req.queryParam("size");
-    page = (pageParam != null && !pageParam.isBlank()) ? Integer.parseInt(pageParam) : 1;
-    size = (sizeParam != null && !sizeParam.isBlank()) ? Integer.parseInt(sizeParam) : 20;
+    page = Page.of(req, 20);
     dao = new SessioneOperatoreDAO(db);
-    total = dao.count();
-    items = dao.findAll(page, size);
+    total = dao.count(page);
+    items = dao.findAll(page);
     out = new ArrayList<>();
     for (SessioneOperatoreDTO s : items) {
       out.add(toMap(s));
     }
-    envelope = new HashMap<>();
-    envelope.put("total", total);
-    envelope.put("page", page);
-    envelope.put("size", size);
-    envelope.put("items", out);
     res.status(200)
        .contentType("application/json")
        .err(false)
        .log(null)
-       .out(envelope)
+       .out(page.response(total, out))
        .send();
   }
 
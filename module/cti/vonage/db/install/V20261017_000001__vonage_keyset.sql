@@ -0,0 +1,15 @@
+-- ============================================================================
+-- PAGINAZIONE KEYSET
+-- Indici allineati agli ordinamenti di Page.Key usati da CallDAO e
+-- SessioneOperatoreDAO: la pagina successiva parte dal cursore con un
+-- index scan, senza scartare le righe delle pagine precedenti (OFFSET).
+-- ============================================================================
+
+CREATE INDEX jms_cti_idx_chiamate_keyset
+    ON jms_cti_chiamate ((COALESCE(data_creazione, '-infinity'::timestamp)) DESC, id DESC);
+
+CREATE INDEX jms_cti_idx_chiamate_keyset_account
+    ON jms_cti_chiamate (chiamante_account_id, (COALESCE(data_creazione, '-infinity'::timestamp)) DESC, id DESC);
+
+CREATE INDEX jms_cti_idx_sessione_operatore_keyset
+    ON jms_cti_sessione_operatore (data_creazione DESC, id DESC);
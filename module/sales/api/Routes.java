@@ -8,6 +8,7 @@ import dev.jms.app.sales.handler.StatsHandler;
 import dev.jms.util.Config;
 import dev.jms.util.HttpMethod;
 import dev.jms.util.Router;
+import dev.jms.util.Workload;
 
 /** Registra le rotte HTTP del modulo sales. */
 public class Routes
@@ -70,5 +71,15 @@ public class Routes
     router.route(HttpMethod.PUT,    "/api/sales/import/{id}/mapping",       importer::mapping);
     router.route(HttpMethod.GET,    "/api/sales/import/{id}/validate",      importer::validate);
     router.route(HttpMethod.POST,   "/api/sales/import/{id}/execute",       importer::execute);
+    // l'import trattiene una connessione per tutta la transazione: pool async, non quello interattivo
+    router.workload("/api/sales/import/{id}/execute", Workload.ASYNC);
+    router.workload("/api/sales/stats", Workload.ASYNC);
+
+    // letture pesanti (liste, ricerche, statistiche) servite dalla replica se configurata
+    router.readOnly("/api/sales/stats");
+    router.readOnly("/api/sales/contatti");
+    router.readOnly("/api/sales/contatti/search");
+    router.readOnly("/api/sales/liste");
+    router.readOnly("/api/sales/liste/{id}/contatti");
   }
 }
@@ -3,6 +3,7 @@ package dev.jms.app.sales.dao;
 import dev.jms.app.sales.dto.CampagnaDTO;
 import dev.jms.app.sales.dto.ListaDTO;
 import dev.jms.util.DB;
+import dev.jms.util.Page;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -13,6 +14,16 @@ import java.util.List;
 /** DAO per la gestione delle campagne e delle loro liste associate. */
 public class CampagnaDAO
 {
+  /** Ordinamento delle campagne: nome, id. */
+  private static final Page.Key KEY = Page.Key.asc()
+    .column("c.nome", "text")
+    .column("c.id", "integer");
+
+  /** Ordinamento delle liste di una campagna: nome (univoco), id. */
+  private static final Page.Key LISTE_KEY = Page.Key.asc()
+    .column("l.nome", "text")
+    .column("l.id", "integer");
+
   private final DB db;
 
   public CampagnaDAO(DB db)
@@ -21,7 +32,7 @@ public class CampagnaDAO
   }
 
   /** Restituisce le campagne non cancellate, paginate. */
-  public List<CampagnaDTO> findAll(int page, int size) throws Exception
+  public List<CampagnaDTO> findAll(Page page) throws Exception
   {
     String sql;
     ArrayList<HashMap<String, Object>> rows;
@@ -30,23 +41,18 @@ public class CampagnaDAO
       "SELECT c.*, COUNT(cl.lista_id) AS liste_count " +
       "FROM jms_sales_campagne c " +
       "LEFT JOIN jms_sales_campagna_liste cl ON cl.campagna_id = c.id " +
-      "WHERE c.deleted_at IS NULL " +
+      "WHERE c.deleted_at IS NULL AND " + page.seek(KEY) + " " +
       "GROUP BY c.id " +
-      "ORDER BY c.nome " +
+      "ORDER BY " + page.orderBy(KEY) + " " +
       "LIMIT ? OFFSET ?";
-    rows = db.select(sql, size, (page - 1) * size);
-    return rows.stream().map(this::toDTO).toList();
+    rows = db.select(sql, page.params());
+    return page.track(rows.stream().map(this::toDTO).toList(), c -> new Object[] { c.nome(), c.id() });
   }
 
   /** Conta le campagne non cancellate per la paginazione. */
-  public int count() throws Exception
+  public Long count(Page page) throws Exception
   {
-    String sql;
-    ArrayList<HashMap<String, Object>> rows;
-
-    sql = "SELECT COUNT(*) AS n FROM jms_sales_campagne WHERE deleted_at IS NULL";
-    rows = db.select(sql);
-    return DB.toInteger(rows.get(0).get("n"));
+    return page.count(db, "FROM jms_sales_campagne WHERE deleted_at IS NULL");
   }
 
   /** Cerca per id. Restituisce null se non trovata o soft-deleted. */
@@ -69,14 +75,11 @@ public class CampagnaDAO
   public int insert(CampagnaDTO c) throws Exception
   {
     String sql;
-    ArrayList<HashMap<String, Object>> rows;
 
     sql =
       "INSERT INTO jms_sales_campagne (nome, descrizione, stato) " +
-      "VALUES (?, ?, ?) " +
-      "RETURNING id";
-    rows = db.select(sql, c.nome(), c.descrizione(), c.stato());
-    return DB.toInteger(rows.get(0).get("id"));
+      "VALUES (?, ?, ?)";
+    return (int) db.insert(sql, c.nome(), c.descrizione(), c.stato());
   }
 
   /** Aggiorna tutti i campi modificabili della campagna. */
@@ -85,7 +88,7 @@ public class CampagnaDAO
     String sql;
 
     sql = "UPDATE jms_sales_campagne SET nome = ?, descrizione = ?, stato = ?, updated_at = NOW() WHERE id = ?";
-    db.query(sql, c.nome(), c.descrizione(), c.stato(), c.id());
+    db.execute(sql, c.nome(), c.descrizione(), c.stato(), c.id());
   }
 
   /** Soft delete: imposta deleted_at. */
@@ -94,7 +97,7 @@ public class CampagnaDAO
     String sql;
 
     sql = "UPDATE jms_sales_campagne SET deleted_at = NOW() WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 
   /** Verifica se esiste già una campagna con il nome, escludendo opzionalmente un id. */
@@ -118,7 +121,7 @@ public class CampagnaDAO
   // -------------------------
 
   /** Restituisce le liste associate alla campagna, paginate. */
-  public List<ListaDTO> findListe(int campagnaId, int page, int size) throws Exception
+  public List<ListaDTO> findListe(int campagnaId, Page page) throws Exception
   {
     String sql;
     ArrayList<HashMap<String, Object>> rows;
@@ -128,27 +131,22 @@ public class CampagnaDAO
       "FROM jms_sales_campagna_liste cl " +
       "JOIN jms_sales_liste l ON l.id = cl.lista_id " +
       "LEFT JOIN jms_sales_lista_contatti lc ON lc.lista_id = l.id " +
-      "WHERE cl.campagna_id = ? AND l.deleted_at IS NULL " +
+      "WHERE cl.campagna_id = ? AND l.deleted_at IS NULL AND " + page.seek(LISTE_KEY) + " " +
       "GROUP BY l.id " +
-      "ORDER BY l.nome " +
+      "ORDER BY " + page.orderBy(LISTE_KEY) + " " +
       "LIMIT ? OFFSET ?";
-    rows = db.select(sql, campagnaId, size, (page - 1) * size);
-    return rows.stream().map(this::toListaDTO).toList();
+    rows = db.select(sql, page.params(campagnaId));
+    return page.track(rows.stream().map(this::toListaDTO).toList(), l -> new Object[] { l.nome(), l.id() });
   }
 
   /** Conta le liste associate alla campagna per la paginazione. */
-  public int countListe(int campagnaId) throws Exception
+  public Long countListe(int campagnaId, Page page) throws Exception
   {
-    String sql;
-    ArrayList<HashMap<String, Object>> rows;
-
-    sql =
-      "SELECT COUNT(*) AS n " +
+    return page.count(db,
       "FROM jms_sales_campagna_liste cl " +
       "JOIN jms_sales_liste l ON l.id = cl.lista_id " +
-      "WHERE cl.campagna_id = ? AND l.deleted_at IS NULL";
-    rows = db.select(sql, campagnaId);
-    return DB.toInteger(rows.get(0).get("n"));
+      "WHERE cl.campagna_id = ? AND l.deleted_at IS NULL",
+      campagnaId);
   }
 
   /** Aggiunge una lista alla campagna. Ignora se già presente (ON CONFLICT DO NOTHING). */
@@ -157,7 +155,7 @@ public class CampagnaDAO
     String sql;
 
     sql = "INSERT INTO jms_sales_campagna_liste (campagna_id, lista_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
-    db.query(sql, campagnaId, listaId);
+    db.execute(sql, campagnaId, listaId);
   }
 
   /** Rimuove una lista dalla campagna. */
@@ -166,7 +164,7 @@ public class CampagnaDAO
     String sql;
 
     sql = "DELETE FROM jms_sales_campagna_liste WHERE campagna_id = ? AND lista_id = ?";
-    db.query(sql, campagnaId, listaId);
+    db.execute(sql, campagnaId, listaId);
   }
 
   // -------------------------
@@ -2,15 +2,29 @@ package dev.jms.app.sales.dao;
 
 import dev.jms.app.sales.dto.ContattoDTO;
 import dev.jms.util.DB;
+import dev.jms.util.Page;
 
-import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Stream;
 
 /** DAO per la gestione dei contatti. */
 public class ContattoDAO
 {
+  /** Ordinamento delle liste: cognome, nome (NULL come stringa vuota), id. */
+  private static final Page.Key KEY = Page.Key.asc()
+    .column("COALESCE(c.cognome, '')", "text")
+    .column("COALESCE(c.nome, '')", "text")
+    .column("c.id", "integer");
+
+  /** Colonne del DTO per liste, dettaglio e ricerca (senza le colonne generate per gli indici). */
+  private static final String SEARCH_COLUMNS =
+    "c.id, c.nome, c.cognome, c.ragione_sociale, c.telefono, c.email, c.indirizzo, c.citta, c.cap, " +
+    "c.provincia, c.note, c.stato, c.consenso, c.blacklist, c.created_at, c.updated_at";
+
   private final DB db;
 
   public ContattoDAO(DB db)
@@ -18,121 +32,212 @@ public class ContattoDAO
     this.db = db;
   }
 
-  /** Restituisce la lista paginata. Se listaId è specificato, filtra per quella lista. */
-  public List<ContattoDTO> findAll(int page, int size, Integer listaId) throws Exception
+  /**
+   * Restituisce la pagina in streaming dal cursore. Se listaId è specificato, filtra per quella lista.
+   * Chiudere lo stream o passarlo a {@code HttpResponse.out()}.
+   */
+  public Stream<ContattoDTO> streamAll(Page page, Integer listaId) throws Exception
   {
     String sql;
-    ArrayList<HashMap<String, Object>> rows;
+    Stream<ContattoDTO> result;
 
     if (listaId != null) {
       sql =
-        "SELECT c.*, COUNT(lc.lista_id) AS liste_count " +
+        "SELECT " + SEARCH_COLUMNS + ", COUNT(lc.lista_id) AS liste_count " +
         "FROM jms_sales_contatti c " +
         "LEFT JOIN jms_sales_lista_contatti lc ON lc.contatto_id = c.id " +
         "WHERE c.id IN (SELECT contatto_id FROM jms_sales_lista_contatti WHERE lista_id = ?) " +
+        "AND " + page.seek(KEY) + " " +
         "GROUP BY c.id " +
-        "ORDER BY c.cognome, c.nome " +
+        "ORDER BY " + page.orderBy(KEY) + " " +
         "LIMIT ? OFFSET ?";
-      rows = db.select(sql, listaId, size, (page - 1) * size);
+      result = db.stream(sql, ContattoDTO.class, page.params(listaId));
     } else {
       sql =
-        "SELECT c.*, COUNT(lc.lista_id) AS liste_count " +
+        "SELECT " + SEARCH_COLUMNS + ", COUNT(lc.lista_id) AS liste_count " +
         "FROM jms_sales_contatti c " +
         "LEFT JOIN jms_sales_lista_contatti lc ON lc.contatto_id = c.id " +
+        "WHERE " + page.seek(KEY) + " " +
         "GROUP BY c.id " +
-        "ORDER BY c.cognome, c.nome " +
+        "ORDER BY " + page.orderBy(KEY) + " " +
         "LIMIT ? OFFSET ?";
-      rows = db.select(sql, size, (page - 1) * size);
+      result = db.stream(sql, ContattoDTO.class, page.params());
     }
-    return rows.stream().map(this::toDTO).toList();
+    return page.track(result, ContattoDAO::key);
   }
 
-  /** Conta il totale per la paginazione. */
-  public int count(Integer listaId) throws Exception
+  /** Conta il totale per la paginazione (modalità {@code count} della richiesta). */
+  public Long count(Page page, Integer listaId) throws Exception
   {
-    String sql;
-    ArrayList<HashMap<String, Object>> rows;
+    Long result;
 
     if (listaId != null) {
-      sql = "SELECT COUNT(*) AS n FROM jms_sales_contatti WHERE id IN (SELECT contatto_id FROM jms_sales_lista_contatti WHERE lista_id = ?)";
-      rows = db.select(sql, listaId);
+      result = page.count(db, "FROM jms_sales_contatti WHERE id IN (SELECT contatto_id FROM jms_sales_lista_contatti WHERE lista_id = ?)", listaId);
     } else {
-      sql = "SELECT COUNT(*) AS n FROM jms_sales_contatti";
-      rows = db.select(sql);
+      result = page.count(db, "FROM jms_sales_contatti");
     }
-    return DB.toInteger(rows.get(0).get("n"));
+    return result;
+  }
+
+  /** Valori di {@link #KEY} per il cursore della pagina successiva. */
+  private static Object[] key(ContattoDTO c)
+  {
+    return new Object[] { c.cognome() != null ? c.cognome() : "", c.nome() != null ? c.nome() : "", c.id() };
   }
 
   /** Cerca per id. Restituisce null se non trovato. */
   public ContattoDTO findById(int id) throws Exception
   {
     String sql;
-    ArrayList<HashMap<String, Object>> rows;
+    List<ContattoDTO> rows;
 
     sql =
-      "SELECT c.*, COUNT(lc.lista_id) AS liste_count " +
+      "SELECT " + SEARCH_COLUMNS + ", COUNT(lc.lista_id) AS liste_count " +
       "FROM jms_sales_contatti c " +
       "LEFT JOIN jms_sales_lista_contatti lc ON lc.contatto_id = c.id " +
       "WHERE c.id = ? " +
       "GROUP BY c.id";
-    rows = db.select(sql, id);
-    return rows.isEmpty() ? null : toDTO(rows.get(0));
+    rows = db.select(sql, ContattoDTO.class, id);
+    return rows.isEmpty() ? null : rows.get(0);
   }
 
-  /** Ricerca full-text paginata su nome, cognome, ragione sociale, telefono, email. */
-  public List<ContattoDTO> search(String query, int page, int size) throws Exception
+  /**
+   * Ricerca testuale ordinata per rilevanza su nome, cognome, ragione sociale ed email
+   * (vedi {@code ContattoSearchHelper}). Paginazione per numero di pagina.
+   *
+   * @param like    pattern di sottostringa su {@code search_text}, o {@code null}
+   * @param tsQuery prefissi delle parole su {@code search_tsv}, o {@code null}
+   * @param text    testo normalizzato, per la similarità
+   * @param page    pagina richiesta
+   * @return fino a {@code size + 1} contatti (vedi {@link Page#limit})
+   */
+  public List<ContattoDTO> search(String like, String tsQuery, String text, Page page) throws Exception
   {
-    String sql;
-    String pattern;
-    ArrayList<HashMap<String, Object>> rows;
+    ArrayList<Object> params;
+    String score;
+    String where;
 
-    pattern = "%" + query.toLowerCase() + "%";
-    sql =
-      "SELECT c.*, COUNT(lc.lista_id) AS liste_count " +
-      "FROM jms_sales_contatti c " +
-      "LEFT JOIN jms_sales_lista_contatti lc ON lc.contatto_id = c.id " +
-      "WHERE LOWER(c.nome) LIKE ? OR LOWER(c.cognome) LIKE ? " +
-      "   OR LOWER(c.ragione_sociale) LIKE ? OR LOWER(c.telefono) LIKE ? OR LOWER(c.email) LIKE ? " +
-      "GROUP BY c.id " +
-      "ORDER BY c.cognome, c.nome " +
-      "LIMIT ? OFFSET ?";
-    rows = db.select(sql, pattern, pattern, pattern, pattern, pattern, size, (page - 1) * size);
-    return rows.stream().map(this::toDTO).toList();
+    params = new ArrayList<>();
+    params.add(text);
+    score = "word_similarity(?, c.search_text)";
+    if (tsQuery != null) {
+      params.add(tsQuery);
+      score += " + ts_rank(c.search_tsv, to_tsquery('simple', ?))";
+    }
+    where = textMatch(like, tsQuery, params);
+    return ranked(score, where, params, page);
   }
 
-  /** Conta il totale per la paginazione della ricerca. */
-  public int countSearch(String query) throws Exception
+  /** Totale della ricerca testuale, contato al più fino a {@code cap}. */
+  public Long countSearch(String like, String tsQuery, Page page, int cap) throws Exception
+  {
+    ArrayList<Object> params;
+    String where;
+
+    params = new ArrayList<>();
+    where = textMatch(like, tsQuery, params);
+    return page.countUpTo(db, "FROM jms_sales_contatti c WHERE " + where, cap, params.toArray());
+  }
+
+  /**
+   * Ricerca per numero di telefono (cifre normalizzate) ordinata per similarità.
+   *
+   * @param digits cifre del numero, senza prefisso internazionale
+   * @param page   pagina richiesta
+   * @return fino a {@code size + 1} contatti (vedi {@link Page#limit})
+   */
+  public List<ContattoDTO> searchPhone(String digits, Page page) throws Exception
+  {
+    ArrayList<Object> params;
+
+    params = new ArrayList<>();
+    params.add(digits);
+    params.add("%" + digits + "%");
+    return ranked("similarity(c.telefono_norm, ?)", "c.telefono_norm LIKE ?", params, page);
+  }
+
+  /** Totale della ricerca per telefono, contato al più fino a {@code cap}. */
+  public Long countSearchPhone(String digits, Page page, int cap) throws Exception
+  {
+    return page.countUpTo(db, "FROM jms_sales_contatti c WHERE c.telefono_norm LIKE ?", cap, "%" + digits + "%");
+  }
+
+  /**
+   * Pagina ordinata per punteggio: filtro, ordinamento e LIMIT sulla sola tabella contatti,
+   * conteggio delle liste solo per le righe della pagina.
+   */
+  private List<ContattoDTO> ranked(String score, String where, List<Object> params, Page page) throws Exception
   {
     String sql;
-    String pattern;
-    ArrayList<HashMap<String, Object>> rows;
 
-    pattern = "%" + query.toLowerCase() + "%";
     sql =
-      "SELECT COUNT(DISTINCT c.id) AS n FROM jms_sales_contatti c " +
-      "WHERE LOWER(c.nome) LIKE ? OR LOWER(c.cognome) LIKE ? " +
-      "   OR LOWER(c.ragione_sociale) LIKE ? OR LOWER(c.telefono) LIKE ? OR LOWER(c.email) LIKE ?";
-    rows = db.select(sql, pattern, pattern, pattern, pattern, pattern);
-    return DB.toInteger(rows.get(0).get("n"));
+      "SELECT s.*, (SELECT COUNT(*) FROM jms_sales_lista_contatti lc WHERE lc.contatto_id = s.id) AS liste_count " +
+      "FROM (" +
+      "  SELECT " + SEARCH_COLUMNS + ", " + score + " AS score " +
+      "  FROM jms_sales_contatti c " +
+      "  WHERE " + where + " " +
+      "  ORDER BY score DESC, c.id " +
+      "  LIMIT ? OFFSET ?" +
+      ") s " +
+      "ORDER BY s.score DESC, s.id";
+    return db.select(sql, ContattoDTO.class, page.params(params.toArray()));
+  }
+
+  /** Condizione testuale (prefissi OR sottostringa); aggiunge i parametri in coda. */
+  private static String textMatch(String like, String tsQuery, List<Object> params)
+  {
+    ArrayList<String> parts;
+
+    parts = new ArrayList<>();
+    if (tsQuery != null) {
+      parts.add("c.search_tsv @@ to_tsquery('simple', ?)");
+      params.add(tsQuery);
+    }
+    if (like != null) {
+      parts.add("c.search_text LIKE ?");
+      params.add(like);
+    }
+    return parts.isEmpty() ? "FALSE" : "(" + String.join(" OR ", parts) + ")";
   }
 
   /** Inserisce un nuovo contatto. Restituisce l'id generato. */
   public int insert(ContattoDTO c) throws Exception
   {
     String sql;
-    ArrayList<HashMap<String, Object>> rows;
 
     sql =
       "INSERT INTO jms_sales_contatti " +
       "(nome, cognome, ragione_sociale, telefono, email, indirizzo, citta, cap, provincia, note, stato, consenso, blacklist) " +
-      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-      "RETURNING id";
-    rows = db.select(sql,
+      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    return (int) db.insert(sql,
       c.nome(), c.cognome(), c.ragioneSociale(), c.telefono(), c.email(),
       c.indirizzo(), c.citta(), c.cap(), c.provincia(), c.note(),
       c.stato(), c.consenso(), c.blacklist()
     );
-    return DB.toInteger(rows.get(0).get("id"));
+  }
+
+  /**
+   * Inserisce più contatti con {@link DB#batch} (un round-trip per blocco di righe).
+   * Restituisce gli id generati nell'ordine della lista.
+   */
+  public List<Long> insertAll(List<ContattoDTO> contatti) throws Exception
+  {
+    String sql;
+    List<Object[]> rows;
+
+    sql =
+      "INSERT INTO jms_sales_contatti " +
+      "(nome, cognome, ragione_sociale, telefono, email, indirizzo, citta, cap, provincia, note, stato, consenso, blacklist) " +
+      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    rows = new ArrayList<>(contatti.size());
+    for (ContattoDTO c : contatti) {
+      rows.add(new Object[] {
+        c.nome(), c.cognome(), c.ragioneSociale(), c.telefono(), c.email(),
+        c.indirizzo(), c.citta(), c.cap(), c.provincia(), c.note(),
+        c.stato(), c.consenso(), c.blacklist()
+      });
+    }
+    return db.batchReturning(sql, "id", rows);
   }
 
   /** Aggiorna tutti i campi del contatto. Il contatto deve avere id valorizzato. */
@@ -146,7 +251,7 @@ public class ContattoDAO
       "    indirizzo = ?, citta = ?, cap = ?, provincia = ?, note = ?, " +
       "    stato = ?, consenso = ?, blacklist = ?, updated_at = NOW() " +
       "WHERE id = ?";
-    db.query(sql,
+    db.execute(sql,
       c.nome(), c.cognome(), c.ragioneSociale(), c.telefono(), c.email(),
       c.indirizzo(), c.citta(), c.cap(), c.provincia(), c.note(),
       c.stato(), c.consenso(), c.blacklist(), c.id()
@@ -159,7 +264,7 @@ public class ContattoDAO
     String sql;
 
     sql = "DELETE FROM jms_sales_contatti WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 
   /** Aggiorna solo il campo stato. */
@@ -168,7 +273,7 @@ public class ContattoDAO
     String sql;
 
     sql = "UPDATE jms_sales_contatti SET stato = ?, updated_at = NOW() WHERE id = ?";
-    db.query(sql, stato, id);
+    db.execute(sql, stato, id);
   }
 
   /** Aggiorna solo il flag blacklist. */
@@ -177,7 +282,25 @@ public class ContattoDAO
     String sql;
 
     sql = "UPDATE jms_sales_contatti SET blacklist = ?, updated_at = NOW() WHERE id = ?";
-    db.query(sql, blacklist, id);
+    db.execute(sql, blacklist, id);
+  }
+
+  /** Restituisce i numeri di telefono, tra quelli indicati, già presenti in anagrafica (una sola query). */
+  public HashSet<String> existingTelefoni(Collection<String> telefoni) throws Exception
+  {
+    String sql;
+    ArrayList<HashMap<String, Object>> rows;
+    HashSet<String> result;
+
+    result = new HashSet<>();
+    if (!telefoni.isEmpty()) {
+      sql = "SELECT DISTINCT telefono FROM jms_sales_contatti WHERE telefono = ANY(?)";
+      rows = db.select(sql, (Object) telefoni.toArray(new String[0]));
+      for (HashMap<String, Object> row : rows) {
+        result.add(DB.toString(row.get("telefono")));
+      }
+    }
+    return result;
   }
 
   /** Verifica se esiste già un contatto con il numero di telefono, escludendo opzionalmente un id. */
@@ -195,37 +318,4 @@ public class ContattoDAO
     }
     return DB.toInteger(rows.get(0).get("n")) > 0;
   }
-
-  // -------------------------
-  // mapping privato
-  // -------------------------
-
-  private ContattoDTO toDTO(HashMap<String, Object> row)
-  {
-    LocalDateTime createdAt;
-    LocalDateTime updatedAt;
-
-    createdAt = DB.toLocalDateTime(row.get("created_at"));
-    updatedAt = DB.toLocalDateTime(row.get("updated_at"));
-
-    return new ContattoDTO(
-      DB.toInteger(row.get("id")),
-      DB.toString(row.get("nome")),
-      DB.toString(row.get("cognome")),
-      DB.toString(row.get("ragione_sociale")),
-      DB.toString(row.get("telefono")),
-      DB.toString(row.get("email")),
-      DB.toString(row.get("indirizzo")),
-      DB.toString(row.get("citta")),
-      DB.toString(row.get("cap")),
-      DB.toString(row.get("provincia")),
-      DB.toString(row.get("note")),
-      DB.toInteger(row.get("stato")),
-      DB.toBoolean(row.get("consenso")),
-      DB.toBoolean(row.get("blacklist")),
-      createdAt != null ? createdAt.toString() : null,
-      updatedAt != null ? updatedAt.toString() : null,
-      DB.toLong(row.get("liste_count"))
-    );
-  }
 }
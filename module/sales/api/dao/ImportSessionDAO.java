@@ -38,7 +38,7 @@ public class ImportSessionDAO
     sql =
       "INSERT INTO jms_sales_import_sessions (id, filename, file_path, row_count, headers, preview, status) " +
       "VALUES (?, ?, ?, ?, ?, ?, 'uploaded')";
-    db.query(sql, id, filename, filePath, rowCount, headers, preview);
+    db.execute(sql, id, filename, filePath, rowCount, headers, preview);
   }
 
   /** Aggiorna la mappatura colonne e imposta lo stato a 'mapped'. */
@@ -47,7 +47,7 @@ public class ImportSessionDAO
     String sql;
 
     sql = "UPDATE jms_sales_import_sessions SET column_mapping = ?, status = 'mapped', updated_at = NOW() WHERE id = ?";
-    db.query(sql, columnMapping, id);
+    db.execute(sql, columnMapping, id);
   }
 
   /** Aggiorna lo stato e il messaggio di errore della sessione. */
@@ -56,7 +56,7 @@ public class ImportSessionDAO
     String sql;
 
     sql = "UPDATE jms_sales_import_sessions SET status = ?, error_message = ?, updated_at = NOW() WHERE id = ?";
-    db.query(sql, status, errorMessage, id);
+    db.execute(sql, status, errorMessage, id);
   }
 
   /** Imposta la sessione come completata. */
@@ -65,7 +65,7 @@ public class ImportSessionDAO
     String sql;
 
     sql = "UPDATE jms_sales_import_sessions SET status = 'completed', completed_at = NOW(), updated_at = NOW() WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 
   private ImportSessionDTO toDTO(HashMap<String, Object> row)
@@ -3,6 +3,7 @@ package dev.jms.app.sales.dao;
 import dev.jms.app.sales.dto.ListaContattoDTO;
 import dev.jms.app.sales.dto.ListaDTO;
 import dev.jms.util.DB;
+import dev.jms.util.Page;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -13,6 +14,17 @@ import java.util.List;
 /** DAO per la gestione delle liste di contatti. */
 public class ListaDAO
 {
+  /** Ordinamento delle liste: nome (univoco), id. */
+  private static final Page.Key KEY = Page.Key.asc()
+    .column("l.nome", "text")
+    .column("l.id", "integer");
+
+  /** Ordinamento dei contatti di una lista: cognome, nome (NULL come stringa vuota), id dell'associazione. */
+  private static final Page.Key CONTATTI_KEY = Page.Key.asc()
+    .column("COALESCE(c.cognome, '')", "text")
+    .column("COALESCE(c.nome, '')", "text")
+    .column("lc.id", "integer");
+
   private final DB db;
 
   public ListaDAO(DB db)
@@ -21,7 +33,7 @@ public class ListaDAO
   }
 
   /** Restituisce le liste attive (non cancellate) paginate. */
-  public List<ListaDTO> findAll(int page, int size) throws Exception
+  public List<ListaDTO> findAll(Page page) throws Exception
   {
     String sql;
     ArrayList<HashMap<String, Object>> rows;
@@ -30,23 +42,18 @@ public class ListaDAO
       "SELECT l.*, COUNT(lc.contatto_id) AS contatti_count " +
       "FROM jms_sales_liste l " +
       "LEFT JOIN jms_sales_lista_contatti lc ON lc.lista_id = l.id " +
-      "WHERE l.deleted_at IS NULL " +
+      "WHERE l.deleted_at IS NULL AND " + page.seek(KEY) + " " +
       "GROUP BY l.id " +
-      "ORDER BY l.nome " +
+      "ORDER BY " + page.orderBy(KEY) + " " +
       "LIMIT ? OFFSET ?";
-    rows = db.select(sql, size, (page - 1) * size);
-    return rows.stream().map(this::toDTO).toList();
+    rows = db.select(sql, page.params());
+    return page.track(rows.stream().map(this::toDTO).toList(), l -> new Object[] { l.nome(), l.id() });
   }
 
   /** Conta le liste non cancellate per la paginazione. */
-  public int count() throws Exception
+  public Long count(Page page) throws Exception
   {
-    String sql;
-    ArrayList<HashMap<String, Object>> rows;
-
-    sql = "SELECT COUNT(*) AS n FROM jms_sales_liste WHERE deleted_at IS NULL";
-    rows = db.select(sql);
-    return DB.toInteger(rows.get(0).get("n"));
+    return page.count(db, "FROM jms_sales_liste WHERE deleted_at IS NULL");
   }
 
   /** Cerca per id. Restituisce null se non trovata o soft-deleted. */
@@ -70,15 +77,12 @@ public class ListaDAO
   {
     String sql;
     Object scadenza;
-    ArrayList<HashMap<String, Object>> rows;
 
     scadenza = l.scadenza() != null && !l.scadenza().isBlank() ? java.sql.Date.valueOf(l.scadenza()) : null;
     sql =
       "INSERT INTO jms_sales_liste (nome, descrizione, consenso, stato, scadenza) " +
-      "VALUES (?, ?, ?, ?, ?) " +
-      "RETURNING id";
-    rows = db.select(sql, l.nome(), l.descrizione(), l.consenso(), l.stato(), scadenza);
-    return DB.toInteger(rows.get(0).get("id"));
+      "VALUES (?, ?, ?, ?, ?)";
+    return (int) db.insert(sql, l.nome(), l.descrizione(), l.consenso(), l.stato(), scadenza);
   }
 
   /** Aggiorna tutti i campi della lista. */
@@ -89,7 +93,7 @@ public class ListaDAO
 
     scadenza = l.scadenza() != null && !l.scadenza().isBlank() ? java.sql.Date.valueOf(l.scadenza()) : null;
     sql = "UPDATE jms_sales_liste SET nome = ?, descrizione = ?, consenso = ?, stato = ?, scadenza = ?, updated_at = NOW() WHERE id = ?";
-    db.query(sql, l.nome(), l.descrizione(), l.consenso(), l.stato(), scadenza, l.id());
+    db.execute(sql, l.nome(), l.descrizione(), l.consenso(), l.stato(), scadenza, l.id());
   }
 
   /** Restituisce la lista marcata come default, o null se non configurata. */
@@ -119,9 +123,9 @@ public class ListaDAO
     db.begin();
     try {
       sql = "UPDATE jms_sales_liste SET is_default = FALSE WHERE is_default = TRUE";
-      db.query(sql);
+      db.execute(sql);
       sql = "UPDATE jms_sales_liste SET is_default = TRUE, updated_at = NOW() WHERE id = ? AND deleted_at IS NULL";
-      db.query(sql, id);
+      db.execute(sql, id);
       db.commit();
     } catch (Exception e) {
       db.rollback();
@@ -135,7 +139,7 @@ public class ListaDAO
     String sql;
 
     sql = "UPDATE jms_sales_liste SET deleted_at = NOW() WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 
   /** Aggiorna solo il campo stato. */
@@ -144,7 +148,7 @@ public class ListaDAO
     String sql;
 
     sql = "UPDATE jms_sales_liste SET stato = ?, updated_at = NOW() WHERE id = ?";
-    db.query(sql, stato, id);
+    db.execute(sql, stato, id);
   }
 
   /** Aggiorna solo la scadenza. */
@@ -155,7 +159,7 @@ public class ListaDAO
 
     scadenzaVal = scadenza != null && !scadenza.isBlank() ? java.sql.Date.valueOf(scadenza) : null;
     sql = "UPDATE jms_sales_liste SET scadenza = ?, updated_at = NOW() WHERE id = ?";
-    db.query(sql, scadenzaVal, id);
+    db.execute(sql, scadenzaVal, id);
   }
 
   /** Verifica se esiste già una lista con il nome, escludendo opzionalmente un id. */
@@ -179,7 +183,7 @@ public class ListaDAO
   // -------------------------
 
   /** Restituisce i contatti di una lista, paginati. */
-  public List<ListaContattoDTO> findContatti(int listaId, int page, int size) throws Exception
+  public List<ListaContattoDTO> findContatti(int listaId, Page page) throws Exception
   {
     String sql;
     ArrayList<HashMap<String, Object>> rows;
@@ -189,22 +193,19 @@ public class ListaDAO
       "       c.nome, c.cognome, c.telefono " +
       "FROM jms_sales_lista_contatti lc " +
       "JOIN jms_sales_contatti c ON c.id = lc.contatto_id " +
-      "WHERE lc.lista_id = ? " +
-      "ORDER BY c.cognome, c.nome " +
+      "WHERE lc.lista_id = ? AND " + page.seek(CONTATTI_KEY) + " " +
+      "ORDER BY " + page.orderBy(CONTATTI_KEY) + " " +
       "LIMIT ? OFFSET ?";
-    rows = db.select(sql, listaId, size, (page - 1) * size);
-    return rows.stream().map(this::toContattoDTO).toList();
+    rows = db.select(sql, page.params(listaId));
+    return page.track(rows.stream().map(this::toContattoDTO).toList(), c -> new Object[] {
+      c.cognome() != null ? c.cognome() : "", c.nome() != null ? c.nome() : "", c.id()
+    });
   }
 
   /** Conta i contatti di una lista per la paginazione. */
-  public int countContatti(int listaId) throws Exception
+  public Long countContatti(int listaId, Page page) throws Exception
   {
-    String sql;
-    ArrayList<HashMap<String, Object>> rows;
-
-    sql = "SELECT COUNT(*) AS n FROM jms_sales_lista_contatti WHERE lista_id = ?";
-    rows = db.select(sql, listaId);
-    return DB.toInteger(rows.get(0).get("n"));
+    return page.count(db, "FROM jms_sales_lista_contatti WHERE lista_id = ?", listaId);
   }
 
   /** Aggiunge un contatto alla lista. Ignora se già presente (ON CONFLICT DO NOTHING). */
@@ -213,7 +214,21 @@ public class ListaDAO
     String sql;
 
     sql = "INSERT INTO jms_sales_lista_contatti (lista_id, contatto_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
-    db.query(sql, listaId, contattoId);
+    db.execute(sql, listaId, contattoId);
+  }
+
+  /** Aggiunge più contatti alla lista con {@link DB#batch}. Ignora quelli già presenti. */
+  public void addContatti(int listaId, List<Long> contattoIds) throws Exception
+  {
+    String sql;
+    List<Object[]> rows;
+
+    sql = "INSERT INTO jms_sales_lista_contatti (lista_id, contatto_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
+    rows = new ArrayList<>(contattoIds.size());
+    for (Long contattoId : contattoIds) {
+      rows.add(new Object[] { listaId, contattoId });
+    }
+    db.batch(sql, rows);
   }
 
   /** Rimuove un contatto dalla lista. */
@@ -222,7 +237,7 @@ public class ListaDAO
     String sql;
 
     sql = "DELETE FROM jms_sales_lista_contatti WHERE lista_id = ? AND contatto_id = ?";
-    db.query(sql, listaId, contattoId);
+    db.execute(sql, listaId, contattoId);
   }
 
   // -------------------------
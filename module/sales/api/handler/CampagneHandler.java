@@ -9,6 +9,7 @@ import dev.jms.util.HttpRequest;
 import dev.jms.util.HttpResponse;
 import dev.jms.util.Json;
 import dev.jms.util.Log;
+import dev.jms.util.Page;
 import dev.jms.util.Permission;
 import dev.jms.util.Role;
 import dev.jms.util.Session;
@@ -26,37 +27,25 @@ public class CampagneHandler
   private static final Log log = Log.get(CampagneHandler.class);
 
   /**
-   * GET /api/sales/campagne — lista paginata delle campagne.
+   * GET /api/sales/campagne — lista paginata delle campagne ({@code page} o cursore {@code after}, vedi {@link Page}).
    */
   public void list(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
-    String pageStr;
-    String sizeStr;
-    int page;
-    int size;
+    Page page;
     CampagnaDAO dao;
     List<CampagnaDTO> items;
-    int total;
-    HashMap<String, Object> out;
+    Long total;
 
     session.require(Role.ADMIN, Permission.READ);
-    pageStr = req.getQueryParam("page");
-    sizeStr = req.getQueryParam("size");
-    page    = pageStr != null ? Integer.parseInt(pageStr) : 1;
-    size    = sizeStr != null ? Integer.parseInt(sizeStr) : 20;
+    page    = Page.of(req, 20);
     dao     = new CampagnaDAO(db);
-    items   = dao.findAll(page, size);
-    total   = dao.count();
-    out     = new HashMap<>();
-    out.put("total", total);
-    out.put("page",  page);
-    out.put("size",  size);
-    out.put("items", items);
+    items   = dao.findAll(page);
+    total   = dao.count(page);
     res.status(200)
        .contentType("application/json")
        .err(false)
        .log(null)
-       .out(out)
+       .out(page.response(total, items))
        .send();
   }
 
@@ -220,20 +209,16 @@ public class CampagneHandler
   }
 
   /**
-   * GET /api/sales/campagne/{id}/liste — liste associate alla campagna, paginate.
+   * GET /api/sales/campagne/{id}/liste — liste associate alla campagna, paginate ({@code page} o {@code after}).
    */
   public void listListe(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
     int id;
-    String pageStr;
-    String sizeStr;
-    int page;
-    int size;
+    Page page;
     CampagnaDAO dao;
     CampagnaDTO campagna;
     List<ListaDTO> items;
-    int total;
-    HashMap<String, Object> out;
+    Long total;
 
     session.require(Role.ADMIN, Permission.READ);
     id      = Integer.parseInt(req.urlArgs().get("id"));
@@ -247,22 +232,14 @@ public class CampagneHandler
          .out(null)
          .send();
     } else {
-      pageStr = req.getQueryParam("page");
-      sizeStr = req.getQueryParam("size");
-      page    = pageStr != null ? Integer.parseInt(pageStr) : 1;
-      size    = sizeStr != null ? Integer.parseInt(sizeStr) : 20;
-      items   = dao.findListe(id, page, size);
-      total   = dao.countListe(id);
-      out     = new HashMap<>();
-      out.put("total", total);
-      out.put("page",  page);
-      out.put("size",  size);
-      out.put("items", items);
+      page    = Page.of(req, 20);
+      items   = dao.findListe(id, page);
+      total   = dao.countListe(id, page);
       res.status(200)
          .contentType("application/json")
          .err(false)
          .log(null)
-         .out(out)
+         .out(page.response(total, items))
          .send();
     }
   }
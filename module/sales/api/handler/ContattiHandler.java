@@ -3,11 +3,13 @@ package dev.jms.app.sales.handler;
 import dev.jms.app.sales.adapter.ContattoAdapter;
 import dev.jms.app.sales.dao.ContattoDAO;
 import dev.jms.app.sales.dto.ContattoDTO;
+import dev.jms.app.sales.helper.ContattoSearchHelper;
 import dev.jms.util.DB;
 import dev.jms.util.HttpRequest;
 import dev.jms.util.HttpResponse;
 import dev.jms.util.Json;
 import dev.jms.util.Log;
+import dev.jms.util.Page;
 import dev.jms.util.Permission;
 import dev.jms.util.Role;
 import dev.jms.util.Session;
@@ -15,6 +17,7 @@ import dev.jms.util.ValidationException;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Stream;
 
 /** Handler per le operazioni sui contatti (tabella jms_sales_contatti). */
 public class ContattiHandler
@@ -23,57 +26,42 @@ public class ContattiHandler
 
   /**
    * GET /api/sales/contatti — lista paginata con filtro opzionale per lista (query param {@code listaId}).
+   * Paginazione per {@code page} o per cursore {@code after} (vedi {@link Page}).
+   * Gli {@code items} sono scritti in streaming dal cursore.
    */
   public void list(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
-    String pageStr;
-    String sizeStr;
     String listaIdStr;
-    int page;
-    int size;
+    Page page;
     Integer listaId;
     ContattoDAO dao;
-    List<ContattoDTO> items;
-    int total;
-    HashMap<String, Object> out;
+    Stream<ContattoDTO> items;
+    Long total;
 
     session.require(Role.USER, Permission.READ);
-    pageStr    = req.getQueryParam("page");
-    sizeStr    = req.getQueryParam("size");
     listaIdStr = req.getQueryParam("listaId");
-    page    = pageStr    != null ? Integer.parseInt(pageStr)    : 1;
-    size    = sizeStr    != null ? Integer.parseInt(sizeStr)    : 20;
+    page    = Page.of(req, 20);
     listaId = listaIdStr != null ? Integer.parseInt(listaIdStr) : null;
     dao     = new ContattoDAO(db);
-    items   = dao.findAll(page, size, listaId);
-    total   = dao.count(listaId);
-    out     = new HashMap<>();
-    out.put("total", total);
-    out.put("page",  page);
-    out.put("size",  size);
-    out.put("items", items);
+    total   = dao.count(page, listaId);
+    items   = dao.streamAll(page, listaId);
     res.status(200)
        .contentType("application/json")
        .err(false)
        .log(null)
-       .out(out)
+       .out(page.response(total, items))
        .send();
   }
 
   /**
-   * GET /api/sales/contatti/search — ricerca full-text paginata (query param {@code q}).
+   * GET /api/sales/contatti/search — ricerca per rilevanza (query param {@code q}), vedi
+   * {@link ContattoSearchHelper}. Paginazione per {@code page}/{@code size}, totale limitato.
    */
   public void search(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
     String query;
-    String pageStr;
-    String sizeStr;
-    int page;
-    int size;
-    ContattoDAO dao;
-    List<ContattoDTO> items;
-    int total;
-    HashMap<String, Object> out;
+    Page page;
+    ContattoSearchHelper helper;
 
     session.require(Role.USER, Permission.READ);
     query = req.getQueryParam("q");
@@ -85,23 +73,13 @@ public class ContattiHandler
          .out(null)
          .send();
     } else {
-      pageStr = req.getQueryParam("page");
-      sizeStr = req.getQueryParam("size");
-      page    = pageStr != null ? Integer.parseInt(pageStr) : 1;
-      size    = sizeStr != null ? Integer.parseInt(sizeStr) : 20;
-      dao     = new ContattoDAO(db);
-      items   = dao.search(query, page, size);
-      total   = dao.countSearch(query);
-      out     = new HashMap<>();
-      out.put("total", total);
-      out.put("page",  page);
-      out.put("size",  size);
-      out.put("items", items);
+      page   = Page.of(req, 20);
+      helper = new ContattoSearchHelper(db);
       res.status(200)
          .contentType("application/json")
          .err(false)
          .log(null)
-         .out(out)
+         .out(helper.getEntries(query, page))
          .send();
     }
   }
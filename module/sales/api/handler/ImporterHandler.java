@@ -312,6 +312,10 @@ public class ImporterHandler
     List<Map<String, Object>> rows;
     ContattoDAO contattoDao;
     ListaDAO listaDao;
+    ArrayList<ContattoDTO> candidates;
+    ArrayList<ContattoDTO> accepted;
+    HashSet<String> telefoni;
+    HashSet<String> existing;
     int importedCount;
     int skippedCount;
     int warningCount;
@@ -375,6 +379,9 @@ public class ImporterHandler
       warningCount  = 0;
       txFailed      = false;
       txError       = null;
+      candidates    = new ArrayList<>();
+      accepted      = new ArrayList<>();
+      telefoni      = new HashSet<>();
       db.begin();
       try {
         for (Map<String, Object> row : rows) {
@@ -390,7 +397,6 @@ public class ImporterHandler
           String provincia;
           String note;
           ContattoDTO c;
-          int newId;
           mapped         = applyMapping(row, mapping);
           nome           = capitalize(stringify(mapped.get("nome")));
           cognome        = capitalize(stringify(mapped.get("cognome")));
@@ -406,10 +412,6 @@ public class ImporterHandler
             skippedCount++;
             continue;
           }
-          if (!telefono.isEmpty() && contattoDao.existsByTelefono(telefono, null)) {
-            warningCount++;
-            continue;
-          }
           c = new ContattoDTO(
             null,
             nome.isEmpty()           ? null : nome,
@@ -429,10 +431,22 @@ public class ImporterHandler
             null,
             0L
           );
-          newId = contattoDao.insert(c);
-          listaDao.addContatto(listaId, newId);
-          importedCount++;
+          candidates.add(c);
+          if (c.telefono() != null) {
+            telefoni.add(c.telefono());
+          }
+        }
+        // Duplicati (già in anagrafica o ripetuti nel file): una query per tutti i numeri
+        existing = contattoDao.existingTelefoni(telefoni);
+        for (ContattoDTO c : candidates) {
+          if (c.telefono() != null && !existing.add(c.telefono())) {
+            warningCount++;
+          } else {
+            accepted.add(c);
+          }
         }
+        listaDao.addContatti(listaId, contattoDao.insertAll(accepted));
+        importedCount = accepted.size();
         db.commit();
       } catch (Exception e) {
         db.rollback();
@@ -9,6 +9,7 @@ import dev.jms.util.HttpRequest;
 import dev.jms.util.HttpResponse;
 import dev.jms.util.Json;
 import dev.jms.util.Log;
+import dev.jms.util.Page;
 import dev.jms.util.Permission;
 import dev.jms.util.Role;
 import dev.jms.util.Session;
@@ -25,37 +26,25 @@ public class ListeHandler
   private static final Log log = Log.get(ListeHandler.class);
 
   /**
-   * GET /api/sales/liste — lista paginata delle liste.
+   * GET /api/sales/liste — lista paginata delle liste ({@code page} o cursore {@code after}, vedi {@link Page}).
    */
   public void list(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
-    String pageStr;
-    String sizeStr;
-    int page;
-    int size;
+    Page page;
     ListaDAO dao;
     List<ListaDTO> items;
-    int total;
-    HashMap<String, Object> out;
+    Long total;
 
     session.require(Role.USER, Permission.READ);
-    pageStr = req.getQueryParam("page");
-    sizeStr = req.getQueryParam("size");
-    page    = pageStr != null ? Integer.parseInt(pageStr) : 1;
-    size    = sizeStr != null ? Integer.parseInt(sizeStr) : 20;
+    page    = Page.of(req, 20);
     dao     = new ListaDAO(db);
-    items   = dao.findAll(page, size);
-    total   = dao.count();
-    out     = new HashMap<>();
-    out.put("total", total);
-    out.put("page",  page);
-    out.put("size",  size);
-    out.put("items", items);
+    items   = dao.findAll(page);
+    total   = dao.count(page);
     res.status(200)
        .contentType("application/json")
        .err(false)
        .log(null)
-       .out(out)
+       .out(page.response(total, items))
        .send();
   }
 
@@ -302,21 +291,17 @@ public class ListeHandler
   }
 
   /**
-   * GET /api/sales/liste/{id}/contatti — contatti della lista, paginati.
+   * GET /api/sales/liste/{id}/contatti — contatti della lista, paginati ({@code page} o {@code after}).
    */
   @SuppressWarnings("unchecked")
   public void listContatti(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
     int id;
-    String pageStr;
-    String sizeStr;
-    int page;
-    int size;
+    Page page;
     ListaDAO dao;
     ListaDTO lista;
     List<ListaContattoDTO> items;
-    int total;
-    HashMap<String, Object> out;
+    Long total;
 
     session.require(Role.USER, Permission.READ);
     id      = Integer.parseInt(req.urlArgs().get("id"));
@@ -330,22 +315,14 @@ public class ListeHandler
          .out(null)
          .send();
     } else {
-      pageStr = req.getQueryParam("page");
-      sizeStr = req.getQueryParam("size");
-      page    = pageStr != null ? Integer.parseInt(pageStr) : 1;
-      size    = sizeStr != null ? Integer.parseInt(sizeStr) : 20;
-      items   = dao.findContatti(id, page, size);
-      total   = dao.countContatti(id);
-      out     = new HashMap<>();
-      out.put("total", total);
-      out.put("page",  page);
-      out.put("size",  size);
-      out.put("items", items);
+      page    = Page.of(req, 20);
+      items   = dao.findContatti(id, page);
+      total   = dao.countContatti(id, page);
       res.status(200)
          .contentType("application/json")
          .err(false)
          .log(null)
-         .out(out)
+         .out(page.response(total, items))
          .send();
     }
   }
@@ -0,0 +1,154 @@
+package dev.jms.app.sales.helper;
+
+import dev.jms.app.sales.dao.ContattoDAO;
+import dev.jms.app.sales.dto.ContattoDTO;
+import dev.jms.util.DB;
+import dev.jms.util.Page;
+import dev.jms.util.ValidationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Ricerca dei contatti per la casella di ricerca di {@code Contatti.js} e {@code Liste.js}.
+ *
+ * <p>Il testo digitato viene normalizzato e instradato sugli indici di
+ * {@code V20261017_000003__sales_search.sql}:
+ * <ul>
+ *   <li>numeri di telefono ({@code +39 333 123-4567}, {@code 0039...}): solo cifre, senza prefisso
+ *       internazionale, confrontate per sottostringa con {@code telefono_norm} (indice trigram);</li>
+ *   <li>testo: prefissi delle parole su {@code search_tsv} (indice GIN, anche con 1-2 caratteri)
+ *       oppure sottostringa su {@code search_text} (indice trigram, da 3 caratteri).</li>
+ * </ul>
+ * I risultati sono ordinati per rilevanza e limitati a {@link #MAX_RESULTS}: la paginazione è per
+ * numero di pagina e il totale è contato al più fino al limite ({@code estimated: true} oltre).
+ */
+public class ContattoSearchHelper
+{
+  /** Risultati massimi di una ricerca (pagine e totale). */
+  public static final int MAX_RESULTS = 1000;
+
+  /** Prefisso internazionale rimosso dai numeri digitati con {@code +} o {@code 00}. */
+  private static final String COUNTRY_CODE = "39";
+
+  private static final Pattern PHONE = Pattern.compile("[+0-9 ()./-]+");
+  private static final Pattern NON_DIGIT = Pattern.compile("[^0-9]");
+  private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final Pattern SPACES = Pattern.compile("\\s+");
+
+  private final DB db;
+
+  /** Costruttore. */
+  public ContattoSearchHelper(DB db)
+  {
+    this.db = db;
+  }
+
+  /**
+   * Restituisce una pagina di contatti per la ricerca, con totale limitato.
+   *
+   * @param query testo digitato (non vuoto)
+   * @param page  pagina richiesta; il cursore {@code after} non è supportato
+   * @return corpo della risposta di {@link Page#response}
+   * @throws ValidationException se la richiesta usa il cursore {@code after}
+   */
+  public HashMap<String, Object> getEntries(String query, Page page) throws Exception
+  {
+    ContattoDAO dao;
+    String phone;
+    String text;
+    List<ContattoDTO> items;
+    Long total;
+
+    if (page.keyset()) {
+      throw new ValidationException("La ricerca è ordinata per rilevanza: usare page invece di after");
+    }
+    dao   = new ContattoDAO(db);
+    phone = phoneDigits(query);
+    if (phone != null) {
+      total = dao.countSearchPhone(phone, page, MAX_RESULTS);
+      items = page.offset() < MAX_RESULTS ? dao.searchPhone(phone, page) : new ArrayList<>();
+    } else {
+      text  = normalize(query);
+      total = dao.countSearch(likePattern(text), tsQuery(text), page, MAX_RESULTS);
+      items = page.offset() < MAX_RESULTS ? dao.search(likePattern(text), tsQuery(text), text, page) : new ArrayList<>();
+    }
+    items = page.limit(items);
+    if (page.offset() + items.size() > MAX_RESULTS) {
+      items = items.subList(0, (int) (MAX_RESULTS - page.offset()));
+    }
+    return page.response(total, items);
+  }
+
+  /**
+   * Cifre del numero di telefono digitato, o {@code null} se il testo non è un numero
+   * (caratteri diversi da cifre e separatori, o meno di 3 cifre).
+   *
+   * @param query testo digitato
+   * @return cifre senza prefisso internazionale, o {@code null}
+   */
+  static String phoneDigits(String query)
+  {
+    String trimmed;
+    String digits;
+    String result;
+
+    trimmed = query.trim();
+    result = null;
+    if (PHONE.matcher(trimmed).matches()) {
+      digits = NON_DIGIT.matcher(trimmed).replaceAll("");
+      if (trimmed.startsWith("+") || digits.startsWith("00")) {
+        digits = digits.startsWith("00") ? digits.substring(2) : digits;
+        if (digits.startsWith(COUNTRY_CODE) && digits.length() > COUNTRY_CODE.length() + 6) {
+          digits = digits.substring(COUNTRY_CODE.length());
+        }
+      }
+      result = digits.length() >= 3 ? digits : null;
+    }
+    return result;
+  }
+
+  /** Minuscolo, spazi compattati: stessa forma di {@code search_text}. */
+  static String normalize(String query)
+  {
+    return SPACES.matcher(query.trim().toLowerCase()).replaceAll(" ");
+  }
+
+  /**
+   * Pattern LIKE di sottostringa, o {@code null} sotto i 3 caratteri (il trigram non
+   * userebbe l'indice). I caratteri jolly digitati sono trattati come letterali.
+   */
+  static String likePattern(String text)
+  {
+    String result;
+
+    result = null;
+    if (text.length() >= 3) {
+      result = "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+    return result;
+  }
+
+  /**
+   * tsquery per prefisso di ogni parola ({@code mar:* & ros:*}), o {@code null} se il testo
+   * non contiene lettere o cifre. Le parole contengono solo lettere e cifre, quindi non
+   * servono escape della sintassi tsquery.
+   */
+  static String tsQuery(String text)
+  {
+    StringBuilder sb;
+
+    sb = new StringBuilder();
+    for (String term : SEPARATORS.split(text)) {
+      if (!term.isEmpty()) {
+        if (sb.length() > 0) {
+          sb.append(" & ");
+        }
+        sb.append(term).append(":*");
+      }
+    }
+    return sb.length() > 0 ? sb.toString() : null;
+  }
+}
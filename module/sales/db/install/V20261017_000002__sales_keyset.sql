@@ -0,0 +1,8 @@
+-- ============================================================================
+-- PAGINAZIONE KEYSET
+-- Ordinamento dei contatti (cognome, nome, id) usato da ContattoDAO/ListaDAO.
+-- Liste e campagne sono già coperte dagli indici univoci su nome.
+-- ============================================================================
+
+CREATE INDEX jms_sales_idx_contatti_keyset
+    ON jms_sales_contatti ((COALESCE(cognome, '')), (COALESCE(nome, '')), id);
@@ -0,0 +1,28 @@
+-- ============================================================================
+-- RICERCA CONTATTI
+-- Colonne generate e indici per ContattoSearchHelper:
+--   telefono_norm : solo cifre del telefono, sottostringa via trigram
+--   search_text   : nome, cognome, ragione sociale, email in minuscolo, sottostringa via trigram
+--   search_tsv    : parole con peso (cognome/nome > ragione sociale > email), prefissi via GIN
+-- pg_trgm è un'estensione "trusted": basta il privilegio CREATE sul database.
+-- ============================================================================
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+ALTER TABLE jms_sales_contatti
+    ADD COLUMN telefono_norm TEXT
+        GENERATED ALWAYS AS (regexp_replace(COALESCE(telefono, ''), '[^0-9]', '', 'g')) STORED,
+    ADD COLUMN search_text TEXT
+        GENERATED ALWAYS AS (lower(
+            COALESCE(nome, '') || ' ' || COALESCE(cognome, '') || ' ' ||
+            COALESCE(ragione_sociale, '') || ' ' || COALESCE(email, ''))) STORED,
+    ADD COLUMN search_tsv TSVECTOR
+        GENERATED ALWAYS AS (
+            setweight(to_tsvector('simple', COALESCE(cognome, '')), 'A') ||
+            setweight(to_tsvector('simple', COALESCE(nome, '')), 'A') ||
+            setweight(to_tsvector('simple', COALESCE(ragione_sociale, '')), 'B') ||
+            setweight(to_tsvector('simple', COALESCE(email, '')), 'C')) STORED;
+
+CREATE INDEX jms_sales_idx_contatti_search_tsv  ON jms_sales_contatti USING GIN (search_tsv);
+CREATE INDEX jms_sales_idx_contatti_search_trgm ON jms_sales_contatti USING GIN (search_text gin_trgm_ops);
+CREATE INDEX jms_sales_idx_contatti_tel_trgm    ON jms_sales_contatti USING GIN (telefono_norm gin_trgm_ops);
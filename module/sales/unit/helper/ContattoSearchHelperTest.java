@@ -0,0 +1,58 @@
+package dev.jms.app.sales.helper;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/** Normalizzazione del testo di ricerca di {@link ContattoSearchHelper}. */
+class ContattoSearchHelperTest
+{
+  @Test
+  void phoneDigitsStripSeparatorsAndCountryCode()
+  {
+    assertEquals("3331234567", ContattoSearchHelper.phoneDigits("+39 333 123-4567"));
+    assertEquals("3331234567", ContattoSearchHelper.phoneDigits("0039 333 1234567"));
+    assertEquals("0212345678", ContattoSearchHelper.phoneDigits(" (02) 1234.5678 "));
+    assertEquals("441234567890", ContattoSearchHelper.phoneDigits("+44 1234 567890"));
+  }
+
+  @Test
+  void shortCountryCodeMatchIsKept()
+  {
+    // "+39 12": troppo corto per essere un numero con prefisso, resta una ricerca per sottostringa
+    assertEquals("3912", ContattoSearchHelper.phoneDigits("+39 12"));
+  }
+
+  @Test
+  void phoneDigitsRejectTextAndShortNumbers()
+  {
+    assertNull(ContattoSearchHelper.phoneDigits("ab"));
+    assertNull(ContattoSearchHelper.phoneDigits("rossi 333"));
+    assertNull(ContattoSearchHelper.phoneDigits("12"));
+    assertNull(ContattoSearchHelper.phoneDigits("- -"));
+  }
+
+  @Test
+  void normalizeLowercasesAndCollapsesSpaces()
+  {
+    assertEquals("mario rossi", ContattoSearchHelper.normalize("  Mario \t ROSSI "));
+  }
+
+  @Test
+  void likePatternEscapesWildcards()
+  {
+    assertEquals("%ros%", ContattoSearchHelper.likePattern("ros"));
+    assertEquals("%50\\% di sconto\\_a\\\\b%", ContattoSearchHelper.likePattern("50% di sconto_a\\b"));
+    assertNull(ContattoSearchHelper.likePattern("ro"));
+  }
+
+  @Test
+  void tsQueryPrefixesEveryWord()
+  {
+    assertEquals("mario:* & rossi:*", ContattoSearchHelper.tsQuery("mario rossi"));
+    assertEquals("d:* & angelo:* & srl:*", ContattoSearchHelper.tsQuery("d'angelo & srl!"));
+    assertEquals("città:*", ContattoSearchHelper.tsQuery("città"));
+    assertNull(ContattoSearchHelper.tsQuery("&|!:*"));
+  }
+}
@@ -22,6 +22,7 @@ public class Routes
     String cookieSameSite;
     int rateLimitMax;
     long rateLimitWindow;
+    RateLimiter.Policy authPolicy;
 
     // Configura i cookie di autenticazione con i parametri di sicurezza
     cookieSecure = Boolean.parseBoolean(config.get("user.cookie.secure", "false"));
@@ -33,6 +34,12 @@ public class Routes
     rateLimitWindow = config.getInt("user.ratelimit.window.seconds", 300);
     RateLimiter.configure(rateLimitMax, rateLimitWindow);
 
+    // Limite di richieste per IP su tutte le rotte di autenticazione (anche le riuscite)
+    authPolicy = RateLimiter.policy("user.auth",
+                                    config.getInt("user.ratelimit.auth.requests", 120),
+                                    config.getInt("user.ratelimit.auth.window.seconds", 60),
+                                    RateLimiter.Scope.IP);
+
     account = new AccountHandler();
     auth = new AuthHandler(config);
     profile = new ProfileHandler();
@@ -56,6 +63,7 @@ public class Routes
     router.route(HttpMethod.POST, "/api/user/auth/2fa", auth::twoFactor);
     router.route(HttpMethod.POST, "/api/user/auth/forgot-password", auth::forgotPassword);
     router.route(HttpMethod.POST, "/api/user/auth/reset-password", auth::resetPassword);
+    router.rateLimit("/api/user/auth/*", authPolicy);
 
     // Profile — /sid/settings/{key} prima di /sid/settings prima di /sid
     router.route(HttpMethod.GET, "/api/user/users/sid/settings/{key}", profile::settingByKey);
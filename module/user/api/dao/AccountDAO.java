@@ -3,6 +3,7 @@ package dev.jms.app.user.dao;
 import dev.jms.app.user.dto.AccountAuthDTO;
 import dev.jms.app.user.dto.AuthenticatedAccountDTO;
 import dev.jms.util.DB;
+import dev.jms.util.Page;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -11,6 +12,11 @@ import java.util.List;
 /** DAO per la gestione degli account e delle credenziali. */
 public class AccountDAO
 {
+  /** Ordinamento della lista management: username, id. */
+  private static final Page.Key KEY = Page.Key.asc()
+    .column("username", "text")
+    .column("id", "bigint");
+
   private final DB db;
 
   /** Costruttore. */
@@ -110,38 +116,40 @@ public class AccountDAO
     return rows.isEmpty() ? null : rows.get(0);
   }
 
-  /** Restituisce tutti gli account (management), con filtro opzionale. */
-  public List<HashMap<String, Object>> findAll(String search, int offset, int limit) throws Exception
+  /** Restituisce una pagina di account (management), con filtro opzionale su username/email. */
+  public List<HashMap<String, Object>> findAll(String search, Page page) throws Exception
   {
     String sql;
+    List<HashMap<String, Object>> rows;
 
     if (search != null && !search.isBlank()) {
       sql =
         "SELECT id, username, email, ruolo, attivo, must_change_password, created_at " +
-        "FROM jms_user_accounts WHERE username ILIKE ? OR email ILIKE ? " +
-        "ORDER BY username LIMIT ? OFFSET ?";
-      return db.select(sql, "%" + search + "%", "%" + search + "%", limit, offset);
+        "FROM jms_user_accounts WHERE (username ILIKE ? OR email ILIKE ?) AND " + page.seek(KEY) + " " +
+        "ORDER BY " + page.orderBy(KEY) + " LIMIT ? OFFSET ?";
+      rows = db.select(sql, page.params("%" + search + "%", "%" + search + "%"));
+    } else {
+      sql =
+        "SELECT id, username, email, ruolo, attivo, must_change_password, created_at " +
+        "FROM jms_user_accounts WHERE " + page.seek(KEY) + " " +
+        "ORDER BY " + page.orderBy(KEY) + " LIMIT ? OFFSET ?";
+      rows = db.select(sql, page.params());
     }
-    sql =
-      "SELECT id, username, email, ruolo, attivo, must_change_password, created_at " +
-      "FROM jms_user_accounts ORDER BY username LIMIT ? OFFSET ?";
-    return db.select(sql, limit, offset);
+    return page.track(rows, r -> new Object[] { r.get("username"), r.get("id") });
   }
 
-  /** Conta gli account, con filtro opzionale. */
-  public long count(String search) throws Exception
+  /** Conta gli account, con filtro opzionale (modalità {@code count} della richiesta). */
+  public Long count(String search, Page page) throws Exception
   {
-    String sql;
-    List<HashMap<String, Object>> rows;
+    Long result;
 
     if (search != null && !search.isBlank()) {
-      sql  = "SELECT COUNT(*) AS cnt FROM jms_user_accounts WHERE username ILIKE ? OR email ILIKE ?";
-      rows = db.select(sql, "%" + search + "%", "%" + search + "%");
+      result = page.count(db, "FROM jms_user_accounts WHERE username ILIKE ? OR email ILIKE ?",
+                          "%" + search + "%", "%" + search + "%");
     } else {
-      sql  = "SELECT COUNT(*) AS cnt FROM jms_user_accounts";
-      rows = db.select(sql);
+      result = page.count(db, "FROM jms_user_accounts");
     }
-    return DB.toLong(rows.get(0).get("cnt"));
+    return result;
   }
 
   /** Verifica duplicato username escludendo un id. */
@@ -183,15 +191,13 @@ public class AccountDAO
   public long create(String username, String email, String passwordHash, String ruolo) throws Exception
   {
     String sql;
-    List<HashMap<String, Object>> rows;
     String emailVal;
 
     emailVal = (email == null || email.isBlank()) ? null : email;
     sql      =
       "INSERT INTO jms_user_accounts (username, email, password_hash, ruolo, must_change_password) " +
-      "VALUES (?, ?, ?, ?, false) RETURNING id";
-    rows = db.select(sql, username, emailVal, passwordHash, ruolo);
-    return DB.toLong(rows.get(0).get("id"));
+      "VALUES (?, ?, ?, ?, false)";
+    return db.insert(sql, username, emailVal, passwordHash, ruolo);
   }
 
   /** Aggiornamento admin: username, email, ruolo, attivo, must_change_password. */
@@ -202,7 +208,7 @@ public class AccountDAO
 
     emailVal = (email == null || email.isBlank()) ? null : email;
     sql      = "UPDATE jms_user_accounts SET username=?, email=?, ruolo=?, attivo=?, must_change_password=? WHERE id=?";
-    db.query(sql, username, emailVal, ruolo, attivo, mustChangePassword, id);
+    db.execute(sql, username, emailVal, ruolo, attivo, mustChangePassword, id);
   }
 
   /** Aggiornamento self: solo username, email, password. */
@@ -214,10 +220,10 @@ public class AccountDAO
     emailVal = (email == null || email.isBlank()) ? null : email;
     if (passwordHash != null) {
       sql = "UPDATE jms_user_accounts SET username=?, email=?, password_hash=? WHERE id=?";
-      db.query(sql, username, emailVal, passwordHash, id);
+      db.execute(sql, username, emailVal, passwordHash, id);
     } else {
       sql = "UPDATE jms_user_accounts SET username=?, email=? WHERE id=?";
-      db.query(sql, username, emailVal, id);
+      db.execute(sql, username, emailVal, id);
     }
   }
 
@@ -227,7 +233,7 @@ public class AccountDAO
     String sql;
 
     sql = "UPDATE jms_user_accounts SET password_hash = ?, must_change_password = ? WHERE id = ?";
-    db.query(sql, passwordHash, mustChangePassword, id);
+    db.execute(sql, passwordHash, mustChangePassword, id);
   }
 
   /** Soft delete: imposta attivo = false. */
@@ -236,7 +242,7 @@ public class AccountDAO
     String sql;
 
     sql = "UPDATE jms_user_accounts SET attivo = false WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 
   // ── mapping privato ──────────────────────────────────────────────────
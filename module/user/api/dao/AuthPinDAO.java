@@ -24,7 +24,7 @@ public class AuthPinDAO
     String sql;
 
     sql = "DELETE FROM jms_user_auth_pins WHERE account_id = ? OR expires_at < NOW()";
-    db.query(sql, accountId);
+    db.execute(sql, accountId);
   }
 
   /** Inserisce un nuovo PIN. */
@@ -33,7 +33,7 @@ public class AuthPinDAO
     String sql;
 
     sql = "INSERT INTO jms_user_auth_pins (challenge_token, account_id, pin_hash, expires_at) VALUES (?, ?, ?, ?)";
-    db.query(sql, challengeToken, accountId, pinHash, DB.toSqlTimestamp(expiresAt));
+    db.execute(sql, challengeToken, accountId, pinHash, DB.toSqlTimestamp(expiresAt));
   }
 
   /** Cerca un PIN per challenge token. Null se non trovato. */
@@ -64,6 +64,6 @@ public class AuthPinDAO
     String sql;
 
     sql = "DELETE FROM jms_user_auth_pins WHERE challenge_token = ?";
-    db.query(sql, challengeToken);
+    db.execute(sql, challengeToken);
   }
 }
@@ -22,7 +22,7 @@ public class PasswordResetDAO
     String sql;
 
     sql = "INSERT INTO jms_user_password_reset_tokens (token, account_id, expires_at) VALUES (?, ?, NOW() + INTERVAL '1 hour')";
-    db.query(sql, token, accountId);
+    db.execute(sql, token, accountId);
   }
 
   /** Cerca un token valido (non scaduto, non usato). Restituisce l'accountId o null se non trovato. */
@@ -43,6 +43,6 @@ public class PasswordResetDAO
     String sql;
 
     sql = "UPDATE jms_user_password_reset_tokens SET used = true WHERE token = ?";
-    db.query(sql, token);
+    db.execute(sql, token);
   }
 }
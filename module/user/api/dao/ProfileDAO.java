@@ -66,7 +66,6 @@ public class ProfileDAO
                      String nickname, String immagine, int flags) throws Exception
   {
     String sql;
-    List<HashMap<String, Object>> rows;
     String nicknameVal;
     String immagineVal;
 
@@ -74,9 +73,8 @@ public class ProfileDAO
     immagineVal = (immagine == null || immagine.isBlank()) ? null : immagine;
     sql =
       "INSERT INTO jms_users (account_id, nome, cognome, nickname, immagine, flags) " +
-      "VALUES (?, ?, ?, ?, ?, ?) RETURNING id";
-    rows = db.select(sql, accountId, nome, cognome, nicknameVal, immagineVal, flags);
-    return DB.toLong(rows.get(0).get("id"));
+      "VALUES (?, ?, ?, ?, ?, ?)";
+    return db.insert(sql, accountId, nome, cognome, nicknameVal, immagineVal, flags);
   }
 
   /** Aggiorna un profilo utente. */
@@ -92,7 +90,7 @@ public class ProfileDAO
     sql =
       "UPDATE jms_users SET nome = ?, cognome = ?, nickname = ?, immagine = ?, " +
       "                 flags = ?, attivo = ? WHERE id = ?";
-    db.query(sql, nome, cognome, nicknameVal, immagineVal, flags, attivo, id);
+    db.execute(sql, nome, cognome, nicknameVal, immagineVal, flags, attivo, id);
   }
 
   /** Soft delete: imposta attivo = false. */
@@ -101,6 +99,6 @@ public class ProfileDAO
     String sql;
 
     sql = "UPDATE jms_users SET attivo = false WHERE id = ?";
-    db.query(sql, id);
+    db.execute(sql, id);
   }
 }
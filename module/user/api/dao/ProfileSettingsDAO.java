@@ -44,7 +44,7 @@ public class ProfileSettingsDAO
     sql =
       "INSERT INTO jms_user_settings (user_id, chiave, valore) VALUES (?, ?, ?) " +
       "ON CONFLICT (user_id, chiave) DO UPDATE SET valore = EXCLUDED.valore";
-    db.query(sql, userId, chiave, valore);
+    db.execute(sql, userId, chiave, valore);
   }
 
   /** Elimina un'impostazione. */
@@ -53,6 +53,6 @@ public class ProfileSettingsDAO
     String sql;
 
     sql = "DELETE FROM jms_user_settings WHERE user_id = ? AND chiave = ?";
-    db.query(sql, userId, chiave);
+    db.execute(sql, userId, chiave);
   }
 }
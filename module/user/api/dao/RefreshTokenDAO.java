@@ -21,7 +21,7 @@ public class RefreshTokenDAO
     String sql;
 
     sql = "INSERT INTO jms_user_refresh_tokens (token, account_id, expires_at) VALUES (?, ?, ?)";
-    db.query(sql, token, accountId, DB.toSqlTimestamp(expiresAt));
+    db.execute(sql, token, accountId, DB.toSqlTimestamp(expiresAt));
   }
 
   /** Elimina un refresh token (logout o rotazione). */
@@ -30,6 +30,6 @@ public class RefreshTokenDAO
     String sql;
 
     sql = "DELETE FROM jms_user_refresh_tokens WHERE token = ?";
-    db.query(sql, token);
+    db.execute(sql, token);
   }
 }
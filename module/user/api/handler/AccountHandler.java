@@ -7,6 +7,7 @@ import dev.jms.util.Auth;
 import dev.jms.util.DB;
 import dev.jms.util.HttpRequest;
 import dev.jms.util.HttpResponse;
+import dev.jms.util.Page;
 import dev.jms.util.Permission;
 import dev.jms.util.Role;
 import dev.jms.util.Session;
@@ -42,21 +43,15 @@ public class AccountHandler
   public void list(HttpRequest req, HttpResponse res, Session session, DB db) throws Exception
   {
     String search;
-    String pageParam;
-    String pageSizeParam;
-    int page;
-    int pageSize;
+    Page page;
     AccountSearchHelper helper;
     Map<String, Object> result;
 
     session.require(Role.ADMIN, Permission.READ);
-    search        = req.queryParam("search");
-    pageParam     = req.queryParam("page");
-    pageSizeParam = req.queryParam("pageSize");
-    page     = (pageParam     != null && !pageParam.isBlank())     ? Integer.parseInt(pageParam)     : 1;
-    pageSize = (pageSizeParam != null && !pageSizeParam.isBlank()) ? Integer.parseInt(pageSizeParam) : 0;
-    helper   = new AccountSearchHelper(db);
-    result   = helper.getEntries(search, page, pageSize);
+    search = req.queryParam("search");
+    page   = Page.of(req, "pageSize", AccountSearchHelper.DEFAULT_PAGE_SIZE);
+    helper = new AccountSearchHelper(db);
+    result = helper.getEntries(search, page);
     res.status(200).contentType("application/json")
        .err(false).log(null).out(result).send();
   }
@@ -387,7 +382,7 @@ public class AccountHandler
     passwordHash = Auth.hashPassword(password);
     sql          = "INSERT INTO jms_user_accounts (username, email, password_hash, ruolo, must_change_password) " +
                    "VALUES (?, ?, ?, 'root', false)";
-    rows         = db.query(sql, ROOT_USERNAME, email, passwordHash);
+    rows         = db.execute(sql, ROOT_USERNAME, email, passwordHash);
 
     if (rows > 0) {
       res.status(200).contentType("application/json")
@@ -2,6 +2,7 @@ package dev.jms.app.user.helper;
 
 import dev.jms.app.user.dao.AccountDAO;
 import dev.jms.util.DB;
+import dev.jms.util.Page;
 
 import java.util.HashMap;
 import java.util.List;
@@ -12,7 +13,8 @@ import java.util.List;
  */
 public class AccountSearchHelper
 {
-  private static final int DEFAULT_PAGE_SIZE = 50;
+  /** Dimensione di pagina predefinita della lista account. */
+  public static final int DEFAULT_PAGE_SIZE = 50;
 
   private final DB db;
 
@@ -25,32 +27,20 @@ public class AccountSearchHelper
   /**
    * Restituisce una pagina di account con conteggio totale.
    *
-   * @param search   stringa di ricerca su username/email (null o blank = nessun filtro)
-   * @param page     numero di pagina (1-based)
-   * @param pageSize dimensione pagina (0 = DEFAULT_PAGE_SIZE)
-   * @return mappa con chiavi "items" (List), "total" (long), "page" (int), "pageSize" (int)
+   * @param search stringa di ricerca su username/email (null o blank = nessun filtro)
+   * @param page   pagina o cursore richiesto (parametro dimensione: {@code pageSize})
+   * @return mappa con chiavi "total", "page", "pageSize", "items", "next", "estimated"
    */
-  public HashMap<String, Object> getEntries(String search, int page, int pageSize) throws Exception
+  public HashMap<String, Object> getEntries(String search, Page page) throws Exception
   {
     AccountDAO dao;
-    int size;
-    int offset;
     List<HashMap<String, Object>> items;
-    long total;
-    HashMap<String, Object> result;
+    Long total;
 
-    dao    = new AccountDAO(db);
-    size   = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
-    offset = (Math.max(page, 1) - 1) * size;
-    items  = dao.findAll(search, offset, size);
-    total  = dao.count(search);
-
-    result = new HashMap<>();
-    result.put("items",    items);
-    result.put("total",    total);
-    result.put("page",     Math.max(page, 1));
-    result.put("pageSize", size);
-    return result;
+    dao   = new AccountDAO(db);
+    total = dao.count(search, page);
+    items = dao.findAll(search, page);
+    return page.response(total, items);
   }
 
   /**
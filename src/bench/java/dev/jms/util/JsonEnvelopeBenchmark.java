@@ -0,0 +1,101 @@
+package dev.jms.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envelope {@code {"err":..,"log":..,"out":..}} di 10k righe x 8 colonne (~2 MB di JSON).
+ *
+ * <ul>
+ *   <li>{@link #mapAndString}: percorso precedente di {@link HttpResponse#send()} (mappa,
+ *       {@link Json#encode} e conversione UTF-8 del sender);</li>
+ *   <li>{@link #writeEnvelope}: {@link Json#writeEnvelope} su uno stream che scarta i byte.</li>
+ * </ul>
+ * Allocazione per operazione con {@code -prof gc} ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonEnvelopeBenchmark
+{
+  private List<LinkedHashMap<String, Object>> rows;
+
+  @Setup
+  public void setup()
+  {
+    LinkedHashMap<String, Object> row;
+
+    rows = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      row = new LinkedHashMap<>();
+      row.put("id", (long) i);
+      row.put("nome", "Nome " + i);
+      row.put("cognome", "Cognome " + i);
+      row.put("telefono", "+39 02 " + (1_000_000 + i));
+      row.put("email", "contatto" + i + "@example.com");
+      row.put("stato", i % 3);
+      row.put("note", "Richiamare dopo le 18, lista di prova numero " + (i % 50));
+      row.put("aggiornato", "2026-10-17T10:15:30");
+      rows.add(row);
+    }
+  }
+
+  @Benchmark
+  public byte[] mapAndString()
+  {
+    LinkedHashMap<String, Object> body;
+
+    body = new LinkedHashMap<>();
+    body.put("err", false);
+    body.put("log", null);
+    body.put("out", rows);
+    return Json.encode(body).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public long writeEnvelope() throws IOException
+  {
+    Discard os;
+
+    os = new Discard();
+    Json.writeEnvelope(os, false, null, rows);
+    return os.count;
+  }
+
+  /** Stream che conta i byte senza conservarli. */
+  private static class Discard extends OutputStream
+  {
+    long count;
+
+    @Override
+    public void write(int b)
+    {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+      count += len;
+    }
+  }
+}
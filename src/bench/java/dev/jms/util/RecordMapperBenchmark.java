@@ -0,0 +1,161 @@
+package dev.jms.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping di 10k righe x 17 colonne (forma di {@code ContattoDTO}) da un ResultSet in memoria.
+ *
+ * <ul>
+ *   <li>{@link #mapsThenDto}: percorso precedente, una {@code HashMap} per riga con
+ *       {@code getColumnName} per ogni colonna, poi conversione a mano con {@code DB.toXxx};</li>
+ *   <li>{@link #recordMapper}: {@link DB#select(String, Class, Object...)}, indici risolti una volta
+ *       per istruzione e costruttore canonico via {@code MethodHandle}.</li>
+ * </ul>
+ * Il ResultSet è un proxy sugli stessi array per entrambi: misura il mapping, non il driver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordMapperBenchmark
+{
+  private static final String[] COLUMNS = {
+    "id", "nome", "cognome", "ragione_sociale", "telefono", "email", "indirizzo", "citta", "cap",
+    "provincia", "note", "stato", "consenso", "blacklist", "created_at", "updated_at", "liste_count"
+  };
+
+  /** Stessa forma di {@code ContattoDTO} del modulo sales. */
+  public record Contatto(
+    Integer id, String nome, String cognome, String ragioneSociale, String telefono, String email,
+    String indirizzo, String citta, String cap, String provincia, String note, int stato,
+    boolean consenso, boolean blacklist, String createdAt, String updatedAt, long listeCount
+  ) {}
+
+  private Object[][] data;
+
+  @Setup
+  public void setup()
+  {
+    Timestamp ts;
+
+    ts = Timestamp.valueOf(LocalDateTime.of(2026, 10, 17, 10, 15, 30));
+    data = new Object[10_000][];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = new Object[] {
+        i, "Nome " + i, "Cognome " + i, i % 4 == 0 ? "Ditta " + i + " srl" : null, "+39 02 " + (1_000_000 + i),
+        "contatto" + i + "@example.com", "Via Roma " + i, "Milano", "20100", "MI", null, i % 3,
+        Boolean.TRUE, Boolean.FALSE, ts, ts, (long) (i % 5)
+      };
+    }
+  }
+
+  @Benchmark
+  public List<Contatto> mapsThenDto() throws Exception
+  {
+    ResultSet rs;
+    ResultSetMetaData meta;
+    ArrayList<HashMap<String, Object>> rows;
+    ArrayList<Contatto> result;
+    HashMap<String, Object> r;
+    LocalDateTime createdAt;
+    LocalDateTime updatedAt;
+
+    rs = resultSet();
+    meta = rs.getMetaData();
+    rows = new ArrayList<>();
+    while (rs.next()) {
+      r = new HashMap<>();
+      for (int i = 1; i <= meta.getColumnCount(); i++) {
+        r.put(meta.getColumnName(i), rs.getObject(i));
+      }
+      rows.add(r);
+    }
+    result = new ArrayList<>(rows.size());
+    for (HashMap<String, Object> row : rows) {
+      createdAt = DB.toLocalDateTime(row.get("created_at"));
+      updatedAt = DB.toLocalDateTime(row.get("updated_at"));
+      result.add(new Contatto(
+        DB.toInteger(row.get("id")),
+        DB.toString(row.get("nome")),
+        DB.toString(row.get("cognome")),
+        DB.toString(row.get("ragione_sociale")),
+        DB.toString(row.get("telefono")),
+        DB.toString(row.get("email")),
+        DB.toString(row.get("indirizzo")),
+        DB.toString(row.get("citta")),
+        DB.toString(row.get("cap")),
+        DB.toString(row.get("provincia")),
+        DB.toString(row.get("note")),
+        DB.toInteger(row.get("stato")),
+        DB.toBoolean(row.get("consenso")),
+        DB.toBoolean(row.get("blacklist")),
+        createdAt != null ? createdAt.toString() : null,
+        updatedAt != null ? updatedAt.toString() : null,
+        DB.toLong(row.get("liste_count"))
+      ));
+    }
+    return result;
+  }
+
+  @Benchmark
+  public List<Contatto> recordMapper() throws Exception
+  {
+    ResultSet rs;
+    Row row;
+    RowMapper<Contatto> mapper;
+    ArrayList<Contatto> result;
+
+    rs = resultSet();
+    row = new Row(rs, Row.Layout.of(rs.getMetaData()));
+    mapper = RecordMapper.of(Contatto.class).bind(row.layout());
+    result = new ArrayList<>();
+    while (rs.next()) {
+      result.add(mapper.map(row));
+    }
+    return result;
+  }
+
+  /** ResultSet in sola lettura su {@link #data}: next, getObject(int), getMetaData. */
+  private ResultSet resultSet()
+  {
+    ResultSetMetaData meta;
+    int[] cursor;
+
+    meta = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> switch (method.getName()) {
+        case "getColumnCount" -> COLUMNS.length;
+        case "getColumnName", "getColumnLabel" -> COLUMNS[(Integer) args[0] - 1];
+        default -> throw new UnsupportedOperationException(method.getName());
+      });
+    cursor = new int[] { -1 };
+    return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] { ResultSet.class }, (proxy, method, args) -> switch (method.getName()) {
+        case "next" -> ++cursor[0] < data.length;
+        case "getObject" -> data[cursor[0]][(Integer) args[0] - 1];
+        case "getMetaData" -> meta;
+        case "close" -> null;
+        default -> throw new UnsupportedOperationException(method.getName());
+      });
+  }
+}
@@ -0,0 +1,66 @@
+package dev.jms.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Session#claims()} (cioè {@code resolve()}) su una richiesta con cookie {@code access_token}
+ * valido, come per ogni chiamata autenticata della GUI.
+ *
+ * <ul>
+ *   <li>{@code cache=false}: verifica HMAC-SHA256, decodifica Base64 e parsing JSON a ogni richiesta;</li>
+ *   <li>{@code cache=true}: SHA-256 del token e lookup in {@link JWTCache}, più i controlli di
+ *       scadenza e revoca ({@link JWTBlacklist}).</li>
+ * </ul>
+ * Un nuovo {@link Session} per operazione, come in {@link HandlerAdapter}; il cookie è restituito
+ * già estratto (il parsing dell'header è uguale nei due casi).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionResolveBenchmark
+{
+  @Param({ "false", "true" })
+  public boolean cache;
+
+  private HttpRequest request;
+
+  @Setup
+  public void setup()
+  {
+    String token;
+
+    Auth.init("benchmark-secret-benchmark-secret-0123456789", 900);
+    JWTCache.init(cache, 10_000);
+    token = Auth.get().createAccessToken(42, "operatore", "operator", 10, false);
+    request = new HttpRequest(null)
+    {
+      @Override
+      public String getCookie(String name)
+      {
+        return Cookie.ACCESS_TOKEN.equals(name) ? token : null;
+      }
+    };
+  }
+
+  @Benchmark
+  public Map<String, Object> resolve()
+  {
+    return new Session(request, null).claims();
+  }
+}
@@ -2,35 +2,43 @@ package dev.jms.app;
 
 import dev.jms.util.AsyncExecutor;
 import dev.jms.util.Auth;
+import dev.jms.util.Compression;
 import dev.jms.util.JWTBlacklist;
+import dev.jms.util.JWTCache;
 import dev.jms.util.RateLimiter;
 import dev.jms.util.Scheduler;
 import dev.jms.util.Session;
+import dev.jms.util.SqlStats;
+import dev.jms.util.ConcurrencyLimiter;
 import dev.jms.util.Config;
 import dev.jms.util.DB;
 import dev.jms.util.Mail;
 import dev.jms.util.HttpMethod;
+import dev.jms.util.HttpRequest;
 import dev.jms.util.Log;
+import dev.jms.util.Metrics;
+import dev.jms.util.Page;
 import dev.jms.util.Permission;
 import dev.jms.util.Role;
 import dev.jms.util.Router;
+import dev.jms.util.StaticResources;
+import dev.jms.util.Timing;
+import dev.jms.util.VirtualExecutor;
 import com.fasterxml.jackson.core.type.TypeReference;
 import java.util.HashMap;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.undertow.Undertow;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
-import io.undertow.server.handlers.PathTemplateHandler;
-import io.undertow.server.handlers.resource.ClassPathResourceManager;
-import io.undertow.server.handlers.resource.ResourceHandler;
 import org.flywaydb.core.Flyway;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 import javax.sql.DataSource;
 
 /**
  * Entry point dell'applicazione.
- * Inizializza i servizi (DB, Auth, Mail, AsyncExecutor),
+ * Inizializza i servizi (DB, Auth, Mail, AsyncExecutor, VirtualExecutor),
  * esegue le migrazioni Flyway, registra le route e avvia il server Undertow.
  */
 public class App
@@ -45,8 +53,10 @@ public class App
     Config config;
     int port;
     int asyncPoolSize;
-    ResourceHandler staticHandler;
-    PathTemplateHandler paths;
+    long asyncMaxBodySize;
+    int virtualMaxConcurrency;
+    boolean virtualByDefault;
+    HttpHandler staticHandler;
     Router router;
     Undertow server;
     DataSource ds;
@@ -56,6 +66,9 @@ public class App
     config = new Config();
     port = config.getInt("server.port", 8080);
     asyncPoolSize = config.getInt("async.pool.size", 20);
+    asyncMaxBodySize = config.getInt("async.max.body.size", 10 * 1024 * 1024);
+    virtualMaxConcurrency = config.getInt("virtual.max.concurrency", config.getInt("db.pool.size", 10));
+    virtualByDefault = config.get("server.dispatch", "worker").equalsIgnoreCase("virtual");
 
     // === INIZIALIZZAZIONE UTILITY CORE ===
 
@@ -70,14 +83,42 @@ public class App
     Auth.init(config.get("jwt.secret", "dev-secret-change-in-production"),
               config.getInt("jwt.access.expiry.seconds", 900));
 
+    // Cache dei claims degli access token già verificati (jwt.cache.*):
+    // scadenza e revoca restano controllate a ogni richiesta.
+    JWTCache.init(config);
+
     // Configura client SMTP per invio email se abilitato (mail.enabled=true).
     // Legge host, port, auth, user, password, from da application.properties.
     Mail.init(config);
 
     // Crea thread pool dedicato per handler @Async con dimensione configurabile.
     // Thread pool separato da Undertow worker threads per operazioni
-    // lente (async.pool.size).
-    AsyncExecutor.init(asyncPoolSize);
+    // lente (async.pool.size). Il body delle rotte async viene ricevuto
+    // in modo non-blocking e limitato a async.max.body.size (oltre: HTTP 413).
+    AsyncExecutor.init(asyncPoolSize, asyncMaxBodySize);
+
+    // Crea executor a virtual thread per handler registrati con router.virtual()
+    // (o per tutte le rotte blocking se server.dispatch=virtual).
+    // La concorrenza è limitata da un semaforo dimensionato sul pool HikariCP
+    // (virtual.max.concurrency, default db.pool.size).
+    VirtualExecutor.init(virtualMaxConcurrency, virtualByDefault);
+
+    // Proxy fidati (server.trusted.proxies): X-Forwarded-For è usato per l'IP del client
+    // (rate limit, audit) solo sulle connessioni che arrivano da questi indirizzi.
+    HttpRequest.init(config);
+
+    // Limite adattivo di concorrenza per le rotte: oltre il limite risposta 503 immediata
+    // con Retry-After invece di accodare nei worker (limiter.*). Le rotte CRITICAL non vengono rifiutate.
+    ConcurrencyLimiter.init(config);
+
+    // Ripartizione per fase del tempo delle richieste (pool, SQL, JWT, JSON, handler):
+    // header Server-Timing (timing.header: false | true | admin) e log WARN
+    // delle richieste oltre timing.slow.threshold.ms.
+    Timing.configure(config.get("timing.header", "false"), config.getInt("timing.slow.threshold.ms", 1000));
+
+    // Paginazione delle liste: durata della cache dei COUNT(*) per le pagine successive alla prima
+    // e soglia sotto la quale count=estimate usa comunque il conteggio esatto (pagination.*).
+    Page.init(config);
 
     // === SETUP DATABASE E MODULI ===
 
@@ -86,6 +127,16 @@ public class App
     // vuoto (o con history table) per procedere senza errori.
     runMigrations();
 
+    // Configura lo store delle sessioni server-side (session.store=memory|postgres)
+    // e il TTL sliding (session.ttl.seconds). Con postgres usa la tabella jms_sessions
+    // condivisa tra le istanze: va inizializzato dopo le migrazioni che la creano.
+    Session.init(config);
+
+    // Blacklist JWT condivisa tra i nodi (jwt.blacklist.*): ricarica le revoche
+    // da jms_jwt_blacklist e resta in LISTEN per quelle degli altri nodi.
+    // Dopo le migrazioni, che creano la tabella su un database nuovo.
+    JWTBlacklist.init(config);
+
     // Inizializza JobRunr scheduler per job periodici.
     // Usa PostgreSQL come storage per job persistenti (tabelle jobrunr_*,
     // create automaticamente da JobRunr al primo avvio).
@@ -102,25 +153,23 @@ public class App
     // per fornire istanza DB a ogni handler)
     ds = DB.getDataSource();
 
-    // ResourceHandler per servire file statici dalla classpath
+    // Handler per servire file statici dalla classpath
     // (frontend Vite build in src/main/resources/static/, incluso nel JAR).
-    // setWelcomeFiles("index.html") serve index.html per richieste a directory.
-    staticHandler = new ResourceHandler(
-      new ClassPathResourceManager(App.class.getClassLoader(), "static")
-    ).setWelcomeFiles("index.html");
-
-    // PathTemplateHandler gestisce routing Undertow con fallback a staticHandler.
-    // Se nessuna route API matcha, serve file statici (SPA routing lato client).
-    paths = new PathTemplateHandler(staticHandler);
+    // I file vengono letti dal JAR una volta e serviti da una cache in memoria
+    // (static.cache.*) con ETag forte, 304 e Cache-Control immutable per /assets/.
+    // index.html è il welcome file per richieste a directory.
+    // I sibling .gz generati a build time vengono serviti ai client che accettano gzip.
+    staticHandler = StaticResources.handler(App.class.getClassLoader(), config);
 
-    // Router wrapper per registrare route con HandlerAdapter automatico.
-    // Fornisce metodi route() e async() per route con path parameters.
-    router = new Router(paths, ds);
+    // Router per registrare route con HandlerAdapter automatico.
+    // Fornisce metodi route(), async() e virtual() per route con path parameters.
+    // Le rotte vengono compilate in una RouteTable prima dell'avvio del server.
+    router = new Router(ds);
 
     // === REGISTRAZIONE ROUTE ===
 
     // Status endpoint pubblico — health check, risponde HTTP 200 senza body.
-    paths.add("/api/status", new HttpHandler() {
+    router.handler("/api/status", new HttpHandler() {
       @Override
       public void handleRequest(HttpServerExchange exchange) throws Exception
       {
@@ -188,6 +237,47 @@ public class App
       }
     });
 
+    // Metrics endpoint — metriche runtime in formato testo Prometheus, solo ADMIN.
+    // Istogrammi di latenza per rotta, pool HikariCP, store in-memory, executor, job JobRunr.
+    router.route(HttpMethod.GET, "/api/metrics", (req, res, session, db) ->
+    {
+      session.require(Role.ADMIN, Permission.READ);
+      res.status(200)
+         .contentType("text/plain; version=0.0.4; charset=utf-8")
+         .raw(Metrics.render());
+    });
+
+    // Statistiche per istruzione SQL (impronta del testo), solo ADMIN: chiamate, tempo totale/medio/p99/max,
+    // righe ed errori, ordinate per tempo totale. Query param: limit (default 50). DELETE azzera i contatori.
+    router.route(HttpMethod.GET, "/api/metrics/sql", (req, res, session, db) ->
+    {
+      List<SqlStats.Stats> stats;
+      String limitParam;
+      int limit;
+
+      session.require(Role.ADMIN, Permission.READ);
+      limitParam = req.queryParam("limit");
+      limit = limitParam != null && limitParam.matches("\\d{1,6}") ? Integer.parseInt(limitParam) : 50;
+      stats = SqlStats.getStats();
+      res.status(200)
+         .contentType("application/json")
+         .err(false)
+         .log(null)
+         .out(stats.subList(0, Math.min(limit, stats.size())))
+         .send();
+    });
+    router.route(HttpMethod.DELETE, "/api/metrics/sql", (req, res, session, db) ->
+    {
+      session.require(Role.ADMIN, Permission.WRITE);
+      SqlStats.reset();
+      res.status(200)
+         .contentType("application/json")
+         .err(false)
+         .log(null)
+         .out(null)
+         .send();
+    });
+
     // Marker per inserimento route da moduli installati.
     // cmd module import inserisce chiamate a Routes.register(router) qui.
 
@@ -196,17 +286,20 @@ public class App
     // === AVVIO SERVER ===
 
     // Crea server Undertow HTTP/1.1 sulla porta configurata (default: 8080).
-    // Ascolta su tutte le interfacce (0.0.0.0), usa paths come root handler.
+    // Ascolta su tutte le interfacce (0.0.0.0). Root handler: tabella di routing compilata
+    // (path /api/ senza rotta → 404, altri path → staticHandler per SPA routing lato client),
+    // avvolta dalla compressione gzip/deflate negoziata (compression.*).
     server = Undertow.builder()
       .addHttpListener(port, "0.0.0.0")
-      .setHandler(paths)
+      .setHandler(Compression.wrap(router.compile(staticHandler), config))
       .build();
 
     // Shutdown hook per terminare gracefully le utility.
-    // Chiude thread pool AsyncExecutor, ferma Scheduler, pulisce RateLimiter
+    // Chiude thread pool AsyncExecutor e VirtualExecutor, ferma Scheduler, pulisce RateLimiter
     // e JWTBlacklist in-memory cache.
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       AsyncExecutor.shutdown();
+      VirtualExecutor.shutdown();
       Scheduler.shutdown();
       RateLimiter.shutdown();
       JWTBlacklist.shutdown();
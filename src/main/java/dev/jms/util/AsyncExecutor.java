@@ -13,6 +13,7 @@ public class AsyncExecutor
 {
   private static ExecutorService executor;
   private static int poolSize;
+  private static long maxBodySize = 10L * 1024 * 1024;
 
   /**
    * Inizializza l'executor con la dimensione specificata.
@@ -25,11 +26,23 @@ public class AsyncExecutor
    * @param size Dimensione del pool
    */
   public static void init(int size)
+  {
+    init(size, maxBodySize);
+  }
+
+  /**
+   * Inizializza l'executor con la dimensione e il limite del body specificati.
+   *
+   * @param size        Dimensione del pool
+   * @param maxBodySize dimensione massima in bytes del body ricevuto per gli handler async
+   */
+  public static void init(int size, long maxBodySize)
   {
     if (executor != null) {
       throw new IllegalStateException("AsyncExecutor already initialized");
     }
     poolSize = size;
+    AsyncExecutor.maxBodySize = maxBodySize;
     executor = Executors.newFixedThreadPool(
       size,
       r -> {
@@ -45,7 +58,17 @@ public class AsyncExecutor
         return t;
       }
     );
-    System.out.println("[info] AsyncExecutor inizializzato: pool size = " + size);
+    System.out.println("[info] AsyncExecutor inizializzato: pool size = " + size
+      + ", max body size = " + maxBodySize);
+  }
+
+  /**
+   * Restituisce la dimensione massima in bytes del body per gli handler async
+   * ({@code async.max.body.size}). Oltre il limite {@link HandlerAdapter} risponde 413.
+   */
+  public static long getMaxBodySize()
+  {
+    return maxBodySize;
   }
 
   /**
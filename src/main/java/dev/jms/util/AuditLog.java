@@ -36,7 +36,7 @@ public class AuditLog
         + "VALUES (?, ?, ?, ?, ?, ?::jsonb)";
 
     try {
-      db.query(sql, event, userId, username, ip, userAgent, detailsJson);
+      db.execute(sql, event, userId, username, ip, userAgent, detailsJson);
     } catch (Exception e) {
       logger.error("Audit log write failed for event '{}': {}", event, e.getMessage());
     }
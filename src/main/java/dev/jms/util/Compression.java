@@ -0,0 +1,144 @@
+package dev.jms.util;
+
+import io.undertow.predicate.Predicate;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.encoding.ContentEncodingRepository;
+import io.undertow.server.handlers.encoding.DeflateEncodingProvider;
+import io.undertow.server.handlers.encoding.EncodingHandler;
+import io.undertow.server.handlers.encoding.GzipEncodingProvider;
+import io.undertow.server.handlers.resource.PreCompressedResourceSupplier;
+import io.undertow.server.handlers.resource.ResourceManager;
+import io.undertow.server.handlers.resource.ResourceSupplier;
+import io.undertow.util.Headers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compressione delle risposte HTTP negoziata tramite {@code Accept-Encoding} (gzip, deflate).
+ *
+ * <p>Due livelli distinti:
+ * <ul>
+ *   <li><b>Risposte dinamiche</b> (API JSON, file statici senza variante precompressa):
+ *       {@link #wrap(HttpHandler, Config)} avvolge il root handler con un {@link EncodingHandler}.
+ *       La decisione è presa al commit della risposta: si comprime solo se il Content-Type è
+ *       nella allowlist e il body supera la soglia minima (o ha lunghezza ignota, cioè chunked).</li>
+ *   <li><b>File statici</b>: {@link #staticResources(ResourceManager)} serve i sibling {@code .gz}
+ *       generati a build time da Vite. Le risposte con {@code Content-Encoding} già impostato
+ *       non vengono ricompresse.</li>
+ * </ul>
+ *
+ * <p>Proprietà di configurazione:
+ * <ul>
+ *   <li>{@code compression.enabled} — abilita la compressione (default: {@code true})</li>
+ *   <li>{@code compression.min.size} — dimensione minima in bytes del body (default: {@code 1024})</li>
+ *   <li>{@code compression.types} — Content-Type comprimibili, separati da virgola</li>
+ * </ul>
+ */
+public class Compression
+{
+  private static final Log log = Log.get(Compression.class);
+
+  private static final String DEFAULT_TYPES =
+    "application/json,text/html,text/css,text/plain,text/javascript,application/javascript,image/svg+xml";
+
+  /**
+   * Avvolge l'handler con la compressione dinamica delle risposte.
+   * Restituisce {@code next} invariato se {@code compression.enabled=false}.
+   *
+   * @param next   handler da avvolgere (tipicamente il PathTemplateHandler root)
+   * @param config configurazione applicazione
+   * @return handler con compressione
+   */
+  public static HttpHandler wrap(HttpHandler next, Config config)
+  {
+    boolean enabled;
+    long minSize;
+    List<String> types;
+    Predicate compressible;
+    ContentEncodingRepository encodings;
+    EncodingHandler encoder;
+    HttpHandler result;
+
+    enabled = config.get("compression.enabled", "true").equalsIgnoreCase("true");
+    if (enabled) {
+      minSize = config.getInt("compression.min.size", 1024);
+      types = new ArrayList<>();
+      for (String t : config.get("compression.types", DEFAULT_TYPES).split(",")) {
+        if (!t.isBlank()) {
+          types.add(t.trim().toLowerCase());
+        }
+      }
+      compressible = new Compressible(minSize, types.toArray(new String[0]));
+      encodings = new ContentEncodingRepository()
+        .addEncodingHandler("gzip", new GzipEncodingProvider(), 50, compressible)
+        .addEncodingHandler("deflate", new DeflateEncodingProvider(), 10, compressible);
+      encoder = new EncodingHandler(next, encodings);
+      result = exchange -> {
+        exchange.getResponseHeaders().add(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+        encoder.handleRequest(exchange);
+      };
+      log.info("Compressione risposte abilitata (min size: {} bytes, types: {})", minSize, types);
+    } else {
+      result = next;
+      log.info("Compressione risposte disabilitata (compression.enabled=false)");
+    }
+    return result;
+  }
+
+  /**
+   * Restituisce un {@link ResourceSupplier} che serve il sibling {@code .gz} di un file statico
+   * quando il client accetta gzip e il sibling esiste; altrimenti il file originale.
+   *
+   * @param manager resource manager dei file statici
+   * @return supplier con supporto ai file precompressi
+   */
+  public static ResourceSupplier staticResources(ResourceManager manager)
+  {
+    return new PreCompressedResourceSupplier(manager).addEncoding("gzip", ".gz");
+  }
+
+  /**
+   * Predicato valutato al commit della risposta: Content-Type nella allowlist e
+   * Content-Length assente (chunked) o non inferiore alla soglia.
+   */
+  private static class Compressible implements Predicate
+  {
+    private final long minSize;
+    private final String[] types;
+
+    Compressible(long minSize, String[] types)
+    {
+      this.minSize = minSize;
+      this.types = types;
+    }
+
+    @Override
+    public boolean resolve(HttpServerExchange exchange)
+    {
+      String contentType;
+      String length;
+      boolean typeAllowed;
+      boolean result;
+
+      contentType = exchange.getResponseHeaders().getFirst(Headers.CONTENT_TYPE);
+      typeAllowed = false;
+      if (contentType != null) {
+        contentType = contentType.toLowerCase();
+        for (String t : types) {
+          if (contentType.startsWith(t)) {
+            typeAllowed = true;
+            break;
+          }
+        }
+      }
+      result = false;
+      if (typeAllowed) {
+        length = exchange.getResponseHeaders().getFirst(Headers.CONTENT_LENGTH);
+        result = length == null || Long.parseLong(length) >= minSize;
+      }
+      return result;
+    }
+  }
+}
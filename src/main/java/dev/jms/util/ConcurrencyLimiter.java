@@ -0,0 +1,190 @@
+package dev.jms.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limite adattivo di concorrenza per le rotte di {@link HandlerAdapter}.
+ *
+ * <p>Invece di accodare senza limiti nei worker di Undertow o nella coda di {@link AsyncExecutor}
+ * quando PostgreSQL rallenta, le richieste oltre il limite ricevono subito HTTP 503 con
+ * {@code Retry-After}, sull'IO thread.
+ *
+ * <p>Il limite segue l'algoritmo a gradiente (stile Netflix Gradient2) sulla latenza osservata:
+ * <ul>
+ *   <li>{@code shortRtt}: media esponenziale veloce della durata delle richieste</li>
+ *   <li>{@code longRtt}: media esponenziale lenta, riferimento "senza carico"</li>
+ *   <li>gradiente = {@code longRtt * tolleranza / shortRtt}, limitato a [0.5, 1]: quando la latenza
+ *       cresce oltre la tolleranza il limite scende proporzionalmente</li>
+ *   <li>nuovo limite = {@code limite * gradiente + sqrt(limite)} (margine di coda), smussato e
+ *       compreso tra {@code limiter.min} e {@code limiter.max}</li>
+ * </ul>
+ * Il limite cresce solo se le richieste in corso ne usano almeno la metà: un periodo di traffico
+ * basso non lo porta al massimo.
+ *
+ * <p>Ammissione per {@link Priority}: CRITICAL sempre, NORMAL sotto il limite, LOW sotto
+ * {@code limite * limiter.low.ratio}. L'ammissione è un CAS sul contatore delle richieste in corso;
+ * l'aggiornamento del limite usa {@code tryLock} e salta il campione se un altro thread sta già
+ * aggiornando. Nessuna allocazione sul percorso della richiesta.
+ */
+public class ConcurrencyLimiter
+{
+  private static final double TOLERANCE = 1.5;
+  private static final double SMOOTHING = 0.2;
+  private static final double SHORT_ALPHA = 0.1;
+  private static final double LONG_ALPHA = 0.002;
+
+  private static final AtomicInteger inFlight = new AtomicInteger();
+  private static final LongAdder rejected = new LongAdder();
+  private static final ReentrantLock update = new ReentrantLock();
+
+  private static boolean enabled = false;
+  private static int minLimit = 10;
+  private static int maxLimit = 400;
+  private static double lowRatio = 0.8;
+  private static String retryAfter = "1";
+  private static volatile int limit = 50;
+  private static double estimate = 50;
+  private static double shortRtt;
+  private static double longRtt;
+
+  /**
+   * Configura il limiter. Da chiamare una volta in {@code App.main()} prima dell'avvio del server.
+   *
+   * @param config configurazione applicazione ({@code limiter.*})
+   */
+  public static void init(Config config)
+  {
+    enabled = config.get("limiter.enabled", "true").equalsIgnoreCase("true");
+    minLimit = config.getInt("limiter.min", 10);
+    maxLimit = config.getInt("limiter.max", 400);
+    limit = Math.max(minLimit, Math.min(maxLimit, config.getInt("limiter.initial", 50)));
+    lowRatio = config.getInt("limiter.low.percent", 80) / 100.0;
+    retryAfter = String.valueOf(config.getInt("limiter.retry.after.seconds", 1));
+    estimate = limit;
+    shortRtt = 0;
+    longRtt = 0;
+    System.out.println("[info] ConcurrencyLimiter " + (enabled
+      ? "abilitato: limite iniziale " + limit + " (min " + minLimit + ", max " + maxLimit + ")"
+      : "disabilitato (limiter.enabled=false)"));
+  }
+
+  /**
+   * Tenta di ammettere una richiesta.
+   * Se ammessa, il chiamante deve invocare {@link #release} al termine.
+   *
+   * @param priority priorità della rotta
+   * @return {@code true} se ammessa, {@code false} se da rifiutare con 503
+   */
+  static boolean tryAcquire(Priority priority)
+  {
+    int current;
+    int max;
+    boolean result;
+
+    if (!enabled || priority == Priority.CRITICAL) {
+      inFlight.incrementAndGet();
+      result = true;
+    } else {
+      max = priority == Priority.LOW ? (int) (limit * lowRatio) : limit;
+      result = false;
+      current = inFlight.get();
+      while (current < max && !result) {
+        result = inFlight.compareAndSet(current, current + 1);
+        if (!result) {
+          current = inFlight.get();
+        }
+      }
+      if (!result) {
+        rejected.increment();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Rilascia una richiesta ammessa.
+   *
+   * @param rttNanos durata della richiesta, o un valore negativo se non significativa
+   *                 (es. body rifiutato prima dell'esecuzione)
+   */
+  static void release(long rttNanos)
+  {
+    int current;
+
+    current = inFlight.getAndDecrement();
+    if (enabled && rttNanos > 0 && update.tryLock()) {
+      try {
+        sample(rttNanos, current);
+      } finally {
+        update.unlock();
+      }
+    }
+  }
+
+  /** Aggiorna il limite con un campione di latenza (sotto {@link #update}). */
+  private static void sample(long rttNanos, int inFlightAtEnd)
+  {
+    double rtt;
+    double gradient;
+    double target;
+
+    rtt = rttNanos;
+    if (longRtt == 0) {
+      shortRtt = rtt;
+      longRtt = rtt;
+    } else {
+      shortRtt = shortRtt * (1 - SHORT_ALPHA) + rtt * SHORT_ALPHA;
+      longRtt = longRtt * (1 - LONG_ALPHA) + rtt * LONG_ALPHA;
+      // Dopo un lungo periodo lento il riferimento rientra rapidamente quando la latenza scende
+      if (longRtt > shortRtt * 2) {
+        longRtt = longRtt * 0.95;
+      }
+    }
+    gradient = Math.max(0.5, Math.min(1.0, longRtt * TOLERANCE / shortRtt));
+    target = estimate * gradient + Math.sqrt(estimate);
+    if (target > estimate && inFlightAtEnd < estimate / 2) {
+      target = estimate;
+    }
+    estimate = estimate * (1 - SMOOTHING) + target * SMOOTHING;
+    estimate = Math.max(minLimit, Math.min(maxLimit, estimate));
+    limit = (int) estimate;
+  }
+
+  /** Valore di {@code Retry-After} (secondi) per le risposte 503. */
+  static String retryAfter()
+  {
+    return retryAfter;
+  }
+
+  /**
+   * Statistiche per monitoraggio.
+   */
+  public static Stats getStats()
+  {
+    return new Stats(enabled, limit, inFlight.get(), rejected.sum());
+  }
+
+  /** Snapshot delle statistiche del limiter. */
+  public static class Stats
+  {
+    /** Limiter attivo. */
+    public final boolean enabled;
+    /** Limite corrente di richieste concorrenti (NORMAL). */
+    public final int limit;
+    /** Richieste ammesse e non ancora completate. */
+    public final int inFlight;
+    /** Richieste rifiutate con 503 dall'avvio. */
+    public final long rejected;
+
+    /** Crea uno snapshot con i valori forniti. */
+    Stats(boolean enabled, int limit, int inFlight, long rejected)
+    {
+      this.enabled = enabled;
+      this.limit = limit;
+      this.inFlight = inFlight;
+      this.rejected = rejected;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package dev.jms.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contatori per rotta dell'uso delle connessioni database.
+ *
+ * <p>Alimentato da {@link HandlerAdapter} al termine di ogni richiesta: confronta il tempo
+ * in cui il {@link DB} della richiesta ha trattenuto una connessione con il tempo totale
+ * della richiesta. Un rapporto basso indica che la connessione viene usata solo per
+ * il tempo strettamente necessario; un rapporto vicino a 1 indica una rotta che
+ * trattiene la connessione anche mentre non interroga il database.
+ *
+ * <p>Thread-safe: {@link ConcurrentHashMap} per rotta e {@link LongAdder} per i contatori.
+ */
+public class ConnectionUsage
+{
+  private static final ConcurrentHashMap<String, Counters> routes = new ConcurrentHashMap<>();
+
+  /**
+   * Registra l'esito di una richiesta.
+   *
+   * @param route        identificativo della rotta (es. {@code "GET /api/user/accounts"})
+   * @param heldNanos    nanosecondi di possesso di connessioni
+   * @param totalNanos   durata totale della richiesta in nanosecondi
+   * @param acquisitions numero di connessioni acquisite dal pool
+   */
+  static void record(String route, long heldNanos, long totalNanos, int acquisitions)
+  {
+    Counters c;
+
+    c = routes.computeIfAbsent(route, r -> new Counters());
+    c.requests.increment();
+    c.acquisitions.add(acquisitions);
+    c.heldNanos.add(heldNanos);
+    c.totalNanos.add(totalNanos);
+    if (acquisitions == 0) {
+      c.withoutConnection.increment();
+    }
+  }
+
+  /**
+   * Statistiche per monitoraggio, una voce per rotta.
+   */
+  public static List<Stats> getStats()
+  {
+    List<Stats> result;
+
+    result = new ArrayList<>();
+    for (Map.Entry<String, Counters> e : routes.entrySet()) {
+      Counters c;
+      c = e.getValue();
+      result.add(new Stats(
+        e.getKey(),
+        c.requests.sum(),
+        c.withoutConnection.sum(),
+        c.acquisitions.sum(),
+        c.heldNanos.sum() / 1_000_000,
+        c.totalNanos.sum() / 1_000_000
+      ));
+    }
+    return result;
+  }
+
+  /** Contatori cumulativi di una rotta. */
+  private static class Counters
+  {
+    final LongAdder requests = new LongAdder();
+    final LongAdder withoutConnection = new LongAdder();
+    final LongAdder acquisitions = new LongAdder();
+    final LongAdder heldNanos = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+  }
+
+  /** Snapshot delle statistiche di una rotta. */
+  public static class Stats
+  {
+    /** Rotta (metodo + path template). */
+    public final String route;
+    /** Numero di richieste servite. */
+    public final long requests;
+    /** Richieste completate senza acquisire connessioni. */
+    public final long requestsWithoutConnection;
+    /** Numero totale di connessioni acquisite dal pool. */
+    public final long acquisitions;
+    /** Millisecondi totali di possesso di connessioni. */
+    public final long heldMillis;
+    /** Millisecondi totali di durata delle richieste. */
+    public final long totalMillis;
+
+    /** Crea uno snapshot con i valori forniti. */
+    Stats(String route, long requests, long requestsWithoutConnection, long acquisitions,
+          long heldMillis, long totalMillis)
+    {
+      this.route = route;
+      this.requests = requests;
+      this.requestsWithoutConnection = requestsWithoutConnection;
+      this.acquisitions = acquisitions;
+      this.heldMillis = heldMillis;
+      this.totalMillis = totalMillis;
+    }
+
+    /** Frazione del tempo di richiesta in cui una connessione è stata trattenuta (0..1). */
+    public double heldRatio()
+    {
+      return totalMillis > 0 ? (double) heldMillis / totalMillis : 0.0;
+    }
+  }
+}
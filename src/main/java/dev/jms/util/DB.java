@@ -10,19 +10,97 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Java database abstraction layer.
  * Thin wrapper over plain JDBC with HikariCP as DataSource provider.
  * No annotations, no AOP, no hidden behavior.
+ *
+ * <p>La connessione è acquisita dal pool in modo lazy alla prima operazione
+ * ({@code select}, {@code execute}, {@code cursor}, {@code begin}) e restituita appena
+ * possibile: subito dopo ogni istruzione in auto-commit, al {@link #commit()} /
+ * {@link #rollback()} di una transazione, alla chiusura dell'ultimo {@link Cursor}
+ * aperto. Richieste che non interrogano il database non occupano connessioni.
+ *
+ * <p>Letture tipizzate: {@link #select(String, RowMapper, Object...)} con un {@link RowMapper}
+ * esplicito, oppure {@link #select(String, Class, Object...)} per costruire direttamente record
+ * Java dalle colonne (camelCase ↔ snake_case), senza mappe intermedie per riga.
+ *
+ * <p>Letture in streaming: {@link #cursor}, {@link #stream(String, RowMapper, Object...)} e
+ * {@link #stream(String, Class, Object...)} leggono le righe a blocchi di {@code db.cursor.fetch.size}
+ * tramite un portale lato server, senza caricare l'intero risultato in memoria.
+ *
+ * <p>Scritture massive: {@link #batch} e {@link #batchReturning} inviano blocchi di
+ * {@code db.batch.size} righe per round-trip invece di un'istruzione per riga.
+ *
+ * <p>Replica di sola lettura (opzionale, {@code db.replica.*}): le rotte marcate con
+ * {@link Router#readOnly(String)} ricevono un'istanza sulla replica per le richieste GET;
+ * negli altri handler {@link #replica()} restituisce un'istanza per le singole letture pesanti.
+ * Un controllo periodico del ritardo di replica riporta le letture sul primario quando la
+ * replica è irraggiungibile o oltre {@code db.replica.max.lag.seconds}.
+ *
+ * <p>Pool per classe di carico ({@link Workload}): oltre al pool principale ({@code interactive})
+ * {@link #init} può creare i pool {@code async} e {@code jobs}, così un import o un report lento
+ * non esaurisce le connessioni delle rotte interattive. {@link HandlerAdapter} e {@link Scheduler}
+ * scelgono il pool in automatico; {@link #getDataSource(Workload)} per il codice fuori richiesta.
+ *
+ * <p>Ogni istruzione è registrata in {@link SqlStats} per impronta del testo SQL (chiamate, tempi,
+ * righe, errori); le istruzioni oltre {@code db.slow.query.ms} sono loggate con i parametri oscurati.
  */
 public class DB
 {
   private static HikariDataSource sharedDataSource;
 
+  /** Pool dedicati per classe di carico ({@link Workload}), {@code null} se condividono il pool principale */
+  private static final HikariDataSource[] workloadPools = new HikariDataSource[Workload.values().length];
+
+  /** Pool della replica di sola lettura, {@code null} se {@code db.replica.host} è vuoto */
+  private static HikariDataSource replicaDataSource;
+
+  /** Controllo periodico del ritardo di replica */
+  private static ScheduledExecutorService replicaMonitor;
+
+  /** Ritardo massimo tollerato prima di tornare al primario ({@code db.replica.max.lag.seconds}) */
+  private static int replicaMaxLag = 10;
+
+  /** Replica raggiungibile ed entro il ritardo massimo all'ultimo controllo */
+  private static volatile boolean replicaHealthy;
+
+  /** Ritardo di replica all'ultimo controllo, in secondi (-1 se non raggiungibile) */
+  private static volatile double replicaLag = -1;
+
+  /** Letture read-only servite dal primario perché la replica non era disponibile */
+  private static final LongAdder replicaFallbacks = new LongAdder();
+
+  /**
+   * Posizioni WAL del primario non ancora riprodotte dalla replica, dalla più vecchia:
+   * {@code {lsn, System.nanoTime() della lettura}}. Usate solo dal thread di controllo.
+   */
+  private static final ArrayDeque<long[]> replicaSamples = new ArrayDeque<>();
+
+  /** Campioni trattenuti al massimo: oltre, conta solo il più vecchio (replica ferma da molto) */
+  private static final int REPLICA_MAX_SAMPLES = 1024;
+
+  /** Righe lette dal server per ogni round-trip dei cursori ({@code db.cursor.fetch.size}) */
+  private static int defaultFetchSize = 1000;
+
+  /** Righe inviate per ogni executeBatch di {@link #batch} ({@code db.batch.size}) */
+  private static int batchSize = 1000;
+
   private final DataSource dataSource;
 
   /** Connection bound to current thread */
@@ -31,6 +109,33 @@ public class DB
   /** Last generated key bound to current thread */
   private final ThreadLocal<Long> lastGeneratedKey;
 
+  /** Transazione manuale in corso (connessione trattenuta fino a commit/rollback) */
+  private boolean inTransaction;
+
+  /** Cursori aperti (connessione trattenuta fino alla loro chiusura) */
+  private final ArrayList<Cursor> openCursors;
+
+  /** Transazione implicita aperta da un cursore in auto-commit (chiusa con l'ultimo cursore) */
+  private boolean cursorTransaction;
+
+  /** Righe per round-trip dei cursori di questa istanza */
+  private int fetchSize;
+
+  /** Istante di acquisizione della connessione corrente (System.nanoTime) */
+  private long acquiredAt;
+
+  /** Tempo totale di possesso di connessioni, in nanosecondi */
+  private long heldNanos;
+
+  /** Numero di connessioni acquisite dal pool */
+  private int acquisitions;
+
+  /** Ripartizione dei tempi della richiesta corrente, se presente */
+  private Timing timing;
+
+  /** Istanza per le letture su replica creata da {@link #replica()}, chiusa con questa */
+  private DB replica;
+
   /**
    * Crea un'istanza DB associata al DataSource fornito.
    *
@@ -41,6 +146,8 @@ public class DB
     this.dataSource = dataSource;
     this.connection = new ThreadLocal<>();
     this.lastGeneratedKey = ThreadLocal.withInitial(() -> -1L);
+    this.openCursors = new ArrayList<>();
+    this.fetchSize = defaultFetchSize;
   }
 
   // =========================
@@ -71,6 +178,9 @@ public class DB
       dbPort = config.get("db.port", "5432");
       password = config.get("db.password", "");
       poolSize = config.getInt("db.pool.size", 10);
+      defaultFetchSize = Math.max(1, config.getInt("db.cursor.fetch.size", 1000));
+      batchSize = Math.max(1, config.getInt("db.batch.size", 1000));
+      SqlStats.init(config);
 
       try {
         hc = new HikariConfig();
@@ -78,13 +188,167 @@ public class DB
         hc.setUsername(user);
         hc.setPassword(password);
         hc.setMaximumPoolSize(poolSize);
+        hc.setConnectionTimeout(Math.max(250, config.getInt("db.pool.interactive.timeout.ms", 30000)));
         hc.setInitializationFailTimeout(-1);
+        hc.setPoolName("interactive");
+        hc.setMetricsTrackerFactory(Metrics::poolTracker);
+        // Le INSERT in batch diventano INSERT multi-riga: un round-trip per blocco invece che per riga
+        hc.addDataSourceProperty("reWriteBatchedInserts", "true");
         sharedDataSource = new HikariDataSource(hc);
+        workloadPools[Workload.INTERACTIVE.ordinal()] = sharedDataSource;
         System.out.println("[info] Pool database inizializzato (" + host + ":" + dbPort + "/" + name + ")");
       } catch (Exception e) {
         System.err.println("[warn] Inizializzazione pool fallita: " + e.getMessage());
       }
+      if (sharedDataSource != null) {
+        initWorkloadPools(config, "jdbc:postgresql://" + host + ":" + dbPort + "/" + name, user, password);
+        initReplica(config, dbPort, name, user, password, poolSize);
+      }
+    }
+  }
+
+  /**
+   * Crea i pool dedicati delle classi {@link Workload#ASYNC} e {@link Workload#JOBS}
+   * ({@code db.pool.<classe>.size}, {@code db.pool.<classe>.timeout.ms}) sullo stesso database
+   * del pool principale. Con dimensione 0 la classe condivide il pool principale.
+   */
+  private static void initWorkloadPools(Config config, String url, String user, String password)
+  {
+    String key;
+    int size;
+    HikariConfig hc;
+
+    for (Workload w : Workload.values()) {
+      key = w.name().toLowerCase();
+      size = config.getInt("db.pool." + key + ".size", 0);
+      if (w != Workload.INTERACTIVE && size > 0) {
+        try {
+          hc = new HikariConfig();
+          hc.setJdbcUrl(url);
+          hc.setUsername(user);
+          hc.setPassword(password);
+          hc.setMaximumPoolSize(size);
+          hc.setConnectionTimeout(Math.max(250, config.getInt("db.pool." + key + ".timeout.ms", 30000)));
+          hc.setInitializationFailTimeout(-1);
+          hc.setPoolName(key);
+          hc.setMetricsTrackerFactory(Metrics::poolTracker);
+          hc.addDataSourceProperty("reWriteBatchedInserts", "true");
+          workloadPools[w.ordinal()] = new HikariDataSource(hc);
+          System.out.println("[info] Pool database '" + key + "' inizializzato (" + size + " connessioni)");
+        } catch (Exception e) {
+          System.err.println("[warn] Inizializzazione pool '" + key + "' fallita, uso del pool principale: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Crea il pool della replica se {@code db.replica.host} è valorizzato e avvia il controllo
+   * periodico del ritardo. Porta, database, credenziali e dimensione del pool usano come
+   * default i valori del primario.
+   */
+  private static void initReplica(Config config, String dbPort, String name, String user, String password, int poolSize)
+  {
+    String host;
+    String port;
+    String db;
+    int interval;
+    HikariConfig hc;
+
+    host = config.get("db.replica.host", "");
+    if (!host.isBlank()) {
+      port = config.get("db.replica.port", dbPort);
+      db = config.get("db.replica.name", name);
+      replicaMaxLag = config.getInt("db.replica.max.lag.seconds", 10);
+      interval = Math.max(1, config.getInt("db.replica.lag.check.seconds", 5));
+      try {
+        hc = new HikariConfig();
+        hc.setJdbcUrl("jdbc:postgresql://" + host + ":" + port + "/" + db);
+        hc.setUsername(config.get("db.replica.user", user));
+        hc.setPassword(config.get("db.replica.password", password));
+        hc.setMaximumPoolSize(config.getInt("db.replica.pool.size", poolSize));
+        hc.setInitializationFailTimeout(-1);
+        hc.setReadOnly(true);
+        hc.setPoolName("replica");
+        hc.setMetricsTrackerFactory(Metrics::poolTracker);
+        replicaDataSource = new HikariDataSource(hc);
+        replicaMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread t;
+          t = new Thread(r, "db-replica-lag");
+          t.setDaemon(true);
+          return t;
+        });
+        replicaMonitor.scheduleWithFixedDelay(DB::checkReplica, 0, interval, TimeUnit.SECONDS);
+        System.out.println("[info] Pool replica inizializzato (" + host + ":" + port + "/" + db
+          + ", ritardo massimo " + replicaMaxLag + "s)");
+      } catch (Exception e) {
+        System.err.println("[warn] Inizializzazione pool replica fallita, letture sul primario: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Misura il ritardo della replica rispetto al primario: a ogni controllo registra la posizione
+   * WAL scritta su disco dal primario e la confronta con quella riprodotta dalla replica. Il ritardo
+   * è il tempo trascorso dalla posizione più vecchia non ancora riprodotta (0 se la replica è
+   * allineata, anche con primario inattivo). Un walreceiver disconnesso non riproduce più nulla,
+   * quindi il ritardo cresce finché il primario scrive. Replica o primario irraggiungibili, o
+   * replica oltre {@code db.replica.max.lag.seconds}, escludono la replica fino al controllo successivo.
+   */
+  private static void checkReplica()
+  {
+    long sampledAt;
+    long primaryLsn;
+    long replayLsn;
+    long[] oldest;
+    double lag;
+
+    lag = -1;
+    try {
+      sampledAt = System.nanoTime();
+      primaryLsn = walLsn(sharedDataSource, "SELECT pg_current_wal_flush_lsn()");
+      // NULL se il server non è in recovery (non è una standby): nessun WAL da attendere
+      replayLsn = walLsn(replicaDataSource,
+        "SELECT CASE WHEN pg_is_in_recovery() THEN pg_last_wal_replay_lsn() END");
+      if (replicaSamples.size() < REPLICA_MAX_SAMPLES) {
+        replicaSamples.addLast(new long[] { primaryLsn, sampledAt });
+      }
+      while (!replicaSamples.isEmpty() && (replayLsn < 0 || replicaSamples.peekFirst()[0] <= replayLsn)) {
+        replicaSamples.removeFirst();
+      }
+      oldest = replicaSamples.peekFirst();
+      lag = oldest != null ? (System.nanoTime() - oldest[1]) / 1e9 : 0;
+    } catch (Exception e) {
+      if (replicaHealthy) {
+        System.err.println("[warn] Controllo replica fallito, letture sul primario: " + e.getMessage());
+      }
     }
+    if (lag > replicaMaxLag && replicaHealthy) {
+      System.err.println("[warn] Ritardo replica " + lag + "s oltre " + replicaMaxLag + "s, letture sul primario");
+    }
+    replicaLag = lag;
+    replicaHealthy = lag >= 0 && lag <= replicaMaxLag;
+  }
+
+  /** Legge una posizione WAL ({@code pg_lsn}, es. {@code 16/B374D848}) come intero, -1 se NULL. */
+  private static long walLsn(DataSource ds, String sql) throws SQLException
+  {
+    String lsn;
+    int slash;
+    long result;
+
+    result = -1;
+    try (Connection c = ds.getConnection(); Statement stmt = c.createStatement()) {
+      stmt.setQueryTimeout(5);
+      try (ResultSet rs = stmt.executeQuery(sql)) {
+        lsn = rs.next() ? rs.getString(1) : null;
+      }
+    }
+    if (lsn != null) {
+      slash = lsn.indexOf('/');
+      result = Long.parseLong(lsn.substring(0, slash), 16) << 32 | Long.parseLong(lsn.substring(slash + 1), 16);
+    }
+    return result;
   }
 
   /**
@@ -108,6 +372,96 @@ public class DB
     return sharedDataSource;
   }
 
+  /**
+   * Restituisce il pool della classe di carico indicata, o il pool principale se la classe
+   * non ha un pool dedicato. Restituisce {@code null} se il database non è configurato.
+   *
+   * @param workload classe di carico
+   * @return DataSource della classe, o {@code null}
+   */
+  public static DataSource getDataSource(Workload workload)
+  {
+    DataSource result;
+
+    result = workloadPools[workload.ordinal()];
+    return result != null ? result : sharedDataSource;
+  }
+
+  /**
+   * Apre una connessione dedicata, fuori dai pool, sullo stesso database del pool principale.
+   * Per sessioni di lunga durata che non devono sottrarre una connessione al pool
+   * (ad esempio {@code LISTEN}). La chiusura è a carico del chiamante.
+   *
+   * @return connessione in auto-commit
+   * @throws SQLException se il database non è configurato o la connessione fallisce
+   */
+  public static Connection connectDedicated() throws SQLException
+  {
+    if (sharedDataSource == null) {
+      throw new SQLException("Database not configured");
+    }
+    return DriverManager.getConnection(sharedDataSource.getJdbcUrl(),
+                                       sharedDataSource.getUsername(), sharedDataSource.getPassword());
+  }
+
+  /**
+   * Pool della classe di carico per un'istanza che userebbe {@code primary}. Solo il DataSource
+   * condiviso viene deviato; altri DataSource (test, pool esterni) sono restituiti invariati.
+   *
+   * @param primary  DataSource di default (tipicamente quello passato al {@link Router})
+   * @param workload classe di carico
+   * @return DataSource da usare
+   */
+  static DataSource dataSourceFor(DataSource primary, Workload workload)
+  {
+    return primary != null && primary == sharedDataSource ? getDataSource(workload) : primary;
+  }
+
+  /** Verifica se il DataSource è uno dei pool del database primario gestiti da questa classe. */
+  private static boolean isPrimaryPool(DataSource ds)
+  {
+    boolean result;
+
+    result = false;
+    for (HikariDataSource pool : workloadPools) {
+      if (pool != null && pool == ds) {
+        result = true;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sorgente per le letture che tollerano il ritardo di replica: la replica se configurata
+   * ed entro il ritardo massimo, altrimenti {@code primary}. Solo i pool del primario creati da
+   * {@link #init} vengono deviati; altri DataSource (test, pool esterni) sono restituiti invariati.
+   *
+   * @param primary DataSource che l'istanza userebbe per le scritture
+   * @return DataSource da usare per le letture
+   */
+  static DataSource readDataSource(DataSource primary)
+  {
+    DataSource result;
+
+    result = primary;
+    if (replicaDataSource != null && primary != null && isPrimaryPool(primary)) {
+      if (replicaHealthy) {
+        result = replicaDataSource;
+      } else {
+        replicaFallbacks.increment();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Stato della replica per monitoraggio.
+   */
+  public static ReplicaStats getReplicaStats()
+  {
+    return new ReplicaStats(replicaDataSource != null, replicaHealthy, replicaLag, replicaFallbacks.sum());
+  }
+
   // =========================
   // Ciclo di vita connessione
   // =========================
@@ -116,33 +470,68 @@ public class DB
    * Apre una connessione dal pool e la associa al thread corrente.
    * No-op se una connessione è già aperta sul thread.
    *
+   * <p>Non è necessario chiamarlo: le operazioni acquisiscono la connessione in modo lazy.
+   * Una connessione aperta esplicitamente resta associata fino alla prima istruzione
+   * in auto-commit o a {@link #close()}.
+   *
    * @throws Exception se la connessione non può essere acquisita
    */
   public void open() throws Exception
   {
-    Connection c;
     if (connection.get() == null) {
-      c = dataSource.getConnection();
-      connection.set(c);
+      acquire();
     }
   }
 
   /**
    * Rilascia la connessione associata al thread corrente e la restituisce al pool.
+   * Chiude i cursori (e gli stream) ancora aperti; una transazione non completata
+   * viene annullata dal pool.
+   * Dopo la chiusura l'istanza resta utilizzabile: la prossima operazione acquisisce
+   * una nuova connessione.
    */
   public void close()
   {
-    Connection c;
-    c = connection.get();
-    if (c != null) {
-      try {
-        c.close();
-      } catch (Exception ignored) {}
-      connection.remove();
-      lastGeneratedKey.remove();
+    try {
+      closeCursors();
+    } catch (DBException e) {
+      // Già registrato da endCursorTransaction: la connessione va comunque restituita al pool
+    }
+    inTransaction = false;
+    release();
+    lastGeneratedKey.remove();
+    if (replica != null && replica != this) {
+      replica.close();
     }
   }
 
+  /**
+   * Istanza per letture che tollerano il ritardo di replica (report, liste, ricerche),
+   * all'interno di un handler che scrive sul primario. Senza replica configurata, o con
+   * replica in ritardo, restituisce questa stessa istanza.
+   *
+   * <p>L'istanza è creata una volta per richiesta, condivide la {@link Timing} e viene chiusa
+   * da {@link #close()}. Le scritture sulla replica falliscono (connessioni read-only).
+   *
+   * @return istanza per le letture
+   */
+  public DB replica()
+  {
+    DataSource ds;
+
+    if (replica == null) {
+      ds = readDataSource(dataSource);
+      if (ds == dataSource) {
+        replica = this;
+      } else {
+        replica = new DB(ds);
+        replica.timing = timing;
+        replica.fetchSize = fetchSize;
+      }
+    }
+    return replica;
+  }
+
   /**
    * Verifica se la connessione corrente è aperta e non chiusa.
    *
@@ -162,16 +551,134 @@ public class DB
     return result;
   }
 
+  /**
+   * Tempo totale, in nanosecondi, durante il quale l'istanza ha trattenuto una connessione.
+   * Include la connessione eventualmente ancora aperta.
+   *
+   * @return nanosecondi di possesso
+   */
+  long heldNanos()
+  {
+    long result;
+
+    result = heldNanos;
+    if (connection.get() != null) {
+      result += System.nanoTime() - acquiredAt;
+    }
+    if (replica != null && replica != this) {
+      result += replica.heldNanos();
+    }
+    return result;
+  }
+
+  /**
+   * Numero di connessioni acquisite dal pool da questa istanza.
+   *
+   * @return numero di acquisizioni
+   */
+  int acquisitions()
+  {
+    return replica != null && replica != this ? acquisitions + replica.acquisitions() : acquisitions;
+  }
+
+  /**
+   * Associa la {@link Timing} della richiesta: attesa del pool ed esecuzione SQL
+   * vengono attribuite alle rispettive fasi.
+   *
+   * @param timing timing della richiesta
+   */
+  void timing(Timing timing)
+  {
+    this.timing = timing;
+    if (replica != null && replica != this) {
+      replica.timing = timing;
+    }
+  }
+
+  /**
+   * Attribuisce a {@code sql} il tempo trascorso da {@code start} e lo registra nelle
+   * statistiche dell'istruzione ({@link SqlStats}).
+   *
+   * @param sql    testo SQL eseguito
+   * @param params parametri legati ({@code null} per i batch)
+   * @param start  istante di inizio (System.nanoTime)
+   * @param rows   righe lette o modificate, negativo se l'istruzione è fallita
+   */
+  private void sqlTimed(String sql, Object[] params, long start, long rows)
+  {
+    long elapsed;
+
+    elapsed = System.nanoTime() - start;
+    if (timing != null) {
+      timing.sql(elapsed);
+    }
+    SqlStats.record(sql, elapsed, rows, params);
+  }
+
+  /** Restituisce la connessione del thread, acquisendola dal pool se assente. */
   private Connection requireConnection() throws Exception
   {
     Connection c;
     c = connection.get();
     if (c == null) {
-      throw new Exception("Connection not available (call open())");
+      if (dataSource == null) {
+        throw new Exception("Connection not available (no DataSource)");
+      }
+      c = acquire();
+    }
+    return c;
+  }
+
+  /** Acquisisce una connessione dal pool e la associa al thread corrente. */
+  private Connection acquire() throws SQLException
+  {
+    Connection c;
+    long start;
+    start = System.nanoTime();
+    c = dataSource.getConnection();
+    connection.set(c);
+    acquiredAt = System.nanoTime();
+    acquisitions++;
+    if (timing != null) {
+      timing.acquire(acquiredAt - start);
     }
     return c;
   }
 
+  /** Restituisce al pool la connessione del thread corrente, se presente. */
+  private void release()
+  {
+    Connection c;
+    c = connection.get();
+    if (c != null) {
+      heldNanos += System.nanoTime() - acquiredAt;
+      try {
+        c.close();
+      } catch (Exception ignored) {}
+      connection.remove();
+    }
+  }
+
+  /**
+   * Impedisce alle scritture di entrare nella transazione implicita di un cursore aperto:
+   * il loro esito dipenderebbe dal commit alla chiusura del cursore.
+   */
+  private void requireWritable()
+  {
+    if (cursorTransaction) {
+      throw new IllegalStateException("Write with an open cursor outside begin(): "
+        + "close the cursor or use an explicit transaction");
+    }
+  }
+
+  /** Rilascia la connessione se non ci sono transazioni o cursori che la trattengono. */
+  private void releaseIfIdle()
+  {
+    if (!inTransaction && openCursors.isEmpty()) {
+      release();
+    }
+  }
+
   // =========================
   // Transazioni (manuali)
   // =========================
@@ -186,33 +693,56 @@ public class DB
     Connection c;
     c = requireConnection();
     c.setAutoCommit(false);
+    inTransaction = true;
+    // Una transazione implicita dei cursori diventa quella manuale: commit/rollback la chiudono
+    cursorTransaction = false;
   }
 
   /**
    * Esegue il commit della transazione corrente e riabilita l'auto-commit.
+   * La connessione torna al pool subito dopo (salvo cursori ancora aperti).
    *
-   * @throws Exception se la connessione non è disponibile o il commit fallisce
+   * @throws Exception se nessuna transazione è in corso o il commit fallisce
    */
   public void commit() throws Exception
   {
     Connection c;
-    c = requireConnection();
-    c.commit();
-    c.setAutoCommit(true);
+    c = connection.get();
+    if (c == null) {
+      throw new Exception("No transaction in progress (call begin())");
+    }
+    try {
+      c.commit();
+      c.setAutoCommit(true);
+    } finally {
+      inTransaction = false;
+      cursorTransaction = false;
+      releaseIfIdle();
+    }
   }
 
   /**
    * Esegue il rollback della transazione corrente e riabilita l'auto-commit.
+   * No-op se nessuna connessione è associata al thread.
+   * La connessione torna al pool subito dopo (salvo cursori ancora aperti).
    *
-   * @throws Exception se la connessione non è disponibile o il rollback fallisce
+   * @throws Exception se il rollback fallisce
    */
   public void rollback() throws Exception
   {
     Connection c;
-    c = requireConnection();
-    if (!c.getAutoCommit()) {
-      c.rollback();
-      c.setAutoCommit(true);
+    c = connection.get();
+    if (c != null) {
+      try {
+        if (!c.getAutoCommit()) {
+          c.rollback();
+          c.setAutoCommit(true);
+        }
+      } finally {
+        inTransaction = false;
+        cursorTransaction = false;
+        releaseIfIdle();
+      }
     }
   }
 
@@ -220,22 +750,163 @@ public class DB
   // Query di scrittura
   // =========================
 
+  /**
+   * Esegue un'istruzione di scrittura (UPDATE, DELETE, INSERT senza chiave) e restituisce
+   * il numero di righe modificate. Non richiede chiavi generate: il server non restituisce
+   * le righe modificate.
+   *
+   * @param sql    istruzione SQL con placeholder {@code ?}
+   * @param params parametri da legare ai placeholder
+   * @return numero di righe modificate
+   * @throws Exception se l'esecuzione fallisce
+   */
+  public int execute(String sql, Object... params) throws Exception
+  {
+    Connection c;
+    int rows;
+    long start;
+
+    requireWritable();
+    c = requireConnection();
+    rows = -1;
+    start = System.nanoTime();
+    try (PreparedStatement stmt = c.prepareStatement(sql)) {
+      bindParameters(stmt, params);
+      rows = stmt.executeUpdate();
+    } finally {
+      sqlTimed(sql, params, start, rows);
+      releaseIfIdle();
+    }
+    return rows;
+  }
+
+  /**
+   * Esegue una INSERT e restituisce la chiave generata nella colonna {@code id}
+   * (il driver aggiunge {@code RETURNING id}: nessun'altra colonna viene trasferita).
+   *
+   * @param sql    istruzione INSERT con placeholder {@code ?}, senza clausola RETURNING
+   * @param params parametri da legare ai placeholder
+   * @return valore di {@code id} della riga inserita
+   * @throws Exception se l'esecuzione fallisce o nessuna riga viene inserita
+   */
+  public long insert(String sql, Object... params) throws Exception
+  {
+    Connection c;
+    long result;
+    long start;
+    int rows;
+
+    requireWritable();
+    c = requireConnection();
+    rows = -1;
+    start = System.nanoTime();
+    try (PreparedStatement stmt = c.prepareStatement(sql, new String[] { "id" })) {
+      bindParameters(stmt, params);
+      rows = stmt.executeUpdate();
+      try (ResultSet keys = stmt.getGeneratedKeys()) {
+        if (!keys.next()) {
+          rows = -1;
+          throw new Exception("No auto-generated key available");
+        }
+        result = keys.getLong(1);
+      }
+    } finally {
+      sqlTimed(sql, params, start, rows);
+      releaseIfIdle();
+    }
+    return result;
+  }
+
+  /**
+   * Esegue un'istruzione di scrittura con clausola {@code RETURNING} esplicita e converte
+   * la prima riga restituita con il mapper.
+   *
+   * @param sql    istruzione SQL con placeholder {@code ?} e clausola RETURNING
+   * @param mapper conversione riga → oggetto
+   * @param params parametri da legare ai placeholder
+   * @param <T>    tipo del risultato
+   * @return oggetto della prima riga restituita, o {@code null} se nessuna riga
+   * @throws Exception se l'esecuzione o la conversione falliscono
+   */
+  public <T> T insertReturning(String sql, RowMapper<T> mapper, Object... params) throws Exception
+  {
+    return executeReturning(sql, layout -> mapper, params);
+  }
+
+  /**
+   * Come {@link #insertReturning(String, RowMapper, Object...)}, costruendo un record dalla riga
+   * restituita (stesse regole di {@link #select(String, Class, Object...)}).
+   *
+   * @param sql    istruzione SQL con placeholder {@code ?} e clausola RETURNING
+   * @param type   classe record da costruire
+   * @param params parametri da legare ai placeholder
+   * @param <T>    tipo record
+   * @return record della prima riga restituita, o {@code null} se nessuna riga
+   * @throws Exception se l'esecuzione o la conversione falliscono
+   */
+  public <T extends Record> T insertReturning(String sql, Class<T> type, Object... params) throws Exception
+  {
+    return executeReturning(sql, RecordMapper.of(type)::bind, params);
+  }
+
+  /** Esecuzione comune di insertReturning: {@code execute()} sulla DML, poi la prima riga del RETURNING. */
+  private <T> T executeReturning(String sql, Function<Row.Layout, RowMapper<T>> binder, Object... params)
+    throws Exception
+  {
+    Connection c;
+    T result;
+    long start;
+    int rows;
+
+    requireWritable();
+    c = requireConnection();
+    result = null;
+    rows = -1;
+    start = System.nanoTime();
+    try (PreparedStatement stmt = c.prepareStatement(sql)) {
+      bindParameters(stmt, params);
+      if (stmt.execute()) {
+        try (ResultSet rs = stmt.getResultSet()) {
+          Row row;
+
+          row = new Row(rs, Row.Layout.of(rs.getMetaData()));
+          if (rs.next()) {
+            result = binder.apply(row.layout()).map(row);
+          }
+        }
+      }
+      rows = result != null ? 1 : 0;
+    } finally {
+      sqlTimed(sql, params, start, rows);
+      releaseIfIdle();
+    }
+    return result;
+  }
+
   /**
    * Esegue una query di scrittura (INSERT, UPDATE, DELETE) e restituisce il numero di righe modificate.
    * Aggiorna {@link #lastInsertId()} se la query genera una chiave auto-generata.
    *
+   * <p>Il driver PostgreSQL aggiunge {@code RETURNING *} all'istruzione per ottenere le chiavi:
+   * ogni riga modificata viene trasferita al client.
+   *
    * @param sql    istruzione SQL con placeholder {@code ?}
    * @param params parametri da legare ai placeholder
    * @return numero di righe modificate
    * @throws Exception se l'esecuzione fallisce
+   * @deprecated usare {@link #execute}, {@link #insert} o {@link #insertReturning(String, RowMapper, Object...)}
    */
+  @Deprecated
   public int query(String sql, Object... params) throws Exception
   {
     Connection c;
     int rows;
+    long start;
 
+    requireWritable();
     c = requireConnection();
-    rows = 0;
+    rows = -1;
+    start = System.nanoTime();
     try (PreparedStatement stmt = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
       bindParameters(stmt, params);
       rows = stmt.executeUpdate();
@@ -248,16 +919,22 @@ public class DB
           lastGeneratedKey.set(-1L);
         }
       }
+    } finally {
+      sqlTimed(sql, params, start, rows);
+      releaseIfIdle();
     }
     return rows;
   }
 
   /**
    * Restituisce l'ultima chiave auto-generata dall'operazione {@link #query} precedente.
+   * Non aggiornata da {@link #execute}, {@link #insert} e {@link #batch}.
    *
    * @return chiave auto-generata
    * @throws Exception se nessuna chiave auto-generata è disponibile
+   * @deprecated usare il valore restituito da {@link #insert}
    */
+  @Deprecated
   public long lastInsertId() throws Exception
   {
     long id;
@@ -268,6 +945,122 @@ public class DB
     return id;
   }
 
+  // =========================
+  // Scrittura in batch
+  // =========================
+
+  /**
+   * Esegue la stessa istruzione di scrittura per ogni riga di parametri con il batching JDBC,
+   * inviando blocchi di {@code db.batch.size} righe per round-trip (le INSERT sono riscritte
+   * dal driver in INSERT multi-riga). Nessun limite sul numero di righe: ogni blocco resta
+   * sotto il limite di 32767 parametri del protocollo PostgreSQL se
+   * {@code db.batch.size × parametri per riga} lo rispetta.
+   *
+   * <p>Fuori da {@link #begin()} l'intero batch è eseguito in una transazione propria:
+   * in caso di errore nessuna riga viene scritta.
+   *
+   * @param sql  istruzione SQL con placeholder {@code ?}
+   * @param rows parametri di ogni riga
+   * @return numero di righe modificate (una per riga quando il driver non riporta il conteggio)
+   * @throws Exception se l'esecuzione fallisce
+   */
+  public int batch(String sql, Iterable<Object[]> rows) throws Exception
+  {
+    return executeBatch(sql, null, rows, null);
+  }
+
+  /**
+   * Come {@link #batch}, restituendo le chiavi generate di tutte le righe nell'ordine di inserimento.
+   *
+   * @param sql       istruzione INSERT con placeholder {@code ?}
+   * @param keyColumn colonna della chiave generata (es. {@code "id"})
+   * @param rows      parametri di ogni riga
+   * @return chiavi generate, una per riga inserita
+   * @throws Exception se l'esecuzione fallisce
+   */
+  public ArrayList<Long> batchReturning(String sql, String keyColumn, Iterable<Object[]> rows) throws Exception
+  {
+    ArrayList<Long> result;
+
+    result = new ArrayList<>();
+    executeBatch(sql, keyColumn, rows, result);
+    return result;
+  }
+
+  /** Esecuzione comune dei batch, a blocchi di {@link #batchSize} righe. */
+  private int executeBatch(String sql, String keyColumn, Iterable<Object[]> rows, ArrayList<Long> keys)
+    throws Exception
+  {
+    Connection c;
+    boolean ownTransaction;
+    boolean done;
+    int pending;
+    int result;
+    long start;
+
+    requireWritable();
+    c = requireConnection();
+    ownTransaction = c.getAutoCommit();
+    done = false;
+    result = 0;
+    start = System.nanoTime();
+    if (ownTransaction) {
+      c.setAutoCommit(false);
+    }
+    try (PreparedStatement stmt = keyColumn != null
+      ? c.prepareStatement(sql, new String[] { keyColumn })
+      : c.prepareStatement(sql)) {
+      pending = 0;
+      for (Object[] params : rows) {
+        bindParameters(stmt, params);
+        stmt.addBatch();
+        pending++;
+        if (pending == batchSize) {
+          result += flushBatch(stmt, keys);
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        result += flushBatch(stmt, keys);
+      }
+      if (ownTransaction) {
+        c.commit();
+      }
+      done = true;
+    } finally {
+      if (ownTransaction) {
+        try {
+          if (!done) {
+            c.rollback();
+          }
+          c.setAutoCommit(true);
+        } catch (Exception ignored) {}
+      }
+      sqlTimed(sql, null, start, done ? result : -1);
+      releaseIfIdle();
+    }
+    return result;
+  }
+
+  /** Invia il blocco accumulato e raccoglie le chiavi generate. */
+  private int flushBatch(PreparedStatement stmt, ArrayList<Long> keys) throws SQLException
+  {
+    int result;
+
+    result = 0;
+    for (int count : stmt.executeBatch()) {
+      result += count >= 0 ? count : 1;
+    }
+    if (keys != null) {
+      try (ResultSet rs = stmt.getGeneratedKeys()) {
+        while (rs.next()) {
+          keys.add(rs.getLong(1));
+        }
+      }
+    }
+    return result;
+  }
+
   // =========================
   // Query di lettura
   // =========================
@@ -282,42 +1075,108 @@ public class DB
    * @throws Exception se l'esecuzione fallisce
    */
   public ArrayList<HashMap<String, Object>> select(String sql, Object... params) throws Exception
+  {
+    return select(sql, Row::toMap, params);
+  }
+
+  /**
+   * Esegue una query di lettura e converte ogni riga con il mapper fornito.
+   * I nomi delle colonne sono letti dai metadati una sola volta per istruzione.
+   *
+   * @param sql    istruzione SQL con placeholder {@code ?}
+   * @param mapper conversione riga → oggetto
+   * @param params parametri da legare ai placeholder
+   * @param <T>    tipo degli elementi
+   * @return lista di oggetti; vuota se nessuna riga trovata
+   * @throws Exception se l'esecuzione o la conversione falliscono
+   */
+  public <T> ArrayList<T> select(String sql, RowMapper<T> mapper, Object... params) throws Exception
+  {
+    return selectRows(sql, layout -> mapper, params);
+  }
+
+  /**
+   * Esegue una query di lettura e costruisce un record per ogni riga.
+   * Ogni componente del record è letto dalla colonna omonima in snake_case
+   * ({@code ragioneSociale} → {@code ragione_sociale}) e convertito al tipo del componente;
+   * costruttore e corrispondenze sono risolti una volta per classe e per istruzione.
+   * Ogni componente deve avere la sua colonna, salvo quelli marcati {@link OptionalColumn}.
+   *
+   * @param sql    istruzione SQL con placeholder {@code ?}
+   * @param type   classe record da costruire
+   * @param params parametri da legare ai placeholder
+   * @param <T>    tipo record
+   * @return lista di record; vuota se nessuna riga trovata
+   * @throws IllegalStateException se il risultato non ha la colonna di un componente obbligatorio
+   * @throws Exception se l'esecuzione o la conversione falliscono
+   */
+  public <T extends Record> ArrayList<T> select(String sql, Class<T> type, Object... params) throws Exception
+  {
+    return selectRows(sql, RecordMapper.of(type)::bind, params);
+  }
+
+  /** Esecuzione comune delle select: il mapper è ottenuto dalla disposizione delle colonne. */
+  private <T> ArrayList<T> selectRows(String sql, Function<Row.Layout, RowMapper<T>> binder,
+                                      Object... params) throws Exception
   {
     Connection c;
-    ArrayList<HashMap<String, Object>> rsSet;
+    ArrayList<T> result;
+    long start;
+    int rows;
 
     c = requireConnection();
-    rsSet = new ArrayList<>();
+    result = new ArrayList<>();
+    rows = -1;
+    start = System.nanoTime();
 
     try (PreparedStatement stmt = c.prepareStatement(sql)) {
       bindParameters(stmt, params);
       try (ResultSet rs = stmt.executeQuery()) {
-        ResultSetMetaData meta;
-        int cols;
-
-        meta = rs.getMetaData();
-        cols = meta.getColumnCount();
+        Row row;
+        RowMapper<T> mapper;
 
+        row = new Row(rs, Row.Layout.of(rs.getMetaData()));
+        mapper = binder.apply(row.layout());
         while (rs.next()) {
-          HashMap<String, Object> r;
-          r = new HashMap<>();
-          for (int i = 1; i <= cols; i++) {
-            r.put(meta.getColumnName(i), rs.getObject(i));
-          }
-          rsSet.add(r);
+          result.add(mapper.map(row));
         }
       }
+      rows = result.size();
+    } finally {
+      sqlTimed(sql, params, start, rows);
+      releaseIfIdle();
     }
-    return rsSet;
+    return result;
   }
 
   // =========================
   // Cursore (streaming)
   // =========================
 
+  /**
+   * Imposta il numero di righe lette dal server per ogni round-trip dei cursori aperti
+   * successivamente da questa istanza (default {@code db.cursor.fetch.size}).
+   *
+   * @param rows righe per round-trip (minimo 1)
+   */
+  public void fetchSize(int rows)
+  {
+    fetchSize = Math.max(1, rows);
+  }
+
   /**
    * Apre un cursore di streaming per iterare righe senza caricarle tutte in memoria.
-   * Chiudere il {@link Cursor} dopo l'uso per liberare le risorse JDBC.
+   * Chiudere il {@link Cursor} dopo l'uso per liberare le risorse JDBC: la connessione
+   * resta trattenuta finché il cursore è aperto. I cursori ancora aperti sono chiusi
+   * da {@link #close()} (a fine richiesta in {@link HandlerAdapter}).
+   *
+   * <p>Il driver PostgreSQL legge a blocchi ({@code setFetchSize}) solo dentro una transazione:
+   * fuori da {@link #begin()} il primo cursore apre una transazione implicita, chiusa con
+   * commit alla chiusura dell'ultimo cursore (un commit fallito lancia {@link DBException}).
+   * Le letture eseguite mentre il cursore è aperto fanno parte della stessa transazione; le
+   * scritture lanciano {@link IllegalStateException}: vanno eseguite dopo la chiusura del cursore
+   * o dentro {@link #begin()}. Un {@link #commit()} o {@link #rollback()} chiude il portale:
+   * i cursori aperti non vanno più letti.
    *
    * @param sql    istruzione SQL con placeholder {@code ?}
    * @param params parametri da legare ai placeholder
@@ -328,13 +1187,125 @@ public class DB
   {
     Connection c;
     PreparedStatement stmt;
-    ResultSet rs;
+    Cursor cursor;
+    long start;
+    int rows;
 
     c = requireConnection();
-    stmt = c.prepareStatement(sql);
-    bindParameters(stmt, params);
-    rs = stmt.executeQuery();
-    return new Cursor(rs, stmt);
+    rows = -1;
+    start = System.nanoTime();
+    stmt = null;
+    try {
+      if (!inTransaction && !cursorTransaction && c.getAutoCommit()) {
+        c.setAutoCommit(false);
+        cursorTransaction = true;
+      }
+      stmt = c.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchSize(fetchSize);
+      bindParameters(stmt, params);
+      cursor = new Cursor(stmt.executeQuery(), stmt, sql, this::cursorClosed);
+      openCursors.add(cursor);
+      rows = 0;
+    } catch (Exception e) {
+      if (stmt != null) {
+        try {
+          stmt.close();
+        } catch (Exception ignored) {}
+      }
+      if (openCursors.isEmpty()) {
+        try {
+          endCursorTransaction();
+        } catch (DBException x) {
+          e.addSuppressed(x);
+        }
+      }
+      releaseIfIdle();
+      throw e;
+    } finally {
+      sqlTimed(sql, params, start, rows);
+    }
+    return cursor;
+  }
+
+  /**
+   * Esegue una query in streaming e converte ogni riga con il mapper fornito.
+   * Lo stream va chiuso (try-with-resources) o consumato fino in fondo; in ogni caso
+   * viene chiuso da {@link #close()} a fine richiesta.
+   *
+   * @param sql    istruzione SQL con placeholder {@code ?}
+   * @param mapper conversione riga → oggetto
+   * @param params parametri da legare ai placeholder
+   * @param <T>    tipo degli elementi
+   * @return stream sequenziale delle righe convertite
+   * @throws Exception se l'esecuzione fallisce
+   */
+  public <T> Stream<T> stream(String sql, RowMapper<T> mapper, Object... params) throws Exception
+  {
+    return cursor(sql, params).stream(mapper);
+  }
+
+  /**
+   * Esegue una query in streaming e costruisce un record per ogni riga
+   * (stesse regole di {@link #select(String, Class, Object...)}).
+   *
+   * @param sql    istruzione SQL con placeholder {@code ?}
+   * @param type   classe record da costruire
+   * @param params parametri da legare ai placeholder
+   * @param <T>    tipo record
+   * @return stream sequenziale dei record
+   * @throws Exception se l'esecuzione fallisce
+   */
+  public <T extends Record> Stream<T> stream(String sql, Class<T> type, Object... params) throws Exception
+  {
+    return cursor(sql, params).stream(type);
+  }
+
+  /** Invocato da {@link Cursor#close()}: rilascia la connessione se non più trattenuta. */
+  private void cursorClosed(Cursor cursor)
+  {
+    SqlStats.rows(cursor.sql, cursor.rowsRead);
+    openCursors.remove(cursor);
+    try {
+      if (openCursors.isEmpty()) {
+        endCursorTransaction();
+      }
+    } finally {
+      releaseIfIdle();
+    }
+  }
+
+  /** Chiude i cursori ancora aperti (e la loro transazione implicita). */
+  private void closeCursors()
+  {
+    while (!openCursors.isEmpty()) {
+      openCursors.get(openCursors.size() - 1).close();
+    }
+    endCursorTransaction();
+  }
+
+  /**
+   * Chiude con commit la transazione implicita dei cursori, se aperta.
+   * Un commit fallito è registrato e rilanciato: release() restituisce comunque la connessione
+   * al pool, che la ripristina o la scarta.
+   *
+   * @throws DBException se il commit fallisce
+   */
+  private void endCursorTransaction()
+  {
+    Connection c;
+
+    c = connection.get();
+    try {
+      if (cursorTransaction && c != null) {
+        c.commit();
+        c.setAutoCommit(true);
+      }
+    } catch (SQLException e) {
+      System.err.println("[error] Commit della transazione implicita dei cursori fallito: " + e.getMessage());
+      throw new DBException("Implicit cursor transaction commit failed", e);
+    } finally {
+      cursorTransaction = false;
+    }
   }
 
   // =========================
@@ -357,25 +1328,29 @@ public class DB
 
     c = requireConnection();
     columns = new HashSet<>();
-    meta = c.getMetaData();
-    rs = meta.getColumns(null, null, tableName, null);
-
-    if (!rs.next()) {
-      rs.close();
-      rs = meta.getColumns(null, null, tableName.toUpperCase(), null);
-    } else {
-      rs.close();
+    try {
+      meta = c.getMetaData();
       rs = meta.getColumns(null, null, tableName, null);
-    }
 
-    while (rs.next()) {
-      String name;
-      name = rs.getString("COLUMN_NAME");
-      if (name != null) {
-        columns.add(name.toLowerCase());
+      if (!rs.next()) {
+        rs.close();
+        rs = meta.getColumns(null, null, tableName.toUpperCase(), null);
+      } else {
+        rs.close();
+        rs = meta.getColumns(null, null, tableName, null);
       }
+
+      while (rs.next()) {
+        String name;
+        name = rs.getString("COLUMN_NAME");
+        if (name != null) {
+          columns.add(name.toLowerCase());
+        }
+      }
+      rs.close();
+    } finally {
+      releaseIfIdle();
     }
-    rs.close();
     return columns;
   }
 
@@ -583,24 +1558,55 @@ public class DB
     return result;
   }
 
-  // =========================
-  // Cursore (streaming)
-  // =========================
+  /** Snapshot dello stato della replica di sola lettura. */
+  public static class ReplicaStats
+  {
+    /** Replica configurata ({@code db.replica.host}). */
+    public final boolean configured;
+    /** Replica in uso per le letture all'ultimo controllo. */
+    public final boolean healthy;
+    /** Ritardo all'ultimo controllo in secondi, -1 se non raggiungibile. */
+    public final double lagSeconds;
+    /** Letture read-only servite dal primario per replica non disponibile. */
+    public final long fallbacks;
+
+    /** Crea uno snapshot con i valori forniti. */
+    ReplicaStats(boolean configured, boolean healthy, double lagSeconds, long fallbacks)
+    {
+      this.configured = configured;
+      this.healthy = healthy;
+      this.lagSeconds = lagSeconds;
+      this.fallbacks = fallbacks;
+    }
+  }
 
   /**
    * Cursore JDBC per iterazione streaming di result set di grandi dimensioni.
+   * La disposizione delle colonne è letta una sola volta all'apertura.
    * Chiudere con {@link #close()} dopo l'uso per liberare le risorse.
    */
-  public static class Cursor
+  public static class Cursor implements AutoCloseable
   {
     private final ResultSet rs;
     private final PreparedStatement stmt;
+    private final Row row;
+    private final Consumer<Cursor> onClose;
+    private boolean closed;
+
+    /** Testo SQL del cursore, per le statistiche ({@link SqlStats}) */
+    final String sql;
+
+    /** Righe lette fino a ora */
+    long rowsRead;
 
     /** Crea il cursore attorno al ResultSet e allo statement già eseguiti. */
-    Cursor(ResultSet rs, PreparedStatement stmt)
+    Cursor(ResultSet rs, PreparedStatement stmt, String sql, Consumer<Cursor> onClose) throws SQLException
     {
       this.rs = rs;
       this.stmt = stmt;
+      this.sql = sql;
+      this.row = new Row(rs, Row.Layout.of(rs.getMetaData()));
+      this.onClose = onClose;
     }
 
     /**
@@ -611,7 +1617,13 @@ public class DB
      */
     public boolean next() throws Exception
     {
-      return rs.next();
+      boolean result;
+
+      result = rs.next();
+      if (result) {
+        rowsRead++;
+      }
+      return result;
     }
 
     /**
@@ -623,7 +1635,7 @@ public class DB
      */
     public Object get(String column) throws Exception
     {
-      return rs.getObject(column);
+      return row.get(column);
     }
 
     /**
@@ -634,29 +1646,122 @@ public class DB
      */
     public HashMap<String, Object> getRow() throws Exception
     {
-      HashMap<String, Object> r;
-      ResultSetMetaData meta;
-      int cols;
+      return row.toMap();
+    }
 
-      r = new HashMap<>();
-      meta = rs.getMetaData();
-      cols = meta.getColumnCount();
+    /**
+     * Vista tipizzata sul record corrente, riusata per tutte le righe del cursore.
+     *
+     * @return riga corrente
+     */
+    public Row row()
+    {
+      return row;
+    }
 
-      for (int i = 1; i <= cols; i++) {
-        r.put(meta.getColumnName(i), rs.getObject(i));
+    /**
+     * Converte ogni riga rimanente con il mapper e la passa all'azione, poi chiude il cursore.
+     *
+     * @param mapper conversione riga → oggetto
+     * @param action azione per ogni oggetto
+     * @param <T>    tipo degli oggetti
+     * @throws Exception se la lettura o la conversione falliscono
+     */
+    public <T> void forEach(RowMapper<T> mapper, Consumer<? super T> action) throws Exception
+    {
+      try {
+        while (rs.next()) {
+          rowsRead++;
+          action.accept(mapper.map(row));
+        }
+      } finally {
+        close();
       }
-      return r;
     }
 
-    /** Chiude il ResultSet e lo Statement, ignorando eventuali errori. */
-    public void close()
+    /**
+     * Stream sequenziale delle righe rimanenti convertite con il mapper.
+     * Il cursore è chiuso alla fine dei dati o alla chiusura dello stream.
+     * Errori JDBC durante l'iterazione sono rilanciati come {@link IllegalStateException}.
+     *
+     * @param mapper conversione riga → oggetto
+     * @param <T>    tipo degli elementi
+     * @return stream delle righe
+     */
+    public <T> Stream<T> stream(RowMapper<T> mapper)
     {
+      Spliterator<T> rows;
+
+      rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL)
+      {
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action)
+        {
+          boolean result;
+
+          result = false;
+          try {
+            if (!closed && rs.next()) {
+              rowsRead++;
+              action.accept(mapper.map(row));
+              result = true;
+            } else {
+              close();
+            }
+          } catch (RuntimeException e) {
+            close();
+            throw e;
+          } catch (Exception e) {
+            close();
+            throw new IllegalStateException("Cursor read failed", e);
+          }
+          return result;
+        }
+      };
+      return StreamSupport.stream(rows, false).onClose(this::close);
+    }
+
+    /**
+     * Stream sequenziale delle righe rimanenti come record
+     * (stesse regole di {@link DB#select(String, Class, Object...)}).
+     *
+     * @param type classe record da costruire
+     * @param <T>  tipo record
+     * @return stream dei record
+     */
+    public <T extends Record> Stream<T> stream(Class<T> type)
+    {
+      RowMapper<T> mapper;
+
       try {
-        rs.close();
-      } catch (Exception ignored) {}
-      try {
-        stmt.close();
-      } catch (Exception ignored) {}
+        mapper = RecordMapper.of(type).bind(row.layout());
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+      return stream(mapper);
+    }
+
+    /**
+     * Chiude il ResultSet e lo Statement, ignorando eventuali errori,
+     * e permette al {@link DB} di restituire la connessione al pool.
+     * Chiamate successive sono no-op.
+     *
+     * @throws DBException se è l'ultimo cursore e il commit della transazione implicita fallisce
+     */
+    @Override
+    public void close()
+    {
+      if (!closed) {
+        closed = true;
+        try {
+          rs.close();
+        } catch (Exception ignored) {}
+        try {
+          stmt.close();
+        } catch (Exception ignored) {}
+        onClose.accept(this);
+      }
     }
   }
 }
@@ -0,0 +1,21 @@
+package dev.jms.util;
+
+/**
+ * Eccezione unchecked lanciata da {@link DB} quando un errore del database emerge in un punto
+ * che non può propagare eccezioni checked (es. la chiusura di un {@link DB.Cursor}).
+ */
+public class DBException extends RuntimeException
+{
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Crea una nuova DBException con il messaggio e la causa specificati.
+   *
+   * @param message descrizione dell'errore
+   * @param cause   eccezione originale del driver
+   */
+  public DBException(String message, Throwable cause)
+  {
+    super(message, cause);
+  }
+}
@@ -1,12 +1,13 @@
 package dev.jms.util;
 
+import io.undertow.server.Connectors;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.RequestTooBigException;
 import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
 
 import javax.sql.DataSource;
-import java.util.EnumMap;
-import java.util.Map;
 
 /**
  * Adattatore tra {@link RouteHandler} e {@link HttpHandler} di Undertow.
@@ -21,12 +22,37 @@ import java.util.Map;
  * <p>Threading:
  * <ul>
  *   <li>BLOCKING (default): dispatch su worker thread Undertow tramite {@code exchange.dispatch()}</li>
- *   <li>ASYNC: dispatch su {@link AsyncExecutor} — per operazioni lente (query pesanti, API esterne)</li>
+ *   <li>ASYNC: dispatch su {@link AsyncExecutor} — per operazioni lente (query pesanti, API esterne).
+ *       Il body viene ricevuto in modo non-blocking sull'IO thread e l'handler parte solo a body
+ *       completo; body oltre {@code async.max.body.size} → HTTP 413 senza occupare thread né connessioni DB.</li>
+ *   <li>VIRTUAL: dispatch su {@link VirtualExecutor} — un virtual thread per exchange, concorrenza
+ *       limitata dal pool database. Con {@code server.dispatch=virtual} vale anche per le rotte BLOCKING.</li>
  * </ul>
  *
+ * <p>Metodi non registrati sul path ricevono 405 con header {@code Allow} direttamente
+ * sull'IO thread, senza dispatch. Lo stesso vale per le richieste oltre il limite adattivo
+ * di {@link ConcurrencyLimiter} (503 con {@code Retry-After}), secondo la {@link Priority} del path,
+ * e per le richieste oltre una policy per IP di {@link RateLimiter} (429 con {@code Retry-After}).
+ * Le policy per account sono verificate dopo la risoluzione del JWT, prima dell'handler.
+ * Con una policy sul path ogni risposta riporta {@code RateLimit-Limit}, {@code RateLimit-Remaining},
+ * {@code RateLimit-Reset} e {@code RateLimit-Policy}. Le risposte date senza eseguire l'handler
+ * (405, 413, 429, 503) sono registrate nelle {@link Metrics} della rotta con il loro status.
+ *
+ * <p>Connessione DB: il {@link DB} passato all'handler acquisisce la connessione in modo lazy
+ * alla prima query. Per le richieste GET dei path marcati con {@link Router#readOnly(String)}
+ * il DB usa la replica di sola lettura, se configurata e allineata. Le altre richieste usano il pool
+ * della classe di carico ({@link Workload}): {@code async} per le rotte async, {@code interactive}
+ * per blocking e virtual, salvo diversa impostazione con {@link Router#workload(String, Workload)}. Richieste rifiutate (401, 405) o che non interrogano il database non
+ * occupano il pool. Al termine di ogni richiesta il tempo di possesso della connessione
+ * e la durata totale vengono registrati in {@link ConnectionUsage}; status e latenza
+ * negli istogrammi per rotta di {@link Metrics}. {@link Timing} raccoglie la ripartizione per fase
+ * (pool, SQL, JWT, JSON, handler) per l'header {@code Server-Timing} e il log delle richieste lente.
+ *
  * <p>Gestione eccezioni:
  * <ul>
  *   <li>{@link UnauthorizedException} → HTTP 401</li>
+ *   <li>{@link ValidationException} non intercettata dall'handler → HTTP 200 con {@code err: true}
+ *       e il messaggio in {@code log}, come le validazioni gestite negli handler</li>
  *   <li>Qualsiasi altra eccezione non intercettata → HTTP 500 con log ERROR</li>
  * </ul>
  */
@@ -34,19 +60,48 @@ public class HandlerAdapter implements HttpHandler
 {
   private static final Log log = Log.get(HandlerAdapter.class);
 
-  private final Map<HttpMethod, RouteHandler> routes;
-  private final Map<HttpMethod, Boolean> asyncFlags;
+  private static final HttpString RATELIMIT_LIMIT = new HttpString("RateLimit-Limit");
+  private static final HttpString RATELIMIT_REMAINING = new HttpString("RateLimit-Remaining");
+  private static final HttpString RATELIMIT_RESET = new HttpString("RateLimit-Reset");
+  private static final HttpString RATELIMIT_POLICY = new HttpString("RateLimit-Policy");
+
+  private final RouteHandler[] handlers;
+  private final Dispatch[] dispatchModes;
+  private final HttpHandler[] dispatchTargets;
+  private final String[] labels;
+  private final Metrics.Route[] metrics;
+  private final DataSource[] dataSources;
   private final DataSource dataSource;
+  private final String path;
+  private String allow;
+  private Priority priority;
+  private boolean readOnly;
+  private Workload workload;
+  private RateLimiter.Policy rateLimit;
 
   /**
    * Costruttore per {@link Router} — package-private.
-   * I metodi vengono registrati successivamente con {@link #register}.
+   * I metodi vengono registrati successivamente con {@link #register}; {@link #seal()}
+   * precalcola le tabelle di dispatch prima dell'avvio del server.
+   *
+   * @param path       path template della rotta (usato come etichetta nelle statistiche)
+   * @param dataSource DataSource per il {@link DB} della richiesta
    */
-  HandlerAdapter(DataSource dataSource)
+  HandlerAdapter(String path, DataSource dataSource)
   {
+    int n;
+
+    n = HttpMethod.values().length;
+    this.path = path;
     this.dataSource = dataSource;
-    this.routes = new EnumMap<>(HttpMethod.class);
-    this.asyncFlags = new EnumMap<>(HttpMethod.class);
+    this.handlers = new RouteHandler[n];
+    this.dispatchModes = new Dispatch[n];
+    this.dispatchTargets = new HttpHandler[n];
+    this.labels = new String[n];
+    this.metrics = new Metrics.Route[n];
+    this.dataSources = new DataSource[n];
+    this.allow = "";
+    this.priority = Priority.NORMAL;
   }
 
   /**
@@ -57,11 +112,12 @@ public class HandlerAdapter implements HttpHandler
   @Deprecated
   public HandlerAdapter(Handler handler, DataSource dataSource)
   {
-    this(dataSource);
-    routes.put(HttpMethod.GET, (req, res, session, db) -> handler.get(req, res, db));
-    routes.put(HttpMethod.POST, (req, res, session, db) -> handler.post(req, res, db));
-    routes.put(HttpMethod.PUT, (req, res, session, db) -> handler.put(req, res, db));
-    routes.put(HttpMethod.DELETE, (req, res, session, db) -> handler.delete(req, res, db));
+    this(handler.getClass().getName(), dataSource);
+    register(HttpMethod.GET, (req, res, session, db) -> handler.get(req, res, db));
+    register(HttpMethod.POST, (req, res, session, db) -> handler.post(req, res, db));
+    register(HttpMethod.PUT, (req, res, session, db) -> handler.put(req, res, db));
+    register(HttpMethod.DELETE, (req, res, session, db) -> handler.delete(req, res, db));
+    seal();
   }
 
   /**
@@ -82,9 +138,10 @@ public class HandlerAdapter implements HttpHandler
    * @param method  metodo HTTP
    * @param handler handler da registrare
    */
-  void register(HttpMethod method, RouteHandler handler)
+  final void register(HttpMethod method, RouteHandler handler)
   {
-    routes.put(method, handler);
+    handlers[method.ordinal()] = handler;
+    dispatchModes[method.ordinal()] = Dispatch.BLOCKING;
   }
 
   /**
@@ -96,70 +153,222 @@ public class HandlerAdapter implements HttpHandler
    */
   void registerAsync(HttpMethod method, RouteHandler handler)
   {
-    routes.put(method, handler);
-    asyncFlags.put(method, Boolean.TRUE);
+    handlers[method.ordinal()] = handler;
+    dispatchModes[method.ordinal()] = Dispatch.ASYNC;
+  }
+
+  /**
+   * Registra un {@link RouteHandler} eseguito su virtual thread per il metodo HTTP indicato.
+   * L'handler verrà eseguito su {@link VirtualExecutor}.
+   *
+   * @param method  metodo HTTP
+   * @param handler handler da registrare
+   */
+  void registerVirtual(HttpMethod method, RouteHandler handler)
+  {
+    handlers[method.ordinal()] = handler;
+    dispatchModes[method.ordinal()] = Dispatch.VIRTUAL;
+  }
+
+  /**
+   * Imposta la classe di priorità del path per {@link ConcurrencyLimiter} (tutti i metodi).
+   *
+   * @param priority priorità della rotta
+   */
+  void priority(Priority priority)
+  {
+    this.priority = priority;
+  }
+
+  /**
+   * Imposta la classe di carico del path (tutti i metodi), e quindi il pool di connessioni.
+   * Senza impostazione: {@link Workload#ASYNC} per le rotte async, {@link Workload#INTERACTIVE} per le altre.
+   *
+   * @param workload classe di carico della rotta
+   */
+  void workload(Workload workload)
+  {
+    this.workload = workload;
+  }
+
+  /**
+   * Marca le richieste GET del path come di sola lettura: il {@link DB} passato all'handler
+   * usa la replica ({@link DB#readDataSource}), o il primario se la replica non è disponibile.
+   */
+  void readOnly()
+  {
+    this.readOnly = true;
   }
 
   /**
-   * Entry point Undertow. Rileva se siamo sull'IO thread e fa dispatch
-   * al worker thread (blocking) o all'AsyncExecutor (async).
+   * Applica una policy di {@link RateLimiter} al path (tutti i metodi).
+   *
+   * @param policy policy per IP o per account
+   */
+  void rateLimit(RateLimiter.Policy policy)
+  {
+    this.rateLimit = policy;
+  }
+
+  /**
+   * Precalcola, per ogni metodo registrato, la modalità di dispatch effettiva
+   * ({@code server.dispatch=virtual} promuove le rotte BLOCKING), il pool della classe di carico, l'handler di dispatch,
+   * l'etichetta per {@link ConnectionUsage}, le {@link Metrics} della rotta e l'header {@code Allow} per le risposte 405.
+   * Chiamato da {@link Router#compile} dopo la registrazione di tutte le rotte.
+   */
+  final void seal()
+  {
+    StringBuilder methods;
+
+    methods = new StringBuilder();
+    for (HttpMethod m : HttpMethod.values()) {
+      int i;
+      i = m.ordinal();
+      if (handlers[i] != null) {
+        dataSources[i] = DB.dataSourceFor(dataSource, workload != null ? workload
+          : dispatchModes[i] == Dispatch.ASYNC ? Workload.ASYNC : Workload.INTERACTIVE);
+        if (dispatchModes[i] == Dispatch.BLOCKING && VirtualExecutor.isDefaultDispatch()) {
+          dispatchModes[i] = Dispatch.VIRTUAL;
+        }
+        dispatchTargets[i] = exchange -> executeBlocking(exchange, m, null);
+        labels[i] = m.name() + " " + path;
+        metrics[i] = Metrics.route(m, path);
+        if (methods.length() > 0) {
+          methods.append(", ");
+        }
+        methods.append(m.name());
+      }
+    }
+    allow = methods.toString();
+  }
+
+  /**
+   * Entry point Undertow. Risolve il metodo una sola volta: metodi non registrati ricevono
+   * 405 direttamente sull'IO thread, richieste oltre la policy per IP del path 429, richieste oltre
+   * il limite di {@link ConcurrencyLimiter} 503, entrambe con {@code Retry-After}; le altre vengono inviate al worker thread (blocking),
+   * all'AsyncExecutor (async) o al VirtualExecutor (virtual).
    */
   @Override
   public void handleRequest(HttpServerExchange exchange) throws Exception
   {
     HttpMethod method;
-    boolean async;
+    int i;
+    long start;
 
-    if (exchange.isInIoThread()) {
-      method = parseMethod(exchange.getRequestMethod().toString());
-      async = method != null && asyncFlags.getOrDefault(method, Boolean.FALSE);
-      if (async) {
-        exchange.dispatch(AsyncExecutor.getExecutor(), () -> executeBlocking(exchange));
-      } else {
-        exchange.dispatch(this);
-      }
+    start = System.nanoTime();
+    method = HttpMethod.of(exchange.getRequestMethod());
+    i = method != null ? method.ordinal() : -1;
+    if (i < 0 || handlers[i] == null) {
+      exchange.getResponseHeaders().put(Headers.ALLOW, allow);
+      reject(exchange, method, 405, "Method Not Allowed", start);
+    } else if (rateLimit != null && rateLimit.scope() == RateLimiter.Scope.IP
+               && !admit(exchange, HttpRequest.clientIP(exchange))) {
+      reject(exchange, method, 429, "Too Many Requests", start);
+    } else if (!ConcurrencyLimiter.tryAcquire(priority)) {
+      exchange.getResponseHeaders().put(Headers.RETRY_AFTER, ConcurrencyLimiter.retryAfter());
+      reject(exchange, method, 503, "Service Unavailable", start);
+    } else if (!exchange.isInIoThread()) {
+      executeBlocking(exchange, method, null);
+    } else if (dispatchModes[i] == Dispatch.ASYNC) {
+      receiveAsync(exchange, method, start);
+    } else if (dispatchModes[i] == Dispatch.VIRTUAL) {
+      exchange.dispatch(task -> VirtualExecutor.execute(task, () -> abandon(exchange, method, start)), dispatchTargets[i]);
     } else {
-      executeBlocking(exchange);
+      exchange.dispatch(dispatchTargets[i]);
+    }
+  }
+
+  /**
+   * Riceve il body sull'IO thread tramite il receiver non-blocking di Undertow e
+   * fa dispatch su {@link AsyncExecutor} solo a body completo.
+   * Rifiuta con 413 i body oltre {@link AsyncExecutor#getMaxBodySize()}, sia dichiarati
+   * via Content-Length sia rilevati durante la ricezione (chunked).
+   * I body multipart/form-data restano in lettura blocking (parser form di Undertow).
+   */
+  private void receiveAsync(HttpServerExchange exchange, HttpMethod method, long start)
+  {
+    long maxBodySize;
+    String contentType;
+
+    maxBodySize = AsyncExecutor.getMaxBodySize();
+    contentType = exchange.getRequestHeaders().getFirst(Headers.CONTENT_TYPE);
+
+    if (exchange.getRequestContentLength() > maxBodySize) {
+      ConcurrencyLimiter.release(-1);
+      exchange.setPersistent(false);
+      reject(exchange, method, 413, "Payload Too Large", start);
+    } else if (contentType != null && contentType.startsWith("multipart/form-data")) {
+      exchange.dispatch(AsyncExecutor.getExecutor(), () -> executeBlocking(exchange, method, null));
+    } else {
+      exchange.setMaxEntitySize(maxBodySize);
+      exchange.getRequestReceiver().receiveFullBytes(
+        (ex, body) -> ex.dispatch(AsyncExecutor.getExecutor(), () -> executeBlocking(ex, method, body)),
+        (ex, e) -> {
+          ConcurrencyLimiter.release(-1);
+          if (e instanceof RequestTooBigException) {
+            ex.setPersistent(false);
+            reject(ex, method, 413, "Payload Too Large", start);
+          } else {
+            log.warn("Ricezione body fallita per {}: {}", ex.getRequestPath(), e.getMessage());
+            ex.setPersistent(false);
+            ex.endExchange();
+          }
+        }
+      );
     }
   }
 
   /**
    * Esegue l'handler sul thread corrente (worker o AsyncExecutor).
-   * Apre la connessione DB, risolve l'handler per il metodo HTTP,
+   * Crea il DB della richiesta (connessione lazy), invoca l'handler del metodo HTTP,
    * gestisce UnauthorizedException (401) e qualsiasi altra eccezione (500).
+   *
+   * @param exchange exchange Undertow
+   * @param method   metodo già risolto in {@link #handleRequest}
+   * @param body     body già ricevuto in modo non-blocking, o {@code null} per la lettura blocking
    */
-  private void executeBlocking(HttpServerExchange exchange)
+  private void executeBlocking(HttpServerExchange exchange, HttpMethod method, byte[] body)
   {
     DB db;
     HttpResponse res;
     HttpRequest req;
     Session session;
-    HttpMethod method;
-    RouteHandler handler;
+    Timing timing;
+    long start;
+    boolean failed;
 
+    start = System.nanoTime();
+    failed = false;
+    timing = new Timing();
     exchange.startBlocking();
-    db = dataSource != null ? new DB(dataSource) : null;
+    if (dataSources[method.ordinal()] == null) {
+      db = null;
+    } else if (readOnly && method == HttpMethod.GET) {
+      db = new DB(DB.readDataSource(dataSources[method.ordinal()]));
+    } else {
+      db = new DB(dataSources[method.ordinal()]);
+    }
+    if (db != null) {
+      db.timing(timing);
+    }
     res = new HttpResponse(exchange);
+    res.timing(timing);
 
     try {
-      if (db != null) {
-        db.open();
-      }
-      req = new HttpRequest(exchange);
-      session = new Session(req);
-      method = parseMethod(exchange.getRequestMethod().toString());
-      handler = method != null ? routes.get(method) : null;
-
-      if (handler == null) {
-        res.status(405)
+      req = body != null ? new HttpRequest(exchange, body) : new HttpRequest(exchange);
+      session = new Session(req, timing);
+      timing.attach(exchange, session);
+      res.setPreSendHook(() -> session.flush(res));
+      if (rateLimit != null && rateLimit.scope() == RateLimiter.Scope.ACCOUNT
+          && !admit(exchange, session.isAuthenticated() ? "account:" + session.sub() : "ip:" + req.getClientIP())) {
+        res.status(429)
            .contentType("application/json")
            .err(true)
-           .log("Method Not Allowed")
+           .log("Troppe richieste. Riprova tra qualche secondo.")
            .out(null)
            .send();
       } else {
-        res.setPreSendHook(() -> session.flush(res));
-        handler.handle(req, res, session, db);
+        handlers[method.ordinal()].handle(req, res, session, db);
       }
 
     } catch (UnauthorizedException e) {
@@ -171,8 +380,18 @@ public class HandlerAdapter implements HttpHandler
            .out(null)
            .send();
       }
+    } catch (ValidationException e) {
+      if (!exchange.isResponseStarted()) {
+        res.status(200)
+           .contentType("application/json")
+           .err(true)
+           .log(e.getMessage())
+           .out(null)
+           .send();
+      }
     } catch (Exception e) {
       log.error("Errore di sistema in handler per {}", exchange.getRequestPath(), e);
+      failed = true;
       if (!exchange.isResponseStarted()) {
         res.status(500)
            .contentType("application/json")
@@ -184,24 +403,83 @@ public class HandlerAdapter implements HttpHandler
     } finally {
       if (db != null) {
         db.close();
+        ConnectionUsage.record(
+          labels[method.ordinal()],
+          db.heldNanos(),
+          System.nanoTime() - start,
+          db.acquisitions()
+        );
       }
+      metrics[method.ordinal()].record(exchange.getStatusCode(), System.nanoTime() - start, failed);
+      timing.finish(labels[method.ordinal()]);
+      ConcurrencyLimiter.release(System.nanoTime() - start);
     }
   }
 
-  private static HttpMethod parseMethod(String method)
+  /**
+   * Consuma una richiesta della policy del path per la chiave e scrive gli header {@code RateLimit-*}
+   * ({@code Retry-After} se rifiutata).
+   *
+   * @return {@code true} se la richiesta è ammessa
+   */
+  private boolean admit(HttpServerExchange exchange, String key)
   {
-    HttpMethod result;
+    RateLimiter.Decision decision;
 
-    result = null;
-    try {
-      result = HttpMethod.valueOf(method);
-    } catch (IllegalArgumentException e) {
-      result = null;
+    decision = rateLimit.acquire(key);
+    exchange.getResponseHeaders()
+      .put(RATELIMIT_LIMIT, decision.limit)
+      .put(RATELIMIT_REMAINING, decision.remaining)
+      .put(RATELIMIT_RESET, decision.resetSeconds)
+      .put(RATELIMIT_POLICY, rateLimit.header());
+    if (!decision.allowed) {
+      exchange.getResponseHeaders().put(Headers.RETRY_AFTER, decision.retryAfterSeconds);
+    }
+    return decision.allowed;
+  }
+
+  /**
+   * Chiude con 503 una richiesta il cui virtual thread è stato interrotto prima di eseguire l'handler:
+   * libera il permesso di {@link ConcurrencyLimiter} preso in {@link #handleRequest} e termina l'exchange,
+   * altrimenti entrambi resterebbero aperti.
+   */
+  private void abandon(HttpServerExchange exchange, HttpMethod method, long start)
+  {
+    ConcurrencyLimiter.release(-1);
+    Connectors.executeRootHandler(ex -> {
+      ex.getResponseHeaders().put(Headers.RETRY_AFTER, ConcurrencyLimiter.retryAfter());
+      reject(ex, method, 503, "Service Unavailable", start);
+    }, exchange);
+  }
+
+  /**
+   * Risposta di errore senza esecuzione dell'handler, registrata nelle {@link Metrics} della rotta
+   * (status e latenza) prima dell'invio.
+   *
+   * @param method metodo della richiesta, o {@code null} se non in {@link HttpMethod}
+   * @param start  {@code System.nanoTime()} all'ingresso in {@link #handleRequest}
+   */
+  private void reject(HttpServerExchange exchange, HttpMethod method, int status, String message, long start)
+  {
+    Metrics.Route route;
+
+    if (method != null && metrics[method.ordinal()] != null) {
+      route = metrics[method.ordinal()];
+    } else {
+      route = Metrics.route(method != null ? method.name() : "OTHER", path);
     }
-    return result;
+    route.reject(status, System.nanoTime() - start);
+    sendErrorResponse(exchange, status, message);
+  }
+
+  /** Modalità di esecuzione di un handler registrato. */
+  enum Dispatch
+  {
+    BLOCKING, ASYNC, VIRTUAL
   }
 
-  private void sendErrorResponse(HttpServerExchange exchange, int status, String message)
+  /** Risposta di errore JSON scritta senza dispatch (utilizzabile anche sull'IO thread). */
+  static void sendErrorResponse(HttpServerExchange exchange, int status, String message)
   {
     String payload;
 
@@ -1,7 +1,39 @@
 package dev.jms.util;
 
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+
 /** Metodi HTTP supportati dal router. */
 public enum HttpMethod
 {
-  GET, POST, PUT, DELETE
+  GET(Methods.GET), POST(Methods.POST), PUT(Methods.PUT), DELETE(Methods.DELETE);
+
+  private static final HttpMethod[] VALUES = values();
+
+  private final HttpString token;
+
+  HttpMethod(HttpString token)
+  {
+    this.token = token;
+  }
+
+  /**
+   * Risolve il metodo della richiesta senza eccezioni né allocazioni.
+   *
+   * @param method metodo dell'exchange ({@code exchange.getRequestMethod()})
+   * @return metodo corrispondente, o {@code null} se non supportato (HEAD, OPTIONS, verbi ignoti)
+   */
+  public static HttpMethod of(HttpString method)
+  {
+    HttpMethod result;
+
+    result = null;
+    for (HttpMethod m : VALUES) {
+      if (m.token.equals(method)) {
+        result = m;
+        break;
+      }
+    }
+    return result;
+  }
 }
@@ -6,13 +6,17 @@ import io.undertow.server.handlers.form.FormData;
 import io.undertow.server.handlers.form.FormDataParser;
 import io.undertow.server.handlers.form.FormParserFactory;
 import io.undertow.util.HeaderValues;
+import io.undertow.util.NetworkUtils;
 import io.undertow.util.PathTemplateMatch;
 
 import java.io.InputStream;
+import java.net.InetAddress;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Wrapper sulla {@link HttpServerExchange} di Undertow che espone
@@ -21,6 +25,13 @@ import java.util.Map;
  */
 public class HttpRequest
 {
+  private static final Log log = Log.get(HttpRequest.class);
+
+  /** Proxy fidati ({@code server.trusted.proxies}): vuoto = X-Forwarded-For ignorato */
+  private static volatile Subnet[] trustedProxies = new Subnet[0];
+  /** X-Forwarded-For ricevuto da un peer non fidato già segnalato nel log (una volta per processo). */
+  private static final AtomicBoolean untrustedForwardWarned = new AtomicBoolean();
+
   private final HttpServerExchange exchange;
   // Null se modalità blocking
   private final byte[] bodyBytes;
@@ -40,6 +51,8 @@ public class HttpRequest
 
   /**
    * Costruttore per modalità async.
+   * Usato da {@link HandlerAdapter} per le rotte {@link Router#async}: il body è
+   * ricevuto dal receiver di Undertow sull'IO thread prima del dispatch.
    * @param exchange Exchange Undertow
    * @param bodyBytes Body già letto in modo non-blocking
    */
@@ -112,24 +125,131 @@ public class HttpRequest
     return result;
   }
 
+  /**
+   * Configura i proxy fidati da {@code server.trusted.proxies}: indirizzi IP o reti CIDR separati
+   * da virgola (es. {@code 10.0.0.0/8, 127.0.0.1, ::1}). Da chiamare una volta in {@code App.main()}.
+   *
+   * @param config configurazione applicazione
+   * @throws IllegalArgumentException se una voce non è un indirizzo IP o una rete CIDR valida
+   */
+  public static void init(Config config)
+  {
+    ArrayList<Subnet> subnets;
+
+    subnets = new ArrayList<>();
+    for (String item : config.get("server.trusted.proxies", "").split(",")) {
+      if (!item.isBlank()) {
+        subnets.add(Subnet.parse(item.trim()));
+      }
+    }
+    trustedProxies = subnets.toArray(new Subnet[0]);
+    untrustedForwardWarned.set(false);
+  }
+
   /**
    * Restituisce l'indirizzo IP del client.
-   * Controlla prima X-Forwarded-For (per proxy/load balancer), poi getSourceAddress().
+   * X-Forwarded-For è considerato solo se la connessione arriva da un proxy fidato
+   * ({@code server.trusted.proxies}): il client è il primo hop non fidato partendo da destra,
+   * cioè l'ultimo indirizzo aggiunto da un proxy fidato. Gli hop più a sinistra sono scritti
+   * dal client e ignorati. Senza proxy configurati: l'indirizzo della connessione.
+   * Il primo X-Forwarded-For arrivato da un peer non fidato viene segnalato con un WARN: dietro un
+   * reverse proxy non configurato tutti i client condividerebbero l'IP del proxy (e i suoi rate limit).
    *
    * @return indirizzo IP del client
    */
   public String getClientIP()
   {
-    String forwarded;
-    String[] ips;
-    String result;
+    return clientIP(exchange);
+  }
 
-    forwarded = getHeader("X-Forwarded-For");
-    if (forwarded != null && !forwarded.isBlank()) {
-      ips = forwarded.split(",");
-      result = ips[0].trim();
-    } else {
-      result = exchange.getSourceAddress().getAddress().getHostAddress();
+  /**
+   * Indirizzo IP del client senza istanziare la richiesta (usato sull'IO thread da {@link HandlerAdapter}).
+   *
+   * @param exchange exchange Undertow
+   * @return indirizzo IP del client
+   */
+  static String clientIP(HttpServerExchange exchange)
+  {
+    InetAddress result;
+    InetAddress hop;
+    HeaderValues forwarded;
+    String[] hops;
+    boolean done;
+
+    result = exchange.getSourceAddress().getAddress();
+    forwarded = exchange.getRequestHeaders().get("X-Forwarded-For");
+    if (forwarded != null && trusted(result)) {
+      // Da destra (hop più vicino); più header equivalgono a un'unica lista nell'ordine di arrivo
+      done = false;
+      for (int h = forwarded.size() - 1; h >= 0 && !done; h--) {
+        hops = forwarded.get(h).split(",");
+        for (int i = hops.length - 1; i >= 0 && !done; i--) {
+          if (!hops[i].isBlank()) {
+            hop = literal(hops[i].trim());
+            if (hop == null) {
+              // Hop non valido: resta l'ultimo indirizzo scritto da un proxy fidato
+              done = true;
+            } else {
+              result = hop;
+              done = !trusted(hop);
+            }
+          }
+        }
+      }
+    } else if (forwarded != null && !untrustedForwardWarned.get() && untrustedForwardWarned.compareAndSet(false, true)) {
+      log.warn("X-Forwarded-For ricevuto da {}, non presente in server.trusted.proxies: header ignorato. "
+        + "Dietro un reverse proxy tutti i client risultano con l'IP del proxy e condividono i rate limit per IP: "
+        + "aggiungere il proxy a server.trusted.proxies", result.getHostAddress());
+    }
+    return result.getHostAddress();
+  }
+
+  /** {@code true} se l'indirizzo appartiene a un proxy fidato. */
+  private static boolean trusted(InetAddress address)
+  {
+    boolean result;
+
+    result = false;
+    for (Subnet s : trustedProxies) {
+      if (s.contains(address)) {
+        result = true;
+        break;
+      }
+    }
+    return result;
+  }
+
+  /** Indirizzo IP letterale (senza risoluzione DNS), o {@code null} se non valido. */
+  private static InetAddress literal(String text)
+  {
+    String[] parts;
+    byte[] bytes;
+    int value;
+    InetAddress result;
+
+    result = null;
+    try {
+      if (text.indexOf(':') >= 0) {
+        result = NetworkUtils.parseIpv6Address(text);
+      } else {
+        parts = text.split("\\.", -1);
+        if (parts.length == 4) {
+          bytes = new byte[4];
+          for (int i = 0; i < 4; i++) {
+            if (parts[i].isEmpty() || parts[i].length() > 3 || !parts[i].chars().allMatch(Character::isDigit)) {
+              throw new NumberFormatException(text);
+            }
+            value = Integer.parseInt(parts[i]);
+            if (value > 255) {
+              throw new NumberFormatException(text);
+            }
+            bytes[i] = (byte) value;
+          }
+          result = InetAddress.getByAddress(bytes);
+        }
+      }
+    } catch (Exception e) {
+      result = null;
     }
     return result;
   }
@@ -292,4 +412,55 @@ public class HttpRequest
     return getCookie(name);
   }
 
-}
\ No newline at end of file
+
+  /** Rete CIDR (o singolo indirizzo) di {@code server.trusted.proxies}. */
+  private record Subnet(byte[] network, int bits)
+  {
+    /** Interpreta {@code indirizzo} o {@code indirizzo/bit}. */
+    static Subnet parse(String text)
+    {
+      int slash;
+      InetAddress address;
+      int bits;
+
+      slash = text.indexOf('/');
+      address = literal(slash >= 0 ? text.substring(0, slash) : text);
+      if (address == null) {
+        throw new IllegalArgumentException("server.trusted.proxies: invalid address: " + text);
+      }
+      bits = address.getAddress().length * 8;
+      if (slash >= 0) {
+        try {
+          bits = Integer.parseInt(text.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+          bits = -1;
+        }
+        if (bits < 0 || bits > address.getAddress().length * 8) {
+          throw new IllegalArgumentException("server.trusted.proxies: invalid prefix length: " + text);
+        }
+      }
+      return new Subnet(address.getAddress(), bits);
+    }
+
+    /** {@code true} se l'indirizzo (stessa famiglia) ha i primi {@code bits} bit della rete. */
+    boolean contains(InetAddress address)
+    {
+      byte[] bytes;
+      int full;
+      int rest;
+      boolean result;
+
+      bytes = address.getAddress();
+      result = bytes.length == network.length;
+      full = bits / 8;
+      rest = bits % 8;
+      for (int i = 0; result && i < full; i++) {
+        result = bytes[i] == network[i];
+      }
+      if (result && rest > 0) {
+        result = ((bytes[full] ^ network[full]) & (0xff << (8 - rest))) == 0;
+      }
+      return result;
+    }
+  }
+}
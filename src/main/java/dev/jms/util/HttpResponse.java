@@ -3,7 +3,12 @@ package dev.jms.util;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
+import org.xnio.IoUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 
 /**
@@ -15,9 +20,24 @@ import java.util.LinkedHashMap;
  * Il body ha sempre il formato: {"err": bool, "log": string|null, "out": object|null}
  *
  * Supporta sia modalità blocking che async: usa sempre ResponseSender che è già non-blocking.
+ *
+ * In modalità blocking (exchange dispatchato da {@link HandlerAdapter}) {@link #send()} serializza
+ * l'envelope in streaming con {@link Json#writeEnvelope}: nessuna mappa intermedia, nessuna
+ * stringa JSON completa. I primi {@value #ENVELOPE_BUFFER} byte restano in memoria: un envelope
+ * che sta nel buffer viene inviato con Content-Length e, se la serializzazione fallisce, nulla è
+ * ancora stato scritto e l'handler risponde 500. Oltre quella soglia (o al primo flush di uno Stream)
+ * i byte passano ai buffer di Undertow; un errore successivo chiude la connessione senza terminare
+ * il body, così il client vede una risposta interrotta e non un {@code "err":false} con una lista parziale.
+ *
+ * Liste grandi: passare in {@code out} (anche annidato in una mappa) uno {@link java.util.stream.Stream}
+ * ottenuto da {@link DB#stream}: le righe sono lette dal cursore e scritte a blocchi mentre
+ * l'envelope viene inviato, con chunked transfer encoding e memoria costante.
  */
 public class HttpResponse
 {
+  /** Byte dell'envelope trattenuti in memoria prima di iniziare la risposta. */
+  static final int ENVELOPE_BUFFER = 64 * 1024;
+
   private final HttpServerExchange exchange;
 
   private int _status;
@@ -31,6 +51,7 @@ public class HttpResponse
   private boolean _logSet;
   private boolean _outSet;
   private Runnable preSendHook;
+  private Timing timing;
 
   /**
    * Configura i flag di sicurezza per i cookie a livello globale.
@@ -122,6 +143,8 @@ public class HttpResponse
 
   /**
    * Imposta il campo {@code out} dell'envelope JSON (payload dati della risposta).
+   * Uno {@link java.util.stream.Stream} nel payload è scritto come array in streaming e chiuso
+   * da {@link #send()}.
    *
    * @param payload oggetto da serializzare come JSON, o {@code null}
    * @return this per chaining
@@ -233,10 +256,21 @@ public class HttpResponse
     exchange.getResponseSender().send(java.nio.ByteBuffer.wrap(data));
   }
 
+  /**
+   * Associa la {@link Timing} della richiesta: la scrittura dell'envelope viene attribuita alla fase {@code json}.
+   *
+   * @param timing timing della richiesta
+   */
+  void timing(Timing timing)
+  {
+    this.timing = timing;
+  }
+
   /** Valida che status(), contentType(), err(), log() e out() siano stati tutti chiamati, poi invia. */
   public void send()
   {
     LinkedHashMap<String, Object> body;
+    EnvelopeOutput output;
 
     if (!_statusSet) {
       throw new IllegalStateException("status() not called");
@@ -258,13 +292,122 @@ public class HttpResponse
       preSendHook.run();
     }
 
-    body = new LinkedHashMap<>();
-    body.put("err", _err);
-    body.put("log", _log);
-    body.put("out", _out);
-
     exchange.setStatusCode(_status);
     exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, _contentType);
-    exchange.getResponseSender().send(Json.encode(body));
+
+    if (timing != null) {
+      timing.jsonStart();
+    }
+    try {
+      if (exchange.isBlocking()) {
+        output = new EnvelopeOutput(exchange);
+        try {
+          Json.writeEnvelope(output, _err, _log, _out);
+        } catch (IOException e) {
+          abort(output);
+          throw new UncheckedIOException("Response write failed: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+          abort(output);
+          throw e;
+        }
+      } else {
+        body = new LinkedHashMap<>();
+        body.put("err", _err);
+        body.put("log", _log);
+        body.put("out", _out);
+        exchange.getResponseSender().send(Json.encode(body));
+      }
+    } finally {
+      if (timing != null) {
+        timing.jsonEnd();
+      }
+    }
+  }
+
+  /**
+   * Dopo un errore di serializzazione: se parte dell'envelope è già passata all'exchange
+   * (status e {@code "err":false} inclusi) chiude la connessione senza terminare il body.
+   * Altrimenti i byte in memoria vengono scartati e l'exchange resta libero per la risposta 500.
+   */
+  private void abort(EnvelopeOutput output)
+  {
+    if (output.committed()) {
+      exchange.setPersistent(false);
+      IoUtils.safeClose(exchange.getConnection());
+    }
+  }
+
+  /**
+   * Destinazione dell'envelope: trattiene i byte fino a {@value #ENVELOPE_BUFFER} o al primo
+   * {@link #flush()} (richiesto da uno Stream ogni {@value Json#STREAM_FLUSH_ROWS} elementi),
+   * poi scrive direttamente sull'output stream dell'exchange.
+   */
+  private static class EnvelopeOutput extends OutputStream
+  {
+    private final HttpServerExchange exchange;
+    private byte[] buffer;
+    private int count;
+    private OutputStream target;
+
+    EnvelopeOutput(HttpServerExchange exchange)
+    {
+      this.exchange = exchange;
+      this.buffer = new byte[2048];
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      if (target == null && count + len > ENVELOPE_BUFFER) {
+        commit();
+      }
+      if (target != null) {
+        target.write(b, off, len);
+      } else {
+        if (count + len > buffer.length) {
+          buffer = Arrays.copyOf(buffer, Math.min(ENVELOPE_BUFFER, Math.max(buffer.length * 2, count + len)));
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+      commit();
+      target.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+      if (target == null) {
+        exchange.setResponseContentLength(count);
+        commit();
+      }
+      target.close();
+    }
+
+    /** {@code true} se almeno un byte è stato consegnato all'exchange. */
+    boolean committed()
+    {
+      return target != null;
+    }
+
+    private void commit() throws IOException
+    {
+      if (target == null) {
+        target = exchange.getOutputStream();
+        target.write(buffer, 0, count);
+        buffer = null;
+      }
+    }
   }
 }
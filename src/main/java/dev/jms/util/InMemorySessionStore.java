@@ -0,0 +1,410 @@
+package dev.jms.util;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SessionStore} in memoria (default), limitato per numero di sessioni e memoria stimata.
+ *
+ * <p>Le sessioni sono indicizzate per ID e, in parallelo, in una timing wheel di {@value #SLOTS}
+ * slot ordinati per scadenza (ampiezza dello slot: TTL/62, minimo 1 secondo):
+ * <ul>
+ *   <li><b>Rinnovo</b> (TTL sliding, a ogni {@link #save}): aggiorna la scadenza e sposta la
+ *       sessione di slot solo se cambia slot — O(1), di norma una sola scrittura volatile.</li>
+ *   <li><b>Scadenza</b>: ogni slot, il thread di cleanup svuota gli slot ormai trascorsi senza
+ *       scorrere le sessioni ancora valide.</li>
+ *   <li><b>Evizione</b>: oltre {@code maxSessions} o {@code maxBytes} vengono rimosse le sessioni
+ *       con scadenza più vicina, cioè le meno recentemente usate (LRU con la granularità dello slot).</li>
+ * </ul>
+ *
+ * <p>{@link #load} restituisce la mappa conservata nello store, una {@link ConcurrentHashMap}:
+ * richieste concorrenti della stessa sessione la condividono senza corrompere la mappa, e le
+ * modifiche di una richiesta sono visibili alle altre prima di {@link #save}. La dimensione in
+ * byte è stimata dagli attributi (stringhe, numeri, collezioni) a ogni {@link #save} con modifiche.
+ */
+public class InMemorySessionStore implements SessionStore
+{
+  private static final Log log = Log.get(InMemorySessionStore.class);
+
+  /** Slot della timing wheel (potenza di 2): due slot di margine oltre il TTL. */
+  private static final int SLOTS = 64;
+
+  /** Sessioni massime di default. */
+  public static final int DEFAULT_MAX_SESSIONS = 100_000;
+
+  /** Memoria stimata massima di default (bytes). */
+  public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+  /** Overhead stimato di una sessione vuota (entry, mappa, ID). */
+  private static final long ENTRY_BYTES = 256;
+
+  private final ConcurrentHashMap<String, Entry> sessions;
+  private final Set<Entry>[] wheel;
+  private final ScheduledExecutorService cleanupExecutor;
+  private final long ttlMillis;
+  private final long slotMillis;
+  private final int maxSessions;
+  private final long maxBytes;
+  private final AtomicLong bytes;
+  private final AtomicBoolean evicting;
+  private final LongAdder expired;
+  private final LongAdder evicted;
+  private long sweptTick;
+
+  /**
+   * Crea lo store con i limiti di default e avvia il thread di cleanup.
+   *
+   * @param ttlSeconds secondi di inattività prima della scadenza
+   */
+  public InMemorySessionStore(int ttlSeconds)
+  {
+    this(ttlSeconds, DEFAULT_MAX_SESSIONS, DEFAULT_MAX_BYTES);
+  }
+
+  /**
+   * Crea lo store e avvia il thread di cleanup.
+   *
+   * @param ttlSeconds  secondi di inattività prima della scadenza
+   * @param maxSessions sessioni massime, oltre le quali si evincono le meno recenti
+   * @param maxBytes    memoria stimata massima degli attributi (bytes)
+   */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public InMemorySessionStore(int ttlSeconds, int maxSessions, long maxBytes)
+  {
+    this.sessions = new ConcurrentHashMap<>();
+    this.wheel = new Set[SLOTS];
+    for (int i = 0; i < SLOTS; i++) {
+      wheel[i] = ConcurrentHashMap.newKeySet();
+    }
+    this.ttlMillis = Math.max(1, ttlSeconds) * 1000L;
+    this.slotMillis = Math.max(1000L, (ttlMillis + SLOTS - 3) / (SLOTS - 2));
+    this.maxSessions = Math.max(1, maxSessions);
+    this.maxBytes = Math.max(ENTRY_BYTES, maxBytes);
+    this.bytes = new AtomicLong();
+    this.evicting = new AtomicBoolean();
+    this.expired = new LongAdder();
+    this.evicted = new LongAdder();
+    this.sweptTick = System.currentTimeMillis() / slotMillis - 1;
+    this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t;
+      t = new Thread(r);
+      t.setName("session-cleanup");
+      t.setDaemon(true);
+      return t;
+    });
+    cleanupExecutor.scheduleAtFixedRate(this::cleanup, slotMillis, slotMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public Map<String, Object> load(String id)
+  {
+    Entry e;
+    Map<String, Object> result;
+
+    e = sessions.get(id);
+    result = null;
+    if (e != null) {
+      if (e.deadline <= System.currentTimeMillis()) {
+        if (unlink(e)) {
+          expired.increment();
+        }
+      } else {
+        result = e.attrs;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void save(String id, Map<String, Object> attrs, boolean dirty)
+  {
+    Entry e;
+    long now;
+    long size;
+
+    now = System.currentTimeMillis();
+    e = sessions.get(id);
+    if (e == null) {
+      e = insert(id, attrs, now);
+      dirty = true;
+    }
+    if (e.attrs != attrs) {
+      // Sostituisce il contenuto (le chiavi rimosse non tornano) mantenendo la mappa condivisa
+      e.attrs.keySet().retainAll(attrs.keySet());
+      e.attrs.putAll(attrs);
+      dirty = true;
+    }
+    renew(e, now);
+    if (e.removed) {
+      // Scaduta o rimossa tra load e save: la richiesta in corso la ricrea
+      e = insert(id, e.attrs, now);
+      dirty = true;
+    }
+    if (dirty) {
+      size = ENTRY_BYTES + estimate(e.attrs, 0);
+      synchronized (e) {
+        if (!e.removed) {
+          bytes.addAndGet(size - e.bytes);
+          e.bytes = size;
+        }
+      }
+    }
+    if (sessions.size() > maxSessions || bytes.get() > maxBytes) {
+      evict(e);
+    }
+  }
+
+  @Override
+  public void remove(String id)
+  {
+    Entry e;
+
+    e = sessions.get(id);
+    if (e != null) {
+      unlink(e);
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    return sessions.size();
+  }
+
+  @Override
+  public void shutdown()
+  {
+    cleanupExecutor.shutdownNow();
+  }
+
+  /**
+   * Istantanea di occupazione e contatori.
+   *
+   * @return statistiche dello store
+   */
+  public Stats getStats()
+  {
+    return new Stats(sessions.size(), maxSessions, bytes.get(), maxBytes, expired.sum(), evicted.sum());
+  }
+
+  // =========================
+  // Timing wheel
+  // =========================
+
+  private int slot(long deadline)
+  {
+    return (int) ((deadline / slotMillis) & (SLOTS - 1));
+  }
+
+  /** Inserisce una nuova sessione (o restituisce quella inserita nel frattempo da un'altra richiesta). */
+  private Entry insert(String id, Map<String, Object> attrs, long now)
+  {
+    Entry created;
+    Entry result;
+
+    created = new Entry(id, attrs instanceof ConcurrentHashMap ? attrs : new ConcurrentHashMap<>(attrs));
+    created.deadline = now + ttlMillis;
+    created.slot = slot(created.deadline);
+    wheel[created.slot].add(created);
+    result = sessions.putIfAbsent(id, created);
+    if (result == null) {
+      result = created;
+    } else {
+      wheel[created.slot].remove(created);
+    }
+    return result;
+  }
+
+  /** Rinnova la scadenza; sposta la sessione di slot solo se cambia slot. */
+  private void renew(Entry e, long now)
+  {
+    int target;
+
+    e.deadline = now + ttlMillis;
+    target = slot(e.deadline);
+    if (target != e.slot) {
+      synchronized (e) {
+        if (!e.removed && target != e.slot) {
+          wheel[e.slot].remove(e);
+          e.slot = target;
+          wheel[target].add(e);
+        }
+      }
+    }
+  }
+
+  /** Rimuove la sessione da indice e wheel; {@code false} se già rimossa da un altro thread. */
+  private boolean unlink(Entry e)
+  {
+    boolean result;
+
+    synchronized (e) {
+      result = !e.removed && sessions.remove(e.id, e);
+      if (result) {
+        e.removed = true;
+        wheel[e.slot].remove(e);
+        bytes.addAndGet(-e.bytes);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Svuota gli slot trascorsi dall'ultimo giro. Le sessioni rinnovate nel frattempo
+   * (scadenza futura) restano: verranno spostate dal prossimo {@link #renew}.
+   */
+  private void cleanup()
+  {
+    long now;
+    long current;
+    long from;
+
+    try {
+      now = System.currentTimeMillis();
+      current = now / slotMillis;
+      from = Math.max(sweptTick + 1, current - SLOTS + 1);
+      for (long t = from; t < current; t++) {
+        for (Entry e : wheel[(int) (t & (SLOTS - 1))]) {
+          if (e.deadline <= now && unlink(e)) {
+            expired.increment();
+          }
+        }
+      }
+      sweptTick = current - 1;
+    } catch (Exception e) {
+      log.warn("Cleanup sessioni fallito: {}", e.toString());
+    }
+  }
+
+  /**
+   * Rimuove le sessioni con scadenza più vicina finché numero e memoria rientrano nei limiti.
+   * Un solo thread alla volta; gli altri proseguono senza attendere.
+   *
+   * @param keep sessione della richiesta corrente, mai rimossa
+   */
+  private void evict(Entry keep)
+  {
+    long tick;
+    int count;
+
+    if (evicting.compareAndSet(false, true)) {
+      try {
+        count = 0;
+        tick = System.currentTimeMillis() / slotMillis;
+        for (int i = 0; i < SLOTS && overLimit(); i++) {
+          for (Entry e : wheel[(int) ((tick - 1 + i) & (SLOTS - 1))]) {
+            if (!overLimit()) {
+              break;
+            }
+            if (e != keep && unlink(e)) {
+              evicted.increment();
+              count++;
+            }
+          }
+        }
+        if (count > 0) {
+          log.debug("Sessioni rimosse per limite di memoria o numero: {}", count);
+        }
+      } finally {
+        evicting.set(false);
+      }
+    }
+  }
+
+  private boolean overLimit()
+  {
+    return sessions.size() > maxSessions || bytes.get() > maxBytes;
+  }
+
+  // =========================
+  // Stima della memoria
+  // =========================
+
+  /** Stima approssimata dei byte occupati da un valore; oltre 4 livelli di annidamento conta un oggetto fisso. */
+  private static long estimate(Object value, int depth)
+  {
+    long result;
+
+    if (value == null) {
+      result = 0;
+    } else if (value instanceof CharSequence s) {
+      result = 40 + 2L * s.length();
+    } else if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum) {
+      result = 16;
+    } else if (value instanceof byte[] b) {
+      result = 16 + b.length;
+    } else if (depth >= 4) {
+      result = 64;
+    } else if (value instanceof Map<?, ?> m) {
+      result = 64;
+      for (Map.Entry<?, ?> entry : m.entrySet()) {
+        result += 32 + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+      }
+    } else if (value instanceof Collection<?> c) {
+      result = 48;
+      for (Object item : c) {
+        result += 8 + estimate(item, depth + 1);
+      }
+    } else if (value instanceof Object[] a) {
+      result = 16;
+      for (Object item : a) {
+        result += 8 + estimate(item, depth + 1);
+      }
+    } else {
+      result = 64;
+    }
+    return result;
+  }
+
+  /** Sessione: attributi, scadenza (epoch ms), slot corrente nella wheel, byte stimati. Slot e byte cambiano sotto il lock dell'entry. */
+  private static class Entry
+  {
+    final String id;
+    final Map<String, Object> attrs;
+    volatile long deadline;
+    volatile int slot;
+    volatile long bytes;
+    boolean removed;
+
+    Entry(String id, Map<String, Object> attrs)
+    {
+      this.id = id;
+      this.attrs = attrs;
+    }
+  }
+
+  /** Istantanea dello store in memoria (per {@link Metrics}). */
+  public static class Stats
+  {
+    /** Sessioni presenti. */
+    public final int sessions;
+    /** Limite di sessioni oltre il quale si evince. */
+    public final int maxSessions;
+    /** Memoria stimata degli attributi (bytes). */
+    public final long bytes;
+    /** Limite di memoria stimata (bytes). */
+    public final long maxBytes;
+    /** Sessioni rimosse per scadenza del TTL. */
+    public final long expired;
+    /** Sessioni rimosse per limite di numero o memoria. */
+    public final long evicted;
+
+    Stats(int sessions, int maxSessions, long bytes, long maxBytes, long expired, long evicted)
+    {
+      this.sessions = sessions;
+      this.maxSessions = maxSessions;
+      this.bytes = bytes;
+      this.maxBytes = maxBytes;
+      this.expired = expired;
+      this.evicted = evicted;
+    }
+  }
+}
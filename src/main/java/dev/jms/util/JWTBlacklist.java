@@ -1,33 +1,120 @@
 package dev.jms.util;
 
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * Blacklist in-memory per JWT revocati (logout, cambio password).
+ * Blacklist per JWT revocati (logout, cambio password).
  * Previene session replay attack dopo logout tracciando JWT ID (jti) fino alla scadenza naturale.
  *
- * <p>Pattern: singleton lazy-init con cleanup automatico. Thread-safe (ConcurrentHashMap).
- * Cleanup eseguito ogni minuto da daemon thread per rimuovere token scaduti.
+ * <p>Ogni nodo tiene la blacklist in memoria (ConcurrentHashMap), preceduta da un Bloom filter:
+ * nel caso comune (token non revocato) {@link #isRevoked} si ferma a pochi test di bit,
+ * senza lookup nella mappa. Il filtro non ammette falsi negativi; i falsi positivi proseguono
+ * sulla mappa.
+ *
+ * <p>Con il database configurato e {@code jwt.blacklist.shared=true} (default) la blacklist è
+ * condivisa tra i nodi:
+ * <ul>
+ *   <li>{@link #revoke} scrive in {@code jms_jwt_blacklist} e invia {@code NOTIFY} sul canale
+ *       {@value #CHANNEL};</li>
+ *   <li>ogni nodo resta in {@code LISTEN} su una connessione dedicata e aggiunge i jti ricevuti;</li>
+ *   <li>all'avvio e a ogni riconnessione la blacklist viene ricaricata dalla tabella.</li>
+ * </ul>
+ *
+ * <p>Cleanup eseguito ogni minuto da daemon thread: rimuove i token scaduti (anche dalla tabella)
+ * e ricostruisce il Bloom filter.
  */
 public class JWTBlacklist
 {
+  private static final Log log = Log.get(JWTBlacklist.class);
+
+  /** Canale {@code LISTEN/NOTIFY} delle revoche; payload {@code jti|scadenza_ms}. */
+  private static final String CHANNEL = "jms_jwt_revoked";
+
+  private static final String INSERT =
+    "INSERT INTO jms_jwt_blacklist (jti, expires_at) VALUES (?, to_timestamp(? / 1000.0)) ON CONFLICT (jti) DO NOTHING";
+  private static final String NOTIFY = "SELECT pg_notify('" + CHANNEL + "', ?)";
+  private static final String LOAD =
+    "SELECT jti, (EXTRACT(EPOCH FROM expires_at) * 1000)::BIGINT AS expires_ms FROM jms_jwt_blacklist WHERE expires_at > now()";
+  private static final String PRUNE = "DELETE FROM jms_jwt_blacklist WHERE expires_at <= now()";
+
+  /** Funzioni hash del Bloom filter. */
+  private static final int HASHES = 4;
+
+  /** Attesa massima di una notifica prima del controllo della connessione. */
+  private static final int LISTEN_TIMEOUT_MS = 10_000;
+
   private static final ConcurrentHashMap<String, Long> revokedTokens = new ConcurrentHashMap<>();
+  private static volatile AtomicLongArray bloom = new AtomicLongArray((1 << 16) / 64);
+  private static volatile boolean shared;
+  private static volatile boolean listening;
   private static ScheduledExecutorService cleanupExecutor;
+  private static Thread listener;
+
+  /**
+   * Configura il Bloom filter e, se la blacklist è condivisa, la ricarica dal database
+   * e avvia il listener delle revoche degli altri nodi.
+   * Da chiamare in {@code App.main()} dopo {@code DB.init()}.
+   *
+   * @param config configurazione applicazione ({@code jwt.blacklist.*})
+   */
+  public static synchronized void init(Config config)
+  {
+    int bits;
+
+    bits = Integer.highestOneBit(Math.max(1024, config.getInt("jwt.blacklist.bloom.bits", 1 << 16)) - 1) << 1;
+    bloom = new AtomicLongArray(bits / 64);
+    rebuildBloom();
+    shared = DB.isConfigured() && Boolean.parseBoolean(config.get("jwt.blacklist.shared", "true").trim());
+    if (shared) {
+      try {
+        reload();
+      } catch (Exception e) {
+        log.warn("Caricamento blacklist JWT fallito, nuovo tentativo dal listener: {}", e.getMessage());
+      }
+      listening = true;
+      listener = new Thread(JWTBlacklist::listen, "jwt-blacklist-listener");
+      listener.setDaemon(true);
+      listener.start();
+    }
+    ensureCleanupStarted();
+  }
 
   /**
    * Revoca un JWT aggiungendolo alla blacklist.
    * Il token rimane in blacklist fino alla sua scadenza naturale.
+   * Con la blacklist condivisa la revoca è persistita e notificata agli altri nodi;
+   * se il database non risponde resta valida almeno su questo nodo.
    *
    * @param jti           JWT ID (claim jti)
    * @param expiresAtMillis timestamp di scadenza in millisecondi
    */
   public static void revoke(String jti, long expiresAtMillis)
   {
+    DB db;
+
     ensureCleanupStarted();
-    revokedTokens.put(jti, expiresAtMillis);
+    add(jti, expiresAtMillis);
+    if (shared) {
+      db = new DB(DB.getDataSource());
+      try {
+        db.execute(INSERT, jti, expiresAtMillis);
+        db.select(NOTIFY, jti + "|" + expiresAtMillis);
+      } catch (Exception e) {
+        log.error("Revoca JWT non propagata agli altri nodi: {}", e.getMessage());
+      } finally {
+        db.close();
+      }
+    }
   }
 
   /**
@@ -43,20 +130,90 @@ public class JWTBlacklist
     long now;
     boolean result;
 
-    expiresAt = revokedTokens.get(jti);
     result = false;
-    if (expiresAt != null) {
-      now = System.currentTimeMillis();
-      if (now > expiresAt) {
-        revokedTokens.remove(jti);
-        result = false;
-      } else {
-        result = true;
+    if (mightContain(bloom, jti)) {
+      expiresAt = revokedTokens.get(jti);
+      if (expiresAt != null) {
+        now = System.currentTimeMillis();
+        if (now > expiresAt) {
+          revokedTokens.remove(jti);
+          result = false;
+        } else {
+          result = true;
+        }
       }
     }
     return result;
   }
 
+  /** Aggiunge alla mappa e poi al filtro corrente (ordine richiesto da {@link #rebuildBloom}). */
+  private static void add(String jti, long expiresAtMillis)
+  {
+    revokedTokens.put(jti, expiresAtMillis);
+    bloomAdd(bloom, jti);
+  }
+
+  /** Ricarica dalla tabella le revoche non scadute. */
+  private static void reload() throws Exception
+  {
+    DB db;
+
+    db = new DB(DB.getDataSource());
+    try {
+      for (HashMap<String, Object> row : db.select(LOAD)) {
+        add((String) row.get("jti"), DB.toLong(row.get("expires_ms")));
+      }
+    } finally {
+      db.close();
+    }
+    log.info("Blacklist JWT caricata: {} token revocati", revokedTokens.size());
+  }
+
+  /**
+   * Resta in {@code LISTEN} su una connessione dedicata. Dopo ogni (ri)connessione ricarica la
+   * tabella: le revoche notificate mentre il listener era scollegato non vanno perse.
+   */
+  private static void listen()
+  {
+    PGNotification[] notifications;
+    PGConnection pg;
+    int separator;
+    String payload;
+
+    while (listening) {
+      try (Connection c = DB.connectDedicated(); Statement stmt = c.createStatement()) {
+        stmt.execute("LISTEN " + CHANNEL);
+        reload();
+        pg = c.unwrap(PGConnection.class);
+        while (listening) {
+          notifications = pg.getNotifications(LISTEN_TIMEOUT_MS);
+          if (notifications == null || notifications.length == 0) {
+            // Nessuna notifica: verifica che la connessione sia ancora viva
+            stmt.execute("SELECT 1");
+          } else {
+            for (PGNotification n : notifications) {
+              payload = n.getParameter();
+              separator = payload.lastIndexOf('|');
+              if (separator > 0) {
+                add(payload.substring(0, separator), Long.parseLong(payload.substring(separator + 1)));
+              }
+            }
+          }
+        }
+      } catch (Exception e) {
+        if (listening) {
+          log.warn("Listener blacklist JWT scollegato, riconnessione tra 5s: {}", e.getMessage());
+          try {
+            Thread.sleep(5000);
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            listening = false;
+          }
+        }
+      }
+    }
+  }
+
   /** Avvia il cleanup automatico se non gia' attivo. */
   private static synchronized void ensureCleanupStarted()
   {
@@ -71,18 +228,122 @@ public class JWTBlacklist
     }
   }
 
-  /** Rimuove token scaduti dalla blacklist. */
+  /** Rimuove token scaduti dalla blacklist (e dalla tabella) e ricostruisce il Bloom filter. */
   private static void cleanup()
   {
     long now;
+    DB db;
 
     now = System.currentTimeMillis();
     revokedTokens.entrySet().removeIf(entry -> now > entry.getValue());
+    rebuildBloom();
+    if (shared) {
+      db = new DB(DB.getDataSource(Workload.JOBS));
+      try {
+        db.execute(PRUNE);
+      } catch (Exception e) {
+        log.warn("Pulizia tabella blacklist JWT fallita: {}", e.getMessage());
+      } finally {
+        db.close();
+      }
+    }
   }
 
-  /** Chiude il cleanup executor (chiamato dallo shutdown hook di App.java). */
+  // =========================
+  // Bloom filter
+  // =========================
+
+  /**
+   * Ricostruisce il filtro senza i token rimossi. Il secondo passaggio, dopo la sostituzione,
+   * copre le revoche arrivate durante la costruzione: {@link #add} scrive prima nella mappa
+   * e poi nel filtro corrente, quindi ogni jti finisce almeno in uno dei due passaggi.
+   */
+  private static void rebuildBloom()
+  {
+    AtomicLongArray fresh;
+
+    fresh = new AtomicLongArray(bloom.length());
+    for (String jti : revokedTokens.keySet()) {
+      bloomAdd(fresh, jti);
+    }
+    bloom = fresh;
+    for (String jti : revokedTokens.keySet()) {
+      bloomAdd(fresh, jti);
+    }
+  }
+
+  private static void bloomAdd(AtomicLongArray bits, String jti)
+  {
+    long h;
+    int h1;
+    int h2;
+    int mask;
+    int index;
+
+    h = hash(jti);
+    h1 = (int) h;
+    h2 = (int) (h >>> 32) | 1;
+    mask = bits.length() * 64 - 1;
+    for (int i = 0; i < HASHES; i++) {
+      index = (h1 + i * h2) & mask;
+      bits.getAndAccumulate(index >>> 6, 1L << index, (a, b) -> a | b);
+    }
+  }
+
+  private static boolean mightContain(AtomicLongArray bits, String jti)
+  {
+    long h;
+    int h1;
+    int h2;
+    int mask;
+    int index;
+    boolean result;
+
+    h = hash(jti);
+    h1 = (int) h;
+    h2 = (int) (h >>> 32) | 1;
+    mask = bits.length() * 64 - 1;
+    result = true;
+    for (int i = 0; i < HASHES && result; i++) {
+      index = (h1 + i * h2) & mask;
+      result = (bits.get(index >>> 6) & (1L << index)) != 0;
+    }
+    return result;
+  }
+
+  /** FNV-1a 64 bit: le due metà danno i due hash del double hashing. */
+  private static long hash(String jti)
+  {
+    long h;
+
+    h = 0xcbf29ce484222325L;
+    for (int i = 0; i < jti.length(); i++) {
+      h ^= jti.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /** Esito del solo Bloom filter, senza la mappa (per i test del tasso di falsi positivi). */
+  static boolean mightBeRevoked(String jti)
+  {
+    return mightContain(bloom, jti);
+  }
+
+  /** Numero di JWT in blacklist (per {@link Metrics}). */
+  static int size()
+  {
+    return revokedTokens.size();
+  }
+
+  /** Chiude cleanup executor e listener (chiamato dallo shutdown hook di App.java). */
   public static synchronized void shutdown()
   {
+    listening = false;
+    if (listener != null) {
+      listener.interrupt();
+      listener = null;
+    }
     if (cleanupExecutor != null) {
       cleanupExecutor.shutdown();
       cleanupExecutor = null;
@@ -0,0 +1,228 @@
+package dev.jms.util;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache dei claims di access token già verificati, usata da {@link Session}.
+ *
+ * <p>La GUI interroga più endpoint al secondo con lo stesso cookie {@code access_token}: senza
+ * cache ogni richiesta ripete HMAC-SHA256, decodifica Base64 e parsing JSON di header e payload.
+ * Dopo la prima verifica i claims (mappa immutabile) e la scadenza {@code exp} restano in cache
+ * con chiave SHA-256 del token: il token in chiaro non viene conservato.
+ *
+ * <p>A ogni hit vengono comunque controllati, senza ritardo:
+ * <ul>
+ *   <li>la scadenza {@code exp} del token;</li>
+ *   <li>la revoca in {@link JWTBlacklist} ({@code jti});</li>
+ *   <li>l'istanza {@link Auth} che ha verificato il token (un nuovo {@link Auth#init} invalida la cache).</li>
+ * </ul>
+ * I token non validi non vengono memorizzati. Oltre {@code jwt.cache.max} voci vengono rimosse
+ * le scadute e, se non basta, la cache riparte vuota.
+ */
+public class JWTCache
+{
+  private static final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<>();
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder misses = new LongAdder();
+
+  /** Prototipo SHA-256 risolto da {@link #init}, clonato per ogni chiave */
+  private static volatile MessageDigest sha256;
+
+  /** Cache attiva: {@code false} fino a {@link #init} */
+  private static volatile boolean enabled;
+  private static volatile int maxEntries = 10_000;
+
+  private JWTCache()
+  {
+  }
+
+  /**
+   * Configura la cache. Da chiamare in {@code App.main()} dopo {@link Auth#init}.
+   *
+   * @param config configurazione applicazione ({@code jwt.cache.enabled}, {@code jwt.cache.max})
+   * @throws IllegalStateException se la cache è abilitata e SHA-256 non è disponibile
+   */
+  public static void init(Config config)
+  {
+    init(Boolean.parseBoolean(config.get("jwt.cache.enabled", "true").trim()),
+         config.getInt("jwt.cache.max", 10_000));
+  }
+
+  /**
+   * Configura la cache con i valori forniti (anche per benchmark e test, senza {@link Config}).
+   * L'algoritmo SHA-256 è risolto qui, una volta sola: se manca l'avvio fallisce invece di
+   * proseguire con la cache disattivata.
+   *
+   * @param cacheEnabled cache attiva
+   * @param max          voci massime
+   * @throws IllegalStateException se la cache è abilitata e SHA-256 non è disponibile o clonabile
+   */
+  static void init(boolean cacheEnabled, int max)
+  {
+    MessageDigest md;
+
+    if (cacheEnabled) {
+      try {
+        md = MessageDigest.getInstance("SHA-256");
+        md.clone();
+      } catch (NoSuchAlgorithmException | CloneNotSupportedException e) {
+        throw new IllegalStateException("SHA-256 unavailable for the JWT cache", e);
+      }
+      sha256 = md;
+    }
+    enabled = cacheEnabled;
+    maxEntries = Math.max(1, max);
+    cache.clear();
+  }
+
+  /**
+   * Claims dell'access token, verificato o letto dalla cache.
+   *
+   * @param token access token dal cookie
+   * @return claims immutabili ({@code sub}, {@code username}, {@code ruolo}, {@code ruolo_level},
+   *         {@code must_change_password}), o {@code null} se il token non è valido, è scaduto o è revocato
+   */
+  public static Map<String, Object> verify(String token)
+  {
+    Auth auth;
+    Key key;
+    Entry entry;
+    Map<String, Object> result;
+
+    auth = Auth.get();
+    key = enabled ? key(token) : null;
+    entry = key != null ? cache.get(key) : null;
+    if (entry != null && entry.auth == auth && System.currentTimeMillis() < entry.expiresAt) {
+      hits.increment();
+    } else {
+      misses.increment();
+      entry = decode(auth, token);
+      if (entry != null && key != null && entry.expiresAt != Long.MAX_VALUE) {
+        put(key, entry);
+      }
+    }
+    result = null;
+    if (entry != null && (entry.jti == null || !JWTBlacklist.isRevoked(entry.jti))) {
+      result = entry.claims;
+    }
+    return result;
+  }
+
+  /**
+   * Istantanea di dimensione e contatori.
+   *
+   * @return statistiche della cache
+   */
+  public static Stats getStats()
+  {
+    return new Stats(cache.size(), hits.sum(), misses.sum());
+  }
+
+  /** Verifica firma e scadenza; {@code null} se il token non è valido. */
+  private static Entry decode(Auth auth, String token)
+  {
+    DecodedJWT jwt;
+    HashMap<String, Object> claims;
+    Date exp;
+    Entry result;
+
+    try {
+      jwt = auth.verifyAccessToken(token);
+      claims = new HashMap<>();
+      claims.put("sub", jwt.getSubject());
+      claims.put("username", jwt.getClaim("username").asString());
+      claims.put("ruolo", jwt.getClaim("ruolo").asString());
+      claims.put("ruolo_level", jwt.getClaim("ruolo_level").asInt());
+      claims.put("must_change_password", jwt.getClaim("must_change_password").asBoolean());
+      exp = jwt.getExpiresAt();
+      result = new Entry(auth, Collections.unmodifiableMap(claims), jwt.getId(),
+                         exp != null ? exp.getTime() : Long.MAX_VALUE);
+    } catch (JWTVerificationException e) {
+      result = null;
+    }
+    return result;
+  }
+
+  /** Inserisce rispettando {@code jwt.cache.max}: prima le scadute, poi svuotamento completo. */
+  private static void put(Key key, Entry entry)
+  {
+    long now;
+
+    if (cache.size() >= maxEntries) {
+      now = System.currentTimeMillis();
+      cache.values().removeIf(e -> e.expiresAt <= now);
+      if (cache.size() >= maxEntries) {
+        cache.clear();
+      }
+    }
+    cache.put(key, entry);
+  }
+
+  /** SHA-256 del token come chiave a 256 bit (clone del prototipo: nessuna ricerca del provider). */
+  private static Key key(String token)
+  {
+    MessageDigest md;
+    ByteBuffer digest;
+
+    try {
+      md = (MessageDigest) sha256.clone();
+    } catch (CloneNotSupportedException e) {
+      // Escluso da init: il prototipo è già stato clonato una volta
+      throw new IllegalStateException("SHA-256 digest not cloneable", e);
+    }
+    digest = ByteBuffer.wrap(md.digest(token.getBytes(StandardCharsets.US_ASCII)));
+    return new Key(digest.getLong(), digest.getLong(), digest.getLong(), digest.getLong());
+  }
+
+  /** Digest SHA-256 del token. */
+  private record Key(long a, long b, long c, long d)
+  {
+  }
+
+  /** Claims verificati con istanza {@link Auth}, {@code jti} e scadenza (epoch ms). */
+  private static class Entry
+  {
+    final Auth auth;
+    final Map<String, Object> claims;
+    final String jti;
+    final long expiresAt;
+
+    Entry(Auth auth, Map<String, Object> claims, String jti, long expiresAt)
+    {
+      this.auth = auth;
+      this.claims = claims;
+      this.jti = jti;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /** Istantanea della cache (per {@link Metrics}). */
+  public static class Stats
+  {
+    /** Token in cache (scaduti inclusi, fino alla prossima pulizia). */
+    public final int size;
+    /** Verifiche servite dalla cache. */
+    public final long hits;
+    /** Verifiche con firma e parsing (token nuovi, scaduti in cache, cache disattivata o dopo {@link Auth#init}). */
+    public final long misses;
+
+    Stats(int size, long hits, long misses)
+    {
+      this.size = size;
+      this.hits = hits;
+      this.misses = misses;
+    }
+  }
+}
@@ -1,18 +1,45 @@
 package dev.jms.util;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 /**
  * Utility per la serializzazione e deserializzazione JSON tramite Jackson.
+ *
+ * <p>Un {@link Stream} (es. {@link DB#stream}) in qualsiasi punto del payload è scritto come
+ * array JSON elemento per elemento, senza raccoglierlo in una lista: con {@link #writeEnvelope}
+ * i byte vengono inviati al client ogni {@value #STREAM_FLUSH_ROWS} elementi (chunked transfer
+ * encoding), quindi la memoria resta costante qualunque sia il numero di righe.
+ * Lo stream viene chiuso al termine della scrittura (anche in caso di errore).
+ * Se la scrittura fallisce a metà l'envelope resta aperto: nessuna chiusura automatica di array
+ * e oggetti che faccia sembrare valida una risposta troncata.
  */
 public class Json
 {
+  /** Elementi di uno {@link Stream} scritti tra due flush verso il client */
+  static final int STREAM_FLUSH_ROWS = 256;
+
   private static final ObjectMapper mapper;
+  private static final ObjectWriter streamWriter;
 
   static {
-    mapper = new ObjectMapper().disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    mapper = new ObjectMapper()
+      .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+      .registerModule(new SimpleModule("jms-stream").addSerializer(new StreamSerializer()));
+    // Nessun flush intermedio: lo stream decide quando inviare (Content-Length se il body sta nel buffer)
+    streamWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
   }
 
   /**
@@ -33,6 +60,41 @@ public class Json
     return result;
   }
 
+  /**
+   * Scrive l'envelope standard {@code {"err":..,"log":..,"out":..}} direttamente sullo stream,
+   * senza mappa intermedia né stringa: il payload {@code out} viene serializzato campo per
+   * campo nei buffer dello stream (per Undertow: buffer del pool dell'exchange).
+   * Lo stream viene chiuso al termine. Se la serializzazione fallisce lo stream non viene chiuso
+   * e l'envelope resta incompleto: il chiamante decide se scartare i byte o interrompere la risposta.
+   *
+   * @param os  stream di destinazione
+   * @param err valore del campo {@code err}
+   * @param log valore del campo {@code log}, o {@code null}
+   * @param out payload del campo {@code out}, o {@code null}
+   * @throws IOException se la scrittura o la serializzazione fallisce
+   */
+  public static void writeEnvelope(OutputStream os, boolean err, String log, Object out) throws IOException
+  {
+    JsonGenerator gen;
+
+    gen = mapper.getFactory().createGenerator(os, JsonEncoding.UTF8);
+    gen.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    gen.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    gen.writeStartObject();
+    gen.writeBooleanField("err", err);
+    if (log != null) {
+      gen.writeStringField("log", log);
+    } else {
+      gen.writeNullField("log");
+    }
+    gen.writeFieldName("out");
+    streamWriter.writeValue(gen, out);
+    gen.writeEndObject();
+    gen.close();
+    os.close();
+  }
+
   /**
    * Deserializza una stringa JSON nel tipo specificato.
    *
@@ -52,4 +114,38 @@ public class Json
     }
     return result;
   }
+
+  /** Serializza uno {@link Stream} come array JSON, con flush periodico verso lo stream di uscita. */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static class StreamSerializer extends StdSerializer<Stream>
+  {
+    private static final long serialVersionUID = 1L;
+
+    StreamSerializer()
+    {
+      super(Stream.class);
+    }
+
+    @Override
+    public void serialize(Stream value, JsonGenerator gen, SerializerProvider provider) throws IOException
+    {
+      Iterator<Object> it;
+      int count;
+
+      count = 0;
+      try (Stream<Object> rows = value) {
+        it = rows.iterator();
+        gen.writeStartArray();
+        while (it.hasNext()) {
+          provider.defaultSerializeValue(it.next(), gen);
+          count++;
+          if (count % STREAM_FLUSH_ROWS == 0 && gen.getOutputTarget() instanceof OutputStream os) {
+            gen.flush();
+            os.flush();
+          }
+        }
+        gen.writeEndArray();
+      }
+    }
+  }
 }
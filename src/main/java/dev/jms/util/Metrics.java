@@ -0,0 +1,518 @@
+package dev.jms.util;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.jobrunr.jobs.Job;
+import org.jobrunr.jobs.filters.JobServerFilter;
+import org.jobrunr.jobs.states.ProcessingState;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metriche runtime esposte in formato testo Prometheus su {@code /api/metrics} (solo ADMIN).
+ *
+ * <p>Fonti:
+ * <ul>
+ *   <li><b>Rotte</b>: ogni metodo registrato tramite {@link Router} ha un {@link Route} ottenuto
+ *       all'avvio ({@link HandlerAdapter#seal()}); conteggio, errori e latenza sono registrati
+ *       in istogrammi separati per classe di status (2xx, 3xx, 4xx, 5xx). Le richieste respinte
+ *       sull'IO thread prima dell'handler (405, 413, 429, 503) entrano negli stessi istogrammi
+ *       e in {@code http_server_rejected_total} per status.</li>
+ *   <li><b>HikariCP</b>: attesa in {@code getConnection()} e timeout tramite il
+ *       {@link IMetricsTracker} installato da {@link DB#init}, insieme al tempo di possesso;
+ *       connessioni attive/idle/in attesa da {@link PoolStats}. Una serie per pool (etichetta
+ *       {@code pool}: {@code interactive}, {@code async}, {@code jobs}, {@code replica}); ritardo e
+ *       stato della replica da {@link DB#getReplicaStats()}.</li>
+ *   <li><b>Connessioni per rotta</b>: tempo di possesso della connessione rispetto alla durata
+ *       della richiesta e acquisizioni dal pool, da {@link ConnectionUsage}.</li>
+ *   <li><b>JobRunr</b>: durata dei job per id ed esito tramite {@link #jobFilter()}.</li>
+ *   <li><b>File statici</b>: cache di {@link StaticResources} (file, bytes, hit, miss, path inesistenti).</li>
+ *   <li><b>Store in-memory</b>: dimensione di {@link Session}, {@link JWTBlacklist}, {@link RateLimiter};
+ *       stato di {@link AsyncExecutor}, {@link VirtualExecutor} e {@link ConcurrencyLimiter}.
+ *       Letti solo al momento dello scrape.</li>
+ * </ul>
+ *
+ * <p>Il percorso di registrazione non alloca: bucket con soglie precalcolate in nanosecondi
+ * e contatori {@link LongAdder} (lock-free, senza contesa tra thread diversi).
+ */
+public class Metrics
+{
+  /** Soglie dei bucket in secondi (le stesse per tutti gli istogrammi). */
+  private static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+  private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+  private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+  /** Status delle risposte date da {@link HandlerAdapter} senza eseguire l'handler. */
+  private static final int[] REJECT_STATUSES = {405, 413, 429, 503};
+
+  private static final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Histogram> jobs = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Pool> pools = new ConcurrentHashMap<>();
+
+  static {
+    for (int i = 0; i < BUCKETS.length; i++) {
+      BUCKET_NANOS[i] = (long) (BUCKETS[i] * 1_000_000_000L);
+    }
+  }
+
+  /**
+   * Restituisce (creandole alla prima chiamata) le metriche di una rotta.
+   * Chiamato all'avvio da {@link HandlerAdapter#seal()}: il riferimento viene conservato
+   * dall'adapter, quindi il percorso della richiesta non fa lookup.
+   *
+   * @param method metodo HTTP
+   * @param path   path template
+   * @return metriche della rotta
+   */
+  static Route route(HttpMethod method, String path)
+  {
+    return route(method.name(), path);
+  }
+
+  /**
+   * Come {@link #route(HttpMethod, String)} con il nome del metodo: usato per le risposte 405
+   * ai metodi non registrati ({@code "OTHER"} per i metodi non in {@link HttpMethod}).
+   *
+   * @param method nome del metodo HTTP
+   * @param path   path template
+   * @return metriche della rotta
+   */
+  static Route route(String method, String path)
+  {
+    return routes.computeIfAbsent(method + " " + path, k -> new Route(method, path));
+  }
+
+  /**
+   * Factory per {@code HikariConfig.setMetricsTrackerFactory}: registra l'attesa per
+   * l'acquisizione delle connessioni e conserva le statistiche del pool per lo scrape.
+   * Le metriche sono separate per nome del pool ({@code HikariConfig.setPoolName}).
+   */
+  static IMetricsTracker poolTracker(String poolName, PoolStats stats)
+  {
+    Pool pool;
+
+    pool = new Pool(stats);
+    pools.put(poolName, pool);
+    return new IMetricsTracker()
+    {
+      @Override
+      public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos)
+      {
+        pool.acquire.record(elapsedAcquiredNanos);
+      }
+
+      @Override
+      public void recordConnectionUsageMillis(long elapsedBorrowedMillis)
+      {
+        pool.usage.record(elapsedBorrowedMillis * 1_000_000L);
+      }
+
+      @Override
+      public void recordConnectionTimeout()
+      {
+        pool.timeouts.increment();
+      }
+    };
+  }
+
+  /**
+   * Filtro JobRunr che registra la durata di ogni esecuzione per id del job
+   * (id ricorrente, o nome del job) ed esito.
+   */
+  static JobServerFilter jobFilter()
+  {
+    return new JobServerFilter()
+    {
+      @Override
+      public void onProcessingSucceeded(Job job)
+      {
+        recordJob(job, "succeeded");
+      }
+
+      @Override
+      public void onProcessingFailed(Job job, Exception e)
+      {
+        recordJob(job, "failed");
+      }
+    };
+  }
+
+  private static void recordJob(Job job, String outcome)
+  {
+    String name;
+    Instant started;
+
+    name = job.getRecurringJobId().orElse(job.getJobName());
+    started = job.getLastJobStateOfType(ProcessingState.class).map(s -> s.getCreatedAt()).orElse(null);
+    if (started != null) {
+      jobs.computeIfAbsent(label("job", name) + "," + label("outcome", outcome), k -> new Histogram())
+        .record(Duration.between(started, Instant.now()).toNanos());
+    }
+  }
+
+  /**
+   * Produce tutte le metriche in formato testo Prometheus (versione 0.0.4).
+   *
+   * @return corpo della risposta per {@code /api/metrics}
+   */
+  public static String render()
+  {
+    StringBuilder sb;
+    DB.ReplicaStats replica;
+    AsyncExecutor.Stats async;
+    VirtualExecutor.Stats virtual;
+    ConcurrencyLimiter.Stats limiter;
+    InMemorySessionStore.Stats sessions;
+    JWTCache.Stats jwt;
+    List<RateLimiter.Stats> rateLimits;
+    List<ConnectionUsage.Stats> usage;
+    StaticResources.Stats statics;
+
+    sb = new StringBuilder(16 * 1024);
+
+    header(sb, "http_server_requests_seconds", "histogram", "Durata delle richieste per rotta e classe di status");
+    for (Route r : routes.values()) {
+      String labels;
+      labels = label("method", r.method) + "," + label("route", r.path);
+      for (int c = 0; c < STATUS_CLASSES.length; c++) {
+        if (r.byClass[c].count() > 0) {
+          r.byClass[c].render(sb, "http_server_requests_seconds", labels + "," + label("status", STATUS_CLASSES[c]));
+        }
+      }
+    }
+    header(sb, "http_server_rejected_total", "counter", "Richieste respinte prima dell'handler (405, 413, 429, 503)");
+    for (Route r : routes.values()) {
+      for (int k = 0; k < REJECT_STATUSES.length; k++) {
+        if (r.rejected[k].sum() > 0) {
+          sample(sb, "http_server_rejected_total", label("method", r.method) + "," + label("route", r.path) + ","
+            + label("status", String.valueOf(REJECT_STATUSES[k])), r.rejected[k].sum());
+        }
+      }
+    }
+    header(sb, "http_server_errors_total", "counter", "Eccezioni non gestite dagli handler (risposta 500)");
+    for (Route r : routes.values()) {
+      sample(sb, "http_server_errors_total", label("method", r.method) + "," + label("route", r.path), r.errors.sum());
+    }
+
+    if (!pools.isEmpty()) {
+      header(sb, "hikaricp_connections_active", "gauge", "Connessioni in uso");
+      for (Map.Entry<String, Pool> e : pools.entrySet()) {
+        sample(sb, "hikaricp_connections_active", label("pool", e.getKey()), e.getValue().stats.getActiveConnections());
+      }
+      header(sb, "hikaricp_connections_idle", "gauge", "Connessioni libere nel pool");
+      for (Map.Entry<String, Pool> e : pools.entrySet()) {
+        sample(sb, "hikaricp_connections_idle", label("pool", e.getKey()), e.getValue().stats.getIdleConnections());
+      }
+      header(sb, "hikaricp_connections_pending", "gauge", "Thread in attesa di una connessione");
+      for (Map.Entry<String, Pool> e : pools.entrySet()) {
+        sample(sb, "hikaricp_connections_pending", label("pool", e.getKey()), e.getValue().stats.getPendingThreads());
+      }
+      header(sb, "hikaricp_connections_max", "gauge", "Dimensione massima del pool");
+      for (Map.Entry<String, Pool> e : pools.entrySet()) {
+        sample(sb, "hikaricp_connections_max", label("pool", e.getKey()), e.getValue().stats.getMaxConnections());
+      }
+      header(sb, "hikaricp_connections_acquire_seconds", "histogram", "Attesa in getConnection()");
+      for (Map.Entry<String, Pool> e : pools.entrySet()) {
+        e.getValue().acquire.render(sb, "hikaricp_connections_acquire_seconds", label("pool", e.getKey()));
+      }
+      header(sb, "hikaricp_connections_usage_seconds", "histogram", "Tempo di possesso delle connessioni");
+      for (Map.Entry<String, Pool> e : pools.entrySet()) {
+        e.getValue().usage.render(sb, "hikaricp_connections_usage_seconds", label("pool", e.getKey()));
+      }
+      header(sb, "hikaricp_connections_timeout_total", "counter", "Timeout in getConnection()");
+      for (Map.Entry<String, Pool> e : pools.entrySet()) {
+        sample(sb, "hikaricp_connections_timeout_total", label("pool", e.getKey()), e.getValue().timeouts.sum());
+      }
+    }
+
+    usage = ConnectionUsage.getStats();
+    if (!usage.isEmpty()) {
+      header(sb, "db_route_requests_total", "counter", "Richieste per rotta con DB disponibile all'handler");
+      for (ConnectionUsage.Stats u : usage) {
+        sample(sb, "db_route_requests_total", routeLabels(u.route), u.requests);
+      }
+      header(sb, "db_route_requests_without_connection_total", "counter", "Richieste completate senza acquisire connessioni");
+      for (ConnectionUsage.Stats u : usage) {
+        sample(sb, "db_route_requests_without_connection_total", routeLabels(u.route), u.requestsWithoutConnection);
+      }
+      header(sb, "db_route_connection_acquisitions_total", "counter", "Connessioni acquisite dal pool per rotta");
+      for (ConnectionUsage.Stats u : usage) {
+        sample(sb, "db_route_connection_acquisitions_total", routeLabels(u.route), u.acquisitions);
+      }
+      header(sb, "db_route_connection_held_seconds_total", "counter", "Tempo di possesso di connessioni per rotta");
+      for (ConnectionUsage.Stats u : usage) {
+        sample(sb, "db_route_connection_held_seconds_total", routeLabels(u.route), u.heldMillis / 1000.0);
+      }
+      header(sb, "db_route_request_seconds_total", "counter", "Durata totale delle stesse richieste (denominatore del rapporto di possesso)");
+      for (ConnectionUsage.Stats u : usage) {
+        sample(sb, "db_route_request_seconds_total", routeLabels(u.route), u.totalMillis / 1000.0);
+      }
+    }
+
+    replica = DB.getReplicaStats();
+    if (replica.configured) {
+      header(sb, "db_replica_healthy", "gauge", "1 se le letture read-only sono servite dalla replica");
+      sample(sb, "db_replica_healthy", null, replica.healthy ? 1 : 0);
+      header(sb, "db_replica_lag_seconds", "gauge", "Ritardo di replica all'ultimo controllo (-1 se non raggiungibile)");
+      sample(sb, "db_replica_lag_seconds", null, replica.lagSeconds);
+      header(sb, "db_replica_fallback_total", "counter", "Letture read-only servite dal primario per replica non disponibile");
+      sample(sb, "db_replica_fallback_total", null, replica.fallbacks);
+    }
+
+    header(sb, "session_store_size", "gauge", "Sessioni nello store server-side");
+    sample(sb, "session_store_size", null, Session.storeSize());
+    if (Session.store() instanceof InMemorySessionStore memory) {
+      sessions = memory.getStats();
+      header(sb, "session_store_bytes", "gauge", "Memoria stimata degli attributi di sessione");
+      sample(sb, "session_store_bytes", null, sessions.bytes);
+      header(sb, "session_store_expired_total", "counter", "Sessioni rimosse per TTL scaduto");
+      sample(sb, "session_store_expired_total", null, sessions.expired);
+      header(sb, "session_store_evicted_total", "counter", "Sessioni rimosse per limite di numero o memoria");
+      sample(sb, "session_store_evicted_total", null, sessions.evicted);
+    }
+    header(sb, "jwt_blacklist_size", "gauge", "JWT revocati non ancora scaduti");
+    sample(sb, "jwt_blacklist_size", null, JWTBlacklist.size());
+    jwt = JWTCache.getStats();
+    header(sb, "jwt_cache_size", "gauge", "Access token verificati in cache");
+    sample(sb, "jwt_cache_size", null, jwt.size);
+    header(sb, "jwt_cache_hits_total", "counter", "Verifiche JWT servite dalla cache");
+    sample(sb, "jwt_cache_hits_total", null, jwt.hits);
+    header(sb, "jwt_cache_misses_total", "counter", "Verifiche JWT complete (firma e payload)");
+    sample(sb, "jwt_cache_misses_total", null, jwt.misses);
+    header(sb, "rate_limiter_entries", "gauge", "Chiavi tracciate dal rate limiter");
+    sample(sb, "rate_limiter_entries", null, RateLimiter.size());
+    rateLimits = RateLimiter.getStats();
+    if (!rateLimits.isEmpty()) {
+      header(sb, "rate_limit_requests_total", "counter", "Richieste valutate dalle policy di rate limit per esito");
+      for (RateLimiter.Stats p : rateLimits) {
+        sample(sb, "rate_limit_requests_total", label("policy", p.name) + "," + label("result", "allowed"), p.allowed);
+        sample(sb, "rate_limit_requests_total", label("policy", p.name) + "," + label("result", "rejected"), p.rejected);
+      }
+      header(sb, "rate_limit_overflow_total", "counter", "Policy piena: richieste addebitate alla rete dell'IP e bucket rimossi");
+      for (RateLimiter.Stats p : rateLimits) {
+        sample(sb, "rate_limit_overflow_total", label("policy", p.name) + "," + label("action", "network"), p.network);
+        sample(sb, "rate_limit_overflow_total", label("policy", p.name) + "," + label("action", "evicted"), p.evicted);
+      }
+      header(sb, "rate_limit_keys", "gauge", "Chiavi (IP o account) tracciate per policy");
+      for (RateLimiter.Stats p : rateLimits) {
+        sample(sb, "rate_limit_keys", label("policy", p.name), p.keys);
+      }
+    }
+
+    statics = StaticResources.activeStats();
+    if (statics != null) {
+      header(sb, "static_cache_entries", "gauge", "File statici in cache");
+      sample(sb, "static_cache_entries", null, statics.entries);
+      header(sb, "static_cache_bytes", "gauge", "Bytes dei file statici in cache");
+      sample(sb, "static_cache_bytes", null, statics.usedBytes);
+      header(sb, "static_cache_max_bytes", "gauge", "Budget della cache dei file statici");
+      sample(sb, "static_cache_max_bytes", null, statics.maxBytes);
+      header(sb, "static_cache_requests_total", "counter", "Lookup di file statici per esito");
+      sample(sb, "static_cache_requests_total", label("result", "hit"), statics.hits);
+      sample(sb, "static_cache_requests_total", label("result", "miss"), statics.misses);
+      sample(sb, "static_cache_requests_total", label("result", "not_found"), statics.notFound);
+      header(sb, "static_cache_evictions_total", "counter", "File rimossi dalla cache per il budget");
+      sample(sb, "static_cache_evictions_total", null, statics.evictions);
+      header(sb, "static_cache_missing_entries", "gauge", "Path inesistenti in cache");
+      sample(sb, "static_cache_missing_entries", null, statics.missingEntries);
+    }
+
+    async = AsyncExecutor.getStats();
+    header(sb, "async_executor_active", "gauge", "Task in esecuzione su AsyncExecutor");
+    sample(sb, "async_executor_active", null, async.activeThreads);
+    header(sb, "async_executor_queued", "gauge", "Task in coda su AsyncExecutor");
+    sample(sb, "async_executor_queued", null, async.queuedTasks);
+    limiter = ConcurrencyLimiter.getStats();
+    header(sb, "limiter_limit", "gauge", "Limite adattivo di richieste concorrenti");
+    sample(sb, "limiter_limit", null, limiter.limit);
+    header(sb, "limiter_in_flight", "gauge", "Richieste ammesse in corso");
+    sample(sb, "limiter_in_flight", null, limiter.inFlight);
+    header(sb, "limiter_rejected_total", "counter", "Richieste rifiutate con 503");
+    sample(sb, "limiter_rejected_total", null, limiter.rejected);
+    virtual = VirtualExecutor.getStats();
+    header(sb, "virtual_executor_active", "gauge", "Handler in esecuzione su VirtualExecutor");
+    sample(sb, "virtual_executor_active", null, virtual.activeTasks);
+    header(sb, "virtual_executor_waiting", "gauge", "Virtual thread in attesa del permesso");
+    sample(sb, "virtual_executor_waiting", null, virtual.waitingTasks);
+
+    header(sb, "jobrunr_job_duration_seconds", "histogram", "Durata di esecuzione dei job JobRunr");
+    for (Map.Entry<String, Histogram> e : jobs.entrySet()) {
+      e.getValue().render(sb, "jobrunr_job_duration_seconds", e.getKey());
+    }
+    return sb.toString();
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help)
+  {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String labels, double value)
+  {
+    sb.append(name);
+    if (labels != null) {
+      sb.append('{').append(labels).append('}');
+    }
+    sb.append(' ');
+    if (value == Math.rint(value)) {
+      sb.append((long) value);
+    } else {
+      sb.append(value);
+    }
+    sb.append('\n');
+  }
+
+  /** Etichette {@code method} e {@code route} da una chiave {@code "GET /api/..."} di {@link ConnectionUsage}. */
+  private static String routeLabels(String route)
+  {
+    int space;
+
+    space = route.indexOf(' ');
+    return space > 0
+      ? label("method", route.substring(0, space)) + "," + label("route", route.substring(space + 1))
+      : label("route", route);
+  }
+
+  /** Coppia {@code nome="valore"} con escape di backslash, virgolette e newline. */
+  private static String label(String name, String value)
+  {
+    return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+  }
+
+  /** Istogramma a bucket fissi: contatori non cumulativi, cumulati solo in {@link #render}. */
+  static class Histogram
+  {
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos;
+
+    Histogram()
+    {
+      buckets = new LongAdder[BUCKETS.length + 1];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+      sumNanos = new LongAdder();
+    }
+
+    /** Registra una durata in nanosecondi. */
+    void record(long nanos)
+    {
+      int i;
+
+      i = 0;
+      while (i < BUCKET_NANOS.length && nanos > BUCKET_NANOS[i]) {
+        i++;
+      }
+      buckets[i].increment();
+      sumNanos.add(nanos);
+    }
+
+    long count()
+    {
+      long result;
+
+      result = 0;
+      for (LongAdder b : buckets) {
+        result += b.sum();
+      }
+      return result;
+    }
+
+    void render(StringBuilder sb, String name, String labels)
+    {
+      String prefix;
+      long cumulative;
+
+      prefix = labels != null ? labels + "," : "";
+      cumulative = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        cumulative += buckets[i].sum();
+        sample(sb, name + "_bucket", prefix + "le=\"" + (i < BUCKETS.length ? BUCKETS[i] : "+Inf") + "\"", cumulative);
+      }
+      sample(sb, name + "_sum", labels, sumNanos.sum() / 1e9);
+      sample(sb, name + "_count", labels, cumulative);
+    }
+  }
+
+  /** Metriche di un pool HikariCP. */
+  static class Pool
+  {
+    final PoolStats stats;
+    final Histogram acquire;
+    final Histogram usage;
+    final LongAdder timeouts;
+
+    Pool(PoolStats stats)
+    {
+      this.stats = stats;
+      this.acquire = new Histogram();
+      this.usage = new Histogram();
+      this.timeouts = new LongAdder();
+    }
+  }
+
+  /** Metriche di un metodo su un path template. */
+  static class Route
+  {
+    final String method;
+    final String path;
+    final Histogram[] byClass;
+    final LongAdder errors;
+    final LongAdder[] rejected;
+
+    Route(String method, String path)
+    {
+      this.method = method;
+      this.path = path;
+      this.byClass = new Histogram[STATUS_CLASSES.length];
+      for (int i = 0; i < byClass.length; i++) {
+        byClass[i] = new Histogram();
+      }
+      this.errors = new LongAdder();
+      this.rejected = new LongAdder[REJECT_STATUSES.length];
+      for (int i = 0; i < rejected.length; i++) {
+        rejected[i] = new LongAdder();
+      }
+    }
+
+    /**
+     * Registra una richiesta completata.
+     *
+     * @param status status HTTP della risposta
+     * @param nanos  durata in nanosecondi
+     * @param failed {@code true} se l'handler ha lanciato un'eccezione non gestita
+     */
+    void record(int status, long nanos, boolean failed)
+    {
+      int c;
+
+      c = Math.min(Math.max(status / 100 - 1, 0), STATUS_CLASSES.length - 1);
+      byClass[c].record(nanos);
+      if (failed) {
+        errors.increment();
+      }
+    }
+
+    /**
+     * Registra una richiesta respinta senza eseguire l'handler: istogramma della classe di status
+     * e contatore per status.
+     *
+     * @param status status HTTP della risposta (405, 413, 429 o 503)
+     * @param nanos  durata dall'arrivo della richiesta in nanosecondi
+     */
+    void reject(int status, long nanos)
+    {
+      record(status, nanos, false);
+      for (int i = 0; i < REJECT_STATUSES.length; i++) {
+        if (REJECT_STATUSES[i] == status) {
+          rejected[i].increment();
+        }
+      }
+    }
+  }
+}
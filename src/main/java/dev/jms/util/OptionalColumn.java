@@ -0,0 +1,23 @@
+package dev.jms.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca un componente di record come colonna facoltativa per {@link DB#select(String, Class, Object...)}
+ * e {@link DB#stream(String, Class, Object...)}.
+ *
+ * <p>Senza annotazione ogni componente deve avere la sua colonna nel risultato, altrimenti la query
+ * fallisce con {@link IllegalStateException} prima di leggere le righe. Con l'annotazione una colonna
+ * assente produce {@code null} (o {@code 0}/{@code false} per i tipi primitivi):
+ * <pre>
+ *   public record ContattoDTO(Integer id, String nome, &#64;OptionalColumn long listeCount) {}
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface OptionalColumn
+{
+}
@@ -0,0 +1,604 @@
+package dev.jms.util;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Paginazione delle liste: offset ({@code page}) per compatibilità, keyset ({@code after}) per le
+ * pagine profonde, conteggio totale esatto, in cache, stimato o assente.
+ *
+ * <p>Parametri della richiesta:
+ * <ul>
+ *   <li>{@code page} (default 1) e {@code size}: pagina con {@code LIMIT/OFFSET}, come prima.</li>
+ *   <li>{@code after}: cursore opaco restituito come {@code next} dalla pagina precedente. La query
+ *       riparte dalla chiave di ordinamento dell'ultima riga ({@code (k1, k2) > (?, ?)}) invece di
+ *       scorrere e scartare le righe precedenti; {@code page} viene ignorato.</li>
+ *   <li>{@code count}: {@code exact} (sempre {@code COUNT(*)}), {@code estimate} (stima del planner,
+ *       esatto sotto {@code pagination.estimate.threshold}), {@code none} ({@code total} null).
+ *       Senza parametro: esatto sulla prima pagina, dalla cache per le successive
+ *       ({@code pagination.count.cache.seconds}).</li>
+ * </ul>
+ *
+ * <p>Utilizzo in un DAO:
+ * <pre>
+ *   private static final Page.Key KEY = Page.Key.asc()
+ *     .column("COALESCE(c.cognome, '')", "text")
+ *     .column("c.id", "bigint");
+ *
+ *   sql = "SELECT ... FROM jms_sales_contatti c WHERE c.stato = ? AND " + page.seek(KEY)
+ *       + " ORDER BY " + page.orderBy(KEY) + " LIMIT ? OFFSET ?";
+ *   return page.track(db.stream(sql, ContattoDTO.class, page.params(stato)),
+ *                     c -&gt; new Object[] { c.cognome() != null ? c.cognome() : "", c.id() });
+ * </pre>
+ * e nell'handler: {@code res.out(page.response(total, items))}. La risposta mantiene
+ * {@code total}, {@code page}, {@code size}, {@code items} e aggiunge {@code next} (cursore della
+ * pagina successiva, {@code null} sull'ultima) ed {@code estimated}.
+ *
+ * <p>La chiave deve identificare la riga in modo univoco (ultima colonna: id) e usare una sola
+ * direzione; le colonne nullable vanno ordinate tramite {@code COALESCE}.
+ */
+public class Page
+{
+  private static final int CACHE_MAX = 10_000;
+  private static final ConcurrentHashMap<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+  private static long cacheNanos = 30_000_000_000L;
+  private static long estimateThreshold = 10_000;
+
+  private final int number;
+  private final int size;
+  private final String sizeParam;
+  private final String[] after;
+  private final Count count;
+  private Object last;
+  private Function<Object, Object[]> lastKey;
+  private boolean more;
+  private boolean estimated;
+
+  /** Modalità di conteggio del totale ({@code count}). */
+  public enum Count
+  {
+    AUTO, EXACT, ESTIMATE, NONE
+  }
+
+  private Page(int number, int size, String sizeParam, String[] after, Count count)
+  {
+    this.number = number;
+    this.size = size;
+    this.sizeParam = sizeParam;
+    this.after = after;
+    this.count = count;
+  }
+
+  /**
+   * Configura cache dei conteggi e soglia delle stime. Da chiamare una volta in {@code App.main()}.
+   *
+   * @param config configurazione applicazione ({@code pagination.*})
+   */
+  public static void init(Config config)
+  {
+    cacheNanos = Math.max(0, config.getInt("pagination.count.cache.seconds", 30)) * 1_000_000_000L;
+    estimateThreshold = Math.max(0, config.getInt("pagination.estimate.threshold", 10_000));
+    counts.clear();
+  }
+
+  /**
+   * Legge {@code page}, {@code size}, {@code after} e {@code count} dalla query string.
+   *
+   * @param req         richiesta HTTP
+   * @param defaultSize righe per pagina se {@code size} è assente o non positivo
+   * @return parametri di paginazione
+   * @throws ValidationException se {@code after} o {@code count} non sono validi
+   */
+  public static Page of(HttpRequest req, int defaultSize)
+  {
+    return of(req, "size", defaultSize);
+  }
+
+  /**
+   * Come {@link #of(HttpRequest, int)} con un nome diverso per il parametro della dimensione
+   * (es. {@code pageSize}), riportato con lo stesso nome nella risposta.
+   *
+   * @param req         richiesta HTTP
+   * @param sizeParam   nome del parametro della dimensione
+   * @param defaultSize righe per pagina se il parametro è assente o non positivo
+   * @return parametri di paginazione
+   * @throws ValidationException se {@code after} o {@code count} non sono validi
+   */
+  public static Page of(HttpRequest req, String sizeParam, int defaultSize)
+  {
+    int number;
+    int size;
+    String after;
+    String count;
+    Count mode;
+
+    number = Math.max(1, parseInt(req.queryParam("page"), 1));
+    size = parseInt(req.queryParam(sizeParam), 0);
+    size = size > 0 ? size : defaultSize;
+    after = req.queryParam("after");
+    count = req.queryParam("count");
+    if (count == null || count.isBlank()) {
+      mode = Count.AUTO;
+    } else {
+      try {
+        mode = Count.valueOf(count.trim().toUpperCase());
+      } catch (IllegalArgumentException e) {
+        throw new ValidationException("Parametro count non valido (auto, exact, estimate, none)");
+      }
+    }
+    return new Page(number, size, sizeParam, after != null && !after.isBlank() ? decode(after) : null, mode);
+  }
+
+  /** Intero dalla query string, o {@code fallback} se assente o non numerico. */
+  private static int parseInt(String value, int fallback)
+  {
+    int result;
+
+    result = fallback;
+    if (value != null && !value.isBlank()) {
+      try {
+        result = Integer.parseInt(value.trim());
+      } catch (NumberFormatException ignored) {
+        // valore non numerico: default
+      }
+    }
+    return result;
+  }
+
+  /** Numero di pagina richiesto (da 1). */
+  public int number()
+  {
+    return number;
+  }
+
+  /** Righe per pagina. */
+  public int size()
+  {
+    return size;
+  }
+
+  /** {@code true} se la richiesta prosegue da un cursore {@code after}. */
+  public boolean keyset()
+  {
+    return after != null;
+  }
+
+  // =========================
+  // Costruzione della query
+  // =========================
+
+  /**
+   * Condizione di keyset per la clausola WHERE: {@code TRUE} senza cursore, altrimenti il confronto
+   * tra la chiave di ordinamento e i valori dell'ultima riga della pagina precedente.
+   *
+   * @param key chiave di ordinamento
+   * @return frammento SQL (i parametri sono aggiunti da {@link #params})
+   * @throws ValidationException se il cursore non corrisponde alla chiave
+   */
+  public String seek(Key key)
+  {
+    StringBuilder sb;
+    String result;
+
+    if (after == null) {
+      result = "TRUE";
+    } else {
+      if (after.length != key.exprs.length) {
+        throw new ValidationException("Parametro after non valido");
+      }
+      sb = new StringBuilder("(");
+      sb.append(String.join(", ", key.exprs)).append(key.desc ? ") < (" : ") > (");
+      for (int i = 0; i < key.types.length; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append("CAST(? AS ").append(key.types[i]).append(')');
+      }
+      result = sb.append(')').toString();
+    }
+    return result;
+  }
+
+  /**
+   * Clausola ORDER BY (senza la parola chiave) corrispondente alla chiave.
+   *
+   * @param key chiave di ordinamento
+   * @return frammento SQL
+   */
+  public String orderBy(Key key)
+  {
+    return key.orderBy;
+  }
+
+  /**
+   * Parametri della query: quelli del filtro, poi i valori del cursore (se presente),
+   * poi {@code LIMIT} (una riga in più per sapere se esiste la pagina successiva) e {@code OFFSET}.
+   *
+   * @param filter parametri dei placeholder che precedono {@link #seek}
+   * @return parametri completi, nell'ordine dei placeholder
+   */
+  public Object[] params(Object... filter)
+  {
+    ArrayList<Object> result;
+
+    result = new ArrayList<>(filter.length + 4);
+    result.addAll(Arrays.asList(filter));
+    if (after != null) {
+      result.addAll(Arrays.asList(after));
+    }
+    result.add(size + 1);
+    result.add(offset());
+    return result.toArray();
+  }
+
+  // =========================
+  // Risultato
+  // =========================
+
+  /**
+   * Limita lo stream alla dimensione della pagina e ricorda l'ultima riga per il cursore
+   * {@code next}. La riga in più letta grazie a {@link #params} indica che la pagina successiva esiste.
+   *
+   * @param rows righe lette con {@code LIMIT size + 1}
+   * @param key  valori della chiave di ordinamento di una riga, nello stesso ordine di {@link Key}
+   * @param <T>  tipo delle righe
+   * @return stream di al più {@code size} righe
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Stream<T> track(Stream<T> rows, Function<T, Object[]> key)
+  {
+    int[] seen;
+
+    seen = new int[1];
+    lastKey = (Function<Object, Object[]>) key;
+    return rows.filter(row -> {
+      boolean keep;
+      keep = ++seen[0] <= size;
+      if (keep) {
+        last = row;
+      } else {
+        more = true;
+      }
+      return keep;
+    });
+  }
+
+  /**
+   * Come {@link #track(Stream, Function)} per un risultato già in memoria.
+   *
+   * @param rows righe lette con {@code LIMIT size + 1}
+   * @param key  valori della chiave di ordinamento di una riga
+   * @param <T>  tipo delle righe
+   * @return al più {@code size} righe
+   */
+  @SuppressWarnings("unchecked")
+  public <T> List<T> track(List<T> rows, Function<T, Object[]> key)
+  {
+    List<T> result;
+
+    lastKey = (Function<Object, Object[]>) key;
+    more = rows.size() > size;
+    result = more ? rows.subList(0, size) : rows;
+    last = result.isEmpty() ? null : result.get(result.size() - 1);
+    return result;
+  }
+
+  /**
+   * Limita il risultato alla dimensione della pagina senza cursore ({@code next} resta {@code null}),
+   * per gli ordinamenti che non si prestano al keyset (es. per rilevanza).
+   *
+   * @param rows righe lette con {@code LIMIT size + 1}
+   * @param <T>  tipo delle righe
+   * @return al più {@code size} righe
+   */
+  public <T> List<T> limit(List<T> rows)
+  {
+    return rows.size() > size ? rows.subList(0, size) : rows;
+  }
+
+  /**
+   * Offset della pagina richiesta ({@code 0} con il cursore).
+   *
+   * @return righe da saltare
+   */
+  public long offset()
+  {
+    return after != null ? 0 : (long) (number - 1) * size;
+  }
+
+  /**
+   * Cursore della pagina successiva, o {@code null} se questa è l'ultima.
+   * Per uno stream è disponibile solo dopo averlo consumato.
+   *
+   * @return valore per il parametro {@code after}
+   */
+  public String next()
+  {
+    return more && last != null ? encode(lastKey.apply(last)) : null;
+  }
+
+  /**
+   * Corpo della risposta: {@code total}, {@code page}, dimensione (con il nome del parametro),
+   * {@code items}, {@code next}, {@code estimated}. {@code next} segue {@code items} e viene
+   * calcolato durante la serializzazione, quindi vale anche per gli stream.
+   *
+   * @param total totale da {@link #count}, o {@code null}
+   * @param items righe della pagina (lista o stream restituiti da {@link #track})
+   * @return mappa ordinata per {@code HttpResponse.out()}
+   */
+  public HashMap<String, Object> response(Long total, Object items)
+  {
+    LinkedHashMap<String, Object> result;
+
+    result = new LinkedHashMap<>();
+    result.put("total", total);
+    result.put("page", number);
+    result.put(sizeParam, size);
+    result.put("items", items);
+    result.put("next", new Next());
+    result.put("estimated", estimated);
+    return result;
+  }
+
+  /** Valore di {@code next} risolto da Jackson al momento della scrittura. */
+  private class Next
+  {
+    @JsonValue
+    public String value()
+    {
+      return next();
+    }
+  }
+
+  // =========================
+  // Conteggio
+  // =========================
+
+  /**
+   * Totale delle righe secondo la modalità {@code count} della richiesta.
+   *
+   * @param db     istanza DB della richiesta
+   * @param from   {@code FROM ... WHERE ...} del conteggio (senza keyset)
+   * @param params parametri dei placeholder di {@code from}
+   * @return totale (esatto o stimato), o {@code null} con {@code count=none}
+   * @throws Exception se la query fallisce
+   */
+  public Long count(DB db, String from, Object... params) throws Exception
+  {
+    String cacheKey;
+    CachedCount cached;
+    Long result;
+    long estimate;
+
+    cacheKey = from + "|" + Arrays.toString(params);
+    switch (count) {
+      case NONE:
+        result = null;
+        break;
+      case ESTIMATE:
+        estimate = estimate(db, from, params);
+        if (estimate >= estimateThreshold) {
+          estimated = true;
+          result = estimate;
+        } else {
+          result = exact(db, from, params, cacheKey);
+        }
+        break;
+      case AUTO:
+        cached = counts.get(cacheKey);
+        if (number > 1 || after != null) {
+          result = cached != null && cached.expires - System.nanoTime() > 0 ? cached.value : null;
+        } else {
+          result = null;
+        }
+        if (result == null) {
+          result = exact(db, from, params, cacheKey);
+        }
+        break;
+      default:
+        result = exact(db, from, params, cacheKey);
+    }
+    return result;
+  }
+
+  /**
+   * Totale limitato a {@code cap}: conta al più {@code cap + 1} righe, quindi il costo resta
+   * limitato anche per filtri poco selettivi. Oltre il limite restituisce {@code cap} con
+   * {@code estimated: true}. Con {@code count=none} restituisce {@code null}; con il parametro
+   * assente le pagine successive alla prima usano la cache, come {@link #count}.
+   *
+   * @param db     istanza DB della richiesta
+   * @param from   {@code FROM ... WHERE ...} del conteggio
+   * @param cap    numero massimo di righe contate
+   * @param params parametri dei placeholder di {@code from}
+   * @return totale, al più {@code cap}
+   * @throws Exception se la query fallisce
+   */
+  public Long countUpTo(DB db, String from, long cap, Object... params) throws Exception
+  {
+    String cacheKey;
+    CachedCount cached;
+    List<HashMap<String, Object>> rows;
+    Long counted;
+    Long result;
+
+    if (count == Count.NONE) {
+      result = null;
+    } else {
+      cacheKey = cap + "|" + from + "|" + Arrays.toString(params);
+      counted = null;
+      if (count == Count.AUTO && (number > 1 || after != null)) {
+        cached = counts.get(cacheKey);
+        counted = cached != null && cached.expires - System.nanoTime() > 0 ? cached.value : null;
+      }
+      if (counted == null) {
+        rows = db.select("SELECT COUNT(*) AS n FROM (SELECT 1 " + from + " LIMIT " + (cap + 1) + ") t", params);
+        counted = DB.toLong(rows.get(0).get("n"));
+        store(cacheKey, counted);
+      }
+      estimated = counted > cap;
+      result = Math.min(counted, cap);
+    }
+    return result;
+  }
+
+  /** {@code COUNT(*)} esatto, memorizzato in cache per le pagine successive. */
+  private static long exact(DB db, String from, Object[] params, String cacheKey) throws Exception
+  {
+    List<HashMap<String, Object>> rows;
+    long result;
+
+    rows = db.select("SELECT COUNT(*) AS n " + from, params);
+    result = DB.toLong(rows.get(0).get("n"));
+    store(cacheKey, result);
+    return result;
+  }
+
+  /** Memorizza un conteggio per le pagine successive (se la cache è abilitata). */
+  private static void store(String cacheKey, long value)
+  {
+    if (cacheNanos > 0) {
+      if (counts.size() >= CACHE_MAX) {
+        counts.clear();
+      }
+      counts.put(cacheKey, new CachedCount(value, System.nanoTime() + cacheNanos));
+    }
+  }
+
+  /** Righe stimate dal planner ({@code Plan Rows} del nodo radice di EXPLAIN). */
+  @SuppressWarnings("unchecked")
+  private static long estimate(DB db, String from, Object[] params) throws Exception
+  {
+    List<HashMap<String, Object>> rows;
+    List<Object> plan;
+    Object root;
+    long result;
+
+    rows = db.select("EXPLAIN (FORMAT JSON) SELECT 1 " + from, params);
+    plan = Json.decode(String.valueOf(rows.get(0).get("QUERY PLAN")), List.class);
+    root = ((Map<String, Object>) plan.get(0)).get("Plan");
+    result = ((Number) ((Map<String, Object>) root).get("Plan Rows")).longValue();
+    return result;
+  }
+
+  // =========================
+  // Cursore opaco
+  // =========================
+
+  /** Valori della chiave → base64url di un array JSON di stringhe. */
+  private static String encode(Object[] key)
+  {
+    String[] values;
+
+    values = new String[key.length];
+    for (int i = 0; i < key.length; i++) {
+      if (key[i] instanceof java.sql.Timestamp ts) {
+        values[i] = ts.toLocalDateTime().toString();
+      } else {
+        values[i] = key[i] != null ? key[i].toString() : null;
+      }
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(Json.encode(values).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Cursore → valori della chiave (stringhe, convertite in SQL con CAST). */
+  private static String[] decode(String cursor)
+  {
+    String[] result;
+
+    try {
+      result = Json.decode(new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8), String[].class);
+    } catch (Exception e) {
+      result = null;
+    }
+    if (result == null || result.length == 0) {
+      throw new ValidationException("Parametro after non valido");
+    }
+    return result;
+  }
+
+  /**
+   * Chiave di ordinamento: espressioni SQL con il tipo usato per confrontarle con i valori
+   * del cursore, tutte nella stessa direzione. Immutabile, da dichiarare come costante nel DAO.
+   */
+  public static class Key
+  {
+    private final String[] exprs;
+    private final String[] types;
+    private final boolean desc;
+    private final String orderBy;
+
+    private Key(String[] exprs, String[] types, boolean desc)
+    {
+      StringBuilder sb;
+
+      this.exprs = exprs;
+      this.types = types;
+      this.desc = desc;
+      sb = new StringBuilder();
+      for (int i = 0; i < exprs.length; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        sb.append(exprs[i]).append(desc ? " DESC" : "");
+      }
+      this.orderBy = sb.toString();
+    }
+
+    /** Chiave crescente, senza colonne. */
+    public static Key asc()
+    {
+      return new Key(new String[0], new String[0], false);
+    }
+
+    /** Chiave decrescente, senza colonne. */
+    public static Key desc()
+    {
+      return new Key(new String[0], new String[0], true);
+    }
+
+    /**
+     * Aggiunge una colonna alla chiave.
+     *
+     * @param expr espressione SQL (es. {@code c.id}, {@code COALESCE(c.nome, '')})
+     * @param type tipo SQL del confronto (es. {@code bigint}, {@code text}, {@code timestamp})
+     * @return nuova chiave con la colonna in coda
+     */
+    public Key column(String expr, String type)
+    {
+      String[] e;
+      String[] t;
+
+      e = Arrays.copyOf(exprs, exprs.length + 1);
+      t = Arrays.copyOf(types, types.length + 1);
+      e[exprs.length] = expr;
+      t[types.length] = type;
+      return new Key(e, t, desc);
+    }
+  }
+
+  /** Conteggio esatto in cache con scadenza (System.nanoTime). */
+  private static class CachedCount
+  {
+    final long value;
+    final long expires;
+
+    CachedCount(long value, long expires)
+    {
+      this.value = value;
+      this.expires = expires;
+    }
+  }
+}
@@ -0,0 +1,347 @@
+package dev.jms.util;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SessionStore} su PostgreSQL, condiviso tra più istanze dietro il bilanciatore.
+ *
+ * <p>Tabella UNLOGGED {@code jms_sessions} (migration {@code V20261017_000100__session_store.sql}):
+ * nessun WAL, quindi scritture economiche; le sessioni sopravvivono al riavvio dell'applicazione
+ * ma non a un crash di PostgreSQL. Gli attributi sono serializzati con la serializzazione Java
+ * (valori {@link java.io.Serializable}); in lettura sono ammesse solo classi di {@code java.base}
+ * e {@code dev.jms}.
+ *
+ * <ul>
+ *   <li><b>Near-cache</b>: gli attributi letti o scritti da questa istanza restano validi per
+ *       {@code session.store.cache.ms}; entro quella finestra {@link #load} non interroga il database.
+ *       Modifiche fatte da un'altra istanza sono visibili al più dopo la stessa finestra.</li>
+ *   <li><b>Scrittura differita</b>: {@link #save} mette in coda e un thread scrive ogni
+ *       {@code session.store.flush.ms} con un batch di UPSERT. Più richieste sulla stessa sessione
+ *       nella finestra producono una sola scrittura; attributi identici all'ultima versione
+ *       scritta non vengono riscritti.</li>
+ *   <li><b>Rinnovo TTL</b>: per le richieste che non modificano gli attributi {@code expires_at}
+ *       viene aggiornato al più ogni {@code session.store.touch.seconds} (default TTL/10).</li>
+ *   <li><b>Scadenza</b>: {@code DELETE ... WHERE expires_at <= now()} ogni 60 secondi (indice su
+ *       {@code expires_at}); le letture ignorano comunque le righe scadute.</li>
+ * </ul>
+ */
+public class PostgresSessionStore implements SessionStore
+{
+  private static final Log log = Log.get(PostgresSessionStore.class);
+
+  private static final String SELECT =
+    "SELECT attrs FROM jms_sessions WHERE id = ? AND expires_at > now()";
+  private static final String UPSERT =
+    "INSERT INTO jms_sessions (id, attrs, expires_at) VALUES (?, ?, now() + ? * INTERVAL '1 second') " +
+    "ON CONFLICT (id) DO UPDATE SET attrs = EXCLUDED.attrs, expires_at = EXCLUDED.expires_at";
+  private static final String TOUCH =
+    "UPDATE jms_sessions SET expires_at = now() + ? * INTERVAL '1 second' WHERE id = ?";
+  private static final String DELETE = "DELETE FROM jms_sessions WHERE id = ?";
+  private static final String EXPIRE = "DELETE FROM jms_sessions WHERE expires_at <= now()";
+  private static final String COUNT = "SELECT COUNT(*) AS n FROM jms_sessions";
+
+  /** Valore in coda per il solo rinnovo del TTL (attributi invariati). */
+  private static final byte[] TOUCH_ONLY = new byte[0];
+
+  private static final ObjectInputFilter FILTER =
+    ObjectInputFilter.Config.createFilter("maxdepth=32;java.base/*;dev.jms.**;!*");
+
+  private final DataSource dataSource;
+  private final DataSource backgroundDataSource;
+  private final int ttlSeconds;
+  private final long cacheNanos;
+  private final long touchNanos;
+  private final int cacheMax;
+  private final ConcurrentHashMap<String, Cached> cache;
+  private final ConcurrentHashMap<String, byte[]> pending;
+  private final ScheduledExecutorService executor;
+  private volatile int count;
+
+  /**
+   * Crea lo store e avvia i thread di scrittura e scadenza.
+   *
+   * @param config     configurazione ({@code session.store.*})
+   * @param ttlSeconds secondi di inattività prima della scadenza
+   */
+  public PostgresSessionStore(Config config, int ttlSeconds)
+  {
+    long flushMillis;
+
+    this.dataSource = DB.getDataSource();
+    this.backgroundDataSource = DB.getDataSource(Workload.JOBS);
+    this.ttlSeconds = ttlSeconds;
+    this.cacheNanos = Math.max(0, config.getInt("session.store.cache.ms", 2000)) * 1_000_000L;
+    this.touchNanos = Math.max(1, config.getInt("session.store.touch.seconds", Math.max(1, ttlSeconds / 10))) * 1_000_000_000L;
+    this.cacheMax = Math.max(1, config.getInt("session.store.cache.max", 10_000));
+    this.cache = new ConcurrentHashMap<>();
+    this.pending = new ConcurrentHashMap<>();
+    flushMillis = Math.max(10, config.getInt("session.store.flush.ms", 500));
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t;
+      t = new Thread(r);
+      t.setName("session-store");
+      t.setDaemon(true);
+      return t;
+    });
+    executor.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    executor.scheduleWithFixedDelay(this::expire, 5, 60, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public Map<String, Object> load(String id)
+  {
+    Cached cached;
+    byte[] bytes;
+    Map<String, Object> attrs;
+    Map<String, Object> result;
+    long now;
+
+    now = System.nanoTime();
+    cached = cache.get(id);
+    if (cached != null && now - cached.loadedAt < cacheNanos) {
+      result = new HashMap<>(cached.attrs);
+    } else {
+      bytes = pending.get(id);
+      if (bytes == null || bytes == TOUCH_ONLY) {
+        bytes = select(id);
+      }
+      attrs = bytes != null ? deserialize(bytes) : null;
+      if (attrs != null) {
+        cache(id, new Cached(attrs, bytes, now, cached != null ? cached.persistedAt : now));
+        result = new HashMap<>(attrs);
+      } else {
+        cache.remove(id);
+        result = null;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void save(String id, Map<String, Object> attrs, boolean dirty)
+  {
+    Cached cached;
+    byte[] bytes;
+    boolean changed;
+    long now;
+
+    now = System.nanoTime();
+    cached = cache.get(id);
+    changed = false;
+    if (dirty) {
+      bytes = serialize(id, attrs);
+      if (bytes != null && (cached == null || !Arrays.equals(cached.bytes, bytes))) {
+        pending.put(id, bytes);
+        cache(id, new Cached(new HashMap<>(attrs), bytes, now, now));
+        changed = true;
+      }
+    }
+    if (!changed && (cached == null || now - cached.persistedAt >= touchNanos)) {
+      pending.putIfAbsent(id, TOUCH_ONLY);
+      if (cached != null) {
+        cache.put(id, new Cached(cached.attrs, cached.bytes, cached.loadedAt, now));
+      }
+    }
+  }
+
+  @Override
+  public void remove(String id)
+  {
+    DB db;
+
+    pending.remove(id);
+    cache.remove(id);
+    db = new DB(dataSource);
+    try {
+      db.execute(DELETE, id);
+    } catch (Exception e) {
+      throw new IllegalStateException("Session store unavailable", e);
+    } finally {
+      db.close();
+    }
+  }
+
+  @Override
+  public int size()
+  {
+    return count;
+  }
+
+  @Override
+  public void shutdown()
+  {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  // =========================
+  // Thread in background
+  // =========================
+
+  /** Scrive in batch le sessioni in coda: UPSERT per gli attributi modificati, UPDATE per i rinnovi. */
+  private void flush()
+  {
+    List<Object[]> writes;
+    List<Object[]> touches;
+    byte[] bytes;
+    DB db;
+
+    if (!pending.isEmpty()) {
+      writes = new ArrayList<>();
+      touches = new ArrayList<>();
+      for (String id : pending.keySet()) {
+        bytes = pending.remove(id);
+        if (bytes == TOUCH_ONLY) {
+          touches.add(new Object[] { ttlSeconds, id });
+        } else if (bytes != null) {
+          writes.add(new Object[] { id, bytes, ttlSeconds });
+        }
+      }
+      db = new DB(backgroundDataSource);
+      try {
+        if (!writes.isEmpty()) {
+          db.batch(UPSERT, writes);
+        }
+        if (!touches.isEmpty()) {
+          db.batch(TOUCH, touches);
+        }
+      } catch (Exception e) {
+        log.warn("Scrittura sessioni fallita ({} attributi, {} rinnovi), nuovo tentativo: {}",
+          writes.size(), touches.size(), e.getMessage());
+        for (Object[] w : writes) {
+          pending.putIfAbsent((String) w[0], (byte[]) w[1]);
+        }
+        for (Object[] t : touches) {
+          pending.putIfAbsent((String) t[1], TOUCH_ONLY);
+        }
+      } finally {
+        db.close();
+      }
+    }
+  }
+
+  /** Elimina le sessioni scadute, aggiorna il conteggio e pulisce la near-cache. */
+  private void expire()
+  {
+    DB db;
+    int removed;
+    long now;
+
+    db = new DB(backgroundDataSource);
+    try {
+      removed = db.execute(EXPIRE);
+      if (removed > 0) {
+        log.debug("Sessioni scadute eliminate: {}", removed);
+      }
+      count = DB.toLong(db.select(COUNT).get(0).get("n")).intValue();
+    } catch (Exception e) {
+      log.warn("Scadenza sessioni fallita: {}", e.getMessage());
+    } finally {
+      db.close();
+    }
+    now = System.nanoTime();
+    cache.values().removeIf(c -> now - c.persistedAt > ttlSeconds * 1_000_000_000L);
+  }
+
+  // =========================
+  // Helper
+  // =========================
+
+  /** Attributi serializzati della sessione, o {@code null} se assente o scaduta. */
+  private byte[] select(String id)
+  {
+    DB db;
+    List<HashMap<String, Object>> rows;
+    byte[] result;
+
+    db = new DB(dataSource);
+    try {
+      rows = db.select(SELECT, id);
+      result = rows.isEmpty() ? null : (byte[]) rows.get(0).get("attrs");
+    } catch (Exception e) {
+      throw new IllegalStateException("Session store unavailable", e);
+    } finally {
+      db.close();
+    }
+    return result;
+  }
+
+  /** Inserisce nella near-cache, svuotandola oltre {@code session.store.cache.max} voci. */
+  private void cache(String id, Cached entry)
+  {
+    if (cache.size() >= cacheMax) {
+      cache.clear();
+    }
+    cache.put(id, entry);
+  }
+
+  /** Serializzazione Java degli attributi; {@code null} (con log) se un valore non è serializzabile. */
+  private static byte[] serialize(String id, Map<String, Object> attrs)
+  {
+    ByteArrayOutputStream bytes;
+    byte[] result;
+
+    bytes = new ByteArrayOutputStream(256);
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(new HashMap<>(attrs));
+      out.flush();
+      result = bytes.toByteArray();
+    } catch (Exception e) {
+      log.error("Attributi di sessione non serializzabili, sessione {}... non persistita: {}",
+        id.substring(0, Math.min(8, id.length())), e.toString());
+      result = null;
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> deserialize(byte[] bytes)
+  {
+    Map<String, Object> result;
+
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      in.setObjectInputFilter(FILTER);
+      result = (Map<String, Object>) in.readObject();
+    } catch (Exception e) {
+      log.warn("Attributi di sessione non leggibili, sessione ignorata: {}", e.toString());
+      result = null;
+    }
+    return result;
+  }
+
+  /** Voce della near-cache: attributi, ultima serializzazione nota, istanti di lettura e di scrittura. */
+  private static class Cached
+  {
+    final Map<String, Object> attrs;
+    final byte[] bytes;
+    final long loadedAt;
+    final long persistedAt;
+
+    Cached(Map<String, Object> attrs, byte[] bytes, long loadedAt, long persistedAt)
+    {
+      this.attrs = attrs;
+      this.bytes = bytes;
+      this.loadedAt = loadedAt;
+      this.persistedAt = persistedAt;
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package dev.jms.util;
+
+/**
+ * Classi di priorità delle rotte per {@link ConcurrencyLimiter}.
+ *
+ * <ul>
+ *   <li>{@code CRITICAL} — mai rifiutate (es. webhook Vonage con deadline stretta); contano
+ *       comunque nelle richieste in corso.</li>
+ *   <li>{@code NORMAL} — default: ammesse finché le richieste in corso sono sotto il limite.</li>
+ *   <li>{@code LOW} — rifiutate per prime: ammesse solo sotto una frazione del limite
+ *       ({@code limiter.low.percent}).</li>
+ * </ul>
+ */
+public enum Priority
+{
+  CRITICAL, NORMAL, LOW
+}
@@ -1,25 +1,64 @@
 package dev.jms.util;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Rate limiter in-memory globale per protezione brute-force.
- * Traccia tentativi falliti per chiave (es. "user.login:IP") con finestra temporale scorrevole.
+ * Rate limiter in-memory: policy nominate per rotta e protezione brute-force.
  *
- * <p>Pattern: singleton lazy-init con cleanup automatico. Configurabile tramite {@link #configure(int, long)}.
- * Thread-safe (ConcurrentHashMap). Cleanup eseguito ogni minuto da daemon thread.
+ * <p><b>Policy per rotta</b> ({@link #policy}, applicate con {@link Router#rateLimit}): algoritmo
+ * GCRA (token bucket equivalente a {@code limit} richieste per {@code windowSeconds}, con burst
+ * fino a {@code limit}). Lo stato per chiave è un solo {@code long} (istante teorico di arrivo)
+ * aggiornato con compare-and-set, senza lock. Le chiavi sono per IP ({@link Scope#IP}) o per
+ * account autenticato ({@link Scope#ACCOUNT}, IP se anonimo). Oltre {@code maxKeys} chiavi per
+ * policy vengono rimosse le chiavi inattive (bucket tornato pieno, equivalente a una chiave mai
+ * vista); se non basta, la richiesta di un IP nuovo è addebitata al bucket della sua rete
+ * ({@code /24} IPv4, {@code /64} IPv6) e, se serve spazio per un bucket nuovo, viene rimosso il più
+ * vicino a tornare pieno tra un piccolo campione. Nessuna richiesta passa senza limite e la memoria
+ * resta limitata anche con molti IP distinti: chi ruota gli indirizzi di una stessa rete ne
+ * condivide il limite, e un'unica chiave condivisa non blocca tutti i client nuovi.
+ *
+ * <p><b>Brute-force</b> ({@link #isBlocked}, {@link #recordFailure}, {@link #reset}): conta i
+ * tentativi falliti per chiave (es. "user.login:IP") in una finestra fissa dal primo tentativo.
+ * Configurabile tramite {@link #configure(int, long)}.
+ *
+ * <p>Thread-safe. Cleanup eseguito ogni minuto da daemon thread.
  */
 public class RateLimiter
 {
+  /** Chiavi massime per policy di default. */
+  public static final int DEFAULT_MAX_KEYS = 100_000;
+
+  /** Intervallo minimo tra due rimozioni di chiavi inattive per superamento di {@code maxKeys}. */
+  private static final long PRUNE_INTERVAL_NANOS = 1_000_000_000L;
+
+  /** Bucket esaminati per scegliere quello da rimuovere quando la policy è piena. */
+  private static final int EVICTION_SAMPLE = 16;
+
   private static final ConcurrentHashMap<String, AttemptRecord> attempts = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Policy> policies = new ConcurrentHashMap<>();
   private static ScheduledExecutorService cleanupExecutor;
   private static int maxAttempts = 5;
   private static long windowSeconds = 300;
 
+  /** Chiave di una policy per rotta. */
+  public enum Scope
+  {
+    /** IP del client ({@link HttpRequest#getClientIP()}). */
+    IP,
+    /** Account autenticato (claim {@code sub}); IP del client per le richieste anonime. */
+    ACCOUNT
+  }
+
   /**
    * Configura rate limiting globale.
    * Avvia il cleanup automatico se non gia' attivo.
@@ -34,6 +73,57 @@ public class RateLimiter
     ensureCleanupStarted();
   }
 
+  /**
+   * Registra (o aggiorna) una policy nominata con {@link #DEFAULT_MAX_KEYS} chiavi massime.
+   *
+   * @param name          nome della policy (etichetta nelle metriche, es. "user.auth")
+   * @param limit         richieste consentite nella finestra (burst massimo)
+   * @param windowSeconds finestra in secondi
+   * @param scope         chiave: IP o account
+   * @return la policy, da passare a {@link Router#rateLimit}
+   */
+  public static Policy policy(String name, int limit, int windowSeconds, Scope scope)
+  {
+    return policy(name, limit, windowSeconds, scope, DEFAULT_MAX_KEYS);
+  }
+
+  /**
+   * Registra (o aggiorna) una policy nominata.
+   *
+   * @param name          nome della policy
+   * @param limit         richieste consentite nella finestra (burst massimo)
+   * @param windowSeconds finestra in secondi
+   * @param scope         chiave: IP o account
+   * @param maxKeys       chiavi tracciate al massimo, oltre le quali gli IP nuovi sono limitati per rete
+   * @return la policy
+   */
+  public static Policy policy(String name, int limit, int windowSeconds, Scope scope, int maxKeys)
+  {
+    Policy result;
+
+    result = new Policy(name, Math.max(1, limit), Math.max(1, windowSeconds), scope, Math.max(1, maxKeys));
+    policies.put(name, result);
+    ensureCleanupStarted();
+    return result;
+  }
+
+  /**
+   * Istantanea delle policy registrate.
+   *
+   * @return una voce per policy
+   */
+  public static List<Stats> getStats()
+  {
+    ArrayList<Stats> result;
+
+    result = new ArrayList<>();
+    for (Policy p : policies.values()) {
+      result.add(new Stats(p.name, p.limit, p.windowSeconds, p.buckets.size(), p.allowed.sum(), p.rejected.sum(),
+                           p.network.sum(), p.evicted.sum()));
+    }
+    return result;
+  }
+
   /**
    * Verifica se la chiave e' bloccata (troppi tentativi falliti nella finestra).
    * Se la finestra e' scaduta, rimuove il record e restituisce false.
@@ -52,7 +142,7 @@ public class RateLimiter
     if (record != null) {
       now = Instant.now().getEpochSecond();
       if (now - record.firstAttempt > windowSeconds) {
-        attempts.remove(key);
+        attempts.remove(key, record);
         result = false;
       } else {
         result = record.count >= maxAttempts;
@@ -62,7 +152,7 @@ public class RateLimiter
   }
 
   /**
-   * Registra un tentativo fallito.
+   * Registra un tentativo fallito, in modo atomico rispetto ad altri tentativi concorrenti.
    * Se e' il primo tentativo nella finestra, crea un nuovo record.
    * Se la finestra e' scaduta, resetta il contatore.
    *
@@ -71,19 +161,12 @@ public class RateLimiter
   public static void recordFailure(String key)
   {
     long now;
-    AttemptRecord record;
 
     now = Instant.now().getEpochSecond();
-    record = attempts.get(key);
-    if (record == null) {
-      attempts.put(key, new AttemptRecord(now, 1));
-    } else {
-      if (now - record.firstAttempt > windowSeconds) {
-        attempts.put(key, new AttemptRecord(now, 1));
-      } else {
-        attempts.put(key, new AttemptRecord(record.firstAttempt, record.count + 1));
-      }
-    }
+    attempts.compute(key, (k, record) ->
+      record == null || now - record.firstAttempt > windowSeconds
+        ? new AttemptRecord(now, 1)
+        : new AttemptRecord(record.firstAttempt, record.count + 1));
   }
 
   /**
@@ -110,13 +193,30 @@ public class RateLimiter
     }
   }
 
-  /** Rimuove record scaduti dalla mappa. */
+  /** Rimuove record scaduti e bucket delle policy tornati pieni (equivalenti a una chiave mai vista). */
   private static void cleanup()
   {
     long now;
+    long nanos;
 
     now = Instant.now().getEpochSecond();
     attempts.entrySet().removeIf(entry -> now - entry.getValue().firstAttempt > windowSeconds);
+    nanos = System.nanoTime();
+    for (Policy p : policies.values()) {
+      p.removeIdle(nanos);
+    }
+  }
+
+  /** Numero di chiavi tracciate, brute-force e policy (per {@link Metrics}). */
+  static int size()
+  {
+    int result;
+
+    result = attempts.size();
+    for (Policy p : policies.values()) {
+      result += p.buckets.size();
+    }
+    return result;
   }
 
   /** Chiude il cleanup executor (chiamato dallo shutdown hook di App.java). */
@@ -128,6 +228,274 @@ public class RateLimiter
     }
   }
 
+  /**
+   * Policy nominata: {@code limit} richieste per {@code windowSeconds}, GCRA per chiave.
+   * Creata con {@link RateLimiter#policy}.
+   */
+  public static class Policy
+  {
+    final String name;
+    final int limit;
+    final int windowSeconds;
+    final Scope scope;
+    final int maxKeys;
+    /** Intervallo di emissione: una richiesta ogni {@code window / limit}. */
+    final long intervalNanos;
+    final long windowNanos;
+    final ConcurrentHashMap<String, AtomicLong> buckets;
+    final LongAdder allowed;
+    final LongAdder rejected;
+    /** Richieste di IP nuovi addebitate al bucket della rete perché la policy era piena ({@code maxKeys}). */
+    final LongAdder network;
+    /** Bucket rimossi per fare spazio a uno nuovo con la policy piena. */
+    final LongAdder evicted;
+    /** Rimozione delle chiavi inattive in corso su un thread di richiesta. */
+    final AtomicBoolean pruning;
+    /** Ultima rimozione delle chiavi inattive per superamento di {@code maxKeys} (System.nanoTime). */
+    volatile long prunedAt;
+    /** Valore dell'header {@code RateLimit-Policy}, es. {@code 10;w=60}. */
+    final String header;
+
+    Policy(String name, int limit, int windowSeconds, Scope scope, int maxKeys)
+    {
+      this.name = name;
+      this.limit = limit;
+      this.windowSeconds = windowSeconds;
+      this.scope = scope;
+      this.maxKeys = maxKeys;
+      this.windowNanos = windowSeconds * 1_000_000_000L;
+      this.intervalNanos = windowNanos / limit;
+      this.buckets = new ConcurrentHashMap<>();
+      this.allowed = new LongAdder();
+      this.rejected = new LongAdder();
+      this.network = new LongAdder();
+      this.evicted = new LongAdder();
+      this.pruning = new AtomicBoolean();
+      this.prunedAt = System.nanoTime() - PRUNE_INTERVAL_NANOS;
+      this.header = limit + ";w=" + windowSeconds;
+    }
+
+    /** Nome della policy. */
+    public String name()
+    {
+      return name;
+    }
+
+    /** Chiave della policy: IP o account. */
+    public Scope scope()
+    {
+      return scope;
+    }
+
+    /** Valore dell'header {@code RateLimit-Policy}. */
+    String header()
+    {
+      return header;
+    }
+
+    /**
+     * Consuma una richiesta per la chiave.
+     *
+     * @param key IP o account
+     * @return esito con i valori per gli header {@code RateLimit-*}
+     */
+    public Decision acquire(String key)
+    {
+      AtomicLong tat;
+      long now;
+      long current;
+      long next;
+      Decision result;
+
+      tat = bucket(key);
+      now = System.nanoTime();
+      result = null;
+      while (result == null) {
+        current = tat.get();
+        next = Math.max(current - now, 0) + intervalNanos;
+        if (next > windowNanos) {
+          rejected.increment();
+          result = new Decision(false, limit, 0, seconds(current - now), seconds(next - windowNanos));
+        } else if (tat.compareAndSet(current, now + next)) {
+          allowed.increment();
+          result = new Decision(true, limit, (int) ((windowNanos - next) / intervalNanos), seconds(next), 0);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Bucket della chiave. Oltre {@code maxKeys} rimuove le chiavi inattive; se la policy resta
+     * piena usa il bucket della rete dell'IP ({@link #networkKey(String)}) e, se anche questo è nuovo,
+     * rimuove un bucket per fargli spazio ({@link #evictOne()}).
+     */
+    private AtomicLong bucket(String key)
+    {
+      AtomicLong result;
+      String target;
+
+      result = buckets.get(key);
+      if (result == null) {
+        if (buckets.size() >= maxKeys) {
+          prune();
+        }
+        // Policy ancora piena: l'IP nuovo condivide il bucket della sua rete
+        target = buckets.size() >= maxKeys ? networkKey(key) : null;
+        if (target != null) {
+          network.increment();
+          result = buckets.get(target);
+        }
+        if (result == null) {
+          if (buckets.size() >= maxKeys) {
+            evictOne();
+          }
+          result = buckets.computeIfAbsent(target != null ? target : key, k -> new AtomicLong(System.nanoTime()));
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Rimuove, tra i primi {@link #EVICTION_SAMPLE} bucket, quello con l'istante teorico più vicino
+     * (il più vicino a tornare pieno: chi lo ritrova perde meno credito).
+     */
+    private void evictOne()
+    {
+      String victim;
+      AtomicLong victimTat;
+      int seen;
+
+      victim = null;
+      victimTat = null;
+      seen = 0;
+      for (Map.Entry<String, AtomicLong> e : buckets.entrySet()) {
+        if (victimTat == null || e.getValue().get() - victimTat.get() < 0) {
+          victim = e.getKey();
+          victimTat = e.getValue();
+        }
+        if (++seen >= EVICTION_SAMPLE) {
+          break;
+        }
+      }
+      if (victim != null && buckets.remove(victim, victimTat)) {
+        evicted.increment();
+      }
+    }
+
+    /** Rimozione delle chiavi inattive dal percorso di richiesta: un thread alla volta, al più una al secondo. */
+    private void prune()
+    {
+      long now;
+
+      now = System.nanoTime();
+      if (now - prunedAt >= PRUNE_INTERVAL_NANOS && pruning.compareAndSet(false, true)) {
+        try {
+          prunedAt = now;
+          removeIdle(now);
+        } finally {
+          pruning.set(false);
+        }
+      }
+    }
+
+    /** Rimuove i bucket tornati pieni: equivalenti a una chiave mai vista. */
+    void removeIdle(long nanos)
+    {
+      buckets.values().removeIf(tat -> tat.get() - nanos <= 0);
+    }
+
+    /**
+     * Chiave della rete dell'IP: {@code /24} per IPv4, {@code /64} per IPv6 (prefisso {@code ip:}
+     * conservato), o {@code null} per chiavi che non sono IP (account) o già di rete.
+     */
+    static String networkKey(String key)
+    {
+      String ip;
+      String prefix;
+      String[] groups;
+      int dot;
+      String result;
+
+      prefix = key.startsWith("ip:") ? "ip:" : "";
+      ip = key.substring(prefix.length());
+      result = null;
+      if (ip.indexOf('/') < 0 && !key.startsWith("account:")) {
+        if (ip.indexOf(':') >= 0) {
+          // Forma estesa di InetAddress.getHostAddress(): 8 gruppi, zona opzionale dopo '%'
+          groups = ip.split("%", 2)[0].split(":");
+          if (groups.length == 8) {
+            result = prefix + String.join(":", groups[0], groups[1], groups[2], groups[3]) + "::/64";
+          }
+        } else {
+          dot = ip.lastIndexOf('.');
+          if (dot > 0) {
+            result = prefix + ip.substring(0, dot) + ".0/24";
+          }
+        }
+      }
+      return result;
+    }
+
+    private static long seconds(long nanos)
+    {
+      return Math.max(0, (nanos + 999_999_999L) / 1_000_000_000L);
+    }
+  }
+
+  /** Esito di {@link Policy#acquire}: valori degli header {@code RateLimit-*} e {@code Retry-After}. */
+  public static class Decision
+  {
+    public final boolean allowed;
+    public final int limit;
+    public final int remaining;
+    /** Secondi al ripristino completo del limite. */
+    public final long resetSeconds;
+    /** Secondi prima che una richiesta sia di nuovo ammessa (0 se ammessa). */
+    public final long retryAfterSeconds;
+
+    Decision(boolean allowed, int limit, int remaining, long resetSeconds, long retryAfterSeconds)
+    {
+      this.allowed = allowed;
+      this.limit = limit;
+      this.remaining = remaining;
+      this.resetSeconds = resetSeconds;
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+  }
+
+  /** Istantanea di una policy (per {@link Metrics}). */
+  public static class Stats
+  {
+    /** Nome della policy. */
+    public final String name;
+    /** Richieste consentite nella finestra. */
+    public final int limit;
+    /** Finestra in secondi. */
+    public final int windowSeconds;
+    /** Chiavi tracciate. */
+    public final int keys;
+    /** Richieste ammesse. */
+    public final long allowed;
+    /** Richieste rifiutate con HTTP 429. */
+    public final long rejected;
+    /** Richieste di IP nuovi addebitate al bucket della rete perché la policy aveva già {@code maxKeys} chiavi attive. */
+    public final long network;
+    /** Bucket rimossi per fare spazio con la policy piena. */
+    public final long evicted;
+
+    Stats(String name, int limit, int windowSeconds, int keys, long allowed, long rejected, long network, long evicted)
+    {
+      this.name = name;
+      this.limit = limit;
+      this.windowSeconds = windowSeconds;
+      this.keys = keys;
+      this.allowed = allowed;
+      this.rejected = rejected;
+      this.network = network;
+      this.evicted = evicted;
+    }
+  }
+
   /** Record immutabile per tracciare tentativi. */
   private static class AttemptRecord
   {
@@ -0,0 +1,265 @@
+package dev.jms.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+
+/**
+ * Mapping diretto riga → record Java per {@link DB#select(String, Class, Object...)}.
+ *
+ * <p>Per ogni classe record (cache in {@link ClassValue}) vengono calcolati una sola volta
+ * il {@link MethodHandle} del costruttore canonico, i nomi di colonna attesi e il convertitore
+ * di ogni componente. Per ogni istruzione {@link #bind} risolve gli indici delle colonne;
+ * per ogni riga restano solo {@code getObject}, la conversione e l'invocazione del costruttore.
+ *
+ * <p>Corrispondenza nomi: componente {@code ragioneSociale} → colonna {@code ragione_sociale}
+ * (o {@code ragioneSociale} se presente con quel nome). Una colonna mancante fa fallire {@link #bind}
+ * con {@link IllegalStateException} che la nomina, prima di leggere le righe: un refuso nella query
+ * o nel DTO non produce dati silenziosamente vuoti. Solo i componenti marcati {@link OptionalColumn}
+ * accettano una colonna assente e ricevono {@code null} (o {@code 0}/{@code false} per i tipi primitivi).
+ *
+ * <p>Conversioni: le stesse di {@link DB#toInteger}, {@link DB#toLong}, {@link DB#toBoolean} ecc.
+ * Un componente {@code String} legato a una colonna timestamp/date riceve il formato ISO di
+ * {@code LocalDateTime}/{@code LocalDate}, come i DAO che usano {@code toLocalDateTime(..).toString()}.
+ *
+ * @param <T> tipo record
+ */
+class RecordMapper<T extends Record>
+{
+  private static final ClassValue<RecordMapper<?>> CACHE = new ClassValue<>()
+  {
+    @Override
+    protected RecordMapper<?> computeValue(Class<?> type)
+    {
+      return new RecordMapper<>(type.asSubclass(Record.class));
+    }
+  };
+
+  private final Class<T> type;
+  private final MethodHandle constructor;
+  private final String[] columns;
+  private final String[] names;
+  private final Kind[] kinds;
+  private final boolean[] optional;
+
+  private RecordMapper(Class<T> type)
+  {
+    RecordComponent[] components;
+    Class<?>[] types;
+    MethodHandle ctor;
+
+    this.type = type;
+    components = type.getRecordComponents();
+    types = new Class<?>[components.length];
+    this.columns = new String[components.length];
+    this.names = new String[components.length];
+    this.kinds = new Kind[components.length];
+    this.optional = new boolean[components.length];
+    for (int i = 0; i < components.length; i++) {
+      types[i] = components[i].getType();
+      names[i] = components[i].getName();
+      columns[i] = snakeCase(names[i]);
+      kinds[i] = Kind.of(types[i]);
+      optional[i] = components[i].isAnnotationPresent(OptionalColumn.class);
+    }
+    try {
+      ctor = MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+        .findConstructor(type, MethodType.methodType(void.class, types));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException("Canonical constructor not accessible: " + type.getName(), e);
+    }
+    this.constructor = ctor
+      .asSpreader(Object[].class, components.length)
+      .asType(MethodType.methodType(Object.class, Object[].class));
+  }
+
+  /**
+   * Restituisce il mapper (in cache) per la classe record indicata.
+   *
+   * @param type classe record
+   * @param <T>  tipo record
+   * @return mapper della classe
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends Record> RecordMapper<T> of(Class<T> type)
+  {
+    return (RecordMapper<T>) CACHE.get(type);
+  }
+
+  /**
+   * Risolve gli indici delle colonne per un'istruzione e restituisce il {@link RowMapper}.
+   *
+   * @param layout disposizione delle colonne del risultato
+   * @return mapper per le righe di questa istruzione
+   * @throws IllegalStateException se manca la colonna di un componente non {@link OptionalColumn}
+   */
+  RowMapper<T> bind(Row.Layout layout)
+  {
+    int[] indexes;
+    StringBuilder missing;
+
+    indexes = new int[columns.length];
+    missing = null;
+    for (int i = 0; i < columns.length; i++) {
+      indexes[i] = layout.index(columns[i]);
+      if (indexes[i] == 0) {
+        indexes[i] = layout.index(names[i]);
+      }
+      if (indexes[i] == 0 && !optional[i]) {
+        missing = missing == null ? new StringBuilder() : missing.append(", ");
+        missing.append(columns[i]);
+      }
+    }
+    if (missing != null) {
+      throw new IllegalStateException("Missing result columns for " + type.getName() + ": " + missing
+        + " (alias them in the query or mark the component @OptionalColumn)");
+    }
+    return row -> map(row, indexes);
+  }
+
+  /** Costruisce il record dalla riga corrente. */
+  private T map(Row row, int[] indexes) throws Exception
+  {
+    Object[] args;
+    Object value;
+    T result;
+
+    args = new Object[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      value = indexes[i] > 0 ? row.get(indexes[i]) : null;
+      args[i] = kinds[i].convert(value);
+    }
+    try {
+      result = type.cast(constructor.invokeExact(args));
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+    return result;
+  }
+
+  /** camelCase → snake_case ({@code listeCount} → {@code liste_count}). */
+  private static String snakeCase(String name)
+  {
+    StringBuilder sb;
+
+    sb = new StringBuilder(name.length() + 4);
+    for (int i = 0; i < name.length(); i++) {
+      char ch;
+      ch = name.charAt(i);
+      if (Character.isUpperCase(ch)) {
+        sb.append('_').append(Character.toLowerCase(ch));
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Convertitore per tipo di componente. */
+  private enum Kind
+  {
+    STRING, INTEGER, INT, LONG, LONG_PRIMITIVE, BOOLEAN, BOOLEAN_PRIMITIVE, DOUBLE, DOUBLE_PRIMITIVE,
+    BIG_DECIMAL, LOCAL_DATE, LOCAL_DATE_TIME, LOCAL_TIME, OBJECT;
+
+    static Kind of(Class<?> t)
+    {
+      Kind result;
+
+      if (t == String.class) {
+        result = STRING;
+      } else if (t == Integer.class) {
+        result = INTEGER;
+      } else if (t == int.class) {
+        result = INT;
+      } else if (t == Long.class) {
+        result = LONG;
+      } else if (t == long.class) {
+        result = LONG_PRIMITIVE;
+      } else if (t == Boolean.class) {
+        result = BOOLEAN;
+      } else if (t == boolean.class) {
+        result = BOOLEAN_PRIMITIVE;
+      } else if (t == Double.class) {
+        result = DOUBLE;
+      } else if (t == double.class) {
+        result = DOUBLE_PRIMITIVE;
+      } else if (t == java.math.BigDecimal.class) {
+        result = BIG_DECIMAL;
+      } else if (t == java.time.LocalDate.class) {
+        result = LOCAL_DATE;
+      } else if (t == java.time.LocalDateTime.class) {
+        result = LOCAL_DATE_TIME;
+      } else if (t == java.time.LocalTime.class) {
+        result = LOCAL_TIME;
+      } else if (t.isPrimitive()) {
+        throw new IllegalArgumentException("Unsupported primitive type: " + t);
+      } else {
+        result = OBJECT;
+      }
+      return result;
+    }
+
+    Object convert(Object v)
+    {
+      Object result;
+      Object n;
+
+      switch (this) {
+        case STRING:
+          if (v instanceof java.sql.Timestamp ts) {
+            result = ts.toLocalDateTime().toString();
+          } else if (v instanceof java.sql.Date d) {
+            result = d.toLocalDate().toString();
+          } else {
+            result = DB.toString(v);
+          }
+          break;
+        case INTEGER:
+          result = DB.toInteger(v);
+          break;
+        case INT:
+          n = DB.toInteger(v);
+          result = n != null ? n : 0;
+          break;
+        case LONG:
+          result = DB.toLong(v);
+          break;
+        case LONG_PRIMITIVE:
+          n = DB.toLong(v);
+          result = n != null ? n : 0L;
+          break;
+        case BOOLEAN:
+          result = DB.toBoolean(v);
+          break;
+        case BOOLEAN_PRIMITIVE:
+          n = DB.toBoolean(v);
+          result = n != null ? n : Boolean.FALSE;
+          break;
+        case DOUBLE:
+          result = v instanceof Number num ? num.doubleValue() : null;
+          break;
+        case DOUBLE_PRIMITIVE:
+          result = v instanceof Number num ? num.doubleValue() : 0.0;
+          break;
+        case BIG_DECIMAL:
+          result = DB.toBigDecimal(v);
+          break;
+        case LOCAL_DATE:
+          result = DB.toLocalDate(v);
+          break;
+        case LOCAL_DATE_TIME:
+          result = DB.toLocalDateTime(v);
+          break;
+        case LOCAL_TIME:
+          result = DB.toLocalTime(v);
+          break;
+        default:
+          result = v;
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package dev.jms.util;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.PathTemplateMatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabella di routing immutabile compilata da {@link Router#compile} all'avvio.
+ *
+ * <p>I path template registrati formano un trie di segmenti: ogni nodo ha figli letterali
+ * (confrontati sul path della richiesta senza allocare sottostringhe) e al più un figlio
+ * parametro {@code {nome}}. I letterali hanno precedenza sui parametri, con backtracking
+ * se il ramo letterale non porta a una rotta (es. {@code /liste/default} e {@code /liste/{id}}).
+ * Le foglie contengono il target della rotta (tipicamente un {@link HandlerAdapter} con
+ * dispatch per metodo precalcolato).
+ *
+ * <p>Richieste senza rotta:
+ * <ul>
+ *   <li>path sotto {@code /api/} → 404 JSON sull'IO thread, senza dispatch</li>
+ *   <li>altri path → handler di fallback (file statici, routing SPA lato client)</li>
+ * </ul>
+ *
+ * <p>I parametri estratti vengono esposti come {@link PathTemplateMatch} (letto da
+ * {@link HttpRequest#urlArgs()}) e aggiunti ai query parameter, come faceva
+ * {@code PathTemplateHandler}. Slash ripetuti o finali sono ignorati.
+ */
+public class RouteTable implements HttpHandler
+{
+  private static final String API_PREFIX = "/api/";
+
+  private final Node root;
+  private final HttpHandler fallback;
+  private final int maxParams;
+
+  /**
+   * Costruttore package-private: usare {@link Router#compile}.
+   *
+   * @param routes   path template → handler, in ordine di registrazione
+   * @param fallback handler per i path senza rotta fuori da {@code /api/}
+   */
+  RouteTable(Map<String, HttpHandler> routes, HttpHandler fallback)
+  {
+    Builder rootBuilder;
+    int max;
+
+    rootBuilder = new Builder();
+    max = 0;
+    for (Map.Entry<String, HttpHandler> e : routes.entrySet()) {
+      max = Math.max(max, rootBuilder.add(e.getKey(), e.getValue()));
+    }
+    this.root = rootBuilder.build();
+    this.fallback = fallback;
+    this.maxParams = max;
+  }
+
+  @Override
+  public void handleRequest(HttpServerExchange exchange) throws Exception
+  {
+    String path;
+    String[] values;
+    Node leaf;
+
+    path = exchange.getRelativePath();
+    values = maxParams > 0 ? new String[maxParams] : null;
+    leaf = match(root, path, 0, values, 0);
+    if (leaf != null) {
+      if (leaf.paramNames.length > 0) {
+        bind(exchange, leaf, values);
+      }
+      leaf.target.handleRequest(exchange);
+    } else if (path.startsWith(API_PREFIX) || path.equals("/api")) {
+      HandlerAdapter.sendErrorResponse(exchange, 404, "Not Found");
+    } else {
+      fallback.handleRequest(exchange);
+    }
+  }
+
+  /**
+   * Cerca la foglia corrispondente a {@code path} a partire da {@code pos}.
+   * I valori dei parametri vengono scritti in {@code values[depth...]}.
+   */
+  private static Node match(Node node, String path, int pos, String[] values, int depth)
+  {
+    int len;
+    int end;
+    Node result;
+
+    len = path.length();
+    while (pos < len && path.charAt(pos) == '/') {
+      pos++;
+    }
+    result = null;
+    if (pos >= len) {
+      result = node.target != null ? node : null;
+    } else {
+      end = path.indexOf('/', pos);
+      if (end < 0) {
+        end = len;
+      }
+      for (int i = 0; i < node.literals.length && result == null; i++) {
+        String literal;
+        literal = node.literals[i];
+        if (literal.length() == end - pos && path.regionMatches(pos, literal, 0, literal.length())) {
+          result = match(node.literalNodes[i], path, end, values, depth);
+        }
+      }
+      if (result == null && node.param != null) {
+        values[depth] = path.substring(pos, end);
+        result = match(node.param, path, end, values, depth + 1);
+      }
+    }
+    return result;
+  }
+
+  /** Espone i parametri estratti come {@link PathTemplateMatch} e query parameter. */
+  private static void bind(HttpServerExchange exchange, Node leaf, String[] values)
+  {
+    Map<String, String> params;
+
+    params = new HashMap<>();
+    for (int i = 0; i < leaf.paramNames.length; i++) {
+      params.put(leaf.paramNames[i], values[i]);
+      exchange.addQueryParam(leaf.paramNames[i], values[i]);
+    }
+    exchange.putAttachment(PathTemplateMatch.ATTACHMENT_KEY, new PathTemplateMatch(leaf.template, params));
+  }
+
+  /** Nodo immutabile del trie. */
+  private static class Node
+  {
+    final String[] literals;
+    final Node[] literalNodes;
+    final Node param;
+    final HttpHandler target;
+    final String template;
+    final String[] paramNames;
+
+    Node(String[] literals, Node[] literalNodes, Node param, HttpHandler target,
+         String template, String[] paramNames)
+    {
+      this.literals = literals;
+      this.literalNodes = literalNodes;
+      this.param = param;
+      this.target = target;
+      this.template = template;
+      this.paramNames = paramNames;
+    }
+  }
+
+  /** Nodo mutabile usato solo durante la compilazione. */
+  private static class Builder
+  {
+    final Map<String, Builder> literals = new LinkedHashMap<>();
+    Builder param;
+    HttpHandler target;
+    String template;
+    String[] paramNames;
+
+    /**
+     * Inserisce un path template nel trie.
+     *
+     * @return numero di parametri del template
+     */
+    int add(String path, HttpHandler handler)
+    {
+      Builder node;
+      List<String> names;
+
+      node = this;
+      names = new ArrayList<>();
+      for (String segment : path.split("/")) {
+        if (!segment.isEmpty()) {
+          if (segment.startsWith("{") && segment.endsWith("}")) {
+            String name;
+            name = segment.substring(1, segment.length() - 1);
+            if (node.param == null) {
+              node.param = new Builder();
+            }
+            names.add(name);
+            node = node.param;
+          } else if (segment.indexOf('{') >= 0) {
+            throw new IllegalArgumentException("Path parameter must span a whole segment: " + path);
+          } else {
+            node = node.literals.computeIfAbsent(segment, s -> new Builder());
+          }
+        }
+      }
+      if (node.target != null) {
+        throw new IllegalArgumentException("Duplicate route: " + path + " (already registered as " + node.template + ")");
+      }
+      node.target = handler;
+      node.template = path;
+      node.paramNames = names.toArray(new String[0]);
+      return names.size();
+    }
+
+    Node build()
+    {
+      String[] keys;
+      Node[] nodes;
+      int i;
+
+      keys = new String[literals.size()];
+      nodes = new Node[literals.size()];
+      i = 0;
+      for (Map.Entry<String, Builder> e : literals.entrySet()) {
+        keys[i] = e.getKey();
+        nodes[i] = e.getValue().build();
+        i++;
+      }
+      return new Node(keys, nodes, param != null ? param.build() : null, target, template,
+                      paramNames != null ? paramNames : new String[0]);
+    }
+  }
+}
@@ -1,9 +1,9 @@
 package dev.jms.util;
 
-import io.undertow.server.handlers.PathTemplateHandler;
+import io.undertow.server.HttpHandler;
 
 import javax.sql.DataSource;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -11,34 +11,41 @@ import java.util.Map;
  *
  * <p>Utilizzo:
  * <pre>
- *   Router router = new Router(paths, ds);
+ *   Router router = new Router(ds);
  *   AccountHandler h = new AccountHandler();
  *   router.route(HttpMethod.GET,    "/api/user/accounts",     h::list);
  *   router.route(HttpMethod.POST,   "/api/user/accounts",     h::register);
  *   router.route(HttpMethod.GET,    "/api/user/accounts/sid", h::sid);
  *   router.route(HttpMethod.PUT,    "/api/user/accounts/sid", h::update);
  *   router.route(HttpMethod.DELETE, "/api/user/accounts/sid", h::delete);
+ *   server.setHandler(router.compile(staticHandler));
  * </pre>
  *
  * <p>Più metodi sullo stesso path condividono un unico {@link HandlerAdapter}.
+ * Dopo la registrazione di tutte le rotte, {@link #compile} produce la {@link RouteTable}
+ * immutabile usata come root handler.
+ *
+ * <p>Modalità di esecuzione: {@link #route} (worker Undertow), {@link #async} ({@link AsyncExecutor}),
+ * {@link #virtual} ({@link VirtualExecutor}).
  */
 public class Router
 {
-  private final PathTemplateHandler paths;
   private final DataSource ds;
   private final Map<String, HandlerAdapter> adapters;
+  private final Map<String, HttpHandler> routes;
+  private final Map<String, RateLimiter.Policy> rateLimits;
 
   /**
-   * Crea un Router associato al PathTemplateHandler e al DataSource specificati.
+   * Crea un Router associato al DataSource specificato.
    *
-   * @param paths PathTemplateHandler di Undertow su cui registrare i path
-   * @param ds    DataSource da passare agli {@link HandlerAdapter}
+   * @param ds DataSource da passare agli {@link HandlerAdapter}
    */
-  public Router(PathTemplateHandler paths, DataSource ds)
+  public Router(DataSource ds)
   {
-    this.paths = paths;
     this.ds = ds;
-    this.adapters = new HashMap<>();
+    this.adapters = new LinkedHashMap<>();
+    this.routes = new LinkedHashMap<>();
+    this.rateLimits = new LinkedHashMap<>();
   }
 
   /**
@@ -53,12 +60,7 @@ public class Router
   {
     HandlerAdapter adapter;
 
-    adapter = adapters.computeIfAbsent(path, p -> {
-      HandlerAdapter a;
-      a = new HandlerAdapter(ds);
-      paths.add(p, a);
-      return a;
-    });
+    adapter = adapter(path);
     adapter.register(method, handler);
   }
 
@@ -75,12 +77,145 @@ public class Router
   {
     HandlerAdapter adapter;
 
-    adapter = adapters.computeIfAbsent(path, p -> {
-      HandlerAdapter a;
-      a = new HandlerAdapter(ds);
-      paths.add(p, a);
-      return a;
-    });
+    adapter = adapter(path);
     adapter.registerAsync(method, handler);
   }
+
+  /**
+   * Registra una rotta eseguita su virtual thread.
+   * L'handler viene eseguito su {@link VirtualExecutor}: ogni exchange ha il proprio virtual thread
+   * e la concorrenza è limitata dal semaforo dimensionato sul pool database.
+   * Usare per handler che passano la maggior parte del tempo in attesa di I/O (DB, webhook, API esterne).
+   *
+   * @param method  metodo HTTP
+   * @param path    path template (es. /api/cti/vonage/event)
+   * @param handler metodo da invocare
+   */
+  public void virtual(HttpMethod method, String path, RouteHandler handler)
+  {
+    HandlerAdapter adapter;
+
+    adapter = adapter(path);
+    adapter.registerVirtual(method, handler);
+  }
+
+  /**
+   * Imposta la classe di priorità di un path per {@link ConcurrencyLimiter} (tutti i metodi).
+   * Default: {@link Priority#NORMAL}. Usare {@link Priority#CRITICAL} per webhook con deadline
+   * che non devono mai essere rifiutati, {@link Priority#LOW} per export e report.
+   *
+   * @param path     path template già registrato o da registrare
+   * @param priority priorità della rotta
+   */
+  public void priority(String path, Priority priority)
+  {
+    adapter(path).priority(priority);
+  }
+
+  /**
+   * Imposta la classe di carico di un path (tutti i metodi), cioè il pool di connessioni usato
+   * dal suo {@link DB}. Default: {@link Workload#ASYNC} per {@link #async}, {@link Workload#INTERACTIVE}
+   * per {@link #route} e {@link #virtual}. Usare {@link Workload#ASYNC} per import ed export
+   * registrati come rotte blocking, che trattengono una connessione a lungo.
+   *
+   * @param path     path template già registrato o da registrare
+   * @param workload classe di carico della rotta
+   */
+  public void workload(String path, Workload workload)
+  {
+    adapter(path).workload(workload);
+  }
+
+  /**
+   * Marca le richieste GET di un path come di sola lettura: l'handler riceve un {@link DB}
+   * sulla replica ({@code db.replica.*}) quando configurata ed entro il ritardo massimo,
+   * altrimenti sul primario. Gli altri metodi dello stesso path restano sul primario.
+   * Da usare per liste, ricerche e report che tollerano qualche secondo di ritardo.
+   *
+   * @param path path template già registrato o da registrare
+   */
+  public void readOnly(String path)
+  {
+    adapter(path).readOnly();
+  }
+
+  /**
+   * Applica una policy di {@link RateLimiter} a un path (tutti i metodi). Un path che termina
+   * con {@code /*} vale per tutti i path registrati con quel prefisso (es. {@code /api/user/auth/*}).
+   * Le policy sono assegnate in {@link #compile}: con più corrispondenze vale l'ultima registrata.
+   *
+   * <pre>
+   *   router.rateLimit("/api/user/auth/*", RateLimiter.policy("user.auth", 20, 60, RateLimiter.Scope.IP));
+   * </pre>
+   *
+   * @param path   path template o prefisso {@code /*}
+   * @param policy policy da {@link RateLimiter#policy}
+   */
+  public void rateLimit(String path, RateLimiter.Policy policy)
+  {
+    rateLimits.put(path, policy);
+  }
+
+  /**
+   * Registra un {@link HttpHandler} Undertow grezzo, invocato sull'IO thread per tutti i metodi
+   * (es. health check senza body né database).
+   *
+   * @param path    path template
+   * @param handler handler Undertow
+   */
+  public void handler(String path, HttpHandler handler)
+  {
+    if (routes.putIfAbsent(path, handler) != null) {
+      throw new IllegalArgumentException("Route already registered: " + path);
+    }
+  }
+
+  /**
+   * Compila le rotte registrate nella {@link RouteTable} immutabile da usare come root handler.
+   * Da chiamare una sola volta, dopo la registrazione delle rotte di tutti i moduli.
+   *
+   * @param fallback handler per i path senza rotta fuori da {@code /api/} (file statici)
+   * @return tabella di routing
+   */
+  public RouteTable compile(HttpHandler fallback)
+  {
+    RouteTable result;
+
+    for (Map.Entry<String, HandlerAdapter> e : adapters.entrySet()) {
+      for (Map.Entry<String, RateLimiter.Policy> limit : rateLimits.entrySet()) {
+        if (matches(limit.getKey(), e.getKey())) {
+          e.getValue().rateLimit(limit.getValue());
+        }
+      }
+      e.getValue().seal();
+    }
+    result = new RouteTable(routes, fallback);
+    System.out.println("[info] Router: " + routes.size() + " path compilati");
+    return result;
+  }
+
+  /** {@code true} se il path registrato corrisponde al pattern di {@link #rateLimit}. */
+  private static boolean matches(String pattern, String path)
+  {
+    return pattern.endsWith("/*")
+      ? path.startsWith(pattern.substring(0, pattern.length() - 1))
+      : pattern.equals(path);
+  }
+
+  /** Restituisce l'adapter del path, creandolo alla prima registrazione. */
+  private HandlerAdapter adapter(String path)
+  {
+    HandlerAdapter result;
+
+    result = adapters.get(path);
+    if (result == null) {
+      if (routes.containsKey(path)) {
+        throw new IllegalArgumentException("Route already registered: " + path);
+      }
+      result = new HandlerAdapter(path, ds);
+      adapters.put(path, result);
+      routes.put(path, result);
+    }
+    return result;
+  }
 }
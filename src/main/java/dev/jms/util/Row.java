@@ -0,0 +1,187 @@
+package dev.jms.util;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * Vista sulla riga corrente di un {@link ResultSet}, passata a {@link RowMapper}.
+ *
+ * <p>La disposizione delle colonne ({@link Layout}) è risolta una sola volta per istruzione:
+ * la lettura per nome è un lookup nella mappa nome → indice, senza accesso ai metadati
+ * JDBC e senza mappe per riga. I getter tipizzati applicano le stesse conversioni
+ * di {@link DB#toLong}, {@link DB#toString} ecc.
+ *
+ * <p>Un'istanza è riusata per tutte le righe della stessa istruzione: non conservarla
+ * oltre la chiamata a {@link RowMapper#map}.
+ */
+public class Row
+{
+  private final ResultSet rs;
+  private final Layout layout;
+
+  /**
+   * Crea la vista sul ResultSet con la disposizione delle colonne indicata.
+   *
+   * @param rs     result set posizionato dal chiamante
+   * @param layout disposizione delle colonne del result set
+   */
+  Row(ResultSet rs, Layout layout)
+  {
+    this.rs = rs;
+    this.layout = layout;
+  }
+
+  /** Disposizione delle colonne del risultato. */
+  Layout layout()
+  {
+    return layout;
+  }
+
+  /**
+   * Verifica se il risultato contiene la colonna indicata.
+   *
+   * @param column nome (o alias) della colonna
+   * @return {@code true} se presente
+   */
+  public boolean has(String column)
+  {
+    return layout.index(column) > 0;
+  }
+
+  /**
+   * Restituisce il valore JDBC della colonna, o {@code null} se assente o SQL NULL.
+   *
+   * @param column nome (o alias) della colonna
+   * @return valore della colonna
+   * @throws SQLException se la lettura fallisce
+   */
+  public Object get(String column) throws SQLException
+  {
+    int index;
+    Object result;
+
+    index = layout.index(column);
+    result = index > 0 ? rs.getObject(index) : null;
+    return result;
+  }
+
+  /**
+   * Restituisce il valore JDBC della colonna per posizione (1-based).
+   *
+   * @param index posizione della colonna
+   * @return valore della colonna
+   * @throws SQLException se la lettura fallisce
+   */
+  public Object get(int index) throws SQLException
+  {
+    return rs.getObject(index);
+  }
+
+  /** Colonna come stringa ({@link DB#toString}). */
+  public String getString(String column) throws SQLException
+  {
+    return DB.toString(get(column));
+  }
+
+  /** Colonna come Integer ({@link DB#toInteger}). */
+  public Integer getInteger(String column) throws SQLException
+  {
+    return DB.toInteger(get(column));
+  }
+
+  /** Colonna come Long ({@link DB#toLong}). */
+  public Long getLong(String column) throws SQLException
+  {
+    return DB.toLong(get(column));
+  }
+
+  /** Colonna come Boolean ({@link DB#toBoolean}). */
+  public Boolean getBoolean(String column) throws SQLException
+  {
+    return DB.toBoolean(get(column));
+  }
+
+  /** Colonna come BigDecimal ({@link DB#toBigDecimal}). */
+  public java.math.BigDecimal getBigDecimal(String column) throws SQLException
+  {
+    return DB.toBigDecimal(get(column));
+  }
+
+  /** Colonna come LocalDate ({@link DB#toLocalDate}). */
+  public java.time.LocalDate getLocalDate(String column) throws SQLException
+  {
+    return DB.toLocalDate(get(column));
+  }
+
+  /** Colonna come LocalDateTime ({@link DB#toLocalDateTime}). */
+  public java.time.LocalDateTime getLocalDateTime(String column) throws SQLException
+  {
+    return DB.toLocalDateTime(get(column));
+  }
+
+  /**
+   * Copia la riga in una mappa colonna → valore (stesso formato di {@link DB#select(String, Object...)}).
+   *
+   * @return mappa della riga
+   * @throws SQLException se la lettura fallisce
+   */
+  public HashMap<String, Object> toMap() throws SQLException
+  {
+    HashMap<String, Object> result;
+    String[] names;
+
+    names = layout.names;
+    result = new HashMap<>(names.length * 2);
+    for (int i = 0; i < names.length; i++) {
+      result.put(names[i], rs.getObject(i + 1));
+    }
+    return result;
+  }
+
+  /** Disposizione delle colonne di un risultato: nomi e indice per nome. */
+  static class Layout
+  {
+    final String[] names;
+    private final HashMap<String, Integer> indexes;
+
+    private Layout(String[] names)
+    {
+      this.names = names;
+      this.indexes = new HashMap<>(names.length * 2);
+      for (int i = 0; i < names.length; i++) {
+        // A parità di nome vince l'ultima colonna, come nelle mappe di DB.select
+        indexes.put(names[i], i + 1);
+      }
+    }
+
+    /**
+     * Legge i nomi delle colonne dai metadati ({@code getColumnName}, come {@link DB#select(String, Object...)}),
+     * una sola volta per istruzione.
+     *
+     * @param meta metadati del result set
+     * @return disposizione delle colonne
+     * @throws SQLException se la lettura dei metadati fallisce
+     */
+    static Layout of(ResultSetMetaData meta) throws SQLException
+    {
+      String[] names;
+
+      names = new String[meta.getColumnCount()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = meta.getColumnName(i + 1);
+      }
+      return new Layout(names);
+    }
+
+    /** Indice 1-based della colonna, o 0 se assente. */
+    int index(String column)
+    {
+      Integer result;
+
+      result = indexes.get(column);
+      return result != null ? result : 0;
+    }
+  }
+}
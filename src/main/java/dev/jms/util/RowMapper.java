@@ -0,0 +1,31 @@
+package dev.jms.util;
+
+/**
+ * Converte la riga corrente di un risultato in un oggetto tipizzato.
+ *
+ * <p>Utilizzo con {@link DB#select(String, RowMapper, Object...)}:
+ * <pre>
+ *   List&lt;AccountDTO&gt; accounts = db.select(sql, row -&gt; new AccountDTO(
+ *     row.getLong("id"),
+ *     row.getString("username"),
+ *     row.getString("email")
+ *   ), active);
+ * </pre>
+ *
+ * <p>Per i record Java con componenti corrispondenti alle colonne (camelCase ↔ snake_case)
+ * usare direttamente {@link DB#select(String, Class, Object...)}.
+ *
+ * @param <T> tipo prodotto per ogni riga
+ */
+@FunctionalInterface
+public interface RowMapper<T>
+{
+  /**
+   * Converte la riga corrente.
+   *
+   * @param row riga corrente (valida solo durante la chiamata)
+   * @return oggetto corrispondente alla riga
+   * @throws Exception se la lettura o la conversione falliscono
+   */
+  T map(Row row) throws Exception;
+}
@@ -30,6 +30,10 @@ import javax.sql.DataSource;
  *   <li>{@code scheduler.enabled} — abilita/disabilita lo scheduler (default: {@code true})</li>
  *   <li>{@code scheduler.poll.interval.seconds} — intervallo di polling in secondi (default: {@code 15})</li>
  * </ul>
+ *
+ * <p>Lo storage JobRunr usa il pool {@link Workload#JOBS} ({@code db.pool.jobs.size}) quando configurato:
+ * polling e aggiornamento di stato dei job non competono con le rotte interattive. I job che accedono
+ * al database usano {@code DB.getDataSource(Workload.JOBS)}.</p>
  */
 public class Scheduler
 {
@@ -43,7 +47,7 @@ public class Scheduler
    * e le successive chiamate a {@link #register} sono no-op silenziosi.
    *
    * @param config configurazione applicazione
-   * @param ds     DataSource PostgreSQL già inizializzato
+   * @param ds     DataSource PostgreSQL già inizializzato (sostituito dal pool {@code jobs} se è quello condiviso)
    */
   public static void init(Config config, DataSource ds)
   {
@@ -56,7 +60,8 @@ public class Scheduler
       pollInterval = config.getInt("scheduler.poll.interval.seconds", 15);
 
       jobRunr = JobRunr.configure()
-        .useStorageProvider(new PostgresStorageProvider(ds))
+        .useStorageProvider(new PostgresStorageProvider(DB.dataSourceFor(ds, Workload.JOBS)))
+        .withJobFilter(Metrics.jobFilter())
         .useBackgroundJobServer(
           BackgroundJobServerConfiguration.usingStandardBackgroundJobServerConfiguration()
             .andPollIntervalInSeconds(pollInterval)
@@ -1,16 +1,9 @@
 package dev.jms.util;
 
-import com.auth0.jwt.interfaces.DecodedJWT;
-
 import java.security.SecureRandom;
-import java.time.Instant;
-import java.util.HashMap;
 import java.util.HexFormat;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Rappresenta la sessione per una singola richiesta HTTP.
@@ -18,8 +11,8 @@ import java.util.concurrent.TimeUnit;
  * <p>Gestisce due aspetti distinti della sessione:
  * <ul>
  *   <li><b>JWT</b>: validazione lazy del token di accesso, con accesso ai claims e ai ruoli.</li>
- *   <li><b>Storage server-side</b>: {@link ConcurrentHashMap} in memoria condivisa tra richieste,
- *       identificata da un cookie {@code session_id} con TTL sliding (default 30 minuti).</li>
+ *   <li><b>Storage server-side</b>: attributi in un {@link SessionStore} (in memoria o su PostgreSQL),
+ *       identificati da un cookie {@code session_id} con TTL sliding (default 30 minuti).</li>
  * </ul>
  *
  * <p>Istanziata da {@link HandlerAdapter} per ogni richiesta e passata agli handler
@@ -33,8 +26,8 @@ import java.util.concurrent.TimeUnit;
  * non crea la sessione. Il TTL viene rinnovato ad ogni risposta in cui la sessione è
  * accessibile, tramite il rinnovo automatico del cookie.
  *
- * <p>Il cleanup delle sessioni scadute avviene automaticamente ogni minuto
- * in background (thread daemon).
+ * <p>Lo store è scelto da {@link #init} ({@code session.store}); la scadenza delle sessioni
+ * inattive è a carico dello store, in background.
  *
  * <pre>{@code
  * // Uso JWT in un handler:
@@ -52,25 +45,14 @@ public class Session
   // Store di sessione statico
   // =========================
 
-  private static final ConcurrentHashMap<String, HashMap<String, Object>> store;
-  private static final ConcurrentHashMap<String, Long> touched;
   private static final SecureRandom secureRandom;
-  private static ScheduledExecutorService cleanupExecutor;
-  private static int ttlSeconds;
+  private static volatile SessionStore sessionStore;
+  private static volatile int ttlSeconds;
 
   static {
-    store = new ConcurrentHashMap<>();
-    touched = new ConcurrentHashMap<>();
     secureRandom = new SecureRandom();
     ttlSeconds = 1800;
-    cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
-      Thread t;
-      t = new Thread(r);
-      t.setName("session-cleanup");
-      t.setDaemon(true);
-      return t;
-    });
-    cleanupExecutor.scheduleAtFixedRate(Session::cleanup, 60, 60, TimeUnit.SECONDS);
+    sessionStore = new InMemorySessionStore(ttlSeconds);
   }
 
   // =========================
@@ -78,6 +60,7 @@ public class Session
   // =========================
 
   private final HttpRequest req;
+  private final Timing timing;
   private Map<String, Object> _claims;
   private boolean _resolved;
 
@@ -86,7 +69,7 @@ public class Session
   // =========================
 
   private String _sessionId;
-  private HashMap<String, Object> _attrs;
+  private Map<String, Object> _attrs;
   private boolean _attrsLoaded;
   private boolean _dirty;
 
@@ -97,11 +80,13 @@ public class Session
   /**
    * Costruttore package-private — istanziato da {@link HandlerAdapter}.
    *
-   * @param req la request HTTP corrente
+   * @param req    la request HTTP corrente
+   * @param timing timing della richiesta (verifica JWT), o {@code null}
    */
-  Session(HttpRequest req)
+  Session(HttpRequest req, Timing timing)
   {
     this.req = req;
+    this.timing = timing;
     this._resolved = false;
     this._attrsLoaded = false;
     this._dirty = false;
@@ -112,7 +97,45 @@ public class Session
   // =========================
 
   /**
-   * Configura il TTL dello store server-side.
+   * Configura TTL e store server-side da configurazione.
+   * Da chiamare una volta in {@code App.main()} dopo {@code DB.init()}, prima del primo request.
+   *
+   * <ul>
+   *   <li>{@code session.ttl.seconds} — inattività prima della scadenza (default: 1800)</li>
+   *   <li>{@code session.store} — {@code memory} (default) o {@code postgres}
+   *       (tabella {@code jms_sessions}, richiede il database configurato)</li>
+   *   <li>{@code session.memory.max.sessions}, {@code session.memory.max.mb} — limiti dello
+   *       store in memoria, oltre i quali si rimuovono le sessioni meno recenti</li>
+   * </ul>
+   *
+   * @param config configurazione applicazione
+   * @throws IllegalStateException se {@code session.store} non è valido o il database non è configurato
+   */
+  public static void init(Config config)
+  {
+    String type;
+    int ttl;
+
+    ttl = Math.max(60, config.getInt("session.ttl.seconds", 1800));
+    type = config.get("session.store", "memory").trim().toLowerCase();
+    if (type.equals("postgres")) {
+      if (!DB.isConfigured()) {
+        throw new IllegalStateException("session.store=postgres requires a configured database");
+      }
+      ttlSeconds = ttl;
+      useStore(new PostgresSessionStore(config, ttl));
+    } else if (type.equals("memory")) {
+      ttlSeconds = ttl;
+      useStore(new InMemorySessionStore(ttl,
+        config.getInt("session.memory.max.sessions", InMemorySessionStore.DEFAULT_MAX_SESSIONS),
+        config.getInt("session.memory.max.mb", (int) (InMemorySessionStore.DEFAULT_MAX_BYTES >> 20)) * 1024L * 1024L));
+    } else {
+      throw new IllegalStateException("Invalid session.store: " + type + " (memory|postgres)");
+    }
+  }
+
+  /**
+   * Configura il TTL dello store server-side in memoria.
    * Da chiamare una volta in {@code App.main()} prima del primo request.
    *
    * @param ttl durata in secondi di inattività prima della scadenza della sessione (default: 1800)
@@ -120,18 +143,46 @@ public class Session
   public static void configure(int ttl)
   {
     ttlSeconds = ttl;
+    useStore(new InMemorySessionStore(ttl));
+  }
+
+  /**
+   * Sostituisce lo store server-side, arrestando il precedente.
+   * Le sessioni del precedente non vengono migrate.
+   *
+   * @param store nuovo store
+   */
+  public static void useStore(SessionStore store)
+  {
+    SessionStore previous;
+
+    previous = sessionStore;
+    sessionStore = store;
+    if (previous != null && previous != store) {
+      previous.shutdown();
+    }
   }
 
   /**
-   * Arresta il thread di cleanup dello store server-side.
+   * Arresta lo store server-side, completando le scritture in sospeso.
    * Da chiamare nel shutdown hook dell'applicazione.
    */
   public static void shutdown()
   {
-    if (cleanupExecutor != null) {
-      cleanupExecutor.shutdownNow();
-      System.out.println("[info] Session store terminato");
-    }
+    sessionStore.shutdown();
+    System.out.println("[info] Session store terminato");
+  }
+
+  /** Numero di sessioni nello store server-side (per {@link Metrics}). */
+  static int storeSize()
+  {
+    return sessionStore.size();
+  }
+
+  /** Store server-side corrente (per {@link Metrics}). */
+  static SessionStore store()
+  {
+    return sessionStore;
   }
 
   // =========================
@@ -245,7 +296,7 @@ public class Session
    * Restituisce tutti i claims JWT della sessione corrente.
    * Restituisce mappa vuota se non autenticato. Non lancia eccezioni.
    *
-   * @return claims JWT, o mappa vuota
+   * @return claims JWT (immutabili, condivisi con {@link JWTCache}), o mappa vuota
    */
   public Map<String, Object> claims()
   {
@@ -266,7 +317,7 @@ public class Session
    */
   public Object getAttr(String key)
   {
-    HashMap<String, Object> attrs;
+    Map<String, Object> attrs;
     Object result;
 
     attrs = ensureAttrs();
@@ -277,6 +328,7 @@ public class Session
   /**
    * Imposta un valore nello storage server-side.
    * Se la sessione non esiste, la crea automaticamente.
+   * Un valore {@code null} rimuove la chiave.
    *
    * @param key   chiave dell'attributo
    * @param value valore da memorizzare
@@ -288,10 +340,13 @@ public class Session
     }
     if (_attrs == null) {
       _sessionId = generateSessionId();
-      _attrs = new HashMap<>();
-      store.put(_sessionId, _attrs);
+      _attrs = new ConcurrentHashMap<>();
+    }
+    if (value != null) {
+      _attrs.put(key, value);
+    } else {
+      _attrs.remove(key);
     }
-    _attrs.put(key, value);
     _dirty = true;
   }
 
@@ -303,7 +358,7 @@ public class Session
    */
   public void removeAttr(String key)
   {
-    HashMap<String, Object> attrs;
+    Map<String, Object> attrs;
 
     attrs = ensureAttrs();
     if (attrs != null) {
@@ -318,7 +373,7 @@ public class Session
    */
   public void clearAttrs()
   {
-    HashMap<String, Object> attrs;
+    Map<String, Object> attrs;
 
     attrs = ensureAttrs();
     if (attrs != null) {
@@ -357,12 +412,26 @@ public class Session
   void flush(HttpResponse res)
   {
     if (_attrsLoaded && _sessionId != null) {
-      store.put(_sessionId, _attrs);
-      touched.put(_sessionId, Instant.now().getEpochSecond());
+      sessionStore.save(_sessionId, _attrs, _dirty);
       res.cookie(Cookie.SESSION_ID, _sessionId, ttlSeconds);
     }
   }
 
+  /**
+   * Livello del ruolo se il JWT è già stato verificato in questa richiesta, altrimenti -1.
+   * Non avvia la verifica (usato da {@link Timing} al commit della risposta).
+   */
+  int resolvedRoleLevel()
+  {
+    int result;
+
+    result = -1;
+    if (_resolved && _claims != null && _claims.get("ruolo_level") instanceof Integer level) {
+      result = level;
+    }
+    return result;
+  }
+
   // =========================
   // Helper privati JWT
   // =========================
@@ -380,39 +449,31 @@ public class Session
   }
 
   /**
-   * Valida il token JWT lazy e mette in cache il risultato.
+   * Valida il token JWT lazy e mette in cache il risultato per la richiesta.
+   * La verifica è delegata a {@link JWTCache} (claims già verificati da richieste precedenti).
    * Restituisce mappa vuota se il token è assente, non valido o revocato.
    */
   private Map<String, Object> resolve()
   {
     String token;
-    DecodedJWT jwt;
-    String jti;
-    Map<String, Object> result;
+    Map<String, Object> verified;
+    long start;
 
     if (!_resolved) {
       _resolved = true;
       token = req.getCookie(Cookie.ACCESS_TOKEN);
       if (token != null && !token.isBlank()) {
+        start = System.nanoTime();
         try {
-          jwt = Auth.get().verifyAccessToken(token);
-          jti = jwt.getId();
-          if (jti == null || !JWTBlacklist.isRevoked(jti)) {
-            result = new HashMap<>();
-            result.put("sub", jwt.getSubject());
-            result.put("username", jwt.getClaim("username").asString());
-            result.put("ruolo", jwt.getClaim("ruolo").asString());
-            result.put("ruolo_level", jwt.getClaim("ruolo_level").asInt());
-            result.put("must_change_password", jwt.getClaim("must_change_password").asBoolean());
-            _claims = result;
-          } else {
-            _claims = new HashMap<>();
+          verified = JWTCache.verify(token);
+          _claims = verified != null ? verified : Map.of();
+        } finally {
+          if (timing != null) {
+            timing.auth(System.nanoTime() - start);
           }
-        } catch (com.auth0.jwt.exceptions.JWTVerificationException e) {
-          _claims = new HashMap<>();
         }
       } else {
-        _claims = new HashMap<>();
+        _claims = Map.of();
       }
     }
     return _claims;
@@ -426,16 +487,16 @@ public class Session
    * Carica lazy lo storage dal cookie di sessione.
    * Restituisce la mappa degli attributi, o {@code null} se la sessione non esiste.
    */
-  private HashMap<String, Object> ensureAttrs()
+  private Map<String, Object> ensureAttrs()
   {
     String cookieId;
-    HashMap<String, Object> found;
+    Map<String, Object> found;
 
     if (!_attrsLoaded) {
       _attrsLoaded = true;
       cookieId = req.getCookie(Cookie.SESSION_ID);
       if (cookieId != null) {
-        found = store.get(cookieId);
+        found = sessionStore.load(cookieId);
         if (found != null) {
           _sessionId = cookieId;
           _attrs = found;
@@ -456,20 +517,4 @@ public class Session
     result = HexFormat.of().formatHex(bytes);
     return result;
   }
-
-  /** Rimuove dallo store le sessioni con TTL scaduto. Eseguito ogni minuto. */
-  private static void cleanup()
-  {
-    long now;
-    long cutoff;
-
-    now = Instant.now().getEpochSecond();
-    cutoff = now - ttlSeconds;
-    for (Map.Entry<String, Long> entry : touched.entrySet()) {
-      if (entry.getValue() < cutoff) {
-        store.remove(entry.getKey());
-        touched.remove(entry.getKey());
-      }
-    }
-  }
 }
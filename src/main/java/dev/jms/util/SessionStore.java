@@ -0,0 +1,58 @@
+package dev.jms.util;
+
+import java.util.Map;
+
+/**
+ * Store degli attributi server-side di {@link Session}.
+ *
+ * <p>Implementazioni incluse:
+ * <ul>
+ *   <li>{@link InMemorySessionStore} (default, {@code session.store=memory}): mappa nella JVM,
+ *       sessioni perse al riavvio e non condivise tra istanze.</li>
+ *   <li>{@link PostgresSessionStore} ({@code session.store=postgres}): tabella UNLOGGED
+ *       {@code jms_sessions} condivisa tra le istanze, con near-cache locale e scrittura differita.</li>
+ * </ul>
+ * Un'implementazione diversa si installa con {@link Session#useStore(SessionStore)}.
+ *
+ * <p>Contratto: {@link #load} è chiamato al primo accesso della richiesta allo storage,
+ * {@link #save} una sola volta a fine richiesta (pre-send hook), dallo stesso thread.
+ * Le implementazioni devono essere thread-safe tra richieste diverse.
+ */
+public interface SessionStore
+{
+  /**
+   * Attributi della sessione, o {@code null} se inesistente o scaduta.
+   * La mappa restituita è usata (e modificata) dalla sola richiesta corrente fino a {@link #save}.
+   *
+   * @param id session ID dal cookie
+   * @return attributi o {@code null}
+   */
+  Map<String, Object> load(String id);
+
+  /**
+   * Registra la sessione a fine richiesta e ne rinnova il TTL.
+   *
+   * @param id    session ID
+   * @param attrs attributi correnti
+   * @param dirty {@code true} se la richiesta ha modificato gli attributi; con {@code false}
+   *              l'implementazione può limitarsi al rinnovo del TTL
+   */
+  void save(String id, Map<String, Object> attrs, boolean dirty);
+
+  /**
+   * Elimina la sessione.
+   *
+   * @param id session ID
+   */
+  void remove(String id);
+
+  /**
+   * Numero di sessioni attive (anche approssimato), per {@link Metrics}.
+   *
+   * @return sessioni nello store
+   */
+  int size();
+
+  /** Arresta i thread in background, completando le scritture in sospeso. */
+  void shutdown();
+}
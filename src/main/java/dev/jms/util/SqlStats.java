@@ -0,0 +1,338 @@
+package dev.jms.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Statistiche per istruzione SQL eseguita da {@link DB}, senza {@code pg_stat_statements}.
+ *
+ * <p>Ogni testo SQL viene ridotto a un'impronta (fingerprint): letterali stringa e numerici
+ * sostituiti da {@code ?}, liste di placeholder ({@code IN (?, ?, ?)}) compattate, spazi
+ * normalizzati. I DAO usano SQL costante con placeholder, quindi l'impronta è calcolata una sola
+ * volta per testo (cache indicizzata sul testo: {@code equals} su stringhe costanti, con hash già
+ * calcolato dalla prima chiamata) e il percorso di esecuzione aggiorna solo
+ * contatori {@link LongAdder}: chiamate, errori, righe lette o modificate, tempo totale e massimo,
+ * istogramma a bucket esponenziali per il p99.
+ *
+ * <p>Le istruzioni oltre {@code db.slow.query.ms} vengono loggate a WARN con l'impronta e i soli
+ * tipi dei parametri (valori mai scritti nel log: possono contenere dati personali o credenziali).
+ *
+ * <p>Configurazione ({@link #init}): {@code db.stats.enabled}, {@code db.stats.max.statements}
+ * (impronte distinte; le successive confluiscono in un'unica voce), {@code db.slow.query.ms}
+ * (0 = log disabilitato). Lettura: {@link #getStats} (endpoint {@code /api/metrics/sql}).
+ */
+public class SqlStats
+{
+  private static final Log log = Log.get(SqlStats.class);
+
+  /** Bucket dell'istogramma: {@code i} contiene le durate in [2^(i-1), 2^i) microsecondi. */
+  private static final int BUCKETS = 28;
+
+  private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+  private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w$.])-?\\d+(?:\\.\\d+)?\\b");
+  private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private static final ConcurrentHashMap<String, Statement> byText = new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<String, Statement> byFingerprint = new ConcurrentHashMap<>();
+  private static final Statement OTHER = new Statement("other", "(altre istruzioni oltre db.stats.max.statements)");
+
+  private static volatile boolean enabled = true;
+  private static volatile int maxStatements = 500;
+  private static volatile long slowNanos = 500L * 1_000_000L;
+
+  private SqlStats()
+  {
+  }
+
+  /**
+   * Configura raccolta e log delle istruzioni lente. Chiamato da {@link DB#init}.
+   *
+   * @param config configurazione applicazione ({@code db.stats.*}, {@code db.slow.query.ms})
+   */
+  public static void init(Config config)
+  {
+    int slowMillis;
+
+    enabled = Boolean.parseBoolean(config.get("db.stats.enabled", "true").trim());
+    maxStatements = Math.max(1, config.getInt("db.stats.max.statements", 500));
+    slowMillis = config.getInt("db.slow.query.ms", 500);
+    slowNanos = slowMillis > 0 ? slowMillis * 1_000_000L : Long.MAX_VALUE;
+  }
+
+  /**
+   * Registra un'esecuzione. Chiamato da {@link DB} al termine di ogni istruzione.
+   *
+   * @param sql    testo SQL eseguito
+   * @param nanos  durata dell'esecuzione
+   * @param rows   righe lette o modificate; negativo se l'istruzione è fallita
+   * @param params parametri legati ({@code null} per i batch), usati solo per il log delle lente
+   */
+  static void record(String sql, long nanos, long rows, Object[] params)
+  {
+    Statement s;
+
+    if (enabled) {
+      s = statement(sql);
+      s.record(nanos, rows);
+      if (nanos >= slowNanos) {
+        log.warn("Query lenta {}ms [{}] {} params={}", nanos / 1_000_000L, s.id, s.sql, redact(params));
+      }
+    }
+  }
+
+  /**
+   * Aggiunge righe lette dopo l'esecuzione (cursori, letti dopo {@link #record}).
+   *
+   * @param sql  testo SQL del cursore
+   * @param rows righe lette
+   */
+  static void rows(String sql, long rows)
+  {
+    if (enabled && rows > 0) {
+      statement(sql).rows.add(rows);
+    }
+  }
+
+  /**
+   * Istantanea delle statistiche, ordinata per tempo totale decrescente.
+   *
+   * @return una voce per impronta
+   */
+  public static List<Stats> getStats()
+  {
+    ArrayList<Stats> result;
+
+    result = new ArrayList<>(byFingerprint.size() + 1);
+    for (Statement s : byFingerprint.values()) {
+      result.add(s.snapshot());
+    }
+    if (OTHER.calls.sum() > 0) {
+      result.add(OTHER.snapshot());
+    }
+    result.sort(Comparator.comparingDouble((Stats s) -> s.totalMs).reversed());
+    return result;
+  }
+
+  /** Azzera tutte le statistiche. */
+  public static void reset()
+  {
+    byText.clear();
+    byFingerprint.clear();
+    OTHER.clear();
+  }
+
+  /** Voce del testo SQL: lookup diretto, impronta calcolata solo al primo incontro. */
+  private static Statement statement(String sql)
+  {
+    Statement result;
+    String fingerprint;
+
+    result = byText.get(sql);
+    if (result == null) {
+      fingerprint = fingerprint(sql);
+      result = byFingerprint.get(fingerprint);
+      if (result == null) {
+        result = byFingerprint.size() < maxStatements
+          ? byFingerprint.computeIfAbsent(fingerprint, f -> new Statement(hash(f), f))
+          : OTHER;
+      }
+      if (byText.size() >= maxStatements * 4) {
+        // Testi generati dinamicamente senza limite: la cache riparte, le voci restano
+        byText.clear();
+      }
+      byText.put(sql, result);
+    }
+    return result;
+  }
+
+  /**
+   * Impronta del testo SQL: letterali e liste di placeholder normalizzati, spazi compattati.
+   *
+   * @param sql testo SQL
+   * @return impronta
+   */
+  static String fingerprint(String sql)
+  {
+    String result;
+
+    result = STRING_LITERAL.matcher(sql).replaceAll("?");
+    result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+    result = PLACEHOLDER_LIST.matcher(result).replaceAll("?, ...");
+    result = WHITESPACE.matcher(result).replaceAll(" ").trim();
+    return result;
+  }
+
+  /** Identificativo breve dell'impronta (FNV-1a 64 bit, esadecimale). */
+  private static String hash(String fingerprint)
+  {
+    long h;
+
+    h = 0xcbf29ce484222325L;
+    for (int i = 0; i < fingerprint.length(); i++) {
+      h ^= fingerprint.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    return String.format("%016x", h);
+  }
+
+  /** Tipi dei parametri senza valori: {@code [String(12), Integer, null]}. */
+  private static String redact(Object[] params)
+  {
+    StringBuilder sb;
+    String result;
+
+    if (params == null) {
+      result = "(batch)";
+    } else {
+      sb = new StringBuilder("[");
+      for (int i = 0; i < params.length; i++) {
+        if (i > 0) {
+          sb.append(", ");
+        }
+        if (params[i] == null) {
+          sb.append("null");
+        } else {
+          sb.append(params[i].getClass().getSimpleName());
+          if (params[i] instanceof CharSequence cs) {
+            sb.append('(').append(cs.length()).append(')');
+          }
+        }
+      }
+      result = sb.append(']').toString();
+    }
+    return result;
+  }
+
+  /** Aggregati lock-free di un'impronta. */
+  private static class Statement
+  {
+    final String id;
+    final String sql;
+    final LongAdder calls = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder rows = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+    final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    Statement(String id, String sql)
+    {
+      this.id = id;
+      this.sql = sql;
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos, long rowCount)
+    {
+      calls.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+      buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000))].increment();
+      if (rowCount < 0) {
+        errors.increment();
+      } else {
+        rows.add(rowCount);
+      }
+    }
+
+    void clear()
+    {
+      calls.reset();
+      errors.reset();
+      rows.reset();
+      totalNanos.reset();
+      maxNanos.reset();
+      for (LongAdder b : buckets) {
+        b.reset();
+      }
+    }
+
+    Stats snapshot()
+    {
+      long[] counts;
+      long n;
+      long total;
+
+      counts = new long[BUCKETS];
+      n = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = buckets[i].sum();
+        n += counts[i];
+      }
+      total = totalNanos.sum();
+      return new Stats(id, sql, n, errors.sum(), rows.sum(), total / 1e6, n > 0 ? total / 1e6 / n : 0,
+                       percentile(counts, n, 0.99), maxNanos.get() / 1e6);
+    }
+
+    /** Percentile stimato per interpolazione lineare nel bucket, in millisecondi. */
+    private static double percentile(long[] counts, long n, double q)
+    {
+      long target;
+      long seen;
+      double low;
+      double high;
+      double result;
+
+      result = 0;
+      if (n > 0) {
+        target = (long) Math.ceil(q * n);
+        seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+          if (seen + counts[i] >= target) {
+            low = i == 0 ? 0 : (1L << (i - 1));
+            high = 1L << i;
+            result = (low + (high - low) * (target - seen) / counts[i]) / 1000.0;
+            break;
+          }
+          seen += counts[i];
+        }
+      }
+      return result;
+    }
+  }
+
+  /** Istantanea delle statistiche di un'impronta (tempi in millisecondi). */
+  public static class Stats
+  {
+    /** Identificativo breve dell'impronta (FNV-1a 64 bit), {@code other} per la voce di overflow. */
+    public final String id;
+    /** Impronta del testo SQL. */
+    public final String sql;
+    /** Esecuzioni registrate. */
+    public final long calls;
+    /** Esecuzioni fallite. */
+    public final long errors;
+    /** Righe lette o modificate dalle esecuzioni riuscite (cursori inclusi). */
+    public final long rows;
+    /** Tempo totale di esecuzione. */
+    public final double totalMs;
+    /** Tempo medio per esecuzione. */
+    public final double meanMs;
+    /** 99° percentile stimato dall'istogramma. */
+    public final double p99Ms;
+    /** Esecuzione più lenta. */
+    public final double maxMs;
+
+    Stats(String id, String sql, long calls, long errors, long rows,
+          double totalMs, double meanMs, double p99Ms, double maxMs)
+    {
+      this.id = id;
+      this.sql = sql;
+      this.calls = calls;
+      this.errors = errors;
+      this.rows = rows;
+      this.totalMs = totalMs;
+      this.meanMs = meanMs;
+      this.p99Ms = p99Ms;
+      this.maxMs = maxMs;
+    }
+  }
+}
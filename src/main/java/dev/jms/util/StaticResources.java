@@ -0,0 +1,472 @@
+package dev.jms.util;
+
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.resource.ClassPathResourceManager;
+import io.undertow.server.handlers.resource.Resource;
+import io.undertow.server.handlers.resource.ResourceChangeListener;
+import io.undertow.server.handlers.resource.ResourceHandler;
+import io.undertow.server.handlers.resource.ResourceManager;
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETag;
+import io.undertow.util.Headers;
+import io.undertow.util.MimeMappings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serve i file statici della GUI (classpath {@code static/}) da una cache in memoria.
+ *
+ * <p>Ogni file viene letto ed estratto dal JAR una sola volta: i byte restano in una cache
+ * LRU con budget in bytes ({@code static.cache.max.bytes}); file oltre
+ * {@code static.cache.max.file.size} vengono serviti direttamente dal classpath.
+ * Ogni risorsa in cache ha un ETag forte (hash SHA-256 del contenuto): {@link ResourceHandler}
+ * risponde 304 alle richieste con {@code If-None-Match} corrispondente.
+ *
+ * <p>Cache-Control (impostato solo su 200/304):
+ * <ul>
+ *   <li>{@code /assets/*} — asset Vite con hash nel nome: {@code public, max-age=31536000, immutable}</li>
+ *   <li>tutto il resto (es. {@code index.html}) — {@code no-cache}: il browser rivalida a ogni
+ *       caricamento e riceve 304 se il file non è cambiato</li>
+ * </ul>
+ *
+ * <p>Le varianti {@code .gz} precompresse ({@link Compression#staticResources}) passano dalla
+ * stessa cache e hanno un ETag distinto dalla versione non compressa.
+ *
+ * <p>Anche i path inesistenti sono in cache (al più {@code static.cache.max.missing}, LRU):
+ * le richieste ripetute di file assenti, e la ricerca del sibling {@code .gz} dei file che non
+ * ne hanno uno, non rileggono il classpath. Come per i file presenti, il contenuto di
+ * {@code static/} è considerato invariato fino al riavvio. Statistiche su {@code /api/metrics}.
+ */
+public class StaticResources implements ResourceManager
+{
+  private static final Log log = Log.get(StaticResources.class);
+
+  private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+  private static final String REVALIDATE = "no-cache";
+
+  /** Path inesistenti in cache di default. */
+  public static final int DEFAULT_MAX_MISSING = 4096;
+
+  /** Cache creata da {@link #handler}, per {@link Metrics}. */
+  private static volatile StaticResources active;
+
+  private final ResourceManager delegate;
+  private final long maxBytes;
+  private final long maxFileSize;
+  private final LinkedHashMap<String, CachedResource> cache;
+  private final LinkedHashMap<String, Boolean> missing;
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder notFound;
+  private final LongAdder evictions;
+  private long usedBytes;
+
+  /**
+   * Crea la cache sopra il resource manager indicato.
+   *
+   * @param delegate    resource manager sorgente (tipicamente {@link ClassPathResourceManager})
+   * @param maxBytes    budget complessivo in bytes della cache
+   * @param maxFileSize dimensione massima di un singolo file da mettere in cache
+   */
+  public StaticResources(ResourceManager delegate, long maxBytes, long maxFileSize)
+  {
+    this(delegate, maxBytes, maxFileSize, DEFAULT_MAX_MISSING);
+  }
+
+  /**
+   * Crea la cache sopra il resource manager indicato.
+   *
+   * @param delegate    resource manager sorgente (tipicamente {@link ClassPathResourceManager})
+   * @param maxBytes    budget complessivo in bytes della cache
+   * @param maxFileSize dimensione massima di un singolo file da mettere in cache
+   * @param maxMissing  numero massimo di path inesistenti ricordati
+   */
+  public StaticResources(ResourceManager delegate, long maxBytes, long maxFileSize, int maxMissing)
+  {
+    this.delegate = delegate;
+    this.maxBytes = maxBytes;
+    this.maxFileSize = maxFileSize;
+    this.cache = new LinkedHashMap<>(64, 0.75f, true);
+    this.missing = new LinkedHashMap<>(64, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+      {
+        return size() > maxMissing;
+      }
+    };
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.notFound = new LongAdder();
+    this.evictions = new LongAdder();
+    this.usedBytes = 0;
+  }
+
+  /**
+   * Crea l'handler completo per i file statici della classpath {@code static/}:
+   * cache in memoria, varianti {@code .gz} precompresse, welcome file {@code index.html},
+   * ETag/304 e Cache-Control.
+   *
+   * @param loader classloader da cui leggere le risorse
+   * @param config configurazione applicazione ({@code static.cache.*})
+   * @return handler per i file statici
+   */
+  public static HttpHandler handler(ClassLoader loader, Config config)
+  {
+    StaticResources resources;
+    ResourceHandler resourceHandler;
+    long maxBytes;
+    long maxFileSize;
+    int maxMissing;
+
+    maxBytes = config.getInt("static.cache.max.bytes", 32 * 1024 * 1024);
+    maxFileSize = config.getInt("static.cache.max.file.size", 4 * 1024 * 1024);
+    maxMissing = Math.max(0, config.getInt("static.cache.max.missing", DEFAULT_MAX_MISSING));
+    resources = new StaticResources(new ClassPathResourceManager(loader, "static"), maxBytes, maxFileSize, maxMissing);
+    active = resources;
+    resourceHandler = new ResourceHandler(Compression.staticResources(resources))
+      .setWelcomeFiles("index.html");
+    log.info("Cache file statici: budget {} bytes, max file {} bytes", maxBytes, maxFileSize);
+
+    return exchange -> {
+      exchange.addResponseCommitListener(StaticResources::applyCacheControl);
+      resourceHandler.handleRequest(exchange);
+    };
+  }
+
+  /** Imposta Cache-Control sulle risposte 200/304 in base al path richiesto. */
+  private static void applyCacheControl(HttpServerExchange exchange)
+  {
+    int status;
+
+    status = exchange.getStatusCode();
+    if ((status == 200 || status == 304) && !exchange.getResponseHeaders().contains(Headers.CACHE_CONTROL)) {
+      if (exchange.getRelativePath().startsWith("/assets/")) {
+        exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, IMMUTABLE);
+      } else {
+        exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, REVALIDATE);
+      }
+    }
+  }
+
+  @Override
+  public Resource getResource(String path) throws IOException
+  {
+    CachedResource cached;
+    Resource source;
+    Resource result;
+    boolean absent;
+
+    synchronized (cache) {
+      cached = cache.get(path);
+      absent = cached == null && missing.get(path) != null;
+    }
+    if (cached != null) {
+      hits.increment();
+      result = cached;
+    } else if (absent) {
+      notFound.increment();
+      result = null;
+    } else {
+      misses.increment();
+      source = delegate.getResource(path);
+      if (source == null) {
+        synchronized (cache) {
+          missing.put(path, Boolean.TRUE);
+        }
+        result = null;
+      } else if (source.isDirectory()) {
+        result = source;
+      } else {
+        cached = load(path, source);
+        result = cached != null ? cached : source;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Legge il contenuto della risorsa e la inserisce in cache.
+   * Restituisce {@code null} se la risorsa è troppo grande o non leggibile come stream.
+   */
+  private CachedResource load(String path, Resource source) throws IOException
+  {
+    Long length;
+    URL url;
+    byte[] data;
+    CachedResource result;
+
+    length = source.getContentLength();
+    url = source.getUrl();
+    result = null;
+    if (url != null && (length == null || length <= maxFileSize)) {
+      try (InputStream in = url.openStream()) {
+        data = in.readNBytes((int) maxFileSize + 1);
+      }
+      if (data.length <= maxFileSize) {
+        result = new CachedResource(source, data, strongETag(data));
+        put(path, result);
+      }
+    }
+    return result;
+  }
+
+  /** Inserisce in cache ed evince le voci meno recenti oltre il budget. */
+  private void put(String path, CachedResource resource)
+  {
+    Iterator<Map.Entry<String, CachedResource>> it;
+    CachedResource previous;
+
+    synchronized (cache) {
+      previous = cache.put(path, resource);
+      if (previous != null) {
+        usedBytes -= previous.data.length;
+      }
+      usedBytes += resource.data.length;
+      it = cache.entrySet().iterator();
+      while (usedBytes > maxBytes && it.hasNext()) {
+        Map.Entry<String, CachedResource> eldest;
+        eldest = it.next();
+        usedBytes -= eldest.getValue().data.length;
+        it.remove();
+        evictions.increment();
+      }
+    }
+  }
+
+  /** ETag forte: primi 16 byte dello SHA-256 del contenuto, Base64 URL-safe. */
+  private static ETag strongETag(byte[] data)
+  {
+    byte[] digest;
+    String value;
+
+    try {
+      digest = MessageDigest.getInstance("SHA-256").digest(data);
+    } catch (Exception e) {
+      throw new IllegalStateException("SHA-256 unavailable", e);
+    }
+    value = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+    return new ETag(false, value);
+  }
+
+  @Override
+  public boolean isResourceChangeListenerSupported()
+  {
+    return false;
+  }
+
+  @Override
+  public void registerResourceChangeListener(ResourceChangeListener listener)
+  {
+  }
+
+  @Override
+  public void removeResourceChangeListener(ResourceChangeListener listener)
+  {
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    synchronized (cache) {
+      cache.clear();
+      missing.clear();
+      usedBytes = 0;
+    }
+    delegate.close();
+  }
+
+  /**
+   * Statistiche per monitoraggio.
+   */
+  public Stats getStats()
+  {
+    Stats result;
+
+    synchronized (cache) {
+      result = new Stats(cache.size(), usedBytes, maxBytes, hits.sum(), misses.sum(), evictions.sum(),
+                         missing.size(), notFound.sum());
+    }
+    return result;
+  }
+
+  /**
+   * Statistiche della cache creata da {@link #handler}.
+   *
+   * @return statistiche, o {@code null} se i file statici non sono serviti
+   */
+  static Stats activeStats()
+  {
+    StaticResources current;
+
+    current = active;
+    return current != null ? current.getStats() : null;
+  }
+
+  /** Snapshot delle statistiche della cache. */
+  public static class Stats
+  {
+    /** Numero di file in cache. */
+    public final int entries;
+    /** Bytes occupati. */
+    public final long usedBytes;
+    /** Budget configurato in bytes. */
+    public final long maxBytes;
+    /** Richieste servite dalla cache. */
+    public final long hits;
+    /** Richieste che hanno richiesto la lettura dal classpath. */
+    public final long misses;
+    /** Voci rimosse per rispettare il budget. */
+    public final long evictions;
+    /** Path inesistenti in cache. */
+    public final int missingEntries;
+    /** Richieste di path inesistenti risolte dalla cache, senza lettura dal classpath. */
+    public final long notFound;
+
+    /** Crea uno snapshot con i valori forniti. */
+    Stats(int entries, long usedBytes, long maxBytes, long hits, long misses, long evictions,
+          int missingEntries, long notFound)
+    {
+      this.entries = entries;
+      this.usedBytes = usedBytes;
+      this.maxBytes = maxBytes;
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.missingEntries = missingEntries;
+      this.notFound = notFound;
+    }
+  }
+
+  /** Risorsa con contenuto in memoria ed ETag forte precalcolato. */
+  private static class CachedResource implements Resource
+  {
+    private final Resource source;
+    private final byte[] data;
+    private final ETag etag;
+    private final Date lastModified;
+    private final String lastModifiedString;
+
+    CachedResource(Resource source, byte[] data, ETag etag)
+    {
+      this.source = source;
+      this.data = data;
+      this.etag = etag;
+      this.lastModified = source.getLastModified();
+      this.lastModifiedString = lastModified != null ? DateUtils.toDateString(lastModified) : null;
+    }
+
+    @Override
+    public String getPath()
+    {
+      return source.getPath();
+    }
+
+    @Override
+    public Date getLastModified()
+    {
+      return lastModified;
+    }
+
+    @Override
+    public String getLastModifiedString()
+    {
+      return lastModifiedString;
+    }
+
+    @Override
+    public ETag getETag()
+    {
+      return etag;
+    }
+
+    @Override
+    public String getName()
+    {
+      return source.getName();
+    }
+
+    @Override
+    public boolean isDirectory()
+    {
+      return false;
+    }
+
+    @Override
+    public List<Resource> list()
+    {
+      return List.of();
+    }
+
+    @Override
+    public String getContentType(MimeMappings mimeMappings)
+    {
+      return source.getContentType(mimeMappings);
+    }
+
+    @Override
+    public void serve(Sender sender, HttpServerExchange exchange, IoCallback completionCallback)
+    {
+      sender.send(ByteBuffer.wrap(data), completionCallback);
+    }
+
+    @Override
+    public Long getContentLength()
+    {
+      return (long) data.length;
+    }
+
+    @Override
+    public String getCacheKey()
+    {
+      return source.getCacheKey();
+    }
+
+    @Override
+    public File getFile()
+    {
+      return source.getFile();
+    }
+
+    @Override
+    public Path getFilePath()
+    {
+      return source.getFilePath();
+    }
+
+    @Override
+    public File getResourceManagerRoot()
+    {
+      return source.getResourceManagerRoot();
+    }
+
+    @Override
+    public Path getResourceManagerRootPath()
+    {
+      return source.getResourceManagerRootPath();
+    }
+
+    @Override
+    public URL getUrl()
+    {
+      return source.getUrl();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package dev.jms.util;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+
+/**
+ * Ripartizione per fase del tempo di una richiesta.
+ *
+ * <p>Creato da {@link HandlerAdapter} per ogni richiesta e alimentato automaticamente da:
+ * <ul>
+ *   <li>{@link DB} — attesa di {@code getConnection()} ({@code db-acquire}) ed esecuzione SQL
+ *       di {@code select}/{@code query}/{@code cursor} ({@code sql}, con numero di query)</li>
+ *   <li>{@link Session} — verifica del JWT ({@code auth})</li>
+ *   <li>{@link HttpResponse} — serializzazione e scrittura dell'envelope JSON ({@code json})</li>
+ * </ul>
+ * Il tempo restante è attribuito all'handler ({@code app}).
+ *
+ * <p>Uscite:
+ * <ul>
+ *   <li>header {@code Server-Timing}, aggiunto al commit della risposta, secondo
+ *       {@code timing.header}: {@code false}, {@code true} (sempre) o {@code admin}
+ *       (solo se la richiesta ha già verificato un JWT ADMIN o superiore)</li>
+ *   <li>log WARN delle richieste oltre {@code timing.slow.threshold.ms} (0 = disabilitato),
+ *       con totali per fase e numero di query</li>
+ * </ul>
+ *
+ * <p>Non thread-safe: un'istanza è usata solo dal thread che esegue l'handler.
+ */
+public class Timing
+{
+  private static final Log log = Log.get(Timing.class);
+  private static final HttpString SERVER_TIMING = new HttpString("Server-Timing");
+
+  private static volatile String headerMode = "false";
+  private static volatile long slowNanos = 1000L * 1_000_000L;
+
+  private final long start;
+  private long acquireNanos;
+  private long authNanos;
+  private long sqlNanos;
+  private long jsonNanos;
+  private long jsonStart;
+  private int acquisitions;
+  private int queries;
+
+  /** Costruttore package-private — istanziato da {@link HandlerAdapter}. */
+  Timing()
+  {
+    this.start = System.nanoTime();
+  }
+
+  /**
+   * Configura le uscite. Da chiamare una volta in {@code App.main()}.
+   *
+   * @param header     {@code false}, {@code true} o {@code admin}
+   * @param slowMillis soglia in millisecondi per il log delle richieste lente (0 = disabilitato)
+   */
+  public static void configure(String header, long slowMillis)
+  {
+    headerMode = header.trim().toLowerCase();
+    slowNanos = slowMillis > 0 ? slowMillis * 1_000_000L : Long.MAX_VALUE;
+  }
+
+  /** Attesa per l'acquisizione di una connessione dal pool. */
+  void acquire(long nanos)
+  {
+    acquireNanos += nanos;
+    acquisitions++;
+  }
+
+  /** Verifica del JWT. */
+  void auth(long nanos)
+  {
+    authNanos += nanos;
+  }
+
+  /** Esecuzione di una istruzione SQL. */
+  void sql(long nanos)
+  {
+    sqlNanos += nanos;
+    queries++;
+  }
+
+  /**
+   * Inizio della scrittura del body JSON. La fase resta aperta fino a {@link #jsonEnd()}:
+   * la chiusura dello stream effettua il commit della risposta prima che la scrittura sia conclusa.
+   */
+  void jsonStart()
+  {
+    jsonStart = System.nanoTime();
+  }
+
+  /** Fine della scrittura del body JSON. */
+  void jsonEnd()
+  {
+    if (jsonStart != 0) {
+      jsonNanos += System.nanoTime() - jsonStart;
+      jsonStart = 0;
+    }
+  }
+
+  /**
+   * Registra l'aggiunta dell'header {@code Server-Timing} al commit della risposta,
+   * se abilitato da {@code timing.header}.
+   *
+   * @param exchange exchange della richiesta
+   * @param session  sessione della richiesta (per la modalità {@code admin})
+   */
+  void attach(HttpServerExchange exchange, Session session)
+  {
+    String mode;
+
+    mode = headerMode;
+    if (mode.equals("true") || mode.equals("admin")) {
+      exchange.addResponseCommitListener(ex -> {
+        if (mode.equals("true") || session.resolvedRoleLevel() >= Role.ADMIN.level()) {
+          ex.getResponseHeaders().put(SERVER_TIMING, header());
+        }
+      });
+    }
+  }
+
+  /**
+   * Chiude la misura: logga la richiesta se oltre la soglia.
+   *
+   * @param route etichetta della rotta (metodo + path template)
+   */
+  void finish(String route)
+  {
+    long total;
+
+    total = System.nanoTime() - start;
+    if (total >= slowNanos) {
+      log.warn("Richiesta lenta {}: total={}ms app={}ms db-acquire={}ms ({}x) sql={}ms ({} query) auth={}ms json={}ms",
+        route, ms(total), ms(app(total)), ms(acquireNanos), acquisitions, ms(sqlNanos), queries,
+        ms(authNanos), ms(jsonNanos));
+    }
+  }
+
+  /** Valore dell'header {@code Server-Timing} con le fasi misurate fino a ora. */
+  private String header()
+  {
+    StringBuilder sb;
+    long now;
+    long total;
+    long json;
+
+    now = System.nanoTime();
+    total = now - start;
+    json = jsonNanos + (jsonStart != 0 ? now - jsonStart : 0);
+    sb = new StringBuilder(160);
+    sb.append("db-acquire;dur=").append(ms(acquireNanos));
+    sb.append(", sql;dur=").append(ms(sqlNanos)).append(";desc=\"").append(queries).append(" query\"");
+    sb.append(", auth;dur=").append(ms(authNanos));
+    sb.append(", json;dur=").append(ms(json));
+    sb.append(", app;dur=").append(ms(Math.max(0, app(total) - (json - jsonNanos))));
+    sb.append(", total;dur=").append(ms(total));
+    return sb.toString();
+  }
+
+  private long app(long total)
+  {
+    return Math.max(0, total - acquireNanos - sqlNanos - authNanos - jsonNanos);
+  }
+
+  /** Nanosecondi → millisecondi con una cifra decimale. */
+  private static double ms(long nanos)
+  {
+    return Math.round(nanos / 100_000.0) / 10.0;
+  }
+}
@@ -0,0 +1,183 @@
+package dev.jms.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor per handler registrati con {@link Router#virtual}: un virtual thread per exchange.
+ *
+ * <p>Un virtual thread in attesa su PostgreSQL o su un'API esterna non occupa un carrier
+ * thread, quindi la concorrenza non è più limitata dalla dimensione di un pool di
+ * piattaforma. Per non spostare semplicemente la coda dentro {@code getConnection()}
+ * di HikariCP, l'esecuzione è protetta da un {@link Semaphore} dimensionato sul pool
+ * database: i virtual thread oltre il limite attendono il permesso senza costo di memoria
+ * significativo.
+ *
+ * <p>Con {@code server.dispatch=virtual} anche le rotte registrate con
+ * {@link Router#route} vengono eseguite qui invece che sui worker thread di Undertow.
+ *
+ * <p>Un virtual thread interrotto mentre attende il permesso (es. allo shutdown) non esegue il task:
+ * con {@link #execute(Runnable, Runnable)} al suo posto viene eseguita la callback di rifiuto,
+ * che chiude la richiesta e libera le risorse acquisite prima del dispatch.
+ */
+public class VirtualExecutor
+{
+  private static ExecutorService executor;
+  private static Semaphore gate;
+  private static int maxConcurrency;
+  private static boolean defaultDispatch;
+  private static final AtomicLong completed = new AtomicLong();
+
+  /**
+   * Inizializza l'executor.
+   *
+   * Linee guida dimensionamento:
+   * - Raccomandato: max pool size HikariCP ({@code db.pool.size})
+   * - Valori maggiori hanno senso solo se molte richieste non usano il database
+   *
+   * @param size     numero massimo di handler in esecuzione contemporanea
+   * @param byDefault se {@code true} anche le rotte blocking usano i virtual thread
+   */
+  public static void init(int size, boolean byDefault)
+  {
+    ThreadFactory factory;
+
+    if (executor != null) {
+      throw new IllegalStateException("VirtualExecutor already initialized");
+    }
+    maxConcurrency = size;
+    defaultDispatch = byDefault;
+    gate = new Semaphore(size, true);
+    factory = Thread.ofVirtual()
+      .name("virtual-handler-", 0)
+      .uncaughtExceptionHandler((thread, throwable) -> {
+        System.err.println("[error] Uncaught exception in " + thread.getName());
+        throwable.printStackTrace();
+      })
+      .factory();
+    executor = Executors.newThreadPerTaskExecutor(factory);
+    System.out.println("[info] VirtualExecutor inizializzato: max concurrency = " + size
+      + (byDefault ? " (dispatch di default)" : ""));
+  }
+
+  /**
+   * Restituisce {@code true} se {@code server.dispatch=virtual}: le rotte blocking
+   * vengono eseguite su virtual thread invece che sui worker di Undertow.
+   */
+  public static boolean isDefaultDispatch()
+  {
+    return executor != null && defaultDispatch;
+  }
+
+  /**
+   * Esegue il task su un nuovo virtual thread, dopo aver acquisito un permesso
+   * dal semaforo di concorrenza (uso interno HandlerAdapter).
+   *
+   * @param task task da eseguire
+   */
+  public static void execute(Runnable task)
+  {
+    execute(task, null);
+  }
+
+  /**
+   * Come {@link #execute(Runnable)}, con una callback eseguita al posto del task se il virtual
+   * thread viene interrotto prima di ottenere il permesso.
+   *
+   * @param task       task da eseguire
+   * @param onRejected callback eseguita se il task non parte, o {@code null}
+   */
+  public static void execute(Runnable task, Runnable onRejected)
+  {
+    if (executor == null) {
+      throw new IllegalStateException("VirtualExecutor not initialized");
+    }
+    executor.execute(() -> {
+      boolean acquired;
+
+      acquired = false;
+      try {
+        gate.acquire();
+        acquired = true;
+        task.run();
+      } catch (InterruptedException e) {
+        // Flag di interruzione azzerato dall'eccezione: la callback può ancora scrivere la risposta
+        if (onRejected != null) {
+          onRejected.run();
+        }
+        Thread.currentThread().interrupt();
+      } finally {
+        if (acquired) {
+          gate.release();
+          completed.incrementAndGet();
+        }
+      }
+    });
+  }
+
+  /**
+   * Shutdown graceful dell'executor.
+   * Da chiamare in fase di shutdown applicazione.
+   */
+  public static void shutdown()
+  {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+          executor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        executor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+      System.out.println("[info] VirtualExecutor terminato");
+    }
+  }
+
+  /**
+   * Statistiche per monitoraggio.
+   */
+  public static Stats getStats()
+  {
+    Stats result;
+
+    if (gate != null) {
+      result = new Stats(
+        maxConcurrency,
+        maxConcurrency - gate.availablePermits(),
+        gate.getQueueLength(),
+        completed.get()
+      );
+    } else {
+      result = new Stats(0, 0, 0, 0);
+    }
+    return result;
+  }
+
+  /** Snapshot delle statistiche dell'executor. */
+  public static class Stats
+  {
+    /** Numero massimo di handler in esecuzione contemporanea. */
+    public final int maxConcurrency;
+    /** Numero di handler in esecuzione. */
+    public final int activeTasks;
+    /** Numero di virtual thread in attesa del permesso. */
+    public final int waitingTasks;
+    /** Numero totale di task completati. */
+    public final long completedTasks;
+
+    /** Crea uno snapshot con i valori forniti. */
+    Stats(int maxConcurrency, int activeTasks, int waitingTasks, long completedTasks)
+    {
+      this.maxConcurrency = maxConcurrency;
+      this.activeTasks = activeTasks;
+      this.waitingTasks = waitingTasks;
+      this.completedTasks = completedTasks;
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package dev.jms.util;
+
+/**
+ * Classi di carico per i pool di connessioni di {@link DB} (bulkhead).
+ *
+ * <ul>
+ *   <li>{@code INTERACTIVE} — default: rotte blocking e virtual (CTI, webhook, CRUD). Usa il pool
+ *       principale ({@code db.pool.size}).</li>
+ *   <li>{@code ASYNC} — rotte {@code router.async()} e path marcati con
+ *       {@link Router#workload(String, Workload)}: import, export, report. Pool {@code db.pool.async.size}.</li>
+ *   <li>{@code JOBS} — storage e job di {@link Scheduler}. Pool {@code db.pool.jobs.size}.</li>
+ * </ul>
+ *
+ * <p>Una classe con dimensione 0 (default) condivide il pool principale.
+ */
+public enum Workload
+{
+  INTERACTIVE, ASYNC, JOBS
+}
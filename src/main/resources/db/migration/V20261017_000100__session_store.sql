@@ -0,0 +1,17 @@
+-- ============================================================================
+-- SESSIONI SERVER-SIDE
+-- Store di Session con session.store=postgres (PostgresSessionStore):
+--   attrs      : attributi serializzati (serializzazione Java)
+--   expires_at : scadenza sliding, rinnovata dalle scritture; le righe scadute
+--                sono ignorate in lettura ed eliminate ogni 60 secondi
+-- UNLOGGED: nessun WAL, tabella svuotata da PostgreSQL dopo un crash
+-- (gli utenti rifanno il login) e non replicata sulle repliche.
+-- ============================================================================
+
+CREATE UNLOGGED TABLE IF NOT EXISTS jms_sessions (
+    id          VARCHAR(64)  PRIMARY KEY,
+    attrs       BYTEA        NOT NULL,
+    expires_at  TIMESTAMPTZ  NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_jms_sessions_expires_at ON jms_sessions (expires_at);
@@ -0,0 +1,13 @@
+-- ============================================================================
+-- BLACKLIST JWT
+-- Access token revocati (logout, cambio password) condivisi tra i nodi:
+-- JWTBlacklist scrive qui e notifica gli altri nodi sul canale jms_jwt_revoked;
+-- ogni nodo ricarica la tabella all'avvio. Righe scadute eliminate ogni minuto.
+-- ============================================================================
+
+CREATE TABLE IF NOT EXISTS jms_jwt_blacklist (
+    jti         VARCHAR(64)  PRIMARY KEY,
+    expires_at  TIMESTAMPTZ  NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_jms_jwt_blacklist_expires_at ON jms_jwt_blacklist (expires_at);
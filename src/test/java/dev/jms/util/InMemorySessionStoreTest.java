@@ -0,0 +1,113 @@
+package dev.jms.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Scadenza (timing wheel) ed eviction di {@link InMemorySessionStore}. */
+class InMemorySessionStoreTest
+{
+  private InMemorySessionStore store;
+
+  @AfterEach
+  void shutdown()
+  {
+    if (store != null) {
+      store.shutdown();
+    }
+  }
+
+  @Test
+  void expiredSessionIsNotLoaded() throws Exception
+  {
+    store = new InMemorySessionStore(1);
+    store.save("a", attrs("user", 1), true);
+    assertNotNull(store.load("a"));
+    Thread.sleep(1_100);
+    assertNull(store.load("a"));
+    assertEquals(0, store.size());
+    assertEquals(1, store.getStats().expired);
+    assertEquals(0, store.getStats().bytes);
+  }
+
+  @Test
+  void saveRenewsDeadline() throws Exception
+  {
+    store = new InMemorySessionStore(1);
+    store.save("a", attrs("user", 1), true);
+    Thread.sleep(600);
+    store.save("a", store.load("a"), false);
+    Thread.sleep(600);
+    assertNotNull(store.load("a"));
+  }
+
+  @Test
+  void cleanupSweepsExpiredSlots() throws Exception
+  {
+    long deadline;
+
+    store = new InMemorySessionStore(1);
+    store.save("a", attrs("user", 1), true);
+    store.save("b", attrs("user", 2), true);
+    deadline = System.currentTimeMillis() + 5_000;
+    while (store.size() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(0, store.size());
+    assertEquals(2, store.getStats().expired);
+  }
+
+  @Test
+  void evictsOverSessionLimitKeepingCurrent()
+  {
+    store = new InMemorySessionStore(60, 2, InMemorySessionStore.DEFAULT_MAX_BYTES);
+    store.save("a", attrs("user", 1), true);
+    store.save("b", attrs("user", 2), true);
+    store.save("c", attrs("user", 3), true);
+    assertEquals(2, store.size());
+    assertEquals(1, store.getStats().evicted);
+    assertNotNull(store.load("c"));
+  }
+
+  @Test
+  void evictsOverByteLimit()
+  {
+    store = new InMemorySessionStore(60, 100, 1);
+    store.save("a", attrs("blob", "x".repeat(1_000)), true);
+    store.save("b", attrs("blob", "y".repeat(1_000)), true);
+    assertEquals(1, store.size());
+    assertEquals(1, store.getStats().evicted);
+    assertNotNull(store.load("b"));
+    assertTrue(store.getStats().bytes > 0);
+  }
+
+  @Test
+  void saveReplacesAttributes()
+  {
+    Map<String, Object> loaded;
+
+    store = new InMemorySessionStore(60);
+    store.save("a", attrs("user", 1), true);
+    store.save("a", attrs("cart", 2), true);
+    loaded = store.load("a");
+    assertFalse(loaded.containsKey("user"));
+    assertEquals(2, loaded.get("cart"));
+  }
+
+  private static Map<String, Object> attrs(String key, Object value)
+  {
+    HashMap<String, Object> result;
+
+    result = new HashMap<>();
+    result.put(key, value);
+    return result;
+  }
+}
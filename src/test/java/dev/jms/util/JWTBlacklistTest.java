@@ -0,0 +1,76 @@
+package dev.jms.util;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Blacklist locale (senza database) e Bloom filter di {@link JWTBlacklist}. */
+class JWTBlacklistTest
+{
+  @AfterAll
+  static void shutdown()
+  {
+    JWTBlacklist.shutdown();
+  }
+
+  @Test
+  void revokedUntilExpiry()
+  {
+    long future;
+
+    future = System.currentTimeMillis() + 60_000;
+    assertFalse(JWTBlacklist.isRevoked("jti-revoke"));
+    JWTBlacklist.revoke("jti-revoke", future);
+    assertTrue(JWTBlacklist.isRevoked("jti-revoke"));
+    assertFalse(JWTBlacklist.isRevoked("jti-other"));
+  }
+
+  @Test
+  void expiredTokenIsDropped()
+  {
+    int size;
+
+    JWTBlacklist.revoke("jti-expired", System.currentTimeMillis() - 1);
+    size = JWTBlacklist.size();
+    assertFalse(JWTBlacklist.isRevoked("jti-expired"));
+    assertTrue(JWTBlacklist.size() < size);
+  }
+
+  @Test
+  void bloomHasNoFalseNegatives()
+  {
+    long future;
+
+    future = System.currentTimeMillis() + 60_000;
+    for (int i = 0; i < 1_000; i++) {
+      JWTBlacklist.revoke("jti-bloom-" + i, future);
+    }
+    for (int i = 0; i < 1_000; i++) {
+      assertTrue(JWTBlacklist.mightBeRevoked("jti-bloom-" + i), "jti-bloom-" + i);
+      assertTrue(JWTBlacklist.isRevoked("jti-bloom-" + i), "jti-bloom-" + i);
+    }
+  }
+
+  @Test
+  void bloomFalsePositiveRateIsLow()
+  {
+    long future;
+    int positives;
+
+    future = System.currentTimeMillis() + 60_000;
+    for (int i = 0; i < 1_000; i++) {
+      JWTBlacklist.revoke("jti-fp-" + i, future);
+    }
+    positives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (JWTBlacklist.mightBeRevoked("jti-valid-" + i)) {
+        positives++;
+      }
+      assertFalse(JWTBlacklist.isRevoked("jti-valid-" + i));
+    }
+    // 64k bit, 4 hash, 1-3k voci: atteso ben sotto lo 0,1%
+    assertTrue(positives < 100, "falsi positivi: " + positives);
+  }
+}
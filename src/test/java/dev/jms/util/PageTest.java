@@ -0,0 +1,110 @@
+package dev.jms.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Cursore keyset di {@link Page}: {@code next} di una pagina come {@code after} della successiva. */
+class PageTest
+{
+  private static final Page.Key KEY = Page.Key.asc()
+    .column("COALESCE(c.cognome, '')", "text")
+    .column("c.id", "bigint");
+
+  record Contatto(long id, String cognome) {}
+
+  @Test
+  void offsetPageWithoutCursor()
+  {
+    Page page;
+
+    page = Page.of(request(Map.of("page", "3", "size", "20")), 50);
+    assertFalse(page.keyset());
+    assertEquals(40, page.offset());
+    assertEquals("TRUE", page.seek(KEY));
+    assertArrayEquals(new Object[] { 7, 21, 40L }, page.params(7));
+  }
+
+  @Test
+  void nextCursorRoundTripsIntoSeek()
+  {
+    Page first;
+    Page second;
+    List<Contatto> items;
+    String next;
+
+    first = Page.of(request(Map.of("size", "2")), 50);
+    items = first.track(List.of(new Contatto(1, "Bianchi"), new Contatto(2, "Rossi, \"jr\""), new Contatto(3, "Verdi")),
+                        c -> new Object[] { c.cognome(), c.id() });
+    assertEquals(2, items.size());
+    next = first.next();
+    assertNotNull(next);
+    assertTrue(next.matches("[A-Za-z0-9_-]+"), next);
+
+    second = Page.of(request(Map.of("size", "2", "page", "5", "after", next)), 50);
+    assertTrue(second.keyset());
+    assertEquals(0, second.offset());
+    assertEquals("(COALESCE(c.cognome, ''), c.id) > (CAST(? AS text), CAST(? AS bigint))", second.seek(KEY));
+    assertEquals(Arrays.asList("x", "Rossi, \"jr\"", "2", 3, 0L), Arrays.asList(second.params("x")));
+  }
+
+  @Test
+  void lastPageHasNoCursor()
+  {
+    Page page;
+
+    page = Page.of(request(Map.of("size", "2")), 50);
+    page.track(List.of(new Contatto(1, "Bianchi"), new Contatto(2, "Rossi")), c -> new Object[] { c.cognome(), c.id() });
+    assertNull(page.next());
+  }
+
+  @Test
+  void descendingKeyComparesLower()
+  {
+    Page first;
+    Page second;
+
+    first = Page.of(request(Map.of("size", "1")), 50);
+    first.track(List.of(new Contatto(9, "Rossi"), new Contatto(8, "Bianchi")), c -> new Object[] { c.id() });
+    second = Page.of(request(Map.of("after", first.next())), 50);
+    assertEquals("(c.id) < (CAST(? AS bigint))", second.seek(Page.Key.desc().column("c.id", "bigint")));
+  }
+
+  @Test
+  void invalidCursorIsRejected()
+  {
+    Page page;
+
+    assertThrows(ValidationException.class, () -> Page.of(request(Map.of("after", "not-base64!")), 50));
+    assertThrows(ValidationException.class, () -> Page.of(request(Map.of("after", "e30")), 50));
+    page = Page.of(request(Map.of("after", "WyJhIl0")), 50);
+    assertThrows(ValidationException.class, () -> page.seek(KEY));
+  }
+
+  /** Richiesta con i soli parametri della query string. */
+  private static HttpRequest request(Map<String, String> params)
+  {
+    HashMap<String, String> query;
+
+    query = new HashMap<>(params);
+    return new HttpRequest(null)
+    {
+      @Override
+      public String queryParam(String name)
+      {
+        return query.get(name);
+      }
+    };
+  }
+}
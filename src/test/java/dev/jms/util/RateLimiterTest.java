@@ -0,0 +1,165 @@
+package dev.jms.util;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** GCRA delle policy per rotta (burst, rifiuto, Retry-After, policy piena) e contatore brute-force di {@link RateLimiter}. */
+class RateLimiterTest
+{
+  @AfterAll
+  static void shutdown()
+  {
+    RateLimiter.shutdown();
+  }
+
+  @Test
+  void burstUpToLimitThenReject()
+  {
+    RateLimiter.Policy policy;
+    RateLimiter.Decision d;
+
+    // 3 richieste ogni 60 s: una ogni 20 s, burst di 3
+    policy = RateLimiter.policy("test.burst", 3, 60, RateLimiter.Scope.IP);
+    for (int i = 0; i < 3; i++) {
+      d = policy.acquire("10.0.0.1");
+      assertTrue(d.allowed);
+      assertEquals(3, d.limit);
+      assertEquals(2 - i, d.remaining);
+      assertEquals(20L * (i + 1), d.resetSeconds);
+      assertEquals(0, d.retryAfterSeconds);
+    }
+    d = policy.acquire("10.0.0.1");
+    assertFalse(d.allowed);
+    assertEquals(0, d.remaining);
+    assertEquals(60, d.resetSeconds);
+    assertEquals(20, d.retryAfterSeconds);
+    assertEquals("3;w=60", policy.header());
+  }
+
+  @Test
+  void keysAreIndependent()
+  {
+    RateLimiter.Policy policy;
+
+    policy = RateLimiter.policy("test.keys", 1, 60, RateLimiter.Scope.IP);
+    assertTrue(policy.acquire("10.0.0.1").allowed);
+    assertFalse(policy.acquire("10.0.0.1").allowed);
+    assertTrue(policy.acquire("10.0.0.2").allowed);
+  }
+
+  @Test
+  void fullPolicyChargesNewIpsToTheirNetwork()
+  {
+    RateLimiter.Policy policy;
+    RateLimiter.Decision d;
+    RateLimiter.Stats stats;
+
+    policy = RateLimiter.policy("test.full", 3, 60, RateLimiter.Scope.IP, 1);
+    assertTrue(policy.acquire("10.0.0.1").allowed);
+    // Policy piena, nessuna chiave inattiva: 10.0.0.1 lascia il posto al bucket di 10.0.0.0/24
+    for (int i = 2; i <= 4; i++) {
+      d = policy.acquire("10.0.0." + i);
+      assertTrue(d.allowed);
+      assertEquals(4 - i, d.remaining);
+    }
+    d = policy.acquire("10.0.0.5");
+    assertFalse(d.allowed);
+    assertEquals(20, d.retryAfterSeconds);
+    stats = stats("test.full");
+    assertEquals(1, stats.keys);
+    assertEquals(4, stats.network);
+    assertEquals(1, stats.evicted);
+    assertEquals(4, stats.allowed);
+    assertEquals(1, stats.rejected);
+  }
+
+  @Test
+  void fullPolicyEvictsForAccounts()
+  {
+    RateLimiter.Policy policy;
+    RateLimiter.Stats stats;
+
+    policy = RateLimiter.policy("test.accounts", 1, 60, RateLimiter.Scope.ACCOUNT, 1);
+    assertTrue(policy.acquire("account:1").allowed);
+    assertTrue(policy.acquire("account:2").allowed);
+    assertFalse(policy.acquire("account:2").allowed);
+    stats = stats("test.accounts");
+    assertEquals(1, stats.keys);
+    assertEquals(0, stats.network);
+    assertEquals(1, stats.evicted);
+  }
+
+  @Test
+  void networkKeys()
+  {
+    assertEquals("192.168.1.0/24", RateLimiter.Policy.networkKey("192.168.1.100"));
+    assertEquals("ip:192.168.1.0/24", RateLimiter.Policy.networkKey("ip:192.168.1.100"));
+    assertEquals("2001:db8:0:1::/64", RateLimiter.Policy.networkKey("2001:db8:0:1:0:0:0:5"));
+    assertEquals("fe80:0:0:0::/64", RateLimiter.Policy.networkKey("fe80:0:0:0:1:2:3:4%eth0"));
+    assertNull(RateLimiter.Policy.networkKey("account:42"));
+    assertNull(RateLimiter.Policy.networkKey("192.168.1.0/24"));
+  }
+
+  @Test
+  void idleKeysAreRemoved()
+  {
+    RateLimiter.Policy policy;
+
+    policy = RateLimiter.policy("test.idle", 3, 60, RateLimiter.Scope.IP);
+    policy.acquire("10.0.0.1");
+    policy.removeIdle(System.nanoTime());
+    assertEquals(1, stats("test.idle").keys);
+    policy.removeIdle(System.nanoTime() + 21_000_000_000L);
+    assertEquals(0, stats("test.idle").keys);
+  }
+
+  @Test
+  void concurrentFailuresAreAllCounted() throws Exception
+  {
+    ArrayList<Thread> threads;
+    CountDownLatch start;
+
+    RateLimiter.configure(5, 300);
+    start = new CountDownLatch(1);
+    threads = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      threads.add(Thread.ofPlatform().start(() -> {
+        try {
+          start.await();
+          RateLimiter.recordFailure("user.login:10.0.0.9");
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+    }
+    assertFalse(RateLimiter.isBlocked("user.login:10.0.0.9"));
+    start.countDown();
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue(RateLimiter.isBlocked("user.login:10.0.0.9"));
+    RateLimiter.reset("user.login:10.0.0.9");
+    assertFalse(RateLimiter.isBlocked("user.login:10.0.0.9"));
+  }
+
+  private static RateLimiter.Stats stats(String name)
+  {
+    RateLimiter.Stats result;
+
+    result = null;
+    for (RateLimiter.Stats s : RateLimiter.getStats()) {
+      if (s.name.equals(name)) {
+        result = s;
+      }
+    }
+    return result;
+  }
+}
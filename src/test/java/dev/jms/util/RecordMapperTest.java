@@ -0,0 +1,104 @@
+package dev.jms.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Binding dei componenti record alle colonne ({@code camelCase} → {@code snake_case}) e conversioni. */
+class RecordMapperTest
+{
+  record Contatto(Integer id, String ragioneSociale, long listeCount, boolean blacklist, LocalDateTime createdAt) {}
+
+  record ConFacoltativa(Integer id, @OptionalColumn long listeCount, @OptionalColumn String note) {}
+
+  record PerNome(Integer id, String cognome) {}
+
+  @Test
+  void bindsCamelCaseComponentsToSnakeCaseColumns() throws Exception
+  {
+    ResultSet rs;
+    Row row;
+    Contatto result;
+
+    rs = resultSet(new String[] { "created_at", "liste_count", "id", "ragione_sociale", "blacklist" },
+      new Object[] { Timestamp.valueOf("2026-10-17 10:15:30"), 3, 7L, "Ditta srl", Boolean.TRUE });
+    row = new Row(rs, Row.Layout.of(rs.getMetaData()));
+    assertTrue(rs.next());
+    result = RecordMapper.of(Contatto.class).bind(row.layout()).map(row);
+    assertEquals(new Contatto(7, "Ditta srl", 3L, true, LocalDateTime.of(2026, 10, 17, 10, 15, 30)), result);
+  }
+
+  @Test
+  void fallsBackToComponentName() throws Exception
+  {
+    ResultSet rs;
+    Row row;
+
+    rs = resultSet(new String[] { "id", "cognome" }, new Object[] { 1, "Rossi" });
+    row = new Row(rs, Row.Layout.of(rs.getMetaData()));
+    assertTrue(rs.next());
+    assertEquals(new PerNome(1, "Rossi"), RecordMapper.of(PerNome.class).bind(row.layout()).map(row));
+  }
+
+  @Test
+  void missingColumnFailsBeforeReadingRows() throws Exception
+  {
+    ResultSet rs;
+    IllegalStateException e;
+
+    rs = resultSet(new String[] { "id", "ragione_sociale" }, new Object[] { 1, "Ditta srl" });
+    e = assertThrows(IllegalStateException.class,
+      () -> RecordMapper.of(Contatto.class).bind(Row.Layout.of(rs.getMetaData())));
+    assertTrue(e.getMessage().contains("liste_count"), e.getMessage());
+    assertTrue(e.getMessage().contains("created_at"), e.getMessage());
+  }
+
+  @Test
+  void optionalColumnDefaultsWhenAbsent() throws Exception
+  {
+    ResultSet rs;
+    Row row;
+    ConFacoltativa result;
+
+    rs = resultSet(new String[] { "id" }, new Object[] { new BigDecimal("5") });
+    row = new Row(rs, Row.Layout.of(rs.getMetaData()));
+    assertTrue(rs.next());
+    result = RecordMapper.of(ConFacoltativa.class).bind(row.layout()).map(row);
+    assertEquals(5, result.id());
+    assertEquals(0L, result.listeCount());
+    assertNull(result.note());
+  }
+
+  /** ResultSet di una riga con le colonne indicate (stesso proxy di {@code RecordMapperBenchmark}). */
+  private static ResultSet resultSet(String[] columns, Object[] values)
+  {
+    ResultSetMetaData meta;
+    int[] cursor;
+
+    meta = (ResultSetMetaData) Proxy.newProxyInstance(RecordMapperTest.class.getClassLoader(),
+      new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> switch (method.getName()) {
+        case "getColumnCount" -> columns.length;
+        case "getColumnName", "getColumnLabel" -> columns[(Integer) args[0] - 1];
+        default -> throw new UnsupportedOperationException(method.getName());
+      });
+    cursor = new int[] { -1 };
+    return (ResultSet) Proxy.newProxyInstance(RecordMapperTest.class.getClassLoader(),
+      new Class<?>[] { ResultSet.class }, (proxy, method, args) -> switch (method.getName()) {
+        case "next" -> ++cursor[0] < 1;
+        case "getObject" -> values[(Integer) args[0] - 1];
+        case "getMetaData" -> meta;
+        case "close" -> null;
+        default -> throw new UnsupportedOperationException(method.getName());
+      });
+  }
+}
@@ -0,0 +1,65 @@
+package dev.jms.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/** Impronte di {@link SqlStats}: letterali e liste di placeholder normalizzati. */
+class SqlStatsTest
+{
+  @AfterEach
+  void reset()
+  {
+    SqlStats.reset();
+  }
+
+  @Test
+  void literalsBecomePlaceholders()
+  {
+    assertEquals("SELECT * FROM t WHERE nome = ? AND id = ? AND x > ?",
+      SqlStats.fingerprint("SELECT * FROM t WHERE nome = 'O''Brien' AND id = 42 AND x > -1.5"));
+  }
+
+  @Test
+  void identifiersWithDigitsAreKept()
+  {
+    assertEquals("SELECT t1.col2, v3 FROM tab_2024 t1 WHERE t1.x = ?",
+      SqlStats.fingerprint("SELECT t1.col2, v3 FROM tab_2024 t1 WHERE t1.x = 10"));
+  }
+
+  @Test
+  void placeholderListsAndWhitespaceCollapse()
+  {
+    assertEquals(SqlStats.fingerprint("SELECT id FROM t WHERE id IN (?)"),
+      SqlStats.fingerprint("SELECT id FROM t WHERE id IN (?)"));
+    assertEquals("SELECT id FROM t WHERE id IN (?, ...)",
+      SqlStats.fingerprint("SELECT id\n  FROM t\tWHERE id IN (?,?, ?)"));
+    assertEquals(SqlStats.fingerprint("SELECT id FROM t WHERE id IN (1, 2, 3)"),
+      SqlStats.fingerprint("SELECT id FROM t WHERE id IN (4, 5)"));
+    assertNotEquals(SqlStats.fingerprint("SELECT id FROM t WHERE id IN (?)"),
+      SqlStats.fingerprint("SELECT id FROM t WHERE id IN (?, ?)"));
+  }
+
+  @Test
+  void recordGroupsByFingerprint()
+  {
+    List<SqlStats.Stats> stats;
+
+    SqlStats.record("SELECT * FROM t WHERE id = 1", 2_000_000L, 1, new Object[0]);
+    SqlStats.record("SELECT *  FROM t WHERE id = 2", 4_000_000L, 1, new Object[0]);
+    SqlStats.record("SELECT * FROM t WHERE id = ?", 1_000_000L, -1, new Object[] { 3 });
+    stats = SqlStats.getStats();
+    assertEquals(1, stats.size());
+    assertEquals("SELECT * FROM t WHERE id = ?", stats.get(0).sql);
+    assertEquals(16, stats.get(0).id.length());
+    assertEquals(3, stats.get(0).calls);
+    assertEquals(1, stats.get(0).errors);
+    assertEquals(2, stats.get(0).rows);
+    assertEquals(7.0, stats.get(0).totalMs, 0.001);
+    assertEquals(4.0, stats.get(0).maxMs, 0.001);
+  }
+}